@@ -3,7 +3,14 @@ package br.edu.ifba.inf008;
 import br.edu.ifba.inf008.shell.Core;
 
 public class App {
+    private static final int DEFAULT_API_PORT = 8080;
+
     public static void main(String[] args) {
+        if (args.length > 0 && "--headless".equals(args[0])) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_API_PORT;
+            Core.initHeadless(port);
+            return;
+        }
         Core.init();
     }
 }
@@ -0,0 +1,361 @@
+package br.edu.ifba.inf008.shell;
+
+import br.edu.ifba.inf008.interfaces.IApiController;
+import br.edu.ifba.inf008.interfaces.IApiHandler;
+import br.edu.ifba.inf008.shell.api.EndpointMetrics;
+import br.edu.ifba.inf008.shell.api.Json;
+import br.edu.ifba.inf008.shell.api.NotFoundException;
+import br.edu.ifba.inf008.shell.data.DatabaseUnavailableException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * JSON-over-HTTP front end used in headless mode. Requests run one per thread (virtual threads
+ * when the runtime offers them) and are admitted through a semaphore: once
+ * {@link #MAX_IN_FLIGHT} requests are being served, new ones get 503 instead of piling up.
+ *
+ * The server listens on {@code -Dlibrary.api.bind} (default {@code 127.0.0.1}). Every request must
+ * carry a shared token as {@code Authorization: Bearer <token>} or {@code X-Api-Key: <token>},
+ * checked before anything else runs. {@code -Dlibrary.api.token} (or {@code LIBRARY_API_TOKEN})
+ * is the staff token and reaches every endpoint. {@code -Dlibrary.api.kioskToken} (or
+ * {@code LIBRARY_API_KIOSK_TOKEN}) reaches only the endpoints registered as public plus those
+ * listed in {@code -Dlibrary.api.kioskEndpoints}, e.g. {@code "POST /api/loans"}. Without either
+ * token the server does not start. Bodies over {@code -Dlibrary.api.maxBodyBytes} (default 1 MiB)
+ * get 413.
+ */
+public class ApiController implements IApiController
+{
+    private static final int MAX_IN_FLIGHT = 256;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_BODY_BYTES = Integer.getInteger("library.api.maxBodyBytes", 1024 * 1024);
+
+    private enum Role { STAFF, KIOSK }
+
+    private final Map<String, IApiHandler> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+    private final Semaphore admission = new Semaphore(MAX_IN_FLIGHT);
+    private final Map<String, Supplier<Object>> metricsSources = new ConcurrentHashMap<>();
+    private final Set<String> kioskEndpoints = ConcurrentHashMap.newKeySet();
+    private final byte[] staffToken = token("library.api.token", "LIBRARY_API_TOKEN");
+    private final byte[] kioskToken = token("library.api.kioskToken", "LIBRARY_API_KIOSK_TOKEN");
+    private HttpServer server;
+
+    public ApiController() {
+        String configured = System.getProperty("library.api.kioskEndpoints", "");
+        for (String endpoint : configured.split(",")) {
+            String[] parts = endpoint.trim().split("\\s+", 2);
+            if (parts.length == 2) {
+                kioskEndpoints.add(key(parts[0], parts[1]));
+            }
+        }
+    }
+
+    public void registerEndpoint(String method, String path, IApiHandler handler) {
+        String key = key(method, path);
+        endpoints.put(key, handler);
+        metrics.put(key, new EndpointMetrics());
+    }
+
+    public void registerPublicEndpoint(String method, String path, IApiHandler handler) {
+        registerEndpoint(method, path, handler);
+        kioskEndpoints.add(key(method, path));
+    }
+
+    /**
+     * Adds a section to {@code GET /api/metrics}.
+     */
+    public void addMetricsSource(String name, Supplier<Object> source) {
+        metricsSources.put(name, source);
+    }
+
+    public void start(int port) throws IOException {
+        if (staffToken == null && kioskToken == null) {
+            throw new IOException("no API token configured (set -Dlibrary.api.token or LIBRARY_API_TOKEN)");
+        }
+        InetAddress address = InetAddress.getByName(System.getProperty("library.api.bind", "127.0.0.1"));
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.setExecutor(createRequestExecutor());
+        server.createContext("/api/", this::handleExchange);
+        server.start();
+        System.out.println("API listening on " + address.getHostAddress() + ":" + port + " with " + endpoints.size() + " endpoints");
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+    }
+
+    private static ExecutorService createRequestExecutor() {
+        try {
+            // Java 21+: one virtual thread per request. Looked up reflectively because the
+            // project still compiles for Java 11.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "api-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException {
+        if (!admission.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, errorBody("Server busy, retry shortly."));
+            return;
+        }
+        try {
+            Role role = authenticate(exchange);
+            if (role == null) {
+                exchange.getRequestBody().close();
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                respond(exchange, 401, errorBody("Missing or invalid API token."));
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String body = readBody(exchange);
+
+            if ("GET".equals(method) && "/api/metrics".equals(path)) {
+                if (role == Role.STAFF) {
+                    respond(exchange, 200, Json.toJson(metricsSnapshot()));
+                } else {
+                    respond(exchange, 403, errorBody("Not allowed for this token."));
+                }
+            } else if ("POST".equals(method) && "/api/batch".equals(path)) {
+                respond(exchange, 200, Json.toJson(executeBatch(role, body)));
+            } else {
+                if (!body.isEmpty()) {
+                    parameters.putAll(parseBodyObject(body));
+                }
+                Response response = dispatch(role, method, path, parameters);
+                respond(exchange, response.status, Json.toJson(response.body));
+            }
+        } catch (BodyTooLargeException e) {
+            respond(exchange, 413, errorBody("Request body is limited to " + MAX_BODY_BYTES + " bytes."));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, errorBody(e.getMessage()));
+        } catch (RuntimeException e) {
+            // Anything else would leave the client without a response.
+            respond(exchange, 500, errorBody(e.getClass().getSimpleName() + ": " + e.getMessage()));
+        } finally {
+            admission.release();
+        }
+    }
+
+    /**
+     * Body is a JSON array of {@code {"method", "path", "params"}} objects, executed in order; the
+     * response is an array of {@code {"status", "body"}} in the same order.
+     */
+    private List<Map<String, Object>> executeBatch(Role role, String body) {
+        Object parsed = Json.parse(body);
+        if (!(parsed instanceof List)) {
+            throw new IllegalArgumentException("Batch body must be a JSON array.");
+        }
+        List<?> requests = (List<?>) parsed;
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch is limited to " + MAX_BATCH_SIZE + " requests.");
+        }
+        List<Map<String, Object>> results = new ArrayList<>(requests.size());
+        for (Object item : requests) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            if (!(item instanceof Map)) {
+                result.put("status", 400);
+                result.put("body", errorMap("Batch entries must be objects."));
+            } else {
+                Map<?, ?> request = (Map<?, ?>) item;
+                Map<String, String> parameters = new HashMap<>();
+                if (request.get("params") instanceof Map) {
+                    parameters.putAll(stringify((Map<?, ?>) request.get("params")));
+                }
+                Response response = dispatch(role, String.valueOf(request.get("method")), String.valueOf(request.get("path")), parameters);
+                result.put("status", response.status);
+                result.put("body", response.body);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Response dispatch(Role role, String method, String path, Map<String, String> parameters) {
+        String key = key(method, path);
+        IApiHandler handler = endpoints.get(key);
+        if (handler == null) {
+            return new Response(404, errorMap("No endpoint for " + method + " " + path));
+        }
+        if (role == Role.KIOSK && !kioskEndpoints.contains(key)) {
+            return new Response(403, errorMap("Not allowed for this token."));
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = new Response(200, handler.handle(parameters));
+        } catch (NotFoundException e) {
+            response = new Response(404, errorMap(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            response = new Response(400, errorMap(e.getMessage()));
+        } catch (IllegalStateException e) {
+            response = new Response(409, errorMap(e.getMessage()));
+        } catch (DatabaseUnavailableException e) {
+            response = new Response(503, errorMap(e.getMessage()));
+        } catch (SQLException e) {
+            response = new Response(500, errorMap("Database error: " + e.getMessage()));
+        } catch (Exception e) {
+            response = new Response(500, errorMap(e.getClass().getSimpleName() + ": " + e.getMessage()));
+        }
+        metrics.get(key).record(System.nanoTime() - start, response.status >= 500);
+        return response;
+    }
+
+    private Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        for (Map.Entry<String, EndpointMetrics> entry : metrics.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("inFlight", MAX_IN_FLIGHT - admission.availablePermits());
+        result.put("endpoints", snapshot);
+        for (Map.Entry<String, Supplier<Object>> source : new TreeMap<>(metricsSources).entrySet()) {
+            result.put(source.getKey(), source.getValue().get());
+        }
+        return result;
+    }
+
+    private static Map<String, String> parseBodyObject(String body) {
+        Object parsed = Json.parse(body);
+        if (!(parsed instanceof Map)) {
+            throw new IllegalArgumentException("Request body must be a JSON object.");
+        }
+        return stringify((Map<?, ?>) parsed);
+    }
+
+    private static Map<String, String> stringify(Map<?, ?> values) {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Double && (Double) value == Math.rint((Double) value)) {
+                value = ((Double) value).longValue();
+            }
+            result.put(String.valueOf(entry.getKey()), value == null ? null : String.valueOf(value));
+        }
+        return result;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * The caller's role for the token it sent, or null. Compared in constant time.
+     */
+    private Role authenticate(HttpExchange exchange) {
+        String presented = exchange.getRequestHeaders().getFirst("X-Api-Key");
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (presented == null && authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            presented = authorization.substring(7).trim();
+        }
+        if (presented == null || presented.isEmpty()) {
+            return null;
+        }
+        byte[] bytes = presented.getBytes(StandardCharsets.UTF_8);
+        if (staffToken != null && MessageDigest.isEqual(staffToken, bytes)) {
+            return Role.STAFF;
+        }
+        if (kioskToken != null && MessageDigest.isEqual(kioskToken, bytes)) {
+            return Role.KIOSK;
+        }
+        return null;
+    }
+
+    private static byte[] token(String property, String environment) {
+        String value = System.getProperty(property, System.getenv(environment));
+        return value == null || value.isEmpty() ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (length != null && length.matches("\\d{1,18}") && Long.parseLong(length) > MAX_BODY_BYTES) {
+                throw new BodyTooLargeException();
+            }
+            // Chunked bodies carry no length, so read one byte past the cap to notice them.
+            byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new BodyTooLargeException();
+            }
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // A fixed length keeps the connection reusable for the next request (HTTP keep-alive).
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String errorBody(String message) {
+        return Json.toJson(errorMap(message));
+    }
+
+    private static Map<String, Object> errorMap(String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", message);
+        return error;
+    }
+
+    private static String key(String method, String path) {
+        return method.toUpperCase() + " " + path;
+    }
+
+    private static class BodyTooLargeException extends RuntimeException {
+    }
+
+    private static class Response {
+        private final int status;
+        private final Object body;
+
+        Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package br.edu.ifba.inf008.shell;
 
 import br.edu.ifba.inf008.interfaces.*;
+import br.edu.ifba.inf008.shell.data.ChangeLogPruner;
+import br.edu.ifba.inf008.shell.data.CircuitBreaker;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+import br.edu.ifba.inf008.shell.data.DeletionPurger;
+import br.edu.ifba.inf008.shell.data.LoanArchiver;
+import br.edu.ifba.inf008.shell.data.TransactionTemplate;
+import br.edu.ifba.inf008.shell.notify.NotificationDispatcher;
 import javafx.application.Application;
 import javafx.application.Platform;
+import java.io.IOException;
+import java.sql.SQLException;
 
 public class Core extends ICore
 {
-    private Core() {}
+    private Core(boolean headless) {
+        this.headless = headless;
+    }
 
     public static boolean init() {
 	if (instance != null) {
@@ -14,11 +25,59 @@ public class Core extends ICore
 	    System.exit(-1);
 	}
 
-	instance = new Core();
+	instance = new Core(false);
+        scheduleMaintenance(false);
+        NotificationDispatcher.start();
         UIController.launch(UIController.class);
 
         return true;
     }
+
+    public static boolean initHeadless(int port) {
+        if (instance != null) {
+            System.out.println("Fatal error: core is already initialized!");
+            System.exit(-1);
+        }
+
+        Core core = new Core(true);
+        instance = core;
+        try {
+            DatabaseConnection.warmUp(4);
+        } catch (SQLException e) {
+            System.out.println("Warm-up: database not reachable - " + e.getMessage());
+        }
+        core.getPluginController().init();
+        core.apiController.addMetricsSource("plugins", ((PluginController) core.pluginController)::getUsageSnapshot);
+        core.apiController.addMetricsSource("transactions", () -> TransactionTemplate.getInstance().snapshot());
+        core.apiController.addMetricsSource("database", CircuitBreaker::snapshotAll);
+        core.apiController.addMetricsSource("notifications", NotificationDispatcher::snapshot);
+        scheduleMaintenance(true);
+        NotificationDispatcher.start();
+        try {
+            core.apiController.start(port);
+            StartupTimer.ready("API ready");
+        } catch (IOException e) {
+            System.out.println("Fatal error: could not start the API server - " + e.getMessage());
+            System.exit(-1);
+        }
+
+        return true;
+    }
+
+    /**
+     * Archiving, purging and change log pruning need to run once per database, not on every desk:
+     * by default only the headless server runs them. {@code -Dlibrary.maintenance=true} picks a
+     * desk for setups without one, and {@code false} keeps them off a headless server.
+     */
+    private static void scheduleMaintenance(boolean byDefault) {
+        String setting = System.getProperty("library.maintenance");
+        if (setting == null ? !byDefault : !Boolean.parseBoolean(setting)) {
+            return;
+        }
+        LoanArchiver.schedule();
+        DeletionPurger.schedule();
+        ChangeLogPruner.schedule();
+    }
     public IUIController getUIController() {
         return UIController.getInstance();
     }
@@ -31,8 +90,20 @@ public class Core extends ICore
     public IPluginController getPluginController() {
         return pluginController;
     }
+    public IApiController getApiController() {
+        return apiController;
+    }
+    public IServiceRegistry getServiceRegistry() {
+        return serviceRegistry;
+    }
+    public boolean isHeadless() {
+        return headless;
+    }
 
     private IAuthenticationController authenticationController = new AuthenticationController();
     private IIOController ioController = new IOController();
     private IPluginController pluginController = new PluginController();
+    private ApiController apiController = new ApiController();
+    private IServiceRegistry serviceRegistry = new ServiceRegistry();
+    private final boolean headless;
 }
@@ -0,0 +1,120 @@
+package br.edu.ifba.inf008.shell;
+
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The Diagnostics tab: UI stalls recorded by the {@link StallWatchdog}, one row per stack
+ * signature, with the stack and database statement of the selected row below.
+ */
+public class DiagnosticsView {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final StallWatchdog watchdog;
+    private final TableView<StallWatchdog.StallGroup> table = new TableView<>();
+    private final TextArea details = new TextArea();
+    private final Label statusLabel = new Label();
+
+    public DiagnosticsView(StallWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    public VBox createContent() {
+        TableColumn<StallWatchdog.StallGroup, String> whereCol = new TableColumn<>("Where");
+        whereCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getWhere()));
+        whereCol.setPrefWidth(380);
+
+        TableColumn<StallWatchdog.StallGroup, Number> countCol = new TableColumn<>("Stalls");
+        countCol.setCellValueFactory(cell -> new ReadOnlyLongWrapper(cell.getValue().getCount()));
+
+        TableColumn<StallWatchdog.StallGroup, Number> maxCol = new TableColumn<>("Longest (ms)");
+        maxCol.setCellValueFactory(cell -> new ReadOnlyLongWrapper(cell.getValue().getMaxMillis()));
+
+        TableColumn<StallWatchdog.StallGroup, Number> totalCol = new TableColumn<>("Total (ms)");
+        totalCol.setCellValueFactory(cell -> new ReadOnlyLongWrapper(cell.getValue().getTotalMillis()));
+
+        TableColumn<StallWatchdog.StallGroup, String> lastSeenCol = new TableColumn<>("Last Seen");
+        lastSeenCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(format(cell.getValue().getLastSeen())));
+        lastSeenCol.setPrefWidth(150);
+
+        TableColumn<StallWatchdog.StallGroup, String> idCol = new TableColumn<>("Id");
+        idCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+
+        table.getColumns().add(whereCol);
+        table.getColumns().add(countCol);
+        table.getColumns().add(maxCol);
+        table.getColumns().add(totalCol);
+        table.getColumns().add(lastSeenCol);
+        table.getColumns().add(idCol);
+        table.setPlaceholder(new Label("No stalls over " + watchdog.getThresholdMillis() + " ms so far."));
+        table.getSelectionModel().selectedItemProperty().addListener((obs, old, group) -> showDetails(group));
+
+        details.setEditable(false);
+        details.getStyleClass().add("diagnostics-stack");
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setOnAction(e -> refresh());
+        Button clearButton = new Button("Clear");
+        clearButton.setOnAction(e -> {
+            watchdog.clear();
+            refresh();
+        });
+
+        HBox topBar = new HBox(10, refreshButton, clearButton, statusLabel);
+        topBar.setAlignment(Pos.CENTER_LEFT);
+
+        SplitPane split = new SplitPane(table, details);
+        split.setOrientation(Orientation.VERTICAL);
+        split.setDividerPositions(0.45);
+
+        VBox pane = new VBox(15, topBar, split);
+        pane.setPadding(new Insets(20));
+        VBox.setVgrow(split, Priority.ALWAYS);
+        refresh();
+        return pane;
+    }
+
+    public void refresh() {
+        String selectedId = table.getSelectionModel().getSelectedItem() == null
+                ? null : table.getSelectionModel().getSelectedItem().getId();
+        table.setItems(FXCollections.observableArrayList(watchdog.snapshot()));
+        for (StallWatchdog.StallGroup group : table.getItems()) {
+            if (group.getId().equals(selectedId)) {
+                table.getSelectionModel().select(group);
+            }
+        }
+        statusLabel.setText(watchdog.getStallCount() + " stalls over " + watchdog.getThresholdMillis()
+                + " ms; full log in " + watchdog.getLogFile().toAbsolutePath().normalize());
+    }
+
+    private void showDetails(StallWatchdog.StallGroup group) {
+        if (group == null) {
+            details.clear();
+            return;
+        }
+        String inFlight = group.getLastInFlight();
+        details.setText("Database: " + (inFlight == null ? "no statement running" : inFlight) + "\n\n"
+                + "Stack of the longest stall (" + group.getMaxMillis() + " ms):\n" + group.getStack());
+        details.positionCaret(0);
+    }
+
+    private static String format(LocalDateTime time) {
+        return time == null ? "" : time.format(TIME_FORMAT);
+    }
+}
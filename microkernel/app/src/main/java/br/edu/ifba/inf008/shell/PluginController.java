@@ -3,14 +3,35 @@ package br.edu.ifba.inf008.shell;
 import br.edu.ifba.inf008.App;
 import br.edu.ifba.inf008.interfaces.IPluginController;
 import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
 import br.edu.ifba.inf008.interfaces.ICore;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class PluginController implements IPluginController
 {
+    private final List<IPlugin> loadedPlugins = new ArrayList<>();
+    private final Map<IPlugin, PluginExecutor> executors = new ConcurrentHashMap<>();
+
+    /**
+     * Loads every jar in ./plugins and initializes the plugins along their dependency graph (see
+     * {@link PluginDescriptor}). A plugin starts as soon as all the plugins it depends on are
+     * initialized, so independent plugins run concurrently and startup takes as long as the
+     * longest dependency chain. A plugin whose dependency failed is skipped.
+     */
     public boolean init() {
         try {
             File currentDir = new File("./plugins");
@@ -26,18 +47,61 @@ public class PluginController implements IPluginController
             String []plugins = currentDir.list(jarFilter);
             int i;
             URL[] jars = new URL[plugins.length];
+            List<PluginDescriptor> descriptors = new ArrayList<>(plugins.length);
             for (i = 0; i < plugins.length; i++)
             {
-                jars[i] = (new File("./plugins/" + plugins[i])).toURL();
+                File jar = new File("./plugins/" + plugins[i]);
+                jars[i] = jar.toURL();
+                descriptors.add(PluginDescriptor.read(jar));
             }
             URLClassLoader ulc = new URLClassLoader(jars, App.class.getClassLoader());
-            for (i = 0; i < plugins.length; i++)
-            {
-                String pluginName = plugins[i].split("\\.")[0];
-                IPlugin plugin = (IPlugin) Class.forName("br.edu.ifba.inf008.plugins." + pluginName, true, ulc).newInstance();
-                plugin.init();
+
+            PluginGraph graph = new PluginGraph(descriptors);
+            for (Map.Entry<PluginDescriptor, String> entry : graph.getExcluded().entrySet()) {
+                System.out.println("Plugin " + entry.getKey() + " not loaded: " + entry.getValue());
             }
 
+            long started = System.nanoTime();
+            List<PluginDescriptor> order = graph.getOrder();
+            Map<PluginDescriptor, CompletableFuture<IPlugin>> initialized = new HashMap<>();
+            ExecutorService initPool = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(order.size(), Runtime.getRuntime().availableProcessors())), runnable -> {
+                        Thread thread = new Thread(runnable, "plugin-init");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            try {
+                for (PluginDescriptor descriptor : order) {
+                    List<CompletableFuture<IPlugin>> dependencies = new ArrayList<>();
+                    for (PluginDescriptor dependency : graph.getDependencies(descriptor)) {
+                        dependencies.add(initialized.get(dependency));
+                    }
+                    initialized.put(descriptor, CompletableFuture
+                            .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                            .thenApplyAsync(ignored -> {
+                                for (CompletableFuture<IPlugin> dependency : dependencies) {
+                                    if (dependency.join() == null) {
+                                        System.out.println("Plugin " + descriptor + " not loaded: a dependency failed to initialize");
+                                        return null;
+                                    }
+                                }
+                                return initPlugin(descriptor, ulc);
+                            }, initPool));
+                }
+                // Kept in dependency order, so callers walking the list see providers first.
+                for (PluginDescriptor descriptor : order) {
+                    IPlugin plugin = initialized.get(descriptor).join();
+                    if (plugin != null) {
+                        loadedPlugins.add(plugin);
+                    }
+                }
+            } finally {
+                initPool.shutdown();
+            }
+            System.out.println("Initialized " + loadedPlugins.size() + " of " + plugins.length + " plugins in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms (dependency depth "
+                    + graph.getDepth() + ")");
+
             return true;
         } catch (Exception e) {
             System.out.println("Error: " + e.getClass().getName() + " - " + e.getMessage());
@@ -45,4 +109,37 @@ public class PluginController implements IPluginController
             return false;
         }
     }
+
+    private IPlugin initPlugin(PluginDescriptor descriptor, ClassLoader classLoader) {
+        try {
+            IPlugin plugin = (IPlugin) Class.forName(descriptor.getClassName(), true, classLoader).newInstance();
+            if (!plugin.init()) {
+                System.out.println("Plugin " + descriptor + " failed to initialize");
+                return null;
+            }
+            return plugin;
+        } catch (Exception e) {
+            System.out.println("Error: " + descriptor + " - " + e.getClass().getName() + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    public List<IPlugin> getLoadedPlugins() {
+        return Collections.unmodifiableList(loadedPlugins);
+    }
+
+    public IPluginExecutor getExecutor(IPlugin plugin) {
+        return executors.computeIfAbsent(plugin, key -> new PluginExecutor(key.getClass().getSimpleName()));
+    }
+
+    /**
+     * Per-plugin task and connection counters, keyed by plugin class name.
+     */
+    public Map<String, Object> getUsageSnapshot() {
+        Map<String, Object> usage = new TreeMap<>();
+        for (Map.Entry<IPlugin, PluginExecutor> entry : executors.entrySet()) {
+            usage.put(entry.getKey().getClass().getSimpleName(), entry.getValue().snapshot());
+        }
+        return usage;
+    }
 }
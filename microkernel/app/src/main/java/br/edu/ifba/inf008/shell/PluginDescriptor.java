@@ -0,0 +1,124 @@
+package br.edu.ifba.inf008.shell;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * What a plugin jar declares in its {@code plugin.properties}: the plugin class, its version, the
+ * services it provides and the ones it needs from other plugins. Services are written as
+ * {@code name@version} and separated by commas, e.g. {@code requires=users@1.0, books@1.0}.
+ * A required version is satisfied by a provider with the same major version and an equal or
+ * higher minor version.
+ *
+ * Jars without a descriptor are loaded the old way: the class is named after the jar and the
+ * plugin provides and requires nothing.
+ */
+public class PluginDescriptor
+{
+    public static final String FILE_NAME = "plugin.properties";
+    private static final String PLUGIN_PACKAGE = "br.edu.ifba.inf008.plugins.";
+
+    private final String name;
+    private final String className;
+    private final String version;
+    private final Map<String, String> provides;
+    private final Map<String, String> requires;
+
+    public PluginDescriptor(String name, String className, String version,
+                            Map<String, String> provides, Map<String, String> requires) {
+        this.name = name;
+        this.className = className;
+        this.version = version;
+        this.provides = Collections.unmodifiableMap(new LinkedHashMap<>(provides));
+        this.requires = Collections.unmodifiableMap(new LinkedHashMap<>(requires));
+    }
+
+    public static PluginDescriptor read(File jar) throws IOException {
+        String name = jar.getName().split("\\.")[0];
+        try (JarFile jarFile = new JarFile(jar)) {
+            ZipEntry entry = jarFile.getEntry(FILE_NAME);
+            if (entry == null) {
+                return new PluginDescriptor(name, PLUGIN_PACKAGE + name, "0",
+                        Collections.emptyMap(), Collections.emptyMap());
+            }
+            Properties properties = new Properties();
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                properties.load(in);
+            }
+            return new PluginDescriptor(name,
+                    properties.getProperty("class", PLUGIN_PACKAGE + name).trim(),
+                    properties.getProperty("version", "0").trim(),
+                    parseServices(jar, properties.getProperty("provides", "")),
+                    parseServices(jar, properties.getProperty("requires", "")));
+        }
+    }
+
+    private static Map<String, String> parseServices(File jar, String value) throws IOException {
+        Map<String, String> services = new LinkedHashMap<>();
+        for (String item : value.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int at = item.indexOf('@');
+            String service = at < 0 ? item : item.substring(0, at).trim();
+            String version = at < 0 ? "0" : item.substring(at + 1).trim();
+            if (service.isEmpty() || !version.matches("\\d+(\\.\\d+)*")) {
+                throw new IOException("Invalid service '" + item + "' in " + jar.getName() + "/" + FILE_NAME);
+            }
+            services.put(service, version);
+        }
+        return services;
+    }
+
+    /**
+     * True when a provider at {@code provided} can serve a plugin asking for {@code required}.
+     */
+    public static boolean isCompatible(String provided, String required) {
+        String[] have = provided.split("\\.");
+        String[] want = required.split("\\.");
+        if (Integer.parseInt(have[0]) != Integer.parseInt(want[0])) {
+            return false;
+        }
+        for (int i = 1; i < Math.max(have.length, want.length); i++) {
+            int a = i < have.length ? Integer.parseInt(have[i]) : 0;
+            int b = i < want.length ? Integer.parseInt(want[i]) : 0;
+            if (a != b) {
+                return a > b;
+            }
+        }
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Map<String, String> getProvides() {
+        return provides;
+    }
+
+    public Map<String, String> getRequires() {
+        return requires;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + version;
+    }
+}
@@ -0,0 +1,146 @@
+package br.edu.ifba.inf008.shell;
+
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
+import br.edu.ifba.inf008.shell.data.ConnectionQuota;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool and connection quota of one plugin. Limits come from system properties named after
+ * the plugin class, e.g. {@code -Dlibrary.plugin.ReportPlugin.connections=4}; see the defaults
+ * below.
+ */
+public class PluginExecutor implements IPluginExecutor
+{
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE = 32;
+    private static final int DEFAULT_CONNECTIONS = 3;
+    private static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+    private static final long DEFAULT_CONNECTION_WAIT_MILLIS = 5_000;
+
+    private static final ScheduledThreadPoolExecutor timeoutScheduler = newTimeoutScheduler();
+
+    private final String name;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor pool;
+    private final ConnectionQuota quota;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public PluginExecutor(String name) {
+        this.name = name;
+        int threads = setting("threads", DEFAULT_THREADS);
+        this.timeoutMillis = Long.getLong(property("timeoutMillis"), DEFAULT_TIMEOUT_MILLIS);
+        this.quota = new ConnectionQuota(name, setting("connections", DEFAULT_CONNECTIONS),
+                Long.getLong(property("connectionWaitMillis"), DEFAULT_CONNECTION_WAIT_MILLIS));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(setting("queue", DEFAULT_QUEUE)), runnable -> {
+                    Thread thread = new Thread(() -> {
+                        DatabaseConnection.bindQuota(quota);
+                        runnable.run();
+                    }, "plugin-" + name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    private String property(String setting) {
+        return "library.plugin." + name + "." + setting;
+    }
+
+    private int setting(String setting, int defaultValue) {
+        return Math.max(1, Integer.getInteger(property(setting), defaultValue));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submitted.incrementAndGet();
+        Future<?> running;
+        try {
+            running = pool.submit(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    if (result.complete(task.call())) {
+                        completed.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    if (result.completeExceptionally(e)) {
+                        failed.incrementAndGet();
+                    }
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(new RejectedExecutionException(
+                    name + " has too many pending tasks; try again shortly."));
+            return result;
+        }
+
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException(name + " task exceeded " + timeoutMillis + " ms."))) {
+                timedOut.incrementAndGet();
+                running.cancel(true);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> timeout.cancel(false));
+        return result;
+    }
+
+    private static ScheduledThreadPoolExecutor newTimeoutScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "plugin-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most tasks finish in time; their cancelled timeouts leave the queue at once instead of
+        // piling up until they would have fired.
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("threads", pool.getMaximumPoolSize());
+        snapshot.put("active", pool.getActiveCount());
+        snapshot.put("queued", pool.getQueue().size());
+        snapshot.put("submitted", submitted.get());
+        snapshot.put("completed", completed.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("rejected", rejected.get());
+        snapshot.put("timedOut", timedOut.get());
+        snapshot.put("busyMillis", TimeUnit.NANOSECONDS.toMillis(busyNanos.get()));
+        snapshot.put("connections", quota.snapshot());
+        return snapshot;
+    }
+}
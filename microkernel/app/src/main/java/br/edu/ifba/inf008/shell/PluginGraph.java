@@ -0,0 +1,193 @@
+package br.edu.ifba.inf008.shell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency DAG of the installed plugins: an edge runs from each plugin to the providers of the
+ * services it requires. Plugins whose requirements cannot be met (no provider, incompatible
+ * version, or a dependency that is itself unusable) are left out and reported; a cycle or two
+ * providers of one service make the whole set unusable, since no order would be right.
+ */
+public class PluginGraph
+{
+    private final Map<PluginDescriptor, List<PluginDescriptor>> dependencies = new LinkedHashMap<>();
+    private final Map<PluginDescriptor, String> excluded = new LinkedHashMap<>();
+    private final List<PluginDescriptor> order = new ArrayList<>();
+    private final Map<PluginDescriptor, Integer> levels = new HashMap<>();
+
+    public PluginGraph(List<PluginDescriptor> descriptors) {
+        List<PluginDescriptor> sorted = new ArrayList<>(descriptors);
+        sorted.sort(Comparator.comparing(PluginDescriptor::getName));
+
+        Map<String, PluginDescriptor> providers = new HashMap<>();
+        for (PluginDescriptor descriptor : sorted) {
+            for (String service : descriptor.getProvides().keySet()) {
+                PluginDescriptor other = providers.putIfAbsent(service, descriptor);
+                if (other != null) {
+                    throw new IllegalStateException("Service '" + service + "' is provided by both "
+                            + other.getName() + " and " + descriptor.getName());
+                }
+            }
+        }
+
+        for (PluginDescriptor descriptor : sorted) {
+            List<PluginDescriptor> needed = new ArrayList<>();
+            for (Map.Entry<String, String> required : descriptor.getRequires().entrySet()) {
+                PluginDescriptor provider = providers.get(required.getKey());
+                if (provider == null) {
+                    excluded.put(descriptor, "no plugin provides '" + required.getKey() + "'");
+                    break;
+                }
+                String provided = provider.getProvides().get(required.getKey());
+                if (!PluginDescriptor.isCompatible(provided, required.getValue())) {
+                    excluded.put(descriptor, provider.getName() + " provides " + required.getKey() + "@" + provided
+                            + ", " + required.getValue() + " is required");
+                    break;
+                }
+                if (provider != descriptor && !needed.contains(provider)) {
+                    needed.add(provider);
+                }
+            }
+            dependencies.put(descriptor, needed);
+        }
+
+        checkForCycles();
+        excludeDependentsOfExcluded();
+        sortTopologically();
+    }
+
+    /**
+     * Depth-first search over the whole graph; a node met again while still on the stack closes a
+     * cycle, which is reported with its full path.
+     */
+    private void checkForCycles() {
+        Set<PluginDescriptor> done = new LinkedHashSet<>();
+        for (PluginDescriptor start : dependencies.keySet()) {
+            if (done.contains(start)) {
+                continue;
+            }
+            Deque<PluginDescriptor> path = new ArrayDeque<>();
+            Deque<Integer> nextChild = new ArrayDeque<>();
+            path.push(start);
+            nextChild.push(0);
+            while (!path.isEmpty()) {
+                PluginDescriptor node = path.peek();
+                int child = nextChild.pop();
+                List<PluginDescriptor> children = dependencies.get(node);
+                if (child == children.size()) {
+                    done.add(path.pop());
+                    continue;
+                }
+                nextChild.push(child + 1);
+                PluginDescriptor next = children.get(child);
+                if (done.contains(next)) {
+                    continue;
+                }
+                if (path.contains(next)) {
+                    throw new IllegalStateException("Plugin dependency cycle: " + describeCycle(path, next));
+                }
+                path.push(next);
+                nextChild.push(0);
+            }
+        }
+    }
+
+    private static String describeCycle(Deque<PluginDescriptor> path, PluginDescriptor repeated) {
+        List<String> names = new ArrayList<>();
+        // The deque iterates from the top of the stack, i.e. the deepest node first.
+        for (PluginDescriptor node : path) {
+            names.add(0, node.getName());
+            if (node == repeated) {
+                break;
+            }
+        }
+        names.add(repeated.getName());
+        return String.join(" -> ", names);
+    }
+
+    private void excludeDependentsOfExcluded() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<PluginDescriptor, List<PluginDescriptor>> entry : dependencies.entrySet()) {
+                if (excluded.containsKey(entry.getKey())) {
+                    continue;
+                }
+                for (PluginDescriptor dependency : entry.getValue()) {
+                    if (excluded.containsKey(dependency)) {
+                        excluded.put(entry.getKey(), "requires " + dependency.getName() + ", which cannot be loaded");
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the usable plugins level by level: a plugin's level is one more than the deepest of
+     * its dependencies, and plugins of a level are sorted by name.
+     */
+    private void sortTopologically() {
+        for (PluginDescriptor descriptor : dependencies.keySet()) {
+            if (!excluded.containsKey(descriptor)) {
+                levels.put(descriptor, levelOf(descriptor));
+                order.add(descriptor);
+            }
+        }
+        order.sort(Comparator.comparing((PluginDescriptor descriptor) -> levels.get(descriptor))
+                .thenComparing(PluginDescriptor::getName));
+    }
+
+    private int levelOf(PluginDescriptor descriptor) {
+        Integer level = levels.get(descriptor);
+        if (level != null) {
+            return level;
+        }
+        int deepest = -1;
+        for (PluginDescriptor dependency : dependencies.get(descriptor)) {
+            deepest = Math.max(deepest, levelOf(dependency));
+        }
+        levels.put(descriptor, deepest + 1);
+        return deepest + 1;
+    }
+
+    /**
+     * The usable plugins, every plugin after all of its dependencies.
+     */
+    public List<PluginDescriptor> getOrder() {
+        return Collections.unmodifiableList(order);
+    }
+
+    public List<PluginDescriptor> getDependencies(PluginDescriptor descriptor) {
+        return Collections.unmodifiableList(dependencies.get(descriptor));
+    }
+
+    /**
+     * Number of levels, i.e. the most plugins that have to be initialized one after another.
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (int level : levels.values()) {
+            depth = Math.max(depth, level + 1);
+        }
+        return depth;
+    }
+
+    /**
+     * Plugins left out, with the reason.
+     */
+    public Map<PluginDescriptor, String> getExcluded() {
+        return Collections.unmodifiableMap(excluded);
+    }
+}
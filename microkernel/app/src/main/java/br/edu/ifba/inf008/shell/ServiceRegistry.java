@@ -0,0 +1,28 @@
+package br.edu.ifba.inf008.shell;
+
+import br.edu.ifba.inf008.interfaces.IServiceRegistry;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ServiceRegistry implements IServiceRegistry
+{
+    private final Map<Class<?>, Object> services = new ConcurrentHashMap<>();
+
+    public <T> void register(Class<T> type, T service) {
+        Object previous = services.putIfAbsent(type, type.cast(service));
+        if (previous != null && previous != service) {
+            throw new IllegalStateException(type.getSimpleName() + " is already provided by "
+                    + previous.getClass().getName());
+        }
+    }
+
+    public <T> T get(Class<T> type) {
+        return find(type).orElseThrow(() -> new IllegalStateException(
+                "No plugin provides " + type.getSimpleName()));
+    }
+
+    public <T> Optional<T> find(Class<T> type) {
+        return Optional.ofNullable(type.cast(services.get(type)));
+    }
+}
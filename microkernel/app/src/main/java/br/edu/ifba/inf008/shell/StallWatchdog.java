@@ -0,0 +1,319 @@
+package br.edu.ifba.inf008.shell;
+
+import br.edu.ifba.inf008.shell.data.QueryTracker;
+
+import javafx.application.Platform;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notices when the JavaFX Application Thread stops answering, and records where it was. Every
+ * {@code pulseMillis} a background thread posts an empty task with {@code Platform.runLater}; while
+ * the UI is healthy that is all it costs. When a pulse waits longer than {@code thresholdMillis},
+ * the FX thread's stack and the statement it is executing (see {@link QueryTracker}) are captured
+ * at once and written to the log, so a freeze that ends with the app being killed still leaves a
+ * trace. When the pulse finally runs, the stall's length is known and it is added to its group.
+ *
+ * Stalls are grouped by the application frames nearest the top of the stack, so the same slow
+ * handler shows up as one row however often it happens. A modal dialog ({@code showAndWait}) is
+ * not a stall: it runs a nested event loop that answers pulses.
+ *
+ * {@code -Dlibrary.watchdog.thresholdMillis} (default 500) and {@code -Dlibrary.watchdog.pulseMillis}
+ * (default 250) tune it; {@code -Dlibrary.watchdog.enabled=false} turns it off. The log is
+ * {@code logs/stalls.log}, rolled over at 1 MB with three old files kept.
+ */
+public class StallWatchdog {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("library.watchdog.enabled", "true"));
+    private static final long THRESHOLD_MILLIS = Long.getLong("library.watchdog.thresholdMillis", 500);
+    private static final long PULSE_MILLIS = Long.getLong("library.watchdog.pulseMillis", 250);
+    private static final Path LOG_FILE = Paths.get("./logs/stalls.log");
+    private static final long LOG_MAX_BYTES = 1024 * 1024;
+    private static final int LOG_KEEP = 3;
+    private static final int MAX_GROUPS = 100;
+    private static final int SIGNATURE_FRAMES = 8;
+    private static final String APP_PACKAGE = "br.edu.ifba.";
+
+    private static StallWatchdog instance;
+
+    private final Thread fxThread;
+    // Least recently seen groups are dropped first once there are too many.
+    private final Map<String, StallGroup> groups = new LinkedHashMap<String, StallGroup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StallGroup> eldest) {
+            return size() > MAX_GROUPS;
+        }
+    };
+    private final ScheduledExecutorService scheduler;
+    private Pulse pulse;
+    private long stallCount;
+
+    private StallWatchdog(Thread fxThread) {
+        this.fxThread = fxThread;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fx-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts watching; called once from the FX thread.
+     */
+    public static synchronized void start() {
+        if (instance != null || !ENABLED) {
+            return;
+        }
+        instance = new StallWatchdog(Thread.currentThread());
+        QueryTracker.watch(instance.fxThread);
+        instance.scheduler.scheduleWithFixedDelay(instance::tick, PULSE_MILLIS, PULSE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The running watchdog, or null when it is disabled or the core is headless.
+     */
+    public static StallWatchdog getInstance() {
+        return instance;
+    }
+
+    public long getThresholdMillis() {
+        return THRESHOLD_MILLIS;
+    }
+
+    public Path getLogFile() {
+        return LOG_FILE;
+    }
+
+    public synchronized long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * Copies of the groups, longest total stall time first.
+     */
+    public synchronized List<StallGroup> snapshot() {
+        List<StallGroup> copy = new ArrayList<>();
+        for (StallGroup group : groups.values()) {
+            copy.add(group.copy());
+        }
+        copy.sort(Comparator.comparingLong(StallGroup::getTotalMillis).reversed());
+        return copy;
+    }
+
+    public synchronized void clear() {
+        groups.clear();
+        stallCount = 0;
+    }
+
+    /**
+     * Runs on the watchdog thread only, so {@code pulse} needs no locking.
+     */
+    private void tick() {
+        try {
+            Pulse current = pulse;
+            if (current == null || current.answeredNanos != 0) {
+                if (current != null && current.capture != null) {
+                    finish(current);
+                }
+                pulse = new Pulse(System.nanoTime());
+                Pulse posted = pulse;
+                Platform.runLater(() -> posted.answeredNanos = System.nanoTime());
+                return;
+            }
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.postedNanos);
+            if (current.capture == null && waitedMillis >= THRESHOLD_MILLIS) {
+                current.capture = new Capture(fxThread.getStackTrace(), QueryTracker.describeInFlight());
+                log(current.capture.describe(waitedMillis));
+            }
+        } catch (IllegalStateException e) {
+            // The FX toolkit has exited; there is nothing left to watch.
+            scheduler.shutdown();
+        } catch (RuntimeException e) {
+            // The scheduler would stop on an exception; one missed pulse is harmless.
+            System.out.println("Watchdog pulse failed: " + e.getMessage());
+        }
+    }
+
+    private void finish(Pulse stalled) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(stalled.answeredNanos - stalled.postedNanos);
+        Capture capture = stalled.capture;
+        synchronized (this) {
+            stallCount++;
+            groups.computeIfAbsent(capture.signature, key -> new StallGroup(capture)).add(millis, capture);
+        }
+        log(LocalDateTime.now() + " stall " + capture.id() + " ended after " + millis + " ms\n");
+    }
+
+    private static synchronized void log(String entry) {
+        try {
+            Files.createDirectories(LOG_FILE.getParent());
+            if (Files.exists(LOG_FILE) && Files.size(LOG_FILE) > LOG_MAX_BYTES) {
+                for (int i = LOG_KEEP - 1; i >= 1; i--) {
+                    Path older = Paths.get(LOG_FILE + "." + i);
+                    if (Files.exists(older)) {
+                        Files.move(older, Paths.get(LOG_FILE + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(LOG_FILE, Paths.get(LOG_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.write(LOG_FILE, entry.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("Could not write the stall log: " + e.getMessage());
+        }
+    }
+
+    private static class Pulse {
+        private final long postedNanos;
+        private volatile long answeredNanos;
+        private Capture capture;
+
+        Pulse(long postedNanos) {
+            this.postedNanos = postedNanos;
+        }
+    }
+
+    /**
+     * The FX thread as it was when a stall crossed the threshold.
+     */
+    static class Capture {
+        private final StackTraceElement[] stack;
+        private final String inFlight;
+        private final LocalDateTime at = LocalDateTime.now();
+        private final String signature;
+        private final String where;
+
+        Capture(StackTraceElement[] stack, String inFlight) {
+            this.stack = stack;
+            this.inFlight = inFlight;
+            int first = 0;
+            while (first < stack.length && !stack[first].getClassName().startsWith(APP_PACKAGE)) {
+                first++;
+            }
+            // Frames above the application code (socket reads, layout passes) vary from one
+            // sample to the next; the application frames say which handler it was.
+            if (first == stack.length) {
+                first = 0;
+            }
+            StringBuilder signature = new StringBuilder();
+            for (int i = first; i < Math.min(stack.length, first + SIGNATURE_FRAMES); i++) {
+                signature.append(stack[i]).append('\n');
+            }
+            this.signature = signature.toString();
+            this.where = stack.length == 0 ? "(no stack)" : stack[first].toString();
+        }
+
+        String id() {
+            return String.format("%08x", signature.hashCode());
+        }
+
+        String stackText() {
+            StringBuilder text = new StringBuilder();
+            for (StackTraceElement frame : stack) {
+                text.append("    at ").append(frame).append('\n');
+            }
+            return text.toString();
+        }
+
+        String describe(long waitedMillis) {
+            return at + " stall " + id() + ": JavaFX Application Thread busy for " + waitedMillis + " ms\n"
+                    + "  database: " + (inFlight == null ? "(none)" : inFlight) + "\n"
+                    + stackText();
+        }
+    }
+
+    /**
+     * Every stall with one signature. Returned to the diagnostics view as copies.
+     */
+    public static class StallGroup {
+        private final String id;
+        private final String where;
+        private long count;
+        private long totalMillis;
+        private long maxMillis;
+        private LocalDateTime lastSeen;
+        private String stack;
+        private String lastInFlight;
+
+        StallGroup(Capture first) {
+            this.id = first.id();
+            this.where = first.where;
+        }
+
+        private StallGroup(StallGroup other) {
+            this.id = other.id;
+            this.where = other.where;
+            this.count = other.count;
+            this.totalMillis = other.totalMillis;
+            this.maxMillis = other.maxMillis;
+            this.lastSeen = other.lastSeen;
+            this.stack = other.stack;
+            this.lastInFlight = other.lastInFlight;
+        }
+
+        void add(long millis, Capture capture) {
+            count++;
+            totalMillis += millis;
+            if (millis >= maxMillis) {
+                // Keep the stack of the longest stall; it is the most telling one.
+                maxMillis = millis;
+                stack = capture.stackText();
+            }
+            lastSeen = capture.at;
+            if (capture.inFlight != null) {
+                lastInFlight = capture.inFlight;
+            }
+        }
+
+        StallGroup copy() {
+            return new StallGroup(this);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getWhere() {
+            return where;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public LocalDateTime getLastSeen() {
+            return lastSeen;
+        }
+
+        public String getStack() {
+            return stack;
+        }
+
+        /**
+         * The last statement seen running during one of these stalls, or null if none was.
+         */
+        public String getLastInFlight() {
+            return lastInFlight;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package br.edu.ifba.inf008.shell;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Startup milestones measured from the moment the process was launched, so JVM boot and class
+ * loading are included. The line printed when the shell is ready is what the packaging module's
+ * startup benchmark reads.
+ *
+ * With {@code -Dlibrary.startup.exitWhenReady=true} the shell exits as soon as it is ready, which
+ * is how the benchmark and the class-data-sharing training run use it.
+ */
+public class StartupTimer
+{
+    private static final boolean EXIT_WHEN_READY = Boolean.getBoolean("library.startup.exitWhenReady");
+    private static final Instant processStart = ProcessHandle.current().info().startInstant().orElse(Instant.now());
+
+    private static volatile long firstFrameMillis = -1;
+
+    public static long sinceProcessStart() {
+        return Duration.between(processStart, Instant.now()).toMillis();
+    }
+
+    /**
+     * The main window has been drawn for the first time.
+     */
+    public static void firstFrame() {
+        if (firstFrameMillis < 0) {
+            firstFrameMillis = sinceProcessStart();
+        }
+    }
+
+    /**
+     * The shell is usable: in the window, plugin tabs are prepared and open with their data; in
+     * headless mode, the API is listening.
+     */
+    public static void ready(String milestone) {
+        long readyMillis = sinceProcessStart();
+        String firstFrame = firstFrameMillis < 0 ? "" : "first frame " + firstFrameMillis + " ms, ";
+        System.out.println("Startup: " + firstFrame + milestone + " " + readyMillis + " ms");
+        if (EXIT_WHEN_READY) {
+            System.exit(0);
+        }
+    }
+}
@@ -2,8 +2,11 @@ package br.edu.ifba.inf008.shell;
 
 import br.edu.ifba.inf008.interfaces.IUIController;
 import br.edu.ifba.inf008.interfaces.ICore;
+import br.edu.ifba.inf008.interfaces.ITabListener;
 import br.edu.ifba.inf008.shell.PluginController;
+import br.edu.ifba.inf008.shell.data.CircuitBreaker;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.control.MenuBar;
@@ -23,6 +26,15 @@ import javafx.scene.layout.HBox;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.geometry.Pos;
+import javafx.scene.control.ProgressBar;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Supplier;
 
 public class UIController extends Application implements IUIController {
@@ -31,6 +43,11 @@ public class UIController extends Application implements IUIController {
     private MenuBar menuBar;
     private TabPane tabPane;
     private HBox quickAccessBox;
+    private VBox warmUpBox;
+    private Label staleBanner;
+    private DiagnosticsView diagnosticsView;
+    private final Map<String, Node> preparedTabs = new HashMap<>();
+    private final Map<String, List<ITabListener>> tabListeners = new ConcurrentHashMap<>();
     private static UIController uiController;
 
     public UIController() {
@@ -41,6 +58,18 @@ public class UIController extends Application implements IUIController {
         uiController = this;
     }
 
+    private void updateStaleBanner(CircuitBreaker.State state) {
+        boolean down = state != CircuitBreaker.State.CLOSED;
+        if (down) {
+            String since = LocalTime.ofInstant(CircuitBreaker.getInstance().getOpenedAt(), ZoneId.systemDefault())
+                    .format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+            staleBanner.setText("Database unreachable since " + since
+                    + " - showing the last loaded data; changes cannot be saved until it is back.");
+        }
+        staleBanner.setVisible(down);
+        staleBanner.setManaged(down);
+    }
+
     public static UIController getInstance() {
         return uiController;
     }
@@ -51,7 +80,15 @@ public class UIController extends Application implements IUIController {
 
         menuBar = new MenuBar();
 
-        VBox vBox = new VBox(menuBar);
+        // Shown while the database circuit breaker is open: tables keep their last loaded rows.
+        staleBanner = new Label();
+        staleBanner.getStyleClass().add("stale-banner");
+        staleBanner.setMaxWidth(Double.MAX_VALUE);
+        staleBanner.setVisible(false);
+        staleBanner.setManaged(false);
+        CircuitBreaker.getInstance().addListener(state -> Platform.runLater(() -> updateStaleBanner(state)));
+
+        VBox vBox = new VBox(menuBar, staleBanner);
 
         tabPane = new TabPane();
         tabPane.setSide(Side.BOTTOM);
@@ -76,7 +113,14 @@ public class UIController extends Application implements IUIController {
         quickAccessBox = new HBox(15);
         quickAccessBox.setAlignment(Pos.CENTER);
 
-        VBox homePane = new VBox(15, logoView, welcomeLabel, subtitleLabel, quickAccessBox);
+        ProgressBar warmUpProgress = new ProgressBar(0);
+        warmUpProgress.setPrefWidth(300);
+        Label warmUpLabel = new Label("Preparing workspace...");
+        warmUpLabel.getStyleClass().add("warm-up-label");
+        warmUpBox = new VBox(5, warmUpProgress, warmUpLabel);
+        warmUpBox.setAlignment(Pos.CENTER);
+
+        VBox homePane = new VBox(15, logoView, welcomeLabel, subtitleLabel, quickAccessBox, warmUpBox);
         homePane.setAlignment(Pos.CENTER);
         homePane.setId("home-pane");
 
@@ -97,26 +141,70 @@ public class UIController extends Application implements IUIController {
         primaryStage.setScene(scene);
         primaryStage.show();
 
-        Core.getInstance().getPluginController().init();
+        StallWatchdog.start();
+        if (StallWatchdog.getInstance() != null) {
+            createMenuItem("Tools", "Diagnostics").setOnAction(e -> showTab("Diagnostics", () -> {
+                diagnosticsView = new DiagnosticsView(StallWatchdog.getInstance());
+                return diagnosticsView.createContent();
+            }));
+            addTabListener("Diagnostics", new ITabListener() {
+                @Override
+                public void onShown() {
+                    if (diagnosticsView != null) {
+                        diagnosticsView.refresh();
+                    }
+                }
+
+                @Override
+                public void onClosed() {
+                    diagnosticsView = null;
+                }
+            });
+        }
+
+        // The first pulse after show() is the one that renders the window.
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                StartupTimer.firstFrame();
+                stop();
+            }
+        }.start();
+
+        PluginController pluginController = (PluginController) Core.getInstance().getPluginController();
+        pluginController.init();
+
+        new WarmUpController(pluginController).start(pluginController.getLoadedPlugins(), (progress, message) -> {
+            warmUpProgress.setProgress(progress);
+            warmUpLabel.setText(message);
+        }).whenComplete((ignored, error) -> Platform.runLater(() -> {
+            warmUpBox.setVisible(false);
+            warmUpBox.setManaged(false);
+            StartupTimer.ready("usable tab");
+        }));
     }
 
     public MenuItem createMenuItem(String menuText, String menuItemText) {
-        // Criar o menu caso ele nao exista
-        Menu newMenu = null;
-        for (Menu menu : menuBar.getMenus()) {
-            if (menuText.equals(menu.getText())) {
-                newMenu = menu;
-                break;
+        MenuItem menuItem = new MenuItem(menuItemText);
+
+        // Plugins are initialized on background threads; the menu bar is only touched on the FX thread.
+        runOnFxThread(() -> {
+            // Criar o menu caso ele nao exista
+            Menu newMenu = null;
+            for (Menu menu : menuBar.getMenus()) {
+                if (menuText.equals(menu.getText())) {
+                    newMenu = menu;
+                    break;
+                }
+            }
+            if (newMenu == null) {
+                newMenu = new Menu(menuText);
+                menuBar.getMenus().add(newMenu);
             }
-        }
-        if (newMenu == null) {
-            newMenu = new Menu(menuText);
-            menuBar.getMenus().add(newMenu);
-        }
 
-        // Criar o menu item neste menu
-        MenuItem menuItem = new MenuItem(menuItemText);
-        newMenu.getItems().add(menuItem);
+            // Criar o menu item neste menu
+            newMenu.getItems().add(menuItem);
+        });
 
         return menuItem;
     }
@@ -129,10 +217,14 @@ public class UIController extends Application implements IUIController {
             }
         }
 
-        Node contents = contentSupplier.get();
+        Node contents = preparedTabs.remove(tabText);
+        if (contents == null) {
+            contents = contentSupplier.get();
+        }
 
         Tab newTab = new Tab(tabText);
         newTab.setContent(contents);
+        attachTabListeners(newTab);
         tabPane.getTabs().add(newTab);
 
         tabPane.getSelectionModel().select(newTab);
@@ -140,12 +232,71 @@ public class UIController extends Application implements IUIController {
         return true;
     }
 
+    public void prepareTab(String tabText, Supplier<Node> contentSupplier) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> prepareTab(tabText, contentSupplier));
+            return;
+        }
+        for (Tab tab : tabPane.getTabs()) {
+            if (tabText.equals(tab.getText())) {
+                // The user got there first; the tab already has live content.
+                return;
+            }
+        }
+        preparedTabs.put(tabText, contentSupplier.get());
+    }
+
+    public void addTabListener(String tabText, ITabListener listener) {
+        tabListeners.computeIfAbsent(tabText, key -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    private void attachTabListeners(Tab tab) {
+        List<ITabListener> listeners = tabListeners.computeIfAbsent(tab.getText(), key -> new CopyOnWriteArrayList<>());
+        tab.selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+            for (ITabListener listener : listeners) {
+                if (isSelected) {
+                    listener.onShown();
+                } else {
+                    listener.onHidden();
+                }
+            }
+        });
+        tab.setOnClosed(e -> {
+            for (ITabListener listener : listeners) {
+                listener.onClosed();
+            }
+            // Closed tabs are not reused, so let go of the node graph right away.
+            tab.setContent(null);
+        });
+    }
+
     @Override
     public Button addQuickAccessButton(String text, Runnable action) {
+        return addQuickAccessButton(text, null, action);
+    }
+
+    public Button addQuickAccessButton(String text, Node graphic, Runnable action) {
         Button button = new Button(text);
         button.getStyleClass().add("quick-button");
         button.setOnAction(e -> action.run());
-        quickAccessBox.getChildren().add(button);
+        runOnFxThread(() -> {
+            if (graphic != null) {
+                button.setGraphic(graphic);
+            }
+            quickAccessBox.getChildren().add(button);
+        });
         return button;
     }
+
+    /**
+     * Runs {@code action} now when called on the FX thread, otherwise queues it there without
+     * waiting, so plugin init threads never block on a busy UI.
+     */
+    private static void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package br.edu.ifba.inf008.shell;
+
+import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginController;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import javafx.application.Platform;
+
+/**
+ * Startup warm-up phase: loads the JDBC driver, fills the connection pool and lets every plugin
+ * prefetch its data, all in parallel and off the FX thread.
+ */
+public class WarmUpController
+{
+    private static final int WARM_CONNECTIONS = 4;
+
+    private final IPluginController pluginController;
+
+    public WarmUpController(IPluginController pluginController) {
+        this.pluginController = pluginController;
+    }
+
+    /**
+     * @param progressListener receives (fraction done, description of the step just finished) on the FX thread
+     */
+    public CompletableFuture<Void> start(List<IPlugin> plugins, BiConsumer<Double, String> progressListener) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int totalSteps = plugins.size() + 1;
+        AtomicInteger finishedSteps = new AtomicInteger();
+        List<CompletableFuture<Void>> steps = new ArrayList<>();
+
+        CompletableFuture<Void> database = CompletableFuture.runAsync(() -> {
+            try {
+                DatabaseConnection.warmUp(WARM_CONNECTIONS);
+            } catch (Exception e) {
+                System.out.println("Warm-up: database not reachable - " + e.getMessage());
+            }
+        }, executor);
+        steps.add(database.thenRun(() -> report(progressListener, finishedSteps.incrementAndGet(), totalSteps, "Database connections ready")));
+
+        for (IPlugin plugin : plugins) {
+            // Plugins start once the pool is filled so they do not race each other opening sockets.
+            // Each warms up on its own executor, within its own connection quota.
+            steps.add(database.thenCompose(ignored -> pluginController.getExecutor(plugin).submit(plugin::warmUp))
+                    .<Void>handle((warmed, error) -> {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            System.out.println("Warm-up: " + plugin.getClass().getSimpleName() + " failed - " + cause.getMessage());
+                        }
+                        report(progressListener, finishedSteps.incrementAndGet(), totalSteps,
+                                plugin.getClass().getSimpleName() + " ready");
+                        return null;
+                    }));
+        }
+
+        return CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> executor.shutdown());
+    }
+
+    private void report(BiConsumer<Double, String> progressListener, int done, int total, String message) {
+        Platform.runLater(() -> progressListener.accept((double) done / total, message));
+    }
+}
@@ -0,0 +1,72 @@
+package br.edu.ifba.inf008.shell.api;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed access to API request parameters. Missing or malformed values raise
+ * {@link IllegalArgumentException}, which the API answers with 400.
+ */
+public class ApiParameters {
+    private ApiParameters() {
+    }
+
+    public static String require(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter '" + name + "'.");
+        }
+        return value;
+    }
+
+    public static int requireInt(Map<String, String> parameters, String name) {
+        String value = require(parameters, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter '" + name + "' must be an integer.");
+        }
+    }
+
+    /**
+     * A comma-separated list of integers ({@code 3,8,8,21}), in the order given.
+     */
+    public static List<Integer> requireIntList(Map<String, String> parameters, String name) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : require(parameters, name).split(",")) {
+            try {
+                values.add(Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Parameter '" + name + "' must be a comma-separated list of integers.");
+            }
+        }
+        return values;
+    }
+
+    public static Integer optionalInt(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        return value == null || value.isEmpty() ? null : requireInt(parameters, name);
+    }
+
+    /**
+     * ISO dates ({@code 2024-03-31}); null when the parameter is absent.
+     */
+    public static LocalDate optionalDate(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Parameter '" + name + "' must be a date (yyyy-MM-dd).");
+        }
+    }
+
+    public static Map<String, Object> ok() {
+        return Map.of("status", "ok");
+    }
+}
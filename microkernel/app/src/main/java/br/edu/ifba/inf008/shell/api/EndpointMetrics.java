@@ -0,0 +1,69 @@
+package br.edu.ifba.inf008.shell.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency statistics for one endpoint. Latencies are kept in power-of-two microsecond
+ * buckets, which is precise enough for percentiles on a dashboard and costs two atomic adds per
+ * request.
+ */
+public class EndpointMetrics {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    public void record(long elapsedNanos, boolean failed) {
+        long micros = Math.max(1, elapsedNanos / 1000);
+        requests.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+        histogram.incrementAndGet(Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros)));
+    }
+
+    public Map<String, Object> snapshot() {
+        long count = requests.get();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("requests", count);
+        values.put("errors", errors.get());
+        values.put("meanMicros", count == 0 ? 0 : totalMicros.get() / count);
+        values.put("p50Micros", percentile(0.50));
+        values.put("p95Micros", percentile(0.95));
+        values.put("p99Micros", percentile(0.99));
+        values.put("maxMicros", maxMicros.get());
+        return values;
+    }
+
+    /**
+     * Upper bound of the bucket holding the requested percentile.
+     */
+    private long percentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min((1L << (i + 1)) - 1, maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+}
@@ -0,0 +1,325 @@
+package br.edu.ifba.inf008.shell.api;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal JSON support for the HTTP API: serialises maps, collections, primitives, dates and
+ * plain getters-only beans such as the shell models, and parses request bodies into
+ * maps/lists/strings/numbers.
+ */
+public class Json {
+    private static final Map<Class<?>, List<Method>> GETTERS = new ConcurrentHashMap<>();
+
+    private Json() {
+    }
+
+    public static String toJson(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(out, value);
+        return out.toString();
+    }
+
+    private static void write(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String || value instanceof Character || value instanceof Enum
+                || value instanceof TemporalAccessor) {
+            writeString(out, value.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                write(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(out, item);
+            }
+            out.append(']');
+        } else {
+            writeBean(out, value);
+        }
+    }
+
+    private static void writeBean(StringBuilder out, Object bean) {
+        out.append('{');
+        boolean first = true;
+        for (Method getter : gettersOf(bean.getClass())) {
+            Object property;
+            try {
+                property = getter.invoke(bean);
+            } catch (ReflectiveOperationException e) {
+                continue;
+            }
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            writeString(out, propertyName(getter));
+            out.append(':');
+            write(out, property);
+        }
+        out.append('}');
+    }
+
+    private static List<Method> gettersOf(Class<?> type) {
+        return GETTERS.computeIfAbsent(type, key -> {
+            List<Method> getters = new ArrayList<>();
+            for (Method method : key.getMethods()) {
+                boolean isGetter = (method.getName().startsWith("get") && method.getName().length() > 3)
+                        || (method.getName().startsWith("is") && method.getName().length() > 2
+                                && method.getReturnType() == boolean.class);
+                if (isGetter && method.getParameterCount() == 0 && !Modifier.isStatic(method.getModifiers())
+                        && method.getDeclaringClass() != Object.class) {
+                    getters.add(method);
+                }
+            }
+            getters.sort((a, b) -> a.getName().compareTo(b.getName()));
+            return getters;
+        });
+    }
+
+    private static String propertyName(Method getter) {
+        String name = getter.getName().substring(getter.getName().startsWith("is") ? 2 : 3);
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static void writeString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Parses a JSON document into {@code Map}, {@code List}, {@code String}, {@code Double}/{@code Long},
+     * {@code Boolean} or {@code null}.
+     */
+    public static Object parse(String text) {
+        Parser parser = new Parser(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw new IllegalArgumentException("Unexpected trailing content at " + parser.position);
+        }
+        return value;
+    }
+
+    private static class Parser {
+        private final String text;
+        private int position = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            char c = text.charAt(position);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                consume(':');
+                object.put(key, readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    consume('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    consume(']');
+                    return array;
+                }
+            }
+        }
+
+        private String readString() {
+            consume('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Unexpected end of JSON");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        private char next() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(position++);
+        }
+
+        private Object readNumber() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            String number = text.substring(start, position);
+            if (number.isEmpty()) {
+                throw new IllegalArgumentException("Unexpected character at " + start);
+            }
+            if (number.contains(".") || number.contains("e") || number.contains("E")) {
+                return Double.parseDouble(number);
+            }
+            return Long.parseLong(number);
+        }
+
+        private void expect(String literal) {
+            if (!text.startsWith(literal, position)) {
+                throw new IllegalArgumentException("Expected " + literal + " at " + position);
+            }
+            position += literal.length();
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(position);
+        }
+
+        private void consume(char expected) {
+            if (peek() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + position);
+            }
+            position++;
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
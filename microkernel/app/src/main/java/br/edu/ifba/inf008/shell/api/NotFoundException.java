@@ -0,0 +1,12 @@
+package br.edu.ifba.inf008.shell.api;
+
+/**
+ * Thrown by an endpoint when the entity a request names does not exist; the API answers 404.
+ */
+public class NotFoundException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
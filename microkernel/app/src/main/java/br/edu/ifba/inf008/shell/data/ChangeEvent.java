@@ -0,0 +1,59 @@
+package br.edu.ifba.inf008.shell.data;
+
+/**
+ * One row of the {@code change_log} table: a row of {@code books}, {@code users} or {@code loans}
+ * was inserted, updated or deleted by some client.
+ */
+public class ChangeEvent {
+
+    public enum Operation {
+        INSERT,
+        UPDATE,
+        DELETE,
+        /**
+         * Only the copies of a book changed (a checkout, a return or new copies); the book row did not.
+         */
+        COPIES;
+
+        static Operation fromCode(String code) {
+            switch (code) {
+                case "I":
+                    return INSERT;
+                case "D":
+                    return DELETE;
+                case "C":
+                    return COPIES;
+                default:
+                    return UPDATE;
+            }
+        }
+    }
+
+    private final long sequence;
+    private final String table;
+    private final int rowId;
+    private final Operation operation;
+
+    public ChangeEvent(long sequence, String table, int rowId, Operation operation) {
+        this.sequence = sequence;
+        this.table = table;
+        this.rowId = rowId;
+        this.operation = operation;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public int getRowId() {
+        return rowId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,197 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single per-client poller over the trigger-populated {@code change_log} table. Subscribers get
+ * the changes other desks (and this one) made, in sequence order, without re-reading whole tables.
+ *
+ * The poll interval adapts: it drops to {@link #MIN_INTERVAL_MILLIS} as soon as changes arrive and
+ * doubles up to {@link #MAX_INTERVAL_MILLIS} while the log is quiet.
+ *
+ * Every {@link #REPORT_INTERVAL_MILLIS} the feed records how far it has read in
+ * {@code change_log_readers}, so that {@link ChangeLogPruner} never deletes a row it still needs.
+ */
+public class ChangeFeed {
+
+    public interface ChangeListener {
+        /**
+         * Called on the feed's polling thread with the changes for one table, oldest first.
+         */
+        void onChanges(List<ChangeEvent> changes);
+    }
+
+    private static final long MIN_INTERVAL_MILLIS = 200;
+    private static final long MAX_INTERVAL_MILLIS = 2000;
+    private static final int MAX_ROWS_PER_POLL = 1000;
+    // Auto-increment values are handed out before commit, so a lower sequence can become visible
+    // after a higher one. Gaps are re-read for this long before they are assumed to be rollbacks.
+    private static final long GAP_GRACE_MILLIS = 5000;
+    private static final long REPORT_INTERVAL_MILLIS = 30_000;
+    private static final String TABLE_NOT_FOUND = "42S02";
+
+    private static ChangeFeed instance;
+
+    private final Map<String, List<ChangeListener>> listeners = new ConcurrentHashMap<>();
+    private final Set<Long> deliveredAboveWatermark = new HashSet<>();
+    private volatile boolean healthy = false;
+    private long watermark = -1;
+    private long gapSince = 0;
+    private final String readerId = UUID.randomUUID().toString();
+    private boolean reportsPosition = true;
+    private long lastReportMillis = 0;
+    private Thread poller;
+
+    public static synchronized ChangeFeed getInstance() {
+        if (instance == null) {
+            instance = new ChangeFeed();
+        }
+        return instance;
+    }
+
+    public synchronized void subscribe(String table, ChangeListener listener) {
+        listeners.computeIfAbsent(table, key -> new CopyOnWriteArrayList<>()).add(listener);
+        if (poller == null) {
+            poller = new Thread(this::run, "change-feed");
+            poller.setDaemon(true);
+            poller.start();
+        }
+    }
+
+    /**
+     * False until the first successful poll and whenever the last poll failed. Subscribers should
+     * fall back to full reloads while the feed is unhealthy.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    private void run() {
+        long interval = MIN_INTERVAL_MILLIS;
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean changed;
+            try {
+                changed = poll();
+                healthy = true;
+            } catch (SQLException e) {
+                if (healthy) {
+                    System.out.println("Change feed unavailable: " + e.getMessage());
+                }
+                healthy = false;
+                changed = false;
+            } catch (RuntimeException e) {
+                System.out.println("Change feed listener failed: " + e.getMessage());
+                changed = true;
+            }
+            interval = changed ? MIN_INTERVAL_MILLIS : Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean poll() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (watermark < 0) {
+                // Start at the head: everything before it is already in the tables we load.
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM change_log")) {
+                    rs.next();
+                    watermark = rs.getLong(1);
+                }
+                return false;
+            }
+
+            List<ChangeEvent> fresh = new ArrayList<>();
+            long contiguous = watermark;
+            boolean gap = false;
+            long highest = watermark;
+            String sql = "SELECT seq, table_name, row_id, operation FROM change_log WHERE seq > ? ORDER BY seq LIMIT " + MAX_ROWS_PER_POLL;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, watermark);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long seq = rs.getLong(1);
+                        highest = seq;
+                        if (!gap && seq == contiguous + 1) {
+                            contiguous = seq;
+                        } else {
+                            gap = true;
+                        }
+                        if (deliveredAboveWatermark.add(seq)) {
+                            fresh.add(new ChangeEvent(seq, rs.getString(2), rs.getInt(3),
+                                    ChangeEvent.Operation.fromCode(rs.getString(4))));
+                        }
+                    }
+                }
+            }
+
+            if (!gap) {
+                gapSince = 0;
+                watermark = contiguous;
+            } else if (gapSince == 0) {
+                gapSince = System.currentTimeMillis();
+                watermark = contiguous;
+            } else if (System.currentTimeMillis() - gapSince > GAP_GRACE_MILLIS) {
+                gapSince = 0;
+                watermark = highest;
+            } else {
+                watermark = contiguous;
+            }
+            final long delivered = watermark;
+            deliveredAboveWatermark.removeIf(seq -> seq <= delivered);
+
+            reportPosition(conn);
+            dispatch(fresh);
+            return !fresh.isEmpty();
+        }
+    }
+
+    private void reportPosition(Connection conn) throws SQLException {
+        long now = System.currentTimeMillis();
+        if (!reportsPosition || now - lastReportMillis < REPORT_INTERVAL_MILLIS) {
+            return;
+        }
+        String sql = "INSERT INTO change_log_readers (reader_id, seq) VALUES (?, ?) " +
+                     "ON DUPLICATE KEY UPDATE seq = VALUES(seq), seen_at = CURRENT_TIMESTAMP(3)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, readerId);
+            pstmt.setLong(2, watermark);
+            pstmt.executeUpdate();
+            lastReportMillis = now;
+        } catch (SQLException e) {
+            if (!TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                throw e;
+            }
+            // Older schema without the table: nothing prunes the log there either.
+            reportsPosition = false;
+        }
+    }
+
+    private void dispatch(List<ChangeEvent> changes) {
+        Map<String, List<ChangeEvent>> byTable = new LinkedHashMap<>();
+        for (ChangeEvent change : changes) {
+            byTable.computeIfAbsent(change.getTable(), key -> new ArrayList<>()).add(change);
+        }
+        for (Map.Entry<String, List<ChangeEvent>> entry : byTable.entrySet()) {
+            for (ChangeListener listener : listeners.getOrDefault(entry.getKey(), List.of())) {
+                listener.onChanges(entry.getValue());
+            }
+        }
+    }
+}
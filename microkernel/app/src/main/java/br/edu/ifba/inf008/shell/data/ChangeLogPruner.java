@@ -0,0 +1,129 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes old {@code change_log} rows, which the triggers add on every write and nothing else
+ * removes. A row is deleted only when it is below the lowest position any change feed seen in
+ * the last {@code readerTimeoutMinutes} has reported (see {@code change_log_readers}) and older
+ * than {@code keepHours}. The second bound keeps a desk that was offline for a while, and the
+ * local snapshots, able to catch up from the log; a snapshot the log no longer covers is reloaded
+ * in full. The newest row is always kept, so the head of the log survives.
+ *
+ * Rows go in chunks of {@code batchSize}, each its own statement, with a pause between them.
+ * {@code -Dlibrary.changelog.keepHours} (default 24), {@code -Dlibrary.changelog.readerTimeoutMinutes}
+ * (default 60), {@code -Dlibrary.changelog.batchSize} (default 5000) and
+ * {@code -Dlibrary.changelog.intervalMinutes} (default 30) tune it.
+ */
+public class ChangeLogPruner {
+    private static final int KEEP_HOURS = Integer.getInteger("library.changelog.keepHours", 24);
+    private static final int READER_TIMEOUT_MINUTES = Integer.getInteger("library.changelog.readerTimeoutMinutes", 60);
+    private static final int BATCH_SIZE = Integer.getInteger("library.changelog.batchSize", 5000);
+    private static final long INTERVAL_MINUTES = Long.getLong("library.changelog.intervalMinutes", 30);
+    private static final long PAUSE_BETWEEN_CHUNKS_MILLIS = 200;
+    private static final String TABLE_NOT_FOUND = "42S02";
+
+    private static ScheduledExecutorService scheduler;
+
+    private ChangeLogPruner() {
+    }
+
+    /**
+     * Runs the job a few minutes after startup and then every interval, on a daemon thread.
+     */
+    public static synchronized void schedule() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-log-pruner");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                prune();
+            } catch (SQLException e) {
+                if (!TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                    System.out.println("Change log pruning skipped: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 3, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Deletes every row below the horizon, one chunk at a time.
+     *
+     * @return the number of rows deleted
+     */
+    public static int prune() throws SQLException, InterruptedException {
+        forgetStaleReaders();
+        long horizon = horizon();
+        int deleted = 0;
+        while (horizon > 0) {
+            int chunk;
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(
+                         "DELETE FROM change_log WHERE seq < ? ORDER BY seq LIMIT " + BATCH_SIZE)) {
+                pstmt.setLong(1, horizon);
+                chunk = pstmt.executeUpdate();
+            }
+            deleted += chunk;
+            if (chunk < BATCH_SIZE) {
+                break;
+            }
+            Thread.sleep(PAUSE_BETWEEN_CHUNKS_MILLIS);
+        }
+        return deleted;
+    }
+
+    /**
+     * The lowest sequence that must be kept, or 0 when nothing may go.
+     */
+    private static long horizon() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            long horizon;
+            // The log is in seq order and changed_at grows with it, so this reads only old rows.
+            try (ResultSet rs = stmt.executeQuery("SELECT seq FROM change_log WHERE changed_at >= CURRENT_TIMESTAMP(3) - INTERVAL "
+                    + KEEP_HOURS + " HOUR ORDER BY seq LIMIT 1")) {
+                if (rs.next()) {
+                    horizon = rs.getLong(1);
+                } else {
+                    try (ResultSet head = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM change_log")) {
+                        head.next();
+                        horizon = head.getLong(1);
+                    }
+                }
+            }
+            // A reader at seq has read everything up to it and needs seq + 1 on.
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(seq) FROM change_log_readers WHERE seen_at >= CURRENT_TIMESTAMP(3) - INTERVAL "
+                    + READER_TIMEOUT_MINUTES + " MINUTE")) {
+                rs.next();
+                long lowestReader = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    horizon = Math.min(horizon, lowestReader + 1);
+                }
+            }
+            return horizon;
+        }
+    }
+
+    private static void forgetStaleReaders() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM change_log_readers WHERE seen_at < CURRENT_TIMESTAMP(3) - INTERVAL "
+                    + READER_TIMEOUT_MINUTES + " MINUTE");
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the outcome of every statement and connection attempt made through
+ * {@link DatabaseConnection}. When too many of the recent ones failed because the database could
+ * not be reached, the breaker opens: {@code getConnection()} then fails at once with
+ * {@link DatabaseUnavailableException} instead of waiting for a socket timeout per click, reads fall
+ * back to {@link LastKnownData}, and writes are refused.
+ *
+ * While open, a background probe opens a fresh connection every {@code openMillis}; the breaker is
+ * half-open while the probe runs and closes again when it succeeds.
+ *
+ * Each branch database (see {@link ShardMap}) has its own breaker, so one branch going down does
+ * not cut the desk off from the others. Thresholds come from system properties, e.g.
+ * {@code -Dlibrary.db.breaker.failureRate=50}; see the defaults below.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int DEFAULT_WINDOW = 20;
+    private static final int DEFAULT_MINIMUM_CALLS = 5;
+    private static final int DEFAULT_FAILURE_RATE_PERCENT = 50;
+    private static final long DEFAULT_OPEN_MILLIS = 5_000;
+
+    private static final Map<Integer, CircuitBreaker> instances = new TreeMap<>();
+
+    private final int branchId;
+    private final boolean[] outcomes;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openMillis;
+    private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService prober;
+
+    private int recorded;
+    private int next;
+    private int failures;
+    private volatile State state = State.CLOSED;
+    private volatile Instant openedAt;
+    private long opened;
+    private long fastFailures;
+
+    public CircuitBreaker(int branchId, int window, int minimumCalls, int failureRatePercent, long openMillis) {
+        this.branchId = branchId;
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-breaker-probe-" + branchId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+        this.failureRatePercent = failureRatePercent;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * The breaker of the home branch, which the shell's banner follows.
+     */
+    public static CircuitBreaker getInstance() {
+        return forBranch(ShardMap.getInstance().getHomeBranch());
+    }
+
+    public static synchronized CircuitBreaker forBranch(int branchId) {
+        return instances.computeIfAbsent(branchId, id -> new CircuitBreaker(id,
+                Integer.getInteger("library.db.breaker.window", DEFAULT_WINDOW),
+                Integer.getInteger("library.db.breaker.minimumCalls", DEFAULT_MINIMUM_CALLS),
+                Integer.getInteger("library.db.breaker.failureRate", DEFAULT_FAILURE_RATE_PERCENT),
+                Long.getLong("library.db.breaker.openMillis", DEFAULT_OPEN_MILLIS)));
+    }
+
+    /**
+     * Called before a connection is handed out.
+     */
+    public void beforeCall() throws DatabaseUnavailableException {
+        if (state != State.CLOSED) {
+            synchronized (this) {
+                fastFailures++;
+            }
+            throw new DatabaseUnavailableException();
+        }
+    }
+
+    /**
+     * Whether a failed call counts against the database: the connection could not be opened or
+     * broke, which includes a server that stops answering until the socket times out. A statement
+     * that hit its query timeout does not count: a few slow reports would otherwise put the desk
+     * in read-only mode. Deadlocks, lock waits and constraint violations mean it is answering.
+     */
+    public static boolean indicatesOutage(SQLException e) {
+        return SqlFailure.of(e) == SqlFailure.CONNECTION;
+    }
+
+    public void recordSuccess() {
+        record(false);
+    }
+
+    public void recordFailure() {
+        record(true);
+    }
+
+    private void record(boolean failed) {
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                // Calls that were already running when the breaker opened say nothing new.
+                return;
+            }
+            if (recorded == outcomes.length && outcomes[next]) {
+                failures--;
+            }
+            outcomes[next] = failed;
+            next = (next + 1) % outcomes.length;
+            recorded = Math.min(recorded + 1, outcomes.length);
+            if (failed) {
+                failures++;
+            }
+            if (!failed || recorded < minimumCalls || failures * 100 < failureRatePercent * recorded) {
+                return;
+            }
+            state = State.OPEN;
+            openedAt = Instant.now();
+            opened++;
+        }
+        System.out.println("Database circuit breaker for branch " + branchId + " opened after " + failures + " failures in the last "
+                + recorded + " calls.");
+        notifyListeners(State.OPEN);
+        prober.schedule(this::probe, openMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe() {
+        state = State.HALF_OPEN;
+        notifyListeners(State.HALF_OPEN);
+        if (DatabaseConnection.probe(branchId)) {
+            synchronized (this) {
+                recorded = 0;
+                next = 0;
+                failures = 0;
+                state = State.CLOSED;
+            }
+            System.out.println("Database circuit breaker for branch " + branchId + " closed; the database is reachable again.");
+            notifyListeners(State.CLOSED);
+        } else {
+            state = State.OPEN;
+            notifyListeners(State.OPEN);
+            prober.schedule(this::probe, openMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void notifyListeners(State newState) {
+        for (Consumer<State> listener : listeners) {
+            try {
+                listener.accept(newState);
+            } catch (RuntimeException e) {
+                System.out.println("Circuit breaker listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Called with the new state on every transition, from whichever thread caused it.
+     */
+    public void addListener(Consumer<State> listener) {
+        listeners.add(listener);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * When the breaker last opened, or null if it never has.
+     */
+    public Instant getOpenedAt() {
+        return openedAt;
+    }
+
+    /**
+     * {@link #snapshot()} of every breaker created so far, by branch.
+     */
+    public static Map<String, Object> snapshotAll() {
+        List<CircuitBreaker> breakers;
+        synchronized (CircuitBreaker.class) {
+            breakers = List.copyOf(instances.values());
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        for (CircuitBreaker breaker : breakers) {
+            snapshot.put("branch " + breaker.branchId, breaker.snapshot());
+        }
+        return snapshot;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("state", state.name().toLowerCase());
+        snapshot.put("recentCalls", recorded);
+        snapshot.put("recentFailures", failures);
+        snapshot.put("timesOpened", opened);
+        snapshot.put("fastFailures", fastFailures);
+        snapshot.put("openedAt", openedAt == null ? null : openedAt.toString());
+        return snapshot;
+    }
+}
@@ -0,0 +1,37 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column positions of one result set, resolved from its metadata once so that mappers read every
+ * row by index instead of searching the labels again. Labels match case-insensitively and, as with
+ * {@code ResultSet.findColumn}, the first column with a label wins.
+ */
+public class Columns {
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    public Columns(ResultSetMetaData metaData) throws SQLException {
+        for (int i = metaData.getColumnCount(); i >= 1; i--) {
+            indexes.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    public int require(String label) throws SQLException {
+        int index = find(label);
+        if (index == 0) {
+            throw new SQLException("Column '" + label + "' is not in the result set.");
+        }
+        return index;
+    }
+
+    /**
+     * The 1-based index of the column, or 0 when the query did not select it.
+     */
+    public int find(String label) {
+        return indexes.getOrDefault(label.toLowerCase(Locale.ROOT), 0);
+    }
+}
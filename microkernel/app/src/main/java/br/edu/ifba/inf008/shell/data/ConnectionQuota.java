@@ -0,0 +1,67 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how many pooled connections one owner (a plugin) may hold at once. Threads are tagged with
+ * {@link DatabaseConnection#bindQuota}; connections they open are counted until closed.
+ */
+public class ConnectionQuota {
+    private final String owner;
+    private final int maxConnections;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public ConnectionQuota(String owner, int maxConnections, long maxWaitMillis) {
+        this.owner = owner;
+        this.maxConnections = maxConnections;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    void acquire() throws SQLException {
+        if (permits.tryAcquire()) {
+            acquired.incrementAndGet();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            boolean granted = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            waited.incrementAndGet();
+            waitNanos.addAndGet(System.nanoTime() - start);
+            if (!granted) {
+                timeouts.incrementAndGet();
+                throw new SQLException(owner + " already uses its " + maxConnections
+                        + " database connections; gave up after " + maxWaitMillis + " ms.");
+            }
+            acquired.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("maxConnections", maxConnections);
+        snapshot.put("inUse", maxConnections - permits.availablePermits());
+        snapshot.put("acquired", acquired.get());
+        snapshot.put("waited", waited.get());
+        snapshot.put("waitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos.get()));
+        snapshot.put("timeouts", timeouts.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,168 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-copy inventory: every physical copy of a title is a row in {@code book_copies}, and the
+ * copies a title has on the shelf are counted from those rows rather than kept in one counter on
+ * {@code books}. A checkout claims any free copy with {@code SKIP LOCKED}, so desks lending the
+ * same bestseller lock different rows instead of queueing on one.
+ */
+public class CopyInventory {
+    /**
+     * Select-list expression for a title's available copies in a query over {@code books b}. It is
+     * named like the old column, so mappers read it unchanged, and is answered from the
+     * {@code (book_id, status)} index without touching the copy rows.
+     */
+    public static final String AVAILABLE_COPIES =
+            "(SELECT COUNT(*) FROM book_copies c WHERE c.book_id = b.book_id AND c.status = 'AVAILABLE') AS copies_available";
+
+    private CopyInventory() {
+    }
+
+    /**
+     * Marks one free copy of the title as on loan.
+     *
+     * @return the claimed copy, or 0 when every copy is out or being claimed by another desk
+     */
+    public static int claim(Connection conn, int bookId) throws SQLException {
+        List<Integer> claimed = claim(conn, bookId, 1);
+        return claimed.isEmpty() ? 0 : claimed.get(0);
+    }
+
+    /**
+     * Marks up to {@code count} free copies of the title as on loan with one select and one update.
+     *
+     * @return the claimed copies; fewer than {@code count} when the shelf runs out
+     */
+    public static List<Integer> claim(Connection conn, int bookId, int count) throws SQLException {
+        String selectSql = "SELECT copy_id FROM book_copies WHERE book_id = ? AND status = 'AVAILABLE' " +
+                           "LIMIT ? FOR UPDATE SKIP LOCKED";
+
+        List<Integer> copyIds = new ArrayList<>();
+        try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+            selectStmt.setInt(1, bookId);
+            selectStmt.setInt(2, count);
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    copyIds.add(rs.getInt(1));
+                }
+            }
+        }
+        if (!copyIds.isEmpty()) {
+            updateWithIds(conn, "UPDATE book_copies SET status = 'ON_LOAN' WHERE copy_id IN (" + placeholders(copyIds.size()) + ")", copyIds);
+        }
+        return copyIds;
+    }
+
+    public static void release(Connection conn, int copyId) throws SQLException {
+        release(conn, List.of(copyId));
+    }
+
+    /**
+     * Puts returned copies back on the shelf, or withdraws them if their book has been deleted.
+     */
+    public static void release(Connection conn, Collection<Integer> copyIds) throws SQLException {
+        if (copyIds.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE book_copies c JOIN books b ON b.book_id = c.book_id " +
+                     "SET c.status = IF(b.deleted_at IS NULL, 'AVAILABLE', 'WITHDRAWN') " +
+                     "WHERE c.status = 'ON_LOAN' AND c.copy_id IN (" + placeholders(copyIds.size()) + ")";
+        updateWithIds(conn, sql, copyIds);
+    }
+
+    private static void updateWithIds(Connection conn, String sql, Collection<Integer> ids) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int id : ids) {
+                pstmt.setInt(index++, id);
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Adds copies, or withdraws surplus ones, until the title has {@code available} on the shelf.
+     * Copies on loan are left alone; withdrawn copies keep their row so old loans still point at
+     * them.
+     */
+    public static void setAvailable(Connection conn, int bookId, int available) throws SQLException {
+        String selectSql = "SELECT copy_id FROM book_copies WHERE book_id = ? AND status = 'AVAILABLE' FOR UPDATE";
+
+        List<Integer> onShelf = new ArrayList<>();
+        try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+            selectStmt.setInt(1, bookId);
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    onShelf.add(rs.getInt(1));
+                }
+            }
+        }
+
+        if (onShelf.size() < available) {
+            addCopies(conn, bookId, available - onShelf.size());
+        } else if (onShelf.size() > available) {
+            List<Integer> surplus = onShelf.subList(available, onShelf.size());
+            String withdrawSql = "UPDATE book_copies SET status = 'WITHDRAWN' WHERE copy_id IN (" +
+                                 String.join(",", Collections.nCopies(surplus.size(), "?")) + ")";
+            try (PreparedStatement withdrawStmt = conn.prepareStatement(withdrawSql)) {
+                int index = 1;
+                for (int copyId : surplus) {
+                    withdrawStmt.setInt(index++, copyId);
+                }
+                withdrawStmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Puts {@code count} new copies of the title on the shelf, numbered after the ones it has.
+     * Must run inside the caller's transaction: the title's row stays locked until it ends, so two
+     * desks adding copies of one title cannot hand out the same number.
+     */
+    public static void addCopies(Connection conn, int bookId, int count) throws SQLException {
+        if (count <= 0) {
+            return;
+        }
+        String lockSql = "SELECT book_id FROM books WHERE book_id = ? FOR UPDATE";
+        String countSql = "SELECT COUNT(*) FROM book_copies WHERE book_id = ?";
+        String insertSql = "INSERT INTO book_copies (book_id, barcode) VALUES (?, ?)";
+
+        try (PreparedStatement lockStmt = conn.prepareStatement(lockSql)) {
+            lockStmt.setInt(1, bookId);
+            lockStmt.executeQuery().close();
+        }
+        int existing;
+        try (PreparedStatement countStmt = conn.prepareStatement(countSql)) {
+            countStmt.setInt(1, bookId);
+            try (ResultSet rs = countStmt.executeQuery()) {
+                rs.next();
+                existing = rs.getInt(1);
+            }
+        }
+        try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+            for (int i = 1; i <= count; i++) {
+                insertStmt.setInt(1, bookId);
+                insertStmt.setString(2, barcode(bookId, existing + i));
+                insertStmt.addBatch();
+            }
+            insertStmt.executeBatch();
+        }
+    }
+
+    public static String barcode(int bookId, int copyNumber) {
+        return "BK" + bookId + "-" + copyNumber;
+    }
+}
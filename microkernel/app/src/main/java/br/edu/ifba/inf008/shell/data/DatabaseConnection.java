@@ -1,25 +1,340 @@
 package br.edu.ifba.inf008.shell.data;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseConnection {
-    private static final String DB_URL = "jdbc:mariadb://127.0.0.1:3307/bookstore";
+    // Branch addresses come from the ShardMap.
     private static final String USER = "root";
     private static final String PASSWORD = "root";
 
-    private static Connection connection = null;
+    // Physical connections kept open between DAO calls, per branch. Closing the connection handed
+    // out by getConnection() returns it here instead of tearing down the socket.
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    // A pooled connection whose server went away answers isClosed() with false; a ping finds out.
+    // Only connections idle longer than -Dlibrary.db.validateAfterIdleMillis are pinged, and one
+    // that failed at the connection level is closed instead of pooled again.
+    private static final long VALIDATE_AFTER_IDLE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("library.db.validateAfterIdleMillis", 30_000));
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // Every statement gets this unless its caller sets its own; -Dlibrary.db.queryTimeoutSeconds.
+    private static final int QUERY_TIMEOUT_SECONDS = Integer.getInteger("library.db.queryTimeoutSeconds", 30);
+    private static final Map<Integer, LinkedBlockingDeque<IdleConnection>> idleConnections = new ConcurrentHashMap<>();
 
+    private static volatile boolean driverLoaded = false;
+
+    // Set on plugin worker threads; connections they take count against the plugin's quota.
+    private static final ThreadLocal<ConnectionQuota> currentQuota = new ThreadLocal<>();
+    // Set by ShardMap.scatter and by callers working on another branch's rows.
+    private static final ThreadLocal<Integer> currentBranch = new ThreadLocal<>();
+
+    /**
+     * A connection to the branch bound to the calling thread, or to the home branch.
+     */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
+        int branch = getBoundBranch();
+        CircuitBreaker.forBranch(branch).beforeCall();
+        ConnectionQuota quota = currentQuota.get();
+        if (quota != null) {
+            quota.acquire();
+        }
+        try {
+            LinkedBlockingDeque<IdleConnection> idle = idle(branch);
+            IdleConnection pooled = idle.pollFirst();
+            while (pooled != null && !isUsable(pooled)) {
+                closeQuietly(pooled.connection);
+                pooled = idle.pollFirst();
+            }
+            Connection physical = pooled == null ? openConnection(branch) : pooled.connection;
+            return wrap(physical, branch, quota);
+        } catch (SQLException | RuntimeException e) {
+            if (quota != null) {
+                quota.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The quota of the calling thread, or null. Work handed to helper threads should bind it
+     * there too, so it stays within the same share.
+     */
+    public static ConnectionQuota getBoundQuota() {
+        return currentQuota.get();
+    }
+
+    /**
+     * Tags the calling thread: until unbound, its connections count against {@code quota}.
+     */
+    public static void bindQuota(ConnectionQuota quota) {
+        if (quota == null) {
+            currentQuota.remove();
+        } else {
+            currentQuota.set(quota);
+        }
+    }
+
+    /**
+     * The branch the calling thread's connections go to.
+     */
+    public static int getBoundBranch() {
+        Integer branch = currentBranch.get();
+        return branch == null ? ShardMap.getInstance().getHomeBranch() : branch;
+    }
+
+    /**
+     * Until unbound (null), connections taken by the calling thread go to {@code branchId}.
+     */
+    public static void bindBranch(Integer branchId) {
+        if (branchId == null) {
+            currentBranch.remove();
+        } else {
+            currentBranch.set(branchId);
+        }
+    }
+
+    /**
+     * Loads the JDBC driver and opens up to {@code count} connections to the home branch so the
+     * first DAO call does not pay for the handshake. Safe to call from any thread.
+     */
+    public static void warmUp(int count) throws SQLException {
+        loadDriver();
+        int branch = ShardMap.getInstance().getHomeBranch();
+        int toOpen = Math.min(count, MAX_IDLE_CONNECTIONS) - idle(branch).size();
+        for (int i = 0; i < toOpen; i++) {
+            release(openConnection(branch), branch, false);
+        }
+    }
+
+    private static LinkedBlockingDeque<IdleConnection> idle(int branch) {
+        return idleConnections.computeIfAbsent(branch, key -> new LinkedBlockingDeque<>());
+    }
+
+    public static void loadDriver() throws SQLException {
+        if (driverLoaded) {
+            return;
+        }
+        try {
+            Class.forName("org.mariadb.jdbc.Driver");
+            driverLoaded = true;
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MariaDB JDBC Driver not found.", e);
+        }
+    }
+
+    private static Connection openConnection(int branch) throws SQLException {
+        loadDriver();
+        QueryTracker.begin("connect to branch " + branch);
+        try {
+            return DriverManager.getConnection(ShardMap.getInstance().getUrl(branch), USER, PASSWORD);
+        } catch (SQLException e) {
+            if (CircuitBreaker.indicatesOutage(e)) {
+                CircuitBreaker.forBranch(branch).recordFailure();
+            }
+            throw e;
+        } finally {
+            QueryTracker.end();
+        }
+    }
+
+    /**
+     * Used by the {@link CircuitBreaker} while open: drops the idle connections, which may sit on
+     * a dead socket, and checks that a fresh one can be opened and answers.
+     */
+    static boolean probe(int branch) {
+        IdleConnection stale;
+        while ((stale = idle(branch).pollFirst()) != null) {
+            closeQuietly(stale.connection);
+        }
+        try (Connection connection = openConnection(branch)) {
+            return connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static boolean isUsable(IdleConnection pooled) {
+        if (System.nanoTime() - pooled.since < VALIDATE_AFTER_IDLE_NANOS) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void release(Connection physical, int branch, boolean broken) {
+        try {
+            if (physical.isClosed()) {
+                return;
+            }
+            if (broken) {
+                physical.close();
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            closeQuietly(physical);
+            return;
+        }
+        LinkedBlockingDeque<IdleConnection> idle = idle(branch);
+        if (idle.size() >= MAX_IDLE_CONNECTIONS || !idle.offerFirst(new IdleConnection(physical))) {
+            closeQuietly(physical);
+        }
+    }
+
+    private static class IdleConnection {
+        private final Connection connection;
+        private final long since = System.nanoTime();
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Connection is being discarded anyway.
+        }
+    }
+
+    private static Connection wrap(Connection physical, int branch, ConnectionQuota quota) {
+        return (Connection) Proxy.newProxyInstance(
+                DatabaseConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledConnectionHandler(physical, branch, quota));
+    }
+
+    private static class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private final int branch;
+        private final ConnectionQuota quota;
+        private boolean closed = false;
+        private volatile boolean broken = false;
+
+        PooledConnectionHandler(Connection physical, int branch, ConnectionQuota quota) {
+            this.physical = physical;
+            this.branch = branch;
+            this.quota = quota;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(physical, branch, broken);
+                        if (quota != null) {
+                            quota.release();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection has already been returned to the pool.");
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        noteFailure(e.getCause());
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        // prepareStatement and prepareCall name their SQL here; plain statements at execute.
+                        String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                        return Proxy.newProxyInstance(
+                                DatabaseConnection.class.getClassLoader(),
+                                new Class<?>[] { method.getReturnType() },
+                                new RecordingStatementHandler((Statement) result, CircuitBreaker.forBranch(branch), sql, this));
+                    }
+                    return result;
+            }
+        }
+
+        void noteFailure(Throwable failure) {
+            if (failure instanceof SQLException && SqlFailure.of((SQLException) failure) == SqlFailure.CONNECTION) {
+                broken = true;
+            }
+        }
+    }
+
+    /**
+     * Reports how each execution went to the {@link CircuitBreaker}, and tells the
+     * {@link QueryTracker} which statement is running.
+     */
+    private static class RecordingStatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final CircuitBreaker breaker;
+        private final String preparedSql;
+        private final PooledConnectionHandler connection;
+
+        RecordingStatementHandler(Statement statement, CircuitBreaker breaker, String preparedSql,
+                PooledConnectionHandler connection) throws SQLException {
+            this.statement = statement;
+            this.breaker = breaker;
+            this.preparedSql = preparedSql;
+            this.connection = connection;
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            boolean execution = method.getName().startsWith("execute");
+            if (execution) {
+                QueryTracker.begin(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql);
+            }
             try {
-                Class.forName("org.mariadb.jdbc.Driver");
-                connection = DriverManager.getConnection(DB_URL, USER, PASSWORD);
-            } catch (ClassNotFoundException e) {
-                throw new SQLException("MariaDB JDBC Driver not found.", e);
+                Object result = method.invoke(statement, args);
+                if (execution) {
+                    breaker.recordSuccess();
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                connection.noteFailure(cause);
+                if (execution) {
+                    if (cause instanceof SQLException && CircuitBreaker.indicatesOutage((SQLException) cause)) {
+                        breaker.recordFailure();
+                    } else {
+                        breaker.recordSuccess();
+                    }
+                }
+                throw cause;
+            } finally {
+                if (execution) {
+                    QueryTracker.end();
+                }
             }
         }
-        return connection;
     }
 }
@@ -0,0 +1,14 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown without touching the network while the {@link CircuitBreaker} is open.
+ */
+public class DatabaseUnavailableException extends SQLTransientConnectionException {
+    private static final long serialVersionUID = 1L;
+
+    public DatabaseUnavailableException() {
+        super("The database is unavailable right now; try again in a moment.", "08000");
+    }
+}
@@ -0,0 +1,179 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finishes deleting users and books. The DAOs only set {@code deleted_at}, which every query of the
+ * user and book tables honours, so a delete is one row update however much history the row has.
+ * Once a row has been deleted for {@code afterDays}, this job moves its returned loans to
+ * {@code loans_archive} (see {@link LoanArchiver}), removes a book's copies and then the row itself,
+ * whose cascades find nothing left to lock. Loan history is never deleted: archived loans keep the
+ * ids of the purged row. Without the archive table, a row that has loans is left in place.
+ *
+ * Every chunk of at most {@code batchSize} rows is deleted in its own short transaction, and the job
+ * then rests at least as long as the chunk took, so it holds locks that a checkout could wait on
+ * for at most half the time and never for long. A row with a loan still out is left until the book
+ * comes back.
+ *
+ * {@code -Dlibrary.purge.afterDays} (default 30), {@code -Dlibrary.purge.batchSize} (default 500)
+ * and {@code -Dlibrary.purge.intervalMinutes} (default 60) tune it.
+ */
+public class DeletionPurger {
+    private static final int AFTER_DAYS = Integer.getInteger("library.purge.afterDays", 30);
+    private static final int BATCH_SIZE = Integer.getInteger("library.purge.batchSize", 500);
+    private static final long INTERVAL_MINUTES = Long.getLong("library.purge.intervalMinutes", 60);
+    private static final long MIN_PAUSE_MILLIS = 100;
+    private static final int ROWS_PER_RUN = 100;
+
+    private static final Target USERS = new Target("users", "user_id", null);
+    private static final Target BOOKS = new Target("books", "book_id", "book_copies");
+
+    private static ScheduledExecutorService scheduler;
+
+    private DeletionPurger() {
+    }
+
+    /**
+     * Runs the job a few minutes after startup and then every interval, on a daemon thread.
+     */
+    public static synchronized void schedule() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "deletion-purger");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int purged = purge(LocalDateTime.now().minusDays(AFTER_DAYS));
+                if (purged > 0) {
+                    System.out.println("Purged " + purged + " deleted users and books");
+                }
+            } catch (SQLException e) {
+                System.out.println("Purge of deleted rows skipped: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Purges up to {@value #ROWS_PER_RUN} users and as many books deleted before {@code deletedBefore}.
+     *
+     * @return the number of users and books removed
+     */
+    public static int purge(LocalDateTime deletedBefore) throws SQLException, InterruptedException {
+        int purged = 0;
+        for (Target target : List.of(USERS, BOOKS)) {
+            for (int id : purgeable(target, deletedBefore)) {
+                if (purgeRow(target, id)) {
+                    purged++;
+                }
+            }
+        }
+        return purged;
+    }
+
+    private static List<Integer> purgeable(Target target, LocalDateTime deletedBefore) throws SQLException {
+        String sql = "SELECT t." + target.idColumn + " FROM " + target.table + " t WHERE t.deleted_at < ? " +
+                     "AND NOT EXISTS (SELECT 1 FROM loans l WHERE l." + target.idColumn + " = t." + target.idColumn +
+                     " AND l.return_date IS NULL) ORDER BY t.deleted_at LIMIT " + ROWS_PER_RUN;
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.valueOf(deletedBefore));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Archives the returned loans and deletes the copies chunk by chunk, then the row, unless a
+     * loan is still in {@code loans} (it went out meanwhile, or could not be archived).
+     */
+    private static boolean purgeRow(Target target, int id) throws SQLException, InterruptedException {
+        String column = target.idColumn;
+        LoanArchiver.archiveReturnedLoansOf(column, id);
+        if (hasLoans(column, id)) {
+            return false;
+        }
+        if (target.copiesTable != null) {
+            deleteInChunks("DELETE FROM " + target.copiesTable + " WHERE " + column + " = ? AND status <> 'ON_LOAN' LIMIT " + BATCH_SIZE, id);
+        }
+        String deleteSql = "DELETE FROM " + target.table + " WHERE " + column + " = ? AND deleted_at IS NOT NULL " +
+                           "AND NOT EXISTS (SELECT 1 FROM loans l WHERE l." + column + " = ?)";
+        long started = System.nanoTime();
+        boolean deleted;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+            pstmt.setInt(1, id);
+            pstmt.setInt(2, id);
+            deleted = pstmt.executeUpdate() > 0;
+        }
+        rest(started);
+        return deleted;
+    }
+
+    private static boolean hasLoans(String column, int id) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM loans WHERE " + column + " = ? LIMIT 1")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void deleteInChunks(String sql, int id) throws SQLException, InterruptedException {
+        while (true) {
+            long started = System.nanoTime();
+            int deleted;
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                deleted = pstmt.executeUpdate();
+            }
+            if (deleted < BATCH_SIZE) {
+                return;
+            }
+            rest(started);
+        }
+    }
+
+    /**
+     * Sleeps as long as the work since {@code startedNanos} took, and at least the minimum pause.
+     */
+    private static void rest(long startedNanos) throws InterruptedException {
+        long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+        Thread.sleep(Math.max(MIN_PAUSE_MILLIS, tookMillis));
+    }
+
+    private static class Target {
+        private final String table;
+        private final String idColumn;
+        private final String copiesTable;
+
+        Target(String table, String idColumn, String copiesTable) {
+            this.table = table;
+            this.idColumn = idColumn;
+            this.copiesTable = copiesTable;
+        }
+    }
+}
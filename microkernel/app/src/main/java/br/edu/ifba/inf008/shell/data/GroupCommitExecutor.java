@@ -0,0 +1,227 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects units of work submitted concurrently and runs them in a single transaction, so a burst
+ * of checkouts pays for one commit instead of one per request. Each unit runs behind its own
+ * savepoint: a failing unit is rolled back alone and only its caller sees the error.
+ *
+ * Several flushers take batches from the same queue, each on its own connection. Checkouts claim
+ * copies with {@code SKIP LOCKED} (see {@link CopyInventory}), so concurrent batches lending the
+ * same title do not wait for each other.
+ *
+ * A unit can be cancelled through its future until its batch starts running it; after that it
+ * runs to the end. If the server aborts the transaction (a deadlock), every unit of the batch is
+ * failed with that error, including the ones that had already succeeded, since their work was
+ * rolled back with it.
+ */
+public class GroupCommitExecutor {
+
+    public interface UnitOfWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 5;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    private static final int DEFAULT_FLUSHERS = 4;
+
+    private static GroupCommitExecutor instance;
+
+    private final long maxWaitNanos;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<PendingWork<?>> queue = new LinkedBlockingQueue<>();
+
+    public GroupCommitExecutor(long maxWaitMillis, int maxBatchSize, int flushers) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.maxBatchSize = maxBatchSize;
+
+        for (int i = 1; i <= Math.max(1, flushers); i++) {
+            Thread flusher = new Thread(this::runFlusher, "group-commit-" + i);
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * The shared executor. {@code -Dlibrary.groupCommit.maxWaitMillis},
+     * {@code -Dlibrary.groupCommit.maxBatchSize} and {@code -Dlibrary.groupCommit.flushers} override
+     * the defaults; a batch size of 1 gives the one-transaction-per-request behaviour, which the
+     * load test uses as its baseline.
+     */
+    public static synchronized GroupCommitExecutor getInstance() {
+        if (instance == null) {
+            instance = new GroupCommitExecutor(
+                    Long.getLong("library.groupCommit.maxWaitMillis", DEFAULT_MAX_WAIT_MILLIS),
+                    Integer.getInteger("library.groupCommit.maxBatchSize", DEFAULT_MAX_BATCH_SIZE),
+                    Integer.getInteger("library.groupCommit.flushers", DEFAULT_FLUSHERS));
+        }
+        return instance;
+    }
+
+    public <T> CompletableFuture<T> submit(UnitOfWork<T> work) {
+        PendingWork<T> pending = new PendingWork<>(work);
+        queue.add(pending);
+        return pending.future;
+    }
+
+    /**
+     * Blocks until the unit has been committed (or rolled back) and rethrows its failure as the
+     * exception type the DAO callers already handle.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the transaction to commit.", e);
+        }
+    }
+
+    /**
+     * Like {@link #await(CompletableFuture)}, but gives up after {@code timeoutNanos} if the unit has
+     * not started by then. A unit that has started is waited for, since it may commit.
+     */
+    public static <T> T await(CompletableFuture<T> future, long timeoutNanos) throws SQLException {
+        try {
+            return future.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (future.cancel(false)) {
+                throw new SQLTimeoutException("Timed out waiting for the transaction to start.");
+            }
+            return await(future);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new SQLException("Interrupted while waiting for the transaction to commit.", e);
+        }
+    }
+
+    private static SQLException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof SQLException) {
+            return (SQLException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new SQLException(cause.getMessage(), cause);
+    }
+
+    private void runFlusher() {
+        List<PendingWork<?>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingWork<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                executeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void executeBatch(List<PendingWork<?>> batch) {
+        List<PendingWork<?>> succeeded = new ArrayList<>(batch.size());
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (PendingWork<?> pending : batch) {
+                    if (!pending.start()) {
+                        continue;
+                    }
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        pending.run(conn);
+                        conn.releaseSavepoint(savepoint);
+                        succeeded.add(pending);
+                    } catch (SQLException e) {
+                        if (SqlFailure.of(e) == SqlFailure.DEADLOCK) {
+                            throw e;
+                        }
+                        conn.rollback(savepoint);
+                        pending.future.completeExceptionally(e);
+                    } catch (RuntimeException e) {
+                        conn.rollback(savepoint);
+                        pending.future.completeExceptionally(e);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            for (PendingWork<?> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (PendingWork<?> pending : succeeded) {
+            pending.complete();
+        }
+    }
+
+    private static class PendingWork<T> {
+        private final UnitOfWork<T> work;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return started.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+            }
+        };
+        private T result;
+
+        PendingWork(UnitOfWork<T> work) {
+            this.work = work;
+        }
+
+        /**
+         * @return false when the caller cancelled the unit before it got its turn
+         */
+        boolean start() {
+            return started.compareAndSet(false, true);
+        }
+
+        void run(Connection conn) throws SQLException {
+            result = work.execute(conn);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last successful result of each whole-table read, kept so that while the database is
+ * unreachable (or the {@link CircuitBreaker} is open) the desk still sees the data it had instead
+ * of an empty table. Only errors that {@link CircuitBreaker#indicatesOutage} fall back; any other
+ * error is still thrown. The shell shows a banner while data may be stale.
+ */
+public class LastKnownData {
+
+    public interface Query<T> {
+        List<T> run() throws SQLException;
+    }
+
+    private static final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private LastKnownData() {
+    }
+
+    /**
+     * Runs {@code query}, remembering its rows under {@code key}; when it cannot reach the database,
+     * returns a copy of the rows remembered last time instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> read(String key, Query<T> query) throws SQLException {
+        try {
+            List<T> rows = query.run();
+            snapshots.put(key, new Snapshot(List.copyOf(rows), Instant.now()));
+            return rows;
+        } catch (SQLException e) {
+            Snapshot snapshot = snapshots.get(key);
+            if (snapshot == null || !CircuitBreaker.indicatesOutage(e)) {
+                throw e;
+            }
+            System.out.println("Serving last known " + key + " from " + snapshot.takenAt + ": " + e.getMessage());
+            return new ArrayList<>((List<T>) snapshot.rows);
+        }
+    }
+
+    private static class Snapshot {
+        private final List<?> rows;
+        private final Instant takenAt;
+
+        Snapshot(List<?> rows, Instant takenAt) {
+            this.rows = rows;
+            this.takenAt = takenAt;
+        }
+    }
+}
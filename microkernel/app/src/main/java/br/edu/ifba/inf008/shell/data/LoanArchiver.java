@@ -0,0 +1,177 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves returned loans older than the hot window from {@code loans} to the year-partitioned
+ * {@code loans_archive}, so the table the desk works on holds only active and recent loans.
+ * Each chunk is copied and deleted in its own short transaction and chunks are spaced out, so the
+ * job never holds locks that a checkout would wait on for long.
+ *
+ * {@code -Dlibrary.archive.afterDays} (default 365), {@code -Dlibrary.archive.batchSize} (default
+ * 1000) and {@code -Dlibrary.archive.intervalMinutes} (default 360) tune it.
+ */
+public class LoanArchiver {
+    private static final int AFTER_DAYS = Integer.getInteger("library.archive.afterDays", 365);
+    private static final int BATCH_SIZE = Integer.getInteger("library.archive.batchSize", 1000);
+    private static final long INTERVAL_MINUTES = Long.getLong("library.archive.intervalMinutes", 360);
+    private static final long PAUSE_BETWEEN_CHUNKS_MILLIS = 200;
+    private static final String TABLE_NOT_FOUND = "42S02";
+
+    private static ScheduledExecutorService scheduler;
+    private static volatile Boolean available;
+
+    /**
+     * Loans dated before this day may be in the archive; everything from this day on is in
+     * {@code loans}. DAOs only need the archive for ranges that start earlier. It is the day after
+     * the newest archived loan, read from the database, so every desk agrees on it whatever its
+     * own {@code afterDays}, and recent loans archived by a purge are covered too.
+     */
+    public static LocalDate getHotHorizon() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(loan_date) FROM loans_archive")) {
+            Date newest = rs.next() ? rs.getDate(1) : null;
+            return newest == null ? LocalDate.MIN : newest.toLocalDate().plusDays(1);
+        }
+    }
+
+    /**
+     * Runs the job shortly after startup and then every interval, on a daemon thread.
+     */
+    public static synchronized void schedule() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loan-archiver");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int moved = archive(LocalDate.now().minusDays(AFTER_DAYS));
+                if (moved > 0) {
+                    System.out.println("Archived " + moved + " returned loans");
+                }
+            } catch (SQLException e) {
+                System.out.println("Loan archival skipped: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Archives every loan returned before {@code returnedBefore}, one chunk at a time.
+     *
+     * @return the number of loans moved
+     */
+    public static int archive(LocalDate returnedBefore) throws SQLException, InterruptedException {
+        if (!isAvailable()) {
+            return 0;
+        }
+        int moved = 0;
+        while (true) {
+            int chunk = archiveChunk("return_date < ?", Date.valueOf(returnedBefore));
+            moved += chunk;
+            if (chunk < BATCH_SIZE) {
+                return moved;
+            }
+            Thread.sleep(PAUSE_BETWEEN_CHUNKS_MILLIS);
+        }
+    }
+
+    /**
+     * Archives every returned loan of one user or book ({@code idColumn} is {@code user_id} or
+     * {@code book_id}), one chunk at a time, so the row can be purged without losing its history.
+     */
+    static void archiveReturnedLoansOf(String idColumn, int id) throws SQLException, InterruptedException {
+        if (!isAvailable()) {
+            return;
+        }
+        while (archiveChunk(idColumn + " = ? AND return_date IS NOT NULL", id) == BATCH_SIZE) {
+            Thread.sleep(PAUSE_BETWEEN_CHUNKS_MILLIS);
+        }
+    }
+
+    private static int archiveChunk(String condition, Object parameter) throws SQLException {
+        String selectSql = "SELECT loan_id FROM loans WHERE " + condition + " ORDER BY return_date LIMIT " + BATCH_SIZE + " FOR UPDATE";
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<Integer> loanIds = new ArrayList<>(BATCH_SIZE);
+                try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+                    pstmt.setObject(1, parameter);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            loanIds.add(rs.getInt(1));
+                        }
+                    }
+                }
+                if (loanIds.isEmpty()) {
+                    conn.rollback();
+                    return 0;
+                }
+
+                String ids = String.join(",", Collections.nCopies(loanIds.size(), "?"));
+                String copySql = "INSERT INTO loans_archive (loan_id, branch_id, user_id, book_id, loan_date, return_date) " +
+                                 "SELECT loan_id, branch_id, user_id, book_id, loan_date, return_date FROM loans WHERE loan_id IN (" + ids + ")";
+                String deleteSql = "DELETE FROM loans WHERE loan_id IN (" + ids + ")";
+                executeWithIds(conn, copySql, loanIds);
+                executeWithIds(conn, deleteSql, loanIds);
+                conn.commit();
+                return loanIds.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void executeWithIds(Connection conn, String sql, List<Integer> loanIds) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < loanIds.size(); i++) {
+                pstmt.setInt(i + 1, loanIds.get(i));
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * True when the schema has the archive table (databases created before it was added do not).
+     * The answer is remembered once the database has given one.
+     */
+    public static boolean isAvailable() {
+        if (available != null) {
+            return available;
+        }
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeQuery("SELECT 1 FROM loans_archive LIMIT 1").close();
+            available = true;
+        } catch (SQLException e) {
+            if (!TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                return false;
+            }
+            available = false;
+        }
+        return available;
+    }
+}
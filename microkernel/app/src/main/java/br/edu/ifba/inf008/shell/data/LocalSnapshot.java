@@ -0,0 +1,280 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A whole table of the home branch kept on local disk between sessions, so opening a tab does not
+ * pull every row over JDBC again. The file is read into the heap in one call and decoded in one
+ * pass. Then only the rows that {@code change_log} reports as changed since the file's high-water
+ * mark are fetched, and the file is rewritten in the background with the merged rows. Nothing keeps
+ * the file open or mapped, so the rewrite can replace it on every platform, Windows included.
+ *
+ * The file is ignored and the table read in full when it is missing, fails its checksum, was
+ * written by another codec version, or when {@code change_log} no longer covers its high-water
+ * mark (the log was trimmed or the database rebuilt). If the database cannot be reached, the rows
+ * in the file are returned as they are.
+ *
+ * Layout: magic, codec version, high-water sequence, row count, rows, then the CRC32 of all of it.
+ * The rows are stored as they are, not encrypted: the users file holds patron names and emails.
+ */
+public class LocalSnapshot<T> {
+
+    public interface Codec<T> {
+        void write(DataOutputStream out, T row) throws IOException;
+
+        T read(ByteBuffer in);
+    }
+
+    public interface FullQuery<T> {
+        List<T> run() throws SQLException;
+    }
+
+    public interface RowsQuery<T> {
+        List<T> run(Collection<Integer> ids) throws SQLException;
+    }
+
+    private static final Path DIRECTORY = Paths.get("./snapshots");
+    private static final int MAGIC = 0x4C435353;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    // Sequences are allocated before commit (see ChangeFeed), so the high-water mark stays this
+    // far behind the head: a change still uncommitted when the file is written is fetched next time.
+    private static final int COMMIT_GRACE_SECONDS = 5;
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String table;
+    private final int codecVersion;
+    private final Codec<T> codec;
+    private final ToIntFunction<T> idOf;
+    private final Comparator<T> order;
+    private final Path file;
+
+    /**
+     * @param table        the {@code change_log} table name, also the start of the file name
+     * @param codecVersion bump when {@code codec} changes so old files are discarded
+     * @param order        how {@code FullQuery} sorts, so merged rows keep that order; may be null
+     */
+    public LocalSnapshot(String table, int codecVersion, Codec<T> codec, ToIntFunction<T> idOf, Comparator<T> order) {
+        this.table = table;
+        this.codecVersion = codecVersion;
+        this.codec = codec;
+        this.idOf = idOf;
+        this.order = order;
+        this.file = DIRECTORY.resolve(table + "-branch" + ShardMap.getInstance().getHomeBranch() + ".snap");
+    }
+
+    public synchronized List<T> load(FullQuery<T> fullQuery, RowsQuery<T> rowsQuery) throws SQLException {
+        Loaded<T> loaded = read();
+        if (loaded == null) {
+            long highWater = stableHead();
+            List<T> rows = fullQuery.run();
+            writeLater(rows, highWater);
+            return rows;
+        }
+
+        List<T> rows = loaded.rows;
+        long highWater;
+        Set<Integer> changed;
+        try {
+            if (!covers(loaded.highWater)) {
+                System.out.println("Local " + table + " snapshot is older than the change log; reloading.");
+                highWater = stableHead();
+                rows = fullQuery.run();
+                writeLater(rows, highWater);
+                return rows;
+            }
+            highWater = stableHead();
+            changed = changedSince(loaded.highWater);
+            if (!changed.isEmpty()) {
+                RowDelta.apply(rows, changed, rowsQuery.run(changed), idOf);
+                if (order != null) {
+                    rows.sort(order);
+                }
+            }
+        } catch (SQLException e) {
+            if (!CircuitBreaker.indicatesOutage(e)) {
+                throw e;
+            }
+            System.out.println("Using the local " + table + " snapshot as is: " + e.getMessage());
+            return rows;
+        }
+        if (!changed.isEmpty() || highWater != loaded.highWater) {
+            writeLater(rows, highWater);
+        }
+        return rows;
+    }
+
+    private Loaded<T> read() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            long size = Files.size(file);
+            if (size < HEADER_SIZE + 8 || size > Integer.MAX_VALUE - 8) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            int payloadEnd = buffer.capacity() - 8;
+            if (payloadEnd < HEADER_SIZE) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(payloadEnd));
+            if (buffer.getLong(payloadEnd) != crc.getValue()) {
+                System.out.println("Ignoring corrupt local snapshot " + file.getFileName());
+                return null;
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != codecVersion) {
+                return null;
+            }
+            long highWater = buffer.getLong();
+            int count = buffer.getInt();
+            List<T> rows = new ArrayList<>(count);
+            buffer.limit(payloadEnd);
+            for (int i = 0; i < count; i++) {
+                rows.add(codec.read(buffer));
+            }
+            return new Loaded<>(rows, highWater);
+        } catch (IOException | BufferUnderflowException e) {
+            System.out.println("Ignoring unreadable local snapshot " + file.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeLater(List<T> rows, long highWater) {
+        List<T> copy = new ArrayList<>(rows);
+        writer.execute(() -> {
+            try {
+                write(copy, highWater);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Could not write the local " + table + " snapshot: " + e.getMessage());
+            }
+        });
+    }
+
+    private void write(List<T> rows, long highWater) throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Path temp = DIRECTORY.resolve(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(codecVersion);
+            out.writeLong(highWater);
+            out.writeInt(rows.size());
+            for (T row : rows) {
+                codec.write(out, row);
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The newest sequence old enough to be committed or rolled back. Scans the primary key
+     * backwards and stops at the first row older than the grace period.
+     */
+    private static long stableHead() throws SQLException {
+        String sql = "SELECT seq FROM change_log WHERE changed_at < CURRENT_TIMESTAMP(3) - INTERVAL "
+                + COMMIT_GRACE_SECONDS + " SECOND ORDER BY seq DESC LIMIT 1";
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Whether every change after {@code highWater} is still in the log.
+     */
+    private static boolean covers(long highWater) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(seq), MAX(seq) FROM change_log")) {
+            rs.next();
+            long oldest = rs.getLong(1);
+            if (rs.wasNull()) {
+                return highWater == 0;
+            }
+            return oldest <= highWater + 1 && rs.getLong(2) >= highWater;
+        }
+    }
+
+    private Set<Integer> changedSince(long highWater) throws SQLException {
+        String sql = "SELECT DISTINCT row_id FROM change_log WHERE seq > ? AND table_name = ?";
+        Set<Integer> ids = new HashSet<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, highWater);
+            pstmt.setString(2, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Strings are a length (-1 for null) followed by UTF-8 bytes.
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Loaded<T> {
+        private final List<T> rows;
+        private final long highWater;
+
+        Loaded(List<T> rows, long highWater) {
+            this.rows = rows;
+            this.highWater = highWater;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package br.edu.ifba.inf008.shell.data;
+
+import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.model.User;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Binary row formats for {@link LocalSnapshot}. Each codec carries a version; change the layout
+ * and bump it, and files written by the old layout are ignored.
+ */
+public class ModelCodecs {
+    public static final int BOOK_VERSION = 2;
+    public static final int USER_VERSION = 2;
+
+    /**
+     * Book id, branch, title, author, isbn, year, available copies.
+     */
+    public static final LocalSnapshot.Codec<Book> BOOK = new LocalSnapshot.Codec<Book>() {
+        @Override
+        public void write(DataOutputStream out, Book book) throws IOException {
+            out.writeInt(book.getBookId());
+            out.writeShort(book.getBranchId());
+            LocalSnapshot.writeString(out, book.getTitle());
+            LocalSnapshot.writeString(out, book.getAuthor());
+            LocalSnapshot.writeString(out, book.getIsbn());
+            out.writeInt(book.getYear());
+            out.writeInt(book.getCopies());
+        }
+
+        @Override
+        public Book read(ByteBuffer in) {
+            Book book = new Book();
+            book.setBookId(in.getInt());
+            book.setBranchId(in.getShort());
+            book.setTitle(LocalSnapshot.readString(in));
+            book.setAuthor(LocalSnapshot.readString(in));
+            book.setIsbn(LocalSnapshot.readString(in));
+            book.setYear(in.getInt());
+            book.setCopies(in.getInt());
+            return book;
+        }
+    };
+
+    /**
+     * User id, branch, name, email, registration time as UTC epoch seconds (Long.MIN_VALUE for none) and
+     * nanoseconds.
+     */
+    public static final LocalSnapshot.Codec<User> USER = new LocalSnapshot.Codec<User>() {
+        @Override
+        public void write(DataOutputStream out, User user) throws IOException {
+            out.writeInt(user.getUserId());
+            out.writeShort(user.getBranchId());
+            LocalSnapshot.writeString(out, user.getName());
+            LocalSnapshot.writeString(out, user.getEmail());
+            LocalDateTime registeredAt = user.getRegisteredAt();
+            out.writeLong(registeredAt == null ? Long.MIN_VALUE : registeredAt.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(registeredAt == null ? 0 : registeredAt.getNano());
+        }
+
+        @Override
+        public User read(ByteBuffer in) {
+            User user = new User();
+            user.setUserId(in.getInt());
+            user.setBranchId(in.getShort());
+            user.setName(LocalSnapshot.readString(in));
+            user.setEmail(LocalSnapshot.readString(in));
+            long seconds = in.getLong();
+            int nanos = in.getInt();
+            if (seconds != Long.MIN_VALUE) {
+                user.setRegisteredAt(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+            }
+            return user;
+        }
+    };
+
+    private ModelCodecs() {
+    }
+}
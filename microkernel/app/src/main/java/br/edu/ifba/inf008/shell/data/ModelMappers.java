@@ -0,0 +1,125 @@
+package br.edu.ifba.inf008.shell.data;
+
+import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.model.Loan;
+import br.edu.ifba.inf008.shell.model.User;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mappers for the shared models. Columns a query does not select are left at their defaults, so
+ * the same mapper serves {@code SELECT *} and narrower joins.
+ *
+ * A loan mapper interns users and books by id for the result set it was compiled for: a patron
+ * who appears on thousands of loan rows is read and allocated once, and every one of those loans
+ * shares that {@link User}. Nothing is shared across queries.
+ *
+ * Rows get their branch from a {@code branch_id} column when the query selects one, and otherwise
+ * from the branch the query ran on (see {@link DatabaseConnection#getBoundBranch}).
+ */
+public class ModelMappers {
+    public static final RowMapper.Factory<Book> BOOK = columns -> book(columns, null);
+    public static final RowMapper.Factory<User> USER = columns -> user(columns, null);
+    public static final RowMapper.Factory<Loan> LOAN = ModelMappers::loan;
+
+    private ModelMappers() {
+    }
+
+    private static RowMapper<Loan> loan(Columns columns) throws SQLException {
+        int loanIdColumn = columns.require("loan_id");
+        int loanDateColumn = columns.require("loan_date");
+        int returnDateColumn = columns.find("return_date");
+        int branchColumn = columns.find("branch_id");
+        int branch = DatabaseConnection.getBoundBranch();
+        RowMapper<User> users = user(columns, new HashMap<>());
+        RowMapper<Book> books = book(columns, new HashMap<>());
+        return rs -> {
+            Loan loan = new Loan();
+            loan.setLoanId(rs.getInt(loanIdColumn));
+            loan.setBranchId(branchColumn == 0 ? branch : rs.getInt(branchColumn));
+            loan.setUser(users.map(rs));
+            loan.setBook(books.map(rs));
+            loan.setLoanDate(rs.getObject(loanDateColumn, LocalDate.class));
+            if (returnDateColumn != 0) {
+                loan.setReturnDate(rs.getObject(returnDateColumn, LocalDate.class));
+            }
+            return loan;
+        };
+    }
+
+    private static RowMapper<User> user(Columns columns, Map<Integer, User> interned) throws SQLException {
+        int idColumn = columns.require("user_id");
+        int nameColumn = columns.find("name");
+        int emailColumn = columns.find("email");
+        int registeredAtColumn = columns.find("registered_at");
+        int branchColumn = columns.find("branch_id");
+        int branch = DatabaseConnection.getBoundBranch();
+        return rs -> {
+            int userId = rs.getInt(idColumn);
+            User user = interned == null ? null : interned.get(userId);
+            if (user != null) {
+                return user;
+            }
+            user = new User();
+            user.setUserId(userId);
+            user.setBranchId(branchColumn == 0 ? branch : rs.getInt(branchColumn));
+            if (nameColumn != 0) {
+                user.setName(rs.getString(nameColumn));
+            }
+            if (emailColumn != 0) {
+                user.setEmail(rs.getString(emailColumn));
+            }
+            if (registeredAtColumn != 0) {
+                user.setRegisteredAt(rs.getObject(registeredAtColumn, LocalDateTime.class));
+            }
+            if (interned != null) {
+                interned.put(userId, user);
+            }
+            return user;
+        };
+    }
+
+    private static RowMapper<Book> book(Columns columns, Map<Integer, Book> interned) throws SQLException {
+        int idColumn = columns.require("book_id");
+        int titleColumn = columns.find("title");
+        int authorColumn = columns.find("author");
+        int isbnColumn = columns.find("isbn");
+        int yearColumn = columns.find("published_year");
+        int copiesColumn = columns.find("copies_available");
+        int branchColumn = columns.find("branch_id");
+        int branch = DatabaseConnection.getBoundBranch();
+        return rs -> {
+            int bookId = rs.getInt(idColumn);
+            Book book = interned == null ? null : interned.get(bookId);
+            if (book != null) {
+                return book;
+            }
+            book = new Book();
+            book.setBookId(bookId);
+            book.setBranchId(branchColumn == 0 ? branch : rs.getInt(branchColumn));
+            if (titleColumn != 0) {
+                book.setTitle(rs.getString(titleColumn));
+            }
+            if (authorColumn != 0) {
+                book.setAuthor(rs.getString(authorColumn));
+            }
+            if (isbnColumn != 0) {
+                book.setIsbn(rs.getString(isbnColumn));
+            }
+            if (yearColumn != 0) {
+                book.setYear(rs.getInt(yearColumn));
+            }
+            if (copiesColumn != 0) {
+                book.setCopies(rs.getInt(copiesColumn));
+            }
+            if (interned != null) {
+                interned.put(bookId, book);
+            }
+            return book;
+        };
+    }
+}
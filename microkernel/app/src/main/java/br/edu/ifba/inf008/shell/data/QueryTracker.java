@@ -0,0 +1,53 @@
+package br.edu.ifba.inf008.shell.data;
+
+/**
+ * The statement the watched thread is executing, for stall reports. Only one thread is watched
+ * (the JavaFX Application Thread); on every other thread {@link #begin} and {@link #end} cost one
+ * volatile read and a comparison.
+ */
+public class QueryTracker {
+    private static volatile Thread watched;
+    private static volatile InFlight current;
+
+    private QueryTracker() {
+    }
+
+    public static void watch(Thread thread) {
+        watched = thread;
+    }
+
+    static void begin(String sql) {
+        if (Thread.currentThread() == watched) {
+            current = new InFlight(sql, System.nanoTime());
+        }
+    }
+
+    static void end() {
+        if (Thread.currentThread() == watched) {
+            current = null;
+        }
+    }
+
+    /**
+     * The watched thread's statement and how long it has been running, or null when it is not in
+     * a database call.
+     */
+    public static String describeInFlight() {
+        InFlight inFlight = current;
+        if (inFlight == null) {
+            return null;
+        }
+        long millis = (System.nanoTime() - inFlight.startedNanos) / 1_000_000;
+        return inFlight.sql + " (running " + millis + " ms)";
+    }
+
+    private static class InFlight {
+        private final String sql;
+        private final long startedNanos;
+
+        InFlight(String sql, long startedNanos) {
+            this.sql = sql == null ? "(batch)" : sql;
+            this.startedNanos = startedNanos;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Applies a set of changed row ids to an already loaded list: rows are replaced in place by their
+ * fresh copy, removed when the fresh query no longer returns them, and new rows are appended.
+ */
+public class RowDelta {
+    private RowDelta() {
+    }
+
+    /**
+     * @param target      the list shown to the user, typically an {@code ObservableList}
+     * @param changedIds  ids reported by the {@link ChangeFeed}
+     * @param freshRows   the current version of those rows; ids missing here were deleted
+     * @param keep        rows that no longer belong in this list (e.g. a returned loan in an
+     *                    active-loans view) are removed instead of replaced
+     */
+    public static <T> void apply(List<T> target, Set<Integer> changedIds, Collection<T> freshRows,
+            ToIntFunction<T> idOf, Predicate<T> keep) {
+        merge(target, changedIds, freshRows, idOf, keep, null);
+    }
+
+    public static <T> void apply(List<T> target, Set<Integer> changedIds, Collection<T> freshRows, ToIntFunction<T> idOf) {
+        apply(target, changedIds, freshRows, idOf, row -> true);
+    }
+
+    /**
+     * Like {@link #apply}, but a changed row that stays in the list is updated in place by
+     * {@code update(shown, fresh)} instead of being replaced, so a table bound to the rows'
+     * properties repaints only the cells that changed. Filters and sort orders over {@code target}
+     * are not re-evaluated for rows updated this way.
+     */
+    public static <T> void merge(List<T> target, Set<Integer> changedIds, Collection<T> freshRows,
+            ToIntFunction<T> idOf, Predicate<T> keep, BiConsumer<T, T> update) {
+        Map<Integer, T> fresh = new HashMap<>();
+        for (T row : freshRows) {
+            if (keep.test(row)) {
+                fresh.put(idOf.applyAsInt(row), row);
+            }
+        }
+
+        ListIterator<T> iterator = target.listIterator();
+        while (iterator.hasNext()) {
+            T shown = iterator.next();
+            int id = idOf.applyAsInt(shown);
+            if (!changedIds.contains(id)) {
+                continue;
+            }
+            T replacement = fresh.remove(id);
+            if (replacement == null) {
+                iterator.remove();
+            } else if (update != null) {
+                update.accept(shown, replacement);
+            } else {
+                iterator.set(replacement);
+            }
+        }
+        target.addAll(fresh.values());
+    }
+}
@@ -0,0 +1,40 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the current row of a result set. A mapper is compiled by a {@link Factory} for one result
+ * set, with the indexes of the columns it reads already resolved, and may keep state for the
+ * lifetime of that result set (see {@link ModelMappers}).
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    public abstract T map(ResultSet rs) throws SQLException;
+
+    @FunctionalInterface
+    public interface Factory<T> {
+        public abstract RowMapper<T> compile(Columns columns) throws SQLException;
+    }
+
+    public static <T> List<T> list(ResultSet rs, Factory<T> factory) throws SQLException {
+        RowMapper<T> mapper = factory.compile(new Columns(rs.getMetaData()));
+        List<T> rows = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(mapper.map(rs));
+        }
+        return rows;
+    }
+
+    /**
+     * The first row, or {@code null} when the result set is empty.
+     */
+    public static <T> T first(ResultSet rs, Factory<T> factory) throws SQLException {
+        if (!rs.next()) {
+            return null;
+        }
+        return factory.compile(new Columns(rs.getMetaData())).map(rs);
+    }
+}
@@ -0,0 +1,191 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Which database holds each branch. Every branch has its own database with the same schema;
+ * users, books, copies and loans live only in their branch's database, and ids are only unique
+ * within one branch. The {@code branch_id} column records the branch on every row.
+ *
+ * DAO calls go to the branch bound to the calling thread (see
+ * {@link DatabaseConnection#bindBranch}), or to this desk's home branch. Reads that span the
+ * network, such as reports and catalog searches, run on every branch at once through
+ * {@link #scatter}.
+ *
+ * Configured with {@code -Dlibrary.branches=1=127.0.0.1:3307,2=127.0.0.1:3308} (a value may also
+ * be a full JDBC URL) and {@code -Dlibrary.branch=2} for the home branch. Without them there is
+ * one branch, 1, at the original address.
+ */
+public class ShardMap {
+
+    public interface BranchQuery<T> {
+        T run(int branchId) throws SQLException;
+    }
+
+    private static final String DEFAULT_BRANCHES = "1=127.0.0.1:3307";
+    private static final int DEFAULT_HOME_BRANCH = 1;
+    // A stalled server fails the connect within seconds instead of the driver's 30 s default, and a
+    // read that gets no answer at all fails after a minute instead of never; statements run longer
+    // than that are cut short by DatabaseConnection's query timeout first.
+    private static final String URL_OPTIONS = "?connectTimeout=3000&socketTimeout=60000";
+
+    private static ShardMap instance;
+
+    private final Map<Integer, String> urls;
+    private final int homeBranch;
+    private final ExecutorService executor;
+
+    public ShardMap(Map<Integer, String> urls, int homeBranch) {
+        if (!urls.containsKey(homeBranch)) {
+            throw new IllegalArgumentException("Home branch " + homeBranch + " is not in the shard map " + urls.keySet() + ".");
+        }
+        this.urls = Collections.unmodifiableMap(new LinkedHashMap<>(urls));
+        this.homeBranch = homeBranch;
+        this.executor = Executors.newFixedThreadPool(Math.max(2, urls.size()), runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized ShardMap getInstance() {
+        if (instance == null) {
+            instance = new ShardMap(parse(System.getProperty("library.branches", DEFAULT_BRANCHES)),
+                    Integer.getInteger("library.branch", DEFAULT_HOME_BRANCH));
+        }
+        return instance;
+    }
+
+    static Map<Integer, String> parse(String spec) {
+        Map<Integer, String> urls = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String trimmed = entry.trim();
+            int separator = trimmed.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected <branch>=<host:port or JDBC URL>, got \"" + trimmed + "\".");
+            }
+            int branch = Integer.parseInt(trimmed.substring(0, separator).trim());
+            String target = trimmed.substring(separator + 1).trim();
+            urls.put(branch, target.startsWith("jdbc:") ? target : "jdbc:mariadb://" + target + "/bookstore" + URL_OPTIONS);
+        }
+        return urls;
+    }
+
+    public int getHomeBranch() {
+        return homeBranch;
+    }
+
+    public List<Integer> getBranchIds() {
+        return new ArrayList<>(urls.keySet());
+    }
+
+    public boolean isSharded() {
+        return urls.size() > 1;
+    }
+
+    public String getUrl(int branchId) throws SQLException {
+        String url = urls.get(branchId);
+        if (url == null) {
+            throw new SQLException("Unknown branch " + branchId + ".");
+        }
+        return url;
+    }
+
+    /**
+     * For change-feed patching of lists that mix branches: the row id if the row belongs to the
+     * home branch, whose feed this desk follows, and -1 otherwise, so a change never matches a
+     * row of another branch that happens to share its id.
+     */
+    public int localId(int branchId, int id) {
+        return branchId == homeBranch ? id : -1;
+    }
+
+    /**
+     * Runs {@code query} for every branch in parallel, each on a thread bound to that branch and
+     * to the caller's connection quota, and returns the results by branch in map order. If any
+     * branch fails, the call fails with that branch named; a report missing a branch would look
+     * complete.
+     */
+    public <T> Map<Integer, T> scatter(BranchQuery<T> query) throws SQLException {
+        return scatter(urls.keySet(), query);
+    }
+
+    /**
+     * {@link #scatter} over some of the branches only.
+     */
+    public <T> Map<Integer, T> scatter(Collection<Integer> branches, BranchQuery<T> query) throws SQLException {
+        Map<Integer, T> results = new LinkedHashMap<>();
+        if (!isSharded()) {
+            results.put(homeBranch, query.run(homeBranch));
+            return results;
+        }
+        ConnectionQuota quota = DatabaseConnection.getBoundQuota();
+        Map<Integer, Future<T>> pending = new LinkedHashMap<>();
+        for (int branch : branches) {
+            pending.put(branch, executor.submit(() -> {
+                DatabaseConnection.bindQuota(quota);
+                DatabaseConnection.bindBranch(branch);
+                try {
+                    return query.run(branch);
+                } finally {
+                    DatabaseConnection.bindBranch(null);
+                    DatabaseConnection.bindQuota(null);
+                }
+            }));
+        }
+        try {
+            for (Map.Entry<Integer, Future<T>> entry : pending.entrySet()) {
+                results.put(entry.getKey(), await(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            for (Future<T> future : pending.values()) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * {@link #scatter} for queries returning rows, concatenated in branch order.
+     */
+    public <T> List<T> gather(BranchQuery<List<T>> query) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        for (List<T> branchRows : scatter(query).values()) {
+            rows.addAll(branchRows);
+        }
+        return rows;
+    }
+
+    private static <T> T await(int branch, Future<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for branch " + branch + ".", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DatabaseUnavailableException) {
+                throw (DatabaseUnavailableException) cause;
+            }
+            if (cause instanceof SQLException) {
+                SQLException failure = (SQLException) cause;
+                throw new SQLException("Branch " + branch + ": " + failure.getMessage(),
+                        failure.getSQLState(), failure.getErrorCode(), failure);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Why a statement failed, as far as retrying it is concerned. Classified from the SQL state and
+ * the MariaDB error code, since the driver does not map every transient error to a transient
+ * exception type.
+ */
+public enum SqlFailure {
+    /**
+     * The server rolled back the whole transaction to break a deadlock (1213, SQL state 40001).
+     */
+    DEADLOCK,
+    /**
+     * A lock wait (1205) or the statement itself (1969, 3024, SQL state 70100) timed out; only that
+     * statement was rolled back.
+     */
+    TIMEOUT,
+    /**
+     * The connection broke (SQL state class 08); whether the last commit happened is unknown.
+     */
+    CONNECTION,
+    /**
+     * Constraint violations, syntax errors, business rules: trying again gives the same answer.
+     */
+    PERMANENT;
+
+    public static SqlFailure of(SQLException e) {
+        String state = e.getSQLState() == null ? "" : e.getSQLState();
+        int code = e.getErrorCode();
+        if (e instanceof SQLTransactionRollbackException || state.startsWith("40") || code == 1213) {
+            return DEADLOCK;
+        }
+        if (e instanceof SQLTimeoutException || state.equals("70100") || code == 1205 || code == 1969 || code == 3024) {
+            return TIMEOUT;
+        }
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || state.startsWith("08")) {
+            return CONNECTION;
+        }
+        return PERMANENT;
+    }
+
+    /**
+     * Deadlocks and timeouts left nothing of the attempt behind, so any unit can run again; after a
+     * broken connection only a unit that is safe to apply twice can.
+     */
+    public boolean isRetryable(boolean idempotent) {
+        switch (this) {
+            case DEADLOCK:
+            case TIMEOUT:
+                return true;
+            case CONNECTION:
+                return idempotent;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package br.edu.ifba.inf008.shell.data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs units of work through the {@link GroupCommitExecutor} and retries the ones that failed for
+ * a transient reason (see {@link SqlFailure}), so a deadlock or lock timeout under load costs the
+ * desk a short pause instead of an error dialog. Retries back off exponentially with full jitter,
+ * every statement of a unit gets a query timeout, and the whole call, retries included, is bounded
+ * by a total timeout.
+ *
+ * Limits come from system properties, e.g. {@code -Dlibrary.transactions.maxAttempts=6}; see the
+ * defaults below. Per-name counters are listed under {@code transactions} in
+ * {@code GET /api/metrics}.
+ */
+public class TransactionTemplate {
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long DEFAULT_BASE_BACKOFF_MILLIS = 20;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 1_000;
+    private static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 10;
+    private static final long DEFAULT_TOTAL_TIMEOUT_MILLIS = 30_000;
+
+    private static TransactionTemplate instance;
+
+    private final GroupCommitExecutor executor;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int queryTimeoutSeconds;
+    private final long totalTimeoutNanos;
+    private final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    public TransactionTemplate(GroupCommitExecutor executor, int maxAttempts, long baseBackoffMillis,
+                               long maxBackoffMillis, int queryTimeoutSeconds, long totalTimeoutMillis) {
+        this.executor = executor;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = Math.max(1, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        this.totalTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(totalTimeoutMillis);
+    }
+
+    public static synchronized TransactionTemplate getInstance() {
+        if (instance == null) {
+            instance = new TransactionTemplate(GroupCommitExecutor.getInstance(),
+                    Integer.getInteger("library.transactions.maxAttempts", DEFAULT_MAX_ATTEMPTS),
+                    Long.getLong("library.transactions.baseBackoffMillis", DEFAULT_BASE_BACKOFF_MILLIS),
+                    Long.getLong("library.transactions.maxBackoffMillis", DEFAULT_MAX_BACKOFF_MILLIS),
+                    Integer.getInteger("library.transactions.queryTimeoutSeconds", DEFAULT_QUERY_TIMEOUT_SECONDS),
+                    Long.getLong("library.transactions.totalTimeoutMillis", DEFAULT_TOTAL_TIMEOUT_MILLIS));
+        }
+        return instance;
+    }
+
+    /**
+     * @param name       what the metrics are kept under, e.g. {@code checkout}
+     * @param idempotent true if applying the unit twice is harmless; only then is it retried after
+     *                   a broken connection, when the previous attempt may have committed
+     */
+    public <T> T execute(String name, boolean idempotent, GroupCommitExecutor.UnitOfWork<T> work) throws SQLException {
+        Metrics counters = metrics.computeIfAbsent(name, key -> new Metrics());
+        long deadline = System.nanoTime() + totalTimeoutNanos;
+        for (int attempt = 1; ; attempt++) {
+            counters.attempts.incrementAndGet();
+            try {
+                T result = GroupCommitExecutor.await(
+                        executor.submit(conn -> work.execute(withQueryTimeout(conn))), deadline - System.nanoTime());
+                counters.succeeded.incrementAndGet();
+                if (attempt > 1) {
+                    counters.recovered.incrementAndGet();
+                }
+                return result;
+            } catch (SQLException e) {
+                SqlFailure failure = SqlFailure.of(e);
+                counters.failures.get(failure).incrementAndGet();
+                // An open breaker will not close within a backoff; retrying would only delay the error.
+                if (!failure.isRetryable(idempotent) || e instanceof DatabaseUnavailableException) {
+                    counters.failed.incrementAndGet();
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    counters.exhausted.incrementAndGet();
+                    throw e;
+                }
+                long pauseMillis = backoffMillis(attempt);
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis) >= deadline) {
+                    counters.timedOut.incrementAndGet();
+                    SQLTimeoutException timeout = new SQLTimeoutException(name + " did not complete within "
+                            + TimeUnit.NANOSECONDS.toMillis(totalTimeoutNanos) + " ms; the last attempt failed: " + e.getMessage());
+                    timeout.initCause(e);
+                    throw timeout;
+                }
+                counters.retries.incrementAndGet();
+                sleep(pauseMillis);
+            }
+        }
+    }
+
+    /**
+     * Full jitter: a random pause up to base * 2^(attempt - 1), capped, so desks that collided once
+     * do not collide again in lockstep.
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry the transaction.", e);
+        }
+    }
+
+    /**
+     * The unit's view of the batch connection: every statement it creates gets the query timeout.
+     */
+    private Connection withQueryTimeout(Connection conn) {
+        if (queryTimeoutSeconds <= 0) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                TransactionTemplate.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        ((Statement) result).setQueryTimeout(queryTimeoutSeconds);
+                    }
+                    return result;
+                });
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Metrics> entry : metrics.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    private static class Metrics {
+        private final AtomicLong attempts = new AtomicLong();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong recovered = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong exhausted = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final Map<SqlFailure, AtomicLong> failures = new EnumMap<>(SqlFailure.class);
+
+        Metrics() {
+            for (SqlFailure failure : SqlFailure.values()) {
+                failures.put(failure, new AtomicLong());
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("attempts", attempts.get());
+            snapshot.put("succeeded", succeeded.get());
+            snapshot.put("succeededAfterRetry", recovered.get());
+            snapshot.put("retries", retries.get());
+            snapshot.put("failed", failed.get());
+            snapshot.put("retriesExhausted", exhausted.get());
+            snapshot.put("timedOut", timedOut.get());
+            Map<String, Object> byCause = new LinkedHashMap<>();
+            for (Map.Entry<SqlFailure, AtomicLong> entry : failures.entrySet()) {
+                byCause.put(entry.getKey().name().toLowerCase(), entry.getValue().get());
+            }
+            snapshot.put("failuresByCause", byCause);
+            return snapshot;
+        }
+    }
+}
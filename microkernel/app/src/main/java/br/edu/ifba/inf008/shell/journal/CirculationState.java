@@ -0,0 +1,148 @@
+package br.edu.ifba.inf008.shell.journal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copies on the shelf and loans still out, as rebuilt from the journal up to a given event. Replay
+ * starts from a snapshot, the first of which is a baseline read from the database, so loan events
+ * are applied idempotently: a loan the baseline already shows out (or back) is not counted twice.
+ */
+public class CirculationState {
+
+    public static class ActiveLoan {
+        private final int loanId;
+        private final int userId;
+        private final int bookId;
+        private final long loanedAt;
+
+        ActiveLoan(int loanId, int userId, int bookId, long loanedAt) {
+            this.loanId = loanId;
+            this.userId = userId;
+            this.bookId = bookId;
+            this.loanedAt = loanedAt;
+        }
+
+        public int getLoanId() {
+            return loanId;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public int getBookId() {
+            return bookId;
+        }
+
+        public long getLoanedAt() {
+            return loanedAt;
+        }
+    }
+
+    private final Map<Integer, Integer> copiesByBook = new HashMap<>();
+    private final Map<Integer, ActiveLoan> activeLoans = new HashMap<>();
+    private long lastSequence = 0;
+    private long lastTimestamp = 0;
+
+    void apply(JournalEvent event) {
+        switch (event.getType()) {
+            case LOAN_CREATED:
+                if (!activeLoans.containsKey(event.getLoanId())) {
+                    copiesByBook.merge(event.getBookId(), -1, Integer::sum);
+                    activeLoans.put(event.getLoanId(),
+                            new ActiveLoan(event.getLoanId(), event.getUserId(), event.getBookId(), event.getTimestamp()));
+                }
+                break;
+            case LOAN_RETURNED:
+                if (activeLoans.remove(event.getLoanId()) != null) {
+                    copiesByBook.merge(event.getBookId(), 1, Integer::sum);
+                }
+                break;
+            case BOOK_ADDED:
+            case COPIES_SET:
+                copiesByBook.put(event.getBookId(), event.getCopies());
+                break;
+            case BOOK_DELETED:
+                copiesByBook.remove(event.getBookId());
+                activeLoans.values().removeIf(loan -> loan.getBookId() == event.getBookId());
+                break;
+        }
+        lastSequence = event.getSequence();
+        lastTimestamp = event.getTimestamp();
+    }
+
+    /**
+     * A state read from the database rather than rebuilt from events; replay continues after
+     * {@code lastSequence}, the newest event already reflected in the database when it was read.
+     */
+    static CirculationState baseline(Map<Integer, Integer> copiesByBook, Collection<ActiveLoan> activeLoans,
+                                     long lastSequence, long timestamp) {
+        CirculationState state = new CirculationState();
+        state.copiesByBook.putAll(copiesByBook);
+        for (ActiveLoan loan : activeLoans) {
+            state.activeLoans.put(loan.getLoanId(), loan);
+        }
+        state.lastSequence = lastSequence;
+        state.lastTimestamp = timestamp;
+        return state;
+    }
+
+    public Integer getCopies(int bookId) {
+        return copiesByBook.get(bookId);
+    }
+
+    public Map<Integer, Integer> getCopiesByBook() {
+        return Collections.unmodifiableMap(copiesByBook);
+    }
+
+    public Map<Integer, ActiveLoan> getActiveLoans() {
+        return Collections.unmodifiableMap(activeLoans);
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(lastSequence);
+        out.writeLong(lastTimestamp);
+        out.writeInt(copiesByBook.size());
+        for (Map.Entry<Integer, Integer> entry : copiesByBook.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(activeLoans.size());
+        for (ActiveLoan loan : activeLoans.values()) {
+            out.writeInt(loan.getLoanId());
+            out.writeInt(loan.getUserId());
+            out.writeInt(loan.getBookId());
+            out.writeLong(loan.getLoanedAt());
+        }
+    }
+
+    static CirculationState readFrom(DataInputStream in) throws IOException {
+        CirculationState state = new CirculationState();
+        state.lastSequence = in.readLong();
+        state.lastTimestamp = in.readLong();
+        int books = in.readInt();
+        for (int i = 0; i < books; i++) {
+            state.copiesByBook.put(in.readInt(), in.readInt());
+        }
+        int loans = in.readInt();
+        for (int i = 0; i < loans; i++) {
+            ActiveLoan loan = new ActiveLoan(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+            state.activeLoans.put(loan.getLoanId(), loan);
+        }
+        return state;
+    }
+}
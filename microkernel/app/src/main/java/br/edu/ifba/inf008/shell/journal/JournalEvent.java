@@ -0,0 +1,143 @@
+package br.edu.ifba.inf008.shell.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * One circulation operation recorded in the {@link LoanJournal}. Events are immutable; the
+ * sequence number is assigned by the journal when the event is appended.
+ */
+public class JournalEvent {
+
+    public enum Type {
+        LOAN_CREATED,
+        LOAN_RETURNED,
+        BOOK_ADDED,
+        COPIES_SET,
+        BOOK_DELETED
+    }
+
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 8 + 1 + 4 + 4 + 4 + 4 + 2;
+
+    private final long sequence;
+    private final long timestamp;
+    private final Type type;
+    private final int loanId;
+    private final int userId;
+    private final int bookId;
+    private final int copies;
+    private final String actor;
+
+    private JournalEvent(long sequence, long timestamp, Type type, int loanId, int userId, int bookId, int copies, String actor) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.loanId = loanId;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.copies = copies;
+        this.actor = actor == null ? "" : actor;
+    }
+
+    public static JournalEvent loanCreated(int loanId, int userId, int bookId) {
+        return new JournalEvent(0, System.currentTimeMillis(), Type.LOAN_CREATED, loanId, userId, bookId, 0, currentActor());
+    }
+
+    public static JournalEvent loanReturned(int loanId, int bookId) {
+        return new JournalEvent(0, System.currentTimeMillis(), Type.LOAN_RETURNED, loanId, 0, bookId, 0, currentActor());
+    }
+
+    public static JournalEvent bookAdded(int bookId, int copies) {
+        return new JournalEvent(0, System.currentTimeMillis(), Type.BOOK_ADDED, 0, 0, bookId, copies, currentActor());
+    }
+
+    public static JournalEvent copiesSet(int bookId, int copies) {
+        return new JournalEvent(0, System.currentTimeMillis(), Type.COPIES_SET, 0, 0, bookId, copies, currentActor());
+    }
+
+    public static JournalEvent bookDeleted(int bookId) {
+        return new JournalEvent(0, System.currentTimeMillis(), Type.BOOK_DELETED, 0, 0, bookId, 0, currentActor());
+    }
+
+    private static String currentActor() {
+        return System.getProperty("user.name", "");
+    }
+
+    JournalEvent sequenced(long sequence, long timestamp) {
+        return new JournalEvent(sequence, timestamp, type, loanId, userId, bookId, copies, actor);
+    }
+
+    int encodedPayloadSize() {
+        return FIXED_PAYLOAD_BYTES + actor.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    void encodePayload(ByteBuffer buffer) {
+        byte[] actorBytes = actor.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(sequence);
+        buffer.putLong(timestamp);
+        buffer.put((byte) type.ordinal());
+        buffer.putInt(loanId);
+        buffer.putInt(userId);
+        buffer.putInt(bookId);
+        buffer.putInt(copies);
+        buffer.putShort((short) actorBytes.length);
+        buffer.put(actorBytes);
+    }
+
+    static JournalEvent decodePayload(ByteBuffer buffer) {
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        Type type = Type.values()[buffer.get()];
+        int loanId = buffer.getInt();
+        int userId = buffer.getInt();
+        int bookId = buffer.getInt();
+        int copies = buffer.getInt();
+        byte[] actorBytes = new byte[buffer.getShort()];
+        buffer.get(actorBytes);
+        return new JournalEvent(sequence, timestamp, type, loanId, userId, bookId, copies,
+                new String(actorBytes, StandardCharsets.UTF_8));
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Instant getInstant() {
+        return Instant.ofEpochMilli(timestamp);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getLoanId() {
+        return loanId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getCopies() {
+        return copies;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + getInstant() + " " + type + " loan=" + loanId + " user=" + userId
+                + " book=" + bookId + " copies=" + copies + " by " + actor;
+    }
+}
@@ -0,0 +1,140 @@
+package br.edu.ifba.inf008.shell.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed-size, memory-mapped journal file. Records are laid out back to back as
+ * {@code [int payloadLength][int crc32][payload]}; a zero length marks the end of the data.
+ */
+class JournalSegment implements Closeable {
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path path;
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private long lastSequence;
+    private long lastTimestamp;
+
+    private JournalSegment(Path path, long firstSequence, int size) throws IOException {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.lastSequence = firstSequence - 1;
+
+        // Position the writer after the last intact record; a torn tail is overwritten.
+        scan(buffer.duplicate(), event -> {
+            lastSequence = event.getSequence();
+            lastTimestamp = event.getTimestamp();
+        }, buffer);
+    }
+
+    static JournalSegment open(Path path, long firstSequence, int size) throws IOException {
+        return new JournalSegment(path, firstSequence, size);
+    }
+
+    /**
+     * Reads a closed segment without keeping it mapped for writing.
+     */
+    static void read(Path path, Consumer<JournalEvent> consumer) throws IOException {
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            scan(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()), consumer, null);
+        }
+    }
+
+    /**
+     * @return false when the event does not fit and the journal has to rotate
+     */
+    boolean append(JournalEvent event) {
+        int payloadSize = event.encodedPayloadSize();
+        if (buffer.remaining() < RECORD_HEADER_BYTES + payloadSize) {
+            return false;
+        }
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_BYTES);
+        event.encodePayload(buffer);
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + payloadSize);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        buffer.putInt(start + 4, (int) crc.getValue());
+        // Length goes in last so a crash mid-record never exposes a half-written entry.
+        buffer.putInt(start, payloadSize);
+        if (buffer.remaining() >= 4) {
+            buffer.putInt(buffer.position(), 0);
+        }
+
+        lastSequence = event.getSequence();
+        lastTimestamp = event.getTimestamp();
+        return true;
+    }
+
+    void forEach(Consumer<JournalEvent> consumer) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(buffer.position()).position(0);
+        scan(view, consumer, null);
+    }
+
+    private static void scan(ByteBuffer view, Consumer<JournalEvent> consumer, ByteBuffer writer) {
+        CRC32 crc = new CRC32();
+        while (view.remaining() >= RECORD_HEADER_BYTES) {
+            int start = view.position();
+            int length = view.getInt();
+            int checksum = view.getInt();
+            if (length <= 0 || length > view.remaining()) {
+                view.position(start);
+                break;
+            }
+            ByteBuffer payload = view.duplicate();
+            payload.limit(view.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                view.position(start);
+                break;
+            }
+            consumer.accept(JournalEvent.decodePayload(payload));
+            view.position(view.position() + length);
+        }
+        if (writer != null) {
+            writer.position(Math.min(view.position(), writer.limit()));
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,344 @@
+package br.edu.ifba.inf008.shell.journal;
+
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only journal of circulation operations. Events go to memory-mapped segment files that
+ * rotate when full; every {@link #SNAPSHOT_INTERVAL} events a snapshot of the rebuilt state is
+ * written so {@link #stateAt(Instant)} only has to replay the tail.
+ *
+ * The journal is local to this desk and is written after the database transaction commits, so it
+ * is an audit trail of what this client did, not a replacement for the database. Books and loans
+ * that existed before the journal was started come from a baseline snapshot read from the
+ * database the first time the default journal opens without one; replay starts there.
+ */
+public class LoanJournal {
+    private static final Path DEFAULT_DIRECTORY = Paths.get("./journal");
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int SNAPSHOT_INTERVAL = 50_000;
+    private static final int SNAPSHOT_MAGIC = 0x4C4A534E;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private static LoanJournal instance;
+
+    private final Path directory;
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private JournalSegment activeSegment;
+    private long nextSequence;
+    private long lastTimestamp;
+    private long appendsSinceSnapshot = 0;
+    private boolean baselineNeeded = false;
+
+    public LoanJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        List<Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        if (segments.isEmpty()) {
+            activeSegment = JournalSegment.open(segmentPath(1), 1, SEGMENT_SIZE);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            activeSegment = JournalSegment.open(last, sequenceOf(last, SEGMENT_PREFIX, SEGMENT_SUFFIX), SEGMENT_SIZE);
+        }
+        nextSequence = activeSegment.getLastSequence() + 1;
+        lastTimestamp = activeSegment.getLastTimestamp();
+    }
+
+    public static synchronized LoanJournal getInstance() throws IOException {
+        if (instance == null) {
+            instance = new LoanJournal(DEFAULT_DIRECTORY);
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "journal-close"));
+            if (instance.listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).isEmpty()) {
+                instance.baselineNeeded = true;
+                instance.submitBaseline();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Appends to the default journal, logging instead of failing: the database commit this event
+     * describes has already happened and must not be reported as an error.
+     */
+    public static void record(JournalEvent event) {
+        try {
+            getInstance().append(event);
+        } catch (IOException e) {
+            System.out.println("Journal append failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized long append(JournalEvent event) throws IOException {
+        // Keep timestamps monotonic so point-in-time replay can stop at the first later event.
+        long timestamp = Math.max(event.getTimestamp(), lastTimestamp);
+        JournalEvent sequenced = event.sequenced(nextSequence, timestamp);
+
+        if (!activeSegment.append(sequenced)) {
+            activeSegment.close();
+            activeSegment = JournalSegment.open(segmentPath(nextSequence), nextSequence, SEGMENT_SIZE);
+            if (!activeSegment.append(sequenced)) {
+                throw new IOException("Journal event does not fit in an empty segment.");
+            }
+        }
+
+        lastTimestamp = timestamp;
+        nextSequence++;
+        if (baselineNeeded) {
+            // The last attempt could not reach the database; this commit shows it is back.
+            submitBaseline();
+        }
+        if (++appendsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+            appendsSinceSnapshot = 0;
+            snapshotExecutor.submit(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.out.println("Journal snapshot failed: " + e.getMessage());
+                }
+            });
+        }
+        return sequenced.getSequence();
+    }
+
+    /**
+     * Rebuilds copies and active loans as they were at {@code at}, starting from the newest
+     * snapshot taken before that instant. Before the baseline there is only what the journal
+     * recorded, without the books and loans that predate it.
+     */
+    public CirculationState stateAt(Instant at) throws IOException {
+        long limit = at.toEpochMilli();
+        CirculationState state = loadSnapshotBefore(limit);
+        replay(state.getLastSequence() + 1, event -> {
+            if (event.getTimestamp() <= limit) {
+                state.apply(event);
+            }
+        }, limit);
+        return state;
+    }
+
+    public CirculationState currentState() throws IOException {
+        return stateAt(Instant.ofEpochMilli(Long.MAX_VALUE));
+    }
+
+    /**
+     * Streams every event from {@code fromSequence} onwards, in order.
+     */
+    public void forEach(long fromSequence, Consumer<JournalEvent> consumer) throws IOException {
+        replay(fromSequence, consumer, Long.MAX_VALUE);
+    }
+
+    public void snapshot() throws IOException {
+        CirculationState state = currentState();
+        if (state.getLastSequence() == 0) {
+            return;
+        }
+        writeSnapshot(state);
+    }
+
+    /**
+     * Queues the baseline on the snapshot thread; the caller may be a desk that just committed.
+     */
+    private synchronized void submitBaseline() {
+        baselineNeeded = false;
+        snapshotExecutor.submit(() -> {
+            try {
+                writeBaseline();
+            } catch (SQLException | IOException e) {
+                System.out.println("Journal baseline failed, will retry: " + e.getMessage());
+                synchronized (this) {
+                    baselineNeeded = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Snapshots the available copies and open loans of the home branch as the database has them.
+     * The sequence is taken before reading, so every event after it is replayed on top; loan
+     * events the database already reflected are skipped by {@link CirculationState#apply}.
+     */
+    private void writeBaseline() throws SQLException, IOException {
+        long lastSequence;
+        synchronized (this) {
+            lastSequence = nextSequence - 1;
+        }
+        long timestamp = System.currentTimeMillis();
+        String copiesSql = "SELECT b.book_id, COUNT(c.copy_id) FROM books b " +
+                           "LEFT JOIN book_copies c ON c.book_id = b.book_id AND c.status = 'AVAILABLE' " +
+                           "WHERE b.deleted_at IS NULL GROUP BY b.book_id";
+        String loansSql = "SELECT loan_id, user_id, book_id, loan_date FROM loans WHERE return_date IS NULL";
+
+        Map<Integer, Integer> copies = new HashMap<>();
+        List<CirculationState.ActiveLoan> loans = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(copiesSql)) {
+                while (rs.next()) {
+                    copies.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(loansSql)) {
+                while (rs.next()) {
+                    long loanedAt = rs.getDate(4).toLocalDate().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    loans.add(new CirculationState.ActiveLoan(rs.getInt(1), rs.getInt(2), rs.getInt(3), loanedAt));
+                }
+            }
+        }
+        writeSnapshot(CirculationState.baseline(copies, loans, lastSequence, timestamp));
+    }
+
+    private void writeSnapshot(CirculationState state) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d-%d%s", SNAPSHOT_PREFIX,
+                state.getLastSequence(), state.getLastTimestamp(), SNAPSHOT_SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try (CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            state.writeTo(out);
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public synchronized void close() {
+        try {
+            activeSegment.close();
+        } catch (IOException e) {
+            System.out.println("Journal close failed: " + e.getMessage());
+        }
+        snapshotExecutor.shutdown();
+    }
+
+    private void replay(long fromSequence, Consumer<JournalEvent> consumer, long timestampLimit) throws IOException {
+        List<Path> segments;
+        JournalSegment active;
+        synchronized (this) {
+            segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            active = activeSegment;
+        }
+
+        boolean[] pastLimit = { false };
+        Consumer<JournalEvent> filtered = event -> {
+            if (pastLimit[0] || event.getSequence() < fromSequence) {
+                return;
+            }
+            if (event.getTimestamp() > timestampLimit) {
+                pastLimit[0] = true;
+                return;
+            }
+            consumer.accept(event);
+        };
+
+        for (int i = 0; i < segments.size() && !pastLimit[0]; i++) {
+            if (i + 1 < segments.size()
+                    && sequenceOf(segments.get(i + 1), SEGMENT_PREFIX, SEGMENT_SUFFIX) <= fromSequence) {
+                continue;
+            }
+            Path segment = segments.get(i);
+            if (segment.equals(active.getPath())) {
+                synchronized (this) {
+                    active.forEach(filtered);
+                }
+            } else {
+                JournalSegment.read(segment, filtered);
+            }
+        }
+    }
+
+    private CirculationState loadSnapshotBefore(long timestampLimit) throws IOException {
+        List<Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path snapshot = snapshots.get(i);
+            String name = snapshot.getFileName().toString();
+            long snapshotTimestamp = Long.parseLong(name.substring(name.lastIndexOf('-') + 1, name.length() - SNAPSHOT_SUFFIX.length()));
+            if (snapshotTimestamp > timestampLimit) {
+                continue;
+            }
+            CirculationState state = readSnapshot(snapshot);
+            if (state != null) {
+                return state;
+            }
+        }
+        return new CirculationState();
+    }
+
+    private CirculationState readSnapshot(Path snapshot) throws IOException {
+        CRC32 crc = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(snapshot)), crc);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                return null;
+            }
+            CirculationState state = CirculationState.readFrom(in);
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                System.out.println("Ignoring corrupt journal snapshot " + snapshot.getFileName());
+                return null;
+            }
+            return state;
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable journal snapshot " + snapshot.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private List<Path> listFiles(String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        files.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return files;
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long sequenceOf(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        String digits = name.substring(prefix.length(), name.length() - suffix.length());
+        int dash = digits.indexOf('-');
+        return Long.parseLong(dash < 0 ? digits : digits.substring(0, dash));
+    }
+}
@@ -1,14 +1,32 @@
 package br.edu.ifba.inf008.shell.model;
 
+import java.util.Objects;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * Fields are plain until a table asks for their property, so the thousands of rows a view never
+ * scrolls to cost no more than a bean. Once a property exists, setters go through it and the one
+ * cell showing that field repaints.
+ */
 public class Book {
 
     private int bookId;
+    private int branchId;
     private String title;
     private String author;
     private String isbn;
     private int year;
     private int copies;
 
+    private StringProperty titleProperty;
+    private StringProperty authorProperty;
+    private StringProperty isbnProperty;
+    private IntegerProperty yearProperty;
+    private IntegerProperty copiesProperty;
+
     public int getBookId() {
         return bookId;
     }
@@ -17,48 +35,131 @@ public class Book {
         this.bookId = bookId;
     }
 
+    /**
+     * The branch whose database holds this row; ids are only unique within a branch.
+     */
+    public int getBranchId() {
+        return branchId;
+    }
+
+    public void setBranchId(int branchId) {
+        this.branchId = branchId;
+    }
+
     public String getTitle() {
-        return title;
+        return titleProperty == null ? title : titleProperty.get();
     }
 
     public void setTitle(String title) {
-        this.title = title;
+        if (titleProperty == null) {
+            this.title = title;
+        } else {
+            titleProperty.set(title);
+        }
+    }
+
+    public StringProperty titleProperty() {
+        if (titleProperty == null) {
+            titleProperty = new SimpleStringProperty(this, "title", title);
+        }
+        return titleProperty;
     }
 
     public String getAuthor() {
-        return author;
+        return authorProperty == null ? author : authorProperty.get();
     }
 
     public void setAuthor(String author) {
-        this.author = author;
+        if (authorProperty == null) {
+            this.author = author;
+        } else {
+            authorProperty.set(author);
+        }
+    }
+
+    public StringProperty authorProperty() {
+        if (authorProperty == null) {
+            authorProperty = new SimpleStringProperty(this, "author", author);
+        }
+        return authorProperty;
     }
 
     public String getIsbn() {
-        return isbn;
+        return isbnProperty == null ? isbn : isbnProperty.get();
     }
 
     public void setIsbn(String isbn) {
-        this.isbn = isbn;
+        if (isbnProperty == null) {
+            this.isbn = isbn;
+        } else {
+            isbnProperty.set(isbn);
+        }
+    }
+
+    public StringProperty isbnProperty() {
+        if (isbnProperty == null) {
+            isbnProperty = new SimpleStringProperty(this, "isbn", isbn);
+        }
+        return isbnProperty;
     }
 
     public int getYear() {
-        return year;
+        return yearProperty == null ? year : yearProperty.get();
     }
 
     public void setYear(int year) {
-        this.year = year;
+        if (yearProperty == null) {
+            this.year = year;
+        } else {
+            yearProperty.set(year);
+        }
+    }
+
+    public IntegerProperty yearProperty() {
+        if (yearProperty == null) {
+            yearProperty = new SimpleIntegerProperty(this, "year", year);
+        }
+        return yearProperty;
     }
 
     public int getCopies() {
-        return copies;
+        return copiesProperty == null ? copies : copiesProperty.get();
     }
 
     public void setCopies(int copies) {
-        this.copies = copies;
+        if (copiesProperty == null) {
+            this.copies = copies;
+        } else {
+            copiesProperty.set(copies);
+        }
+    }
+
+    public IntegerProperty copiesProperty() {
+        if (copiesProperty == null) {
+            copiesProperty = new SimpleIntegerProperty(this, "copies", copies);
+        }
+        return copiesProperty;
+    }
+
+    /**
+     * Takes over the values of a fresh copy of this book, touching only the fields that differ.
+     */
+    public void copyFrom(Book other) {
+        if (!Objects.equals(getTitle(), other.getTitle())) {
+            setTitle(other.getTitle());
+        }
+        if (!Objects.equals(getAuthor(), other.getAuthor())) {
+            setAuthor(other.getAuthor());
+        }
+        if (!Objects.equals(getIsbn(), other.getIsbn())) {
+            setIsbn(other.getIsbn());
+        }
+        setYear(other.getYear());
+        setCopies(other.getCopies());
     }
 
     @Override
     public String toString() {
-        return this.title;
+        return getTitle();
     }
 }
@@ -1,14 +1,25 @@
 package br.edu.ifba.inf008.shell.model;
 
 import java.time.LocalDate;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 
+/**
+ * Properties are created on first use, as in {@link Book}. A loan's user and book never change,
+ * so tables show their fields through {@code getUser().nameProperty()} and the like, and a renamed
+ * user or book is updated in place with {@link User#copyFrom} / {@link Book#copyFrom}.
+ */
 public class Loan {
     private int loanId;
+    private int branchId;
     private User user;
     private Book book;
     private LocalDate loanDate;
     private LocalDate returnDate;
 
+    private ObjectProperty<LocalDate> loanDateProperty;
+    private ObjectProperty<LocalDate> returnDateProperty;
+
     public int getLoanId() {
         return loanId;
     }
@@ -17,6 +28,17 @@ public class Loan {
         this.loanId = loanId;
     }
 
+    /**
+     * The branch whose database holds this row; ids are only unique within a branch.
+     */
+    public int getBranchId() {
+        return branchId;
+    }
+
+    public void setBranchId(int branchId) {
+        this.branchId = branchId;
+    }
+
     public User getUser() {
         return user;
     }
@@ -34,18 +56,40 @@ public class Loan {
     }
 
     public LocalDate getLoanDate() {
-        return loanDate;
+        return loanDateProperty == null ? loanDate : loanDateProperty.get();
     }
 
     public void setLoanDate(LocalDate loanDate) {
-        this.loanDate = loanDate;
+        if (loanDateProperty == null) {
+            this.loanDate = loanDate;
+        } else {
+            loanDateProperty.set(loanDate);
+        }
+    }
+
+    public ObjectProperty<LocalDate> loanDateProperty() {
+        if (loanDateProperty == null) {
+            loanDateProperty = new SimpleObjectProperty<>(this, "loanDate", loanDate);
+        }
+        return loanDateProperty;
     }
 
     public LocalDate getReturnDate() {
-        return returnDate;
+        return returnDateProperty == null ? returnDate : returnDateProperty.get();
     }
 
     public void setReturnDate(LocalDate returnDate) {
-        this.returnDate = returnDate;
+        if (returnDateProperty == null) {
+            this.returnDate = returnDate;
+        } else {
+            returnDateProperty.set(returnDate);
+        }
+    }
+
+    public ObjectProperty<LocalDate> returnDateProperty() {
+        if (returnDateProperty == null) {
+            returnDateProperty = new SimpleObjectProperty<>(this, "returnDate", returnDate);
+        }
+        return returnDateProperty;
     }
 }
\ No newline at end of file
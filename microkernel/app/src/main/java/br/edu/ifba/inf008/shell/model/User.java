@@ -1,20 +1,33 @@
 package br.edu.ifba.inf008.shell.model;
 
 import java.time.LocalDateTime;
+import java.util.Objects;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 
+/**
+ * Properties are created on first use, as in {@link Book}.
+ */
 public class User {
 
     private int userId;
+    private int branchId;
     private String name;
     private String email;
     private LocalDateTime registeredAt;
 
+    private StringProperty nameProperty;
+    private StringProperty emailProperty;
+    private ObjectProperty<LocalDateTime> registeredAtProperty;
+
     public String getName() {
-        return name;
+        return nameProperty == null ? name : nameProperty.get();
     }
 
     public String getEmail() {
-        return email;
+        return emailProperty == null ? email : emailProperty.get();
     }
 
     public int getUserId() {
@@ -25,24 +38,83 @@ public class User {
         this.userId = userId;
     }
 
+    /**
+     * The branch whose database holds this row; ids are only unique within a branch.
+     */
+    public int getBranchId() {
+        return branchId;
+    }
+
+    public void setBranchId(int branchId) {
+        this.branchId = branchId;
+    }
+
     public void setName(String name) {
-        this.name = name;
+        if (nameProperty == null) {
+            this.name = name;
+        } else {
+            nameProperty.set(name);
+        }
+    }
+
+    public StringProperty nameProperty() {
+        if (nameProperty == null) {
+            nameProperty = new SimpleStringProperty(this, "name", name);
+        }
+        return nameProperty;
     }
 
     public void setEmail(String email) {
-        this.email = email;
+        if (emailProperty == null) {
+            this.email = email;
+        } else {
+            emailProperty.set(email);
+        }
+    }
+
+    public StringProperty emailProperty() {
+        if (emailProperty == null) {
+            emailProperty = new SimpleStringProperty(this, "email", email);
+        }
+        return emailProperty;
     }
 
     public void setRegisteredAt(LocalDateTime registeredAt) {
-        this.registeredAt = registeredAt;
+        if (registeredAtProperty == null) {
+            this.registeredAt = registeredAt;
+        } else {
+            registeredAtProperty.set(registeredAt);
+        }
     }
 
     public LocalDateTime getRegisteredAt() {
-        return registeredAt;
+        return registeredAtProperty == null ? registeredAt : registeredAtProperty.get();
+    }
+
+    public ObjectProperty<LocalDateTime> registeredAtProperty() {
+        if (registeredAtProperty == null) {
+            registeredAtProperty = new SimpleObjectProperty<>(this, "registeredAt", registeredAt);
+        }
+        return registeredAtProperty;
+    }
+
+    /**
+     * Takes over the values of a fresh copy of this user, touching only the fields that differ.
+     */
+    public void copyFrom(User other) {
+        if (!Objects.equals(getName(), other.getName())) {
+            setName(other.getName());
+        }
+        if (!Objects.equals(getEmail(), other.getEmail())) {
+            setEmail(other.getEmail());
+        }
+        if (!Objects.equals(getRegisteredAt(), other.getRegisteredAt())) {
+            setRegisteredAt(other.getRegisteredAt());
+        }
     }
 
     @Override
     public String toString() {
-        return this.name;
+        return getName();
     }
 }
@@ -0,0 +1,71 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Appends every message to {@code <directory>/notifications-<date>.txt}, for desks without a mail
+ * server and for checking what would have been sent. All workers share one instance, so writes are
+ * synchronized; the file is kept open and only flushed once per batch.
+ */
+public class FileTransport implements NotificationTransport {
+    private final Path directory;
+    private LocalDate openDate;
+    private Writer writer;
+
+    public FileTransport(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void send(Notification notification) throws IOException {
+        Writer out = writerForToday();
+        out.write("=== " + notification.getId() + " " + LocalDateTime.now() + "\n");
+        out.write("To: " + notification.getRecipientName() + " <" + notification.getRecipient() + ">\n");
+        out.write("Subject: " + notification.getSubject() + "\n\n");
+        out.write(notification.getBody());
+        out.write(notification.getBody().endsWith("\n") ? "\n" : "\n\n");
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Closes today's file; the next message opens it again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "file:" + directory;
+    }
+
+    private Writer writerForToday() throws IOException {
+        LocalDate today = LocalDate.now();
+        if (writer == null || !today.equals(openDate)) {
+            close();
+            Files.createDirectories(directory);
+            writer = new BufferedWriter(Files.newBufferedWriter(directory.resolve("notifications-" + today + ".txt"),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            openDate = today;
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,67 @@
+package br.edu.ifba.inf008.shell.notify;
+
+/**
+ * A rendered message, ready for a {@link NotificationTransport}. The id is the outbox row's, so a
+ * message sent again after a failed attempt can be recognised as the same one.
+ */
+public class Notification {
+    private static final int MAX_ADDRESS_LENGTH = 254;
+    // Characters with a meaning in an SMTP command or a header; "local@domain" needs none of them.
+    private static final String ADDRESS_SPECIALS = "<>()[]\\,;:\"";
+
+    private final long id;
+    private final String recipient;
+    private final String recipientName;
+    private final String subject;
+    private final String body;
+
+    public Notification(long id, String recipient, String recipientName, String subject, String body) {
+        this.id = id;
+        this.recipient = recipient;
+        this.recipientName = recipientName;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    /**
+     * Whether {@code address} is a plain {@code local@domain} address that can go into
+     * {@code RCPT TO} and a header as it is. Users' emails are typed in by staff, so one with a
+     * line break or an angle bracket would otherwise add commands or headers to the message.
+     */
+    public static boolean isDeliverable(String address) {
+        if (address == null || address.isEmpty() || address.length() > MAX_ADDRESS_LENGTH) {
+            return false;
+        }
+        int at = address.indexOf('@');
+        if (at <= 0 || at != address.lastIndexOf('@') || at == address.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c <= ' ' || c > '~' || ADDRESS_SPECIALS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getRecipientName() {
+        return recipientName;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
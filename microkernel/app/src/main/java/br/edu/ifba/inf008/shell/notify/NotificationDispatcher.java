@@ -0,0 +1,435 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends what {@link Outbox} collected. Each worker claims up to {@code batchSize} due rows with
+ * {@code SKIP LOCKED}, so workers (and other app instances) never pick the same row, and leases
+ * them by moving {@code not_before} a few minutes ahead: rows of a worker that dies are picked up
+ * again once the lease runs out. It then reads everything the templates need in one query, sends
+ * the batch over one transport connection and records the outcome with one statement per outcome.
+ *
+ * A notification is cancelled instead of sent when its user was deleted, its loan is gone, or it
+ * is a due reminder for a book already returned; returns therefore never touch the outbox rows of
+ * the loan. A failed send is retried with exponential backoff and given up after
+ * {@code maxAttempts}. Delivery is at least once: a message sent just before a crash is sent again.
+ *
+ * {@code -Dlibrary.notifications.transport} is {@code off} (default), {@code file}
+ * ({@code ./notifications}), {@code file:<directory>}, {@code smtp://host:port}, or the name of a
+ * {@link NotificationTransport} class. Only the processes that set it send; checkouts on the other
+ * desks still queue their messages in the outbox for them. {@code -Dlibrary.notifications.batchSize} (default 200),
+ * {@code .workers} (default 2), {@code .pollMillis} (default 2000), {@code .maxAttempts} (default 8),
+ * {@code .keepDays} (default 30) and {@code .from} (default {@code library@localhost}) tune it.
+ */
+public class NotificationDispatcher {
+    private static final int BATCH_SIZE = Integer.getInteger("library.notifications.batchSize", 200);
+    private static final int WORKERS = Integer.getInteger("library.notifications.workers", 2);
+    private static final long POLL_MILLIS = Long.getLong("library.notifications.pollMillis", 2000);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("library.notifications.maxAttempts", 8);
+    private static final int KEEP_DAYS = Integer.getInteger("library.notifications.keepDays", 30);
+    private static final String FROM = System.getProperty("library.notifications.from", "library@localhost");
+    private static final int LEASE_SECONDS = 120;
+    private static final long RETRY_BASE_SECONDS = 30;
+    private static final long RETRY_MAX_SECONDS = TimeUnit.HOURS.toSeconds(6);
+    private static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final String TABLE_NOT_FOUND = "42S02";
+
+    private static final AtomicLong sent = new AtomicLong();
+    private static final AtomicLong retried = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong cancelled = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong nextCleanup = new AtomicLong();
+    private static final AtomicBoolean tableMissing = new AtomicBoolean();
+    private static volatile long lastBatchMillis;
+
+    private static ExecutorService workers;
+    private static String transportDescription = "off";
+    private static Map<NotificationKind, NotificationTemplate> templates;
+
+    private NotificationDispatcher() {
+    }
+
+    /**
+     * Starts the workers, unless notifications are off. Nothing here waits for the database; the
+     * workers stop by themselves if it has no outbox table.
+     */
+    public static synchronized void start() {
+        if (workers != null) {
+            return;
+        }
+        String setting = System.getProperty("library.notifications.transport", "off");
+        if ("off".equals(setting)) {
+            return;
+        }
+        Supplier<NotificationTransport> factory;
+        try {
+            templates = loadTemplates();
+            factory = transportFactory(setting);
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            System.out.println("Notifications off: " + e.getMessage());
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(WORKERS, runnable -> {
+            Thread thread = new Thread(runnable, "notification-dispatcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (int i = 0; i < WORKERS; i++) {
+            workers.execute(() -> work(factory.get()));
+        }
+    }
+
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("transport", transportDescription);
+        snapshot.put("sent", sent.get());
+        snapshot.put("retried", retried.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("cancelled", cancelled.get());
+        snapshot.put("batches", batches.get());
+        snapshot.put("lastBatchMillis", lastBatchMillis);
+        return snapshot;
+    }
+
+    private static Map<NotificationKind, NotificationTemplate> loadTemplates() throws IOException {
+        Map<NotificationKind, NotificationTemplate> loaded = new EnumMap<>(NotificationKind.class);
+        for (NotificationKind kind : NotificationKind.values()) {
+            loaded.put(kind, NotificationTemplate.load(kind.templateResource()));
+        }
+        return loaded;
+    }
+
+    private static Supplier<NotificationTransport> transportFactory(String setting) throws ReflectiveOperationException {
+        if (setting.equals("file") || setting.startsWith("file:")) {
+            String directory = setting.equals("file") ? "./notifications" : setting.substring("file:".length());
+            FileTransport shared = new FileTransport(Paths.get(directory));
+            transportDescription = shared.describe();
+            return () -> shared;
+        }
+        if (setting.startsWith("smtp://")) {
+            String address = setting.substring("smtp://".length());
+            int colon = address.lastIndexOf(':');
+            String host = colon < 0 ? address : address.substring(0, colon);
+            int port = colon < 0 ? 25 : Integer.parseInt(address.substring(colon + 1));
+            if (!Notification.isDeliverable(FROM)) {
+                throw new IllegalArgumentException("library.notifications.from is not a valid address: " + FROM);
+            }
+            transportDescription = "smtp://" + host + ":" + port;
+            return () -> new SmtpTransport(host, port, FROM);
+        }
+        Class<? extends NotificationTransport> type = Class.forName(setting).asSubclass(NotificationTransport.class);
+        transportDescription = type.getName();
+        type.getConstructor();
+        return () -> {
+            try {
+                return type.getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create " + type.getName(), e);
+            }
+        };
+    }
+
+    private static void work(NotificationTransport transport) {
+        try (NotificationTransport owned = transport) {
+            while (!Thread.currentThread().isInterrupted()) {
+                int claimed = 0;
+                try {
+                    claimed = dispatchBatch(owned);
+                    cleanUpIfDue();
+                } catch (SQLException e) {
+                    if (TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                        if (!tableMissing.getAndSet(true)) {
+                            System.out.println("Notifications off: the database has no notification_outbox table.");
+                        }
+                        return;
+                    }
+                    System.out.println("Notification dispatch skipped: " + e.getMessage());
+                }
+                if (claimed < BATCH_SIZE) {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Could not close notification transport: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Claims, sends and settles one batch.
+     *
+     * @return the number of rows claimed
+     */
+    private static int dispatchBatch(NotificationTransport transport) throws SQLException {
+        List<Long> ids = claim();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        long started = System.nanoTime();
+        Map<Long, String> failures = new HashMap<>();
+        List<Long> cancelledIds = new ArrayList<>();
+        List<Long> sentIds = new ArrayList<>();
+        Map<Long, Integer> attempts = new HashMap<>();
+
+        for (Pending pending : load(ids)) {
+            attempts.put(pending.id, pending.attempts);
+            if (pending.isObsolete()) {
+                cancelledIds.add(pending.id);
+                continue;
+            }
+            if (!Notification.isDeliverable(pending.email)) {
+                // Retrying cannot help; the row is left FAILED for someone to fix the address.
+                attempts.put(pending.id, MAX_ATTEMPTS);
+                failures.put(pending.id, "Invalid email address.");
+                continue;
+            }
+            try {
+                transport.send(pending.render());
+                sentIds.add(pending.id);
+            } catch (IOException | RuntimeException e) {
+                failures.put(pending.id, describe(e));
+            }
+        }
+        if (!sentIds.isEmpty()) {
+            try {
+                transport.flush();
+            } catch (IOException e) {
+                for (long id : sentIds) {
+                    failures.put(id, describe(e));
+                }
+                sentIds.clear();
+            }
+        }
+
+        settle(sentIds, cancelledIds, failures, attempts);
+        batches.incrementAndGet();
+        lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        return ids.size();
+    }
+
+    /**
+     * Picks due rows no other worker holds and leases them, in one short transaction.
+     */
+    private static List<Long> claim() throws SQLException {
+        String selectSql = "SELECT outbox_id FROM notification_outbox WHERE status IN ('PENDING', 'SENDING') " +
+                           "AND not_before <= CURRENT_TIMESTAMP(3) ORDER BY not_before LIMIT ? FOR UPDATE SKIP LOCKED";
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<Long> ids = new ArrayList<>(BATCH_SIZE);
+                try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+                    pstmt.setInt(1, BATCH_SIZE);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getLong(1));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.rollback();
+                    return ids;
+                }
+                String leaseSql = "UPDATE notification_outbox SET status = 'SENDING', attempts = attempts + 1, " +
+                                  "not_before = CURRENT_TIMESTAMP(3) + INTERVAL " + LEASE_SECONDS + " SECOND " +
+                                  "WHERE outbox_id IN (" + placeholders(ids.size()) + ")";
+                executeWithIds(conn, leaseSql, ids);
+                conn.commit();
+                return ids;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static List<Pending> load(List<Long> ids) throws SQLException {
+        String sql = "SELECT o.outbox_id, o.kind, o.attempts, u.name, u.email, u.deleted_at, b.book_id, b.title, b.author, " +
+                     "l.loan_id, l.loan_date, l.return_date FROM notification_outbox o " +
+                     "LEFT JOIN users u ON u.user_id = o.user_id " +
+                     "LEFT JOIN books b ON b.book_id = o.book_id " +
+                     "LEFT JOIN loans l ON l.loan_id = o.loan_id " +
+                     "WHERE o.outbox_id IN (" + placeholders(ids.size()) + ")";
+        List<Pending> rows = new ArrayList<>(ids.size());
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setLong(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Pending pending = new Pending();
+                    pending.id = rs.getLong("outbox_id");
+                    pending.kind = NotificationKind.valueOf(rs.getString("kind"));
+                    pending.attempts = rs.getInt("attempts");
+                    pending.name = rs.getString("name");
+                    pending.email = rs.getString("email");
+                    pending.userDeleted = rs.getTimestamp("deleted_at") != null;
+                    rs.getInt("book_id");
+                    pending.bookFound = !rs.wasNull();
+                    pending.title = rs.getString("title");
+                    pending.author = rs.getString("author");
+                    rs.getInt("loan_id");
+                    pending.loanFound = !rs.wasNull();
+                    Date loanDate = rs.getDate("loan_date");
+                    pending.loanDate = loanDate == null ? null : loanDate.toLocalDate();
+                    Date returnDate = rs.getDate("return_date");
+                    pending.returnDate = returnDate == null ? null : returnDate.toLocalDate();
+                    rows.add(pending);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Records the batch: sent and cancelled rows with one statement each, failures as one JDBC batch
+     * since each has its own backoff and error.
+     */
+    private static void settle(List<Long> sentIds, List<Long> cancelledIds, Map<Long, String> failures,
+                               Map<Long, Integer> attempts) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (!sentIds.isEmpty()) {
+                executeWithIds(conn, "UPDATE notification_outbox SET status = 'SENT', sent_at = CURRENT_TIMESTAMP(3), " +
+                                     "last_error = NULL WHERE outbox_id IN (" + placeholders(sentIds.size()) + ")", sentIds);
+                sent.addAndGet(sentIds.size());
+            }
+            if (!cancelledIds.isEmpty()) {
+                executeWithIds(conn, "UPDATE notification_outbox SET status = 'CANCELLED' " +
+                                     "WHERE outbox_id IN (" + placeholders(cancelledIds.size()) + ")", cancelledIds);
+                cancelled.addAndGet(cancelledIds.size());
+            }
+            if (failures.isEmpty()) {
+                return;
+            }
+            String failSql = "UPDATE notification_outbox SET status = ?, not_before = ?, last_error = ? WHERE outbox_id = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(failSql)) {
+                for (Map.Entry<Long, String> failure : failures.entrySet()) {
+                    int attempt = attempts.getOrDefault(failure.getKey(), MAX_ATTEMPTS);
+                    boolean givenUp = attempt >= MAX_ATTEMPTS;
+                    pstmt.setString(1, givenUp ? "FAILED" : "PENDING");
+                    pstmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now().plusSeconds(backoffSeconds(attempt))));
+                    pstmt.setString(3, failure.getValue());
+                    pstmt.setLong(4, failure.getKey());
+                    pstmt.addBatch();
+                    (givenUp ? failed : retried).incrementAndGet();
+                }
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * 30 s after the first attempt, doubling up to six hours.
+     */
+    private static long backoffSeconds(int attempt) {
+        int doublings = Math.min(Math.max(attempt - 1, 0), 20);
+        return Math.min(RETRY_BASE_SECONDS << doublings, RETRY_MAX_SECONDS);
+    }
+
+    /**
+     * Once an hour, on whichever worker gets there first, deletes sent and cancelled rows older
+     * than {@code keepDays} in chunks. Failed rows are kept for someone to look at.
+     */
+    private static void cleanUpIfDue() throws SQLException {
+        long now = System.currentTimeMillis();
+        long due = nextCleanup.get();
+        if (now < due || !nextCleanup.compareAndSet(due, now + CLEANUP_INTERVAL_MILLIS)) {
+            return;
+        }
+        String sql = "DELETE FROM notification_outbox WHERE status IN ('SENT', 'CANCELLED') " +
+                     "AND created_at < CURRENT_TIMESTAMP(3) - INTERVAL " + KEEP_DAYS + " DAY LIMIT " + BATCH_SIZE;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            while (pstmt.executeUpdate() == BATCH_SIZE) {
+                // Autocommit: every chunk is its own short transaction.
+            }
+        }
+    }
+
+    private static void executeWithIds(Connection conn, String sql, List<Long> ids) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setLong(i + 1, ids.get(i));
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static String describe(Exception e) {
+        String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+
+    private static class Pending {
+        private long id;
+        private NotificationKind kind;
+        private int attempts;
+        private String name;
+        private String email;
+        private boolean userDeleted;
+        private boolean bookFound;
+        private String title;
+        private String author;
+        private boolean loanFound;
+        private LocalDate loanDate;
+        private LocalDate returnDate;
+
+        boolean isObsolete() {
+            if (name == null || userDeleted || email == null || email.isBlank() || !bookFound || !loanFound) {
+                return true;
+            }
+            return kind == NotificationKind.DUE_REMINDER && returnDate != null;
+        }
+
+        Notification render() {
+            Map<String, String> values = new HashMap<>();
+            values.put("name", name);
+            values.put("email", email);
+            values.put("title", title);
+            values.put("author", author == null ? "" : author);
+            values.put("loanDate", loanDate.toString());
+            values.put("dueDate", Outbox.dueDate(loanDate).toString());
+            if (returnDate != null) {
+                values.put("returnDate", returnDate.toString());
+            }
+            NotificationTemplate template = templates.get(kind);
+            return new Notification(id, email, name, template.renderSubject(values), template.renderBody(values));
+        }
+    }
+}
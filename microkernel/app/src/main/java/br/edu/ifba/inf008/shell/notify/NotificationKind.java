@@ -0,0 +1,15 @@
+package br.edu.ifba.inf008.shell.notify;
+
+/**
+ * What a notification is about. Each kind is rendered from the template
+ * {@code /notifications/<kind in lower case>.txt} on the class path.
+ */
+public enum NotificationKind {
+    LOAN_RECEIPT,
+    DUE_REMINDER,
+    RETURN_RECEIPT;
+
+    String templateResource() {
+        return "/notifications/" + name().toLowerCase() + ".txt";
+    }
+}
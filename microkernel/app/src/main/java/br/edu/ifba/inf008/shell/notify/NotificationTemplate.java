@@ -0,0 +1,84 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A plain-text template whose first line is {@code Subject: ...}. Placeholders are written
+ * {@code ${name}}; the text is split into literal and placeholder parts once, when loaded, so
+ * rendering a batch is only string appends.
+ */
+public class NotificationTemplate {
+    private static final String SUBJECT_PREFIX = "Subject:";
+
+    private final List<String> subject;
+    private final List<String> body;
+
+    private NotificationTemplate(List<String> subject, List<String> body) {
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public static NotificationTemplate load(String resource) throws IOException {
+        try (InputStream in = NotificationTemplate.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing notification template " + resource);
+            }
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+            int lineEnd = text.indexOf('\n');
+            String firstLine = lineEnd < 0 ? text : text.substring(0, lineEnd);
+            if (!firstLine.startsWith(SUBJECT_PREFIX)) {
+                throw new IOException("Notification template " + resource + " must start with '" + SUBJECT_PREFIX + "'.");
+            }
+            String body = lineEnd < 0 ? "" : text.substring(lineEnd + 1);
+            return new NotificationTemplate(compile(firstLine.substring(SUBJECT_PREFIX.length()).trim()), compile(body));
+        }
+    }
+
+    /**
+     * Even indexes are literal text, odd indexes are placeholder names.
+     */
+    private static List<String> compile(String text) {
+        List<String> parts = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int start = text.indexOf("${", position);
+            int end = start < 0 ? -1 : text.indexOf('}', start);
+            if (end < 0) {
+                parts.add(text.substring(position));
+                return parts;
+            }
+            parts.add(text.substring(position, start));
+            parts.add(text.substring(start + 2, end));
+            position = end + 1;
+        }
+    }
+
+    public String renderSubject(Map<String, String> values) {
+        return render(subject, values);
+    }
+
+    public String renderBody(Map<String, String> values) {
+        return render(body, values);
+    }
+
+    private static String render(List<String> parts, Map<String, String> values) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            if (i % 2 == 0) {
+                out.append(parts.get(i));
+            } else {
+                String value = values.get(parts.get(i));
+                if (value == null) {
+                    throw new IllegalArgumentException("No value for ${" + parts.get(i) + "}.");
+                }
+                out.append(value);
+            }
+        }
+        return out.toString();
+    }
+}
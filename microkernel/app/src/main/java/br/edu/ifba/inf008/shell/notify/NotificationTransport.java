@@ -0,0 +1,32 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Delivers rendered notifications. Each dispatcher worker asks {@link NotificationDispatcher}'s
+ * factory for a transport and keeps it, so an implementation may hold a connection open between
+ * messages and batches. A new instance is made per worker unless the factory shares one, as it
+ * does for {@link FileTransport}.
+ *
+ * A third-party transport is a public class with a no-argument constructor, named in
+ * {@code -Dlibrary.notifications.transport}.
+ */
+public interface NotificationTransport extends Closeable {
+
+    /**
+     * Sends one message. Throwing fails only this message, which is retried later.
+     */
+    void send(Notification notification) throws IOException;
+
+    /**
+     * Called after every batch; messages are only counted as sent once this returns.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Shown under {@code notifications} in {@code GET /api/metrics}.
+     */
+    String describe();
+}
@@ -0,0 +1,85 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The transactional outbox: circulation changes add their notifications to
+ * {@code notification_outbox} on the connection of the transaction that makes the change, so a
+ * notification exists if and only if the change committed. Sending is left to
+ * {@link NotificationDispatcher}; the desk pays for one multi-row insert and never waits on mail.
+ *
+ * Loans are due {@code -Dlibrary.loans.periodDays} (default 14) after the loan date; the reminder
+ * goes out {@code -Dlibrary.notifications.remindDaysBefore} (default 2) days before, at 9:00.
+ */
+public class Outbox {
+    public static final int LOAN_PERIOD_DAYS = Integer.getInteger("library.loans.periodDays", 14);
+    private static final int REMIND_DAYS_BEFORE = Integer.getInteger("library.notifications.remindDaysBefore", 2);
+    private static final LocalTime REMINDER_TIME = LocalTime.of(9, 0);
+    private static final String TABLE_NOT_FOUND = "42S02";
+
+    private static volatile Boolean available;
+
+    private Outbox() {
+    }
+
+    public static LocalDate dueDate(LocalDate loanDate) {
+        return loanDate.plusDays(LOAN_PERIOD_DAYS);
+    }
+
+    static LocalDateTime reminderTime(LocalDate loanDate) {
+        return dueDate(loanDate).minusDays(REMIND_DAYS_BEFORE).atTime(REMINDER_TIME);
+    }
+
+    /**
+     * Adds the entries with one statement on {@code conn}, inside the caller's transaction. Does
+     * nothing on databases created before the outbox table was added.
+     */
+    public static void add(Connection conn, Collection<OutboxEntry> entries) throws SQLException {
+        if (entries.isEmpty() || !isAvailable(conn)) {
+            return;
+        }
+        String sql = "INSERT INTO notification_outbox (kind, user_id, loan_id, book_id, not_before) VALUES " +
+                     String.join(",", Collections.nCopies(entries.size(), "(?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP(3)))"));
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (OutboxEntry entry : entries) {
+                pstmt.setString(index++, entry.getKind().name());
+                pstmt.setInt(index++, entry.getUserId());
+                pstmt.setInt(index++, entry.getLoanId());
+                pstmt.setInt(index++, entry.getBookId());
+                pstmt.setTimestamp(index++, entry.getNotBefore() == null ? null : Timestamp.valueOf(entry.getNotBefore()));
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * True when the schema has the outbox table; the answer is remembered once the database has
+     * given one. Asks on the caller's connection, so the first checkout needs no second one. Any
+     * error other than a missing table is thrown: the notification must not be dropped silently.
+     */
+    private static boolean isAvailable(Connection conn) throws SQLException {
+        if (available != null) {
+            return available;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeQuery("SELECT 1 FROM notification_outbox LIMIT 1").close();
+            available = true;
+        } catch (SQLException e) {
+            if (!TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                throw e;
+            }
+            available = false;
+        }
+        return available;
+    }
+}
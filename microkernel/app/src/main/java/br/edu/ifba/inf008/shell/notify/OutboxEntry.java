@@ -0,0 +1,59 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A notification to be sent once {@code notBefore} has passed, or as soon as possible when it is
+ * null. Only ids are stored; names, titles and dates are read when it is sent, so a reminder
+ * reflects the loan as it is by then.
+ */
+public class OutboxEntry {
+    private final NotificationKind kind;
+    private final int userId;
+    private final int loanId;
+    private final int bookId;
+    private final LocalDateTime notBefore;
+
+    public OutboxEntry(NotificationKind kind, int userId, int loanId, int bookId, LocalDateTime notBefore) {
+        this.kind = kind;
+        this.userId = userId;
+        this.loanId = loanId;
+        this.bookId = bookId;
+        this.notBefore = notBefore;
+    }
+
+    /**
+     * A receipt now and a reminder shortly before the book is due.
+     */
+    public static List<OutboxEntry> checkout(int loanId, int userId, int bookId, LocalDate loanDate) {
+        return List.of(
+                new OutboxEntry(NotificationKind.LOAN_RECEIPT, userId, loanId, bookId, null),
+                new OutboxEntry(NotificationKind.DUE_REMINDER, userId, loanId, bookId, Outbox.reminderTime(loanDate)));
+    }
+
+    public static List<OutboxEntry> returned(int loanId, int userId, int bookId) {
+        return List.of(new OutboxEntry(NotificationKind.RETURN_RECEIPT, userId, loanId, bookId, null));
+    }
+
+    public NotificationKind getKind() {
+        return kind;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getLoanId() {
+        return loanId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public LocalDateTime getNotBefore() {
+        return notBefore;
+    }
+}
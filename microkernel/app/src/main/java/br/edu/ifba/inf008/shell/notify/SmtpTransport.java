@@ -0,0 +1,156 @@
+package br.edu.ifba.inf008.shell.notify;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+
+/**
+ * A minimal SMTP client for a relay that needs no authentication or TLS, such as a local mail
+ * catcher or the branch's internal relay. One connection is kept open per worker and reused for
+ * every message; after an error it is dropped and the next message opens a new one.
+ */
+public class SmtpTransport implements NotificationTransport {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final int READ_TIMEOUT_MILLIS = 15_000;
+
+    private final String host;
+    private final int port;
+    private final String from;
+
+    private Socket socket;
+    private BufferedReader in;
+    private Writer out;
+
+    public SmtpTransport(String host, int port, String from) {
+        if (!Notification.isDeliverable(from)) {
+            throw new IllegalArgumentException("Invalid sender address: " + from);
+        }
+        this.host = host;
+        this.port = port;
+        this.from = from;
+    }
+
+    @Override
+    public void send(Notification notification) throws IOException {
+        // Checked before anything is written, so the connection stays usable for the next message.
+        if (!Notification.isDeliverable(notification.getRecipient())) {
+            throw new IllegalArgumentException("Invalid recipient address.");
+        }
+        try {
+            if (socket == null) {
+                connect();
+            }
+            command("MAIL FROM:<" + from + ">", 250);
+            command("RCPT TO:<" + notification.getRecipient() + ">", 250);
+            command("DATA", 354);
+            out.write("From: " + from + "\r\n");
+            out.write("To: " + encodeHeader(notification.getRecipientName()) + " <" + notification.getRecipient() + ">\r\n");
+            out.write("Subject: " + encodeHeader(notification.getSubject()) + "\r\n");
+            out.write("Date: " + ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME) + "\r\n");
+            out.write("Message-ID: <notification-" + notification.getId() + "@" + host + ">\r\n");
+            out.write("MIME-Version: 1.0\r\n");
+            out.write("Content-Type: text/plain; charset=UTF-8\r\n");
+            out.write("Content-Transfer-Encoding: 8bit\r\n\r\n");
+            for (String line : notification.getBody().split("\r?\n", -1)) {
+                // Dot-stuffing: a line starting with '.' would otherwise end the message early.
+                out.write(line.startsWith(".") ? "." + line : line);
+                out.write("\r\n");
+            }
+            command(".", 250);
+        } catch (IOException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                command("QUIT", 221);
+            } catch (IOException e) {
+                // The server may already have gone; the socket is closed either way.
+            }
+            disconnect();
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "smtp://" + host + ":" + port;
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        expect(220);
+        command("HELO " + socket.getLocalAddress().getHostName(), 250);
+    }
+
+    private void disconnect() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // Nothing left to release.
+        }
+        socket = null;
+        in = null;
+        out = null;
+    }
+
+    private void command(String line, int expectedCode) throws IOException {
+        out.write(line);
+        out.write("\r\n");
+        out.flush();
+        expect(expectedCode);
+    }
+
+    /**
+     * Reads a reply, including every line of a multi-line one ({@code 250-...} up to {@code 250 ...}).
+     */
+    private void expect(int expectedCode) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                throw new IOException("SMTP server " + host + ":" + port + " closed the connection.");
+            }
+        } while (line.length() > 3 && line.charAt(3) == '-');
+        int code;
+        try {
+            code = Integer.parseInt(line.substring(0, Math.min(3, line.length())));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected SMTP reply: " + line);
+        }
+        // 251 (user not local, will forward) is as good as 250.
+        if (code != expectedCode && !(expectedCode == 250 && code == 251)) {
+            throw new IOException("SMTP server answered: " + line);
+        }
+    }
+
+    /**
+     * RFC 2047 encoding for headers that are not plain ASCII, such as names with accents.
+     */
+    private static String encodeHeader(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 126 || value.charAt(i) < 32) {
+                return "=?UTF-8?B?" + Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)) + "?=";
+            }
+        }
+        return value;
+    }
+}
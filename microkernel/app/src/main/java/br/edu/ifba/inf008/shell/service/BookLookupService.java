@@ -0,0 +1,34 @@
+package br.edu.ifba.inf008.shell.service;
+
+import br.edu.ifba.inf008.shell.model.Book;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to the catalog, published by the book management plugin so other plugins do not
+ * keep their own copies of its queries.
+ */
+public interface BookLookupService {
+
+    /**
+     * @return the book, or null if there is none with that id
+     */
+    Book getBook(int bookId) throws SQLException;
+
+    /**
+     * @return the book, or null if there is none with that ISBN
+     */
+    Book getBookByIsbn(String isbn) throws SQLException;
+
+    /**
+     * Looks up all of {@code bookIds} in one query. Ids without a book are missing from the map.
+     */
+    Map<Integer, Book> getBooks(Collection<Integer> bookIds) throws SQLException;
+
+    /**
+     * Books with at least one copy on the shelf, by title.
+     */
+    List<Book> getAvailableBooks() throws SQLException;
+}
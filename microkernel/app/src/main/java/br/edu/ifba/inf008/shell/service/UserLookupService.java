@@ -0,0 +1,33 @@
+package br.edu.ifba.inf008.shell.service;
+
+import br.edu.ifba.inf008.shell.model.User;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to library users, published by the user management plugin.
+ */
+public interface UserLookupService {
+
+    /**
+     * @return the user, or null if there is none with that id
+     */
+    User getUser(int userId) throws SQLException;
+
+    /**
+     * @return the user, or null if there is none with that email
+     */
+    User getUserByEmail(String email) throws SQLException;
+
+    /**
+     * Looks up all of {@code userIds} in one query. Ids without a user are missing from the map.
+     */
+    Map<Integer, User> getUsers(Collection<Integer> userIds) throws SQLException;
+
+    /**
+     * Every user, by name.
+     */
+    List<User> getAllUsers() throws SQLException;
+}
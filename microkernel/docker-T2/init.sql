@@ -1,43 +1,184 @@
 CREATE DATABASE IF NOT EXISTS bookstore;
 USE bookstore;
 
+-- Each branch has its own database with this schema (see ShardMap); branch_id records which one
+-- a row belongs to, since ids are only unique within a branch. set-branch.sh sets the default.
+--
+-- Deleting a user or book only sets deleted_at; DeletionPurger archives its returned loans and
+-- removes its copies and the row itself later, in small chunks. Email and ISBN are unique among rows not deleted, so a
+-- deleted patron or title can be registered again before the purge.
 CREATE TABLE users (
     user_id INT AUTO_INCREMENT PRIMARY KEY,
+    branch_id SMALLINT NOT NULL DEFAULT 1,
     name VARCHAR(100) NOT NULL,
-    email VARCHAR(100) UNIQUE NOT NULL,
-    registered_at DATETIME DEFAULT CURRENT_TIMESTAMP
+    email VARCHAR(100) NOT NULL,
+    registered_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    deleted_at DATETIME,
+    live_email VARCHAR(100) AS (IF(deleted_at IS NULL, email, NULL)) PERSISTENT,
+    UNIQUE KEY uq_users_email (live_email),
+    INDEX idx_users_deleted_at (deleted_at)
 );
 
 CREATE TABLE books (
     book_id INT AUTO_INCREMENT PRIMARY KEY,
+    branch_id SMALLINT NOT NULL DEFAULT 1,
     title VARCHAR(200) NOT NULL,
     author VARCHAR(100) NOT NULL,
-    isbn VARCHAR(20) UNIQUE NOT NULL,
+    isbn VARCHAR(20) NOT NULL,
     published_year INT,
-    copies_available INT DEFAULT 0
+    deleted_at DATETIME,
+    live_isbn VARCHAR(20) AS (IF(deleted_at IS NULL, isbn, NULL)) PERSISTENT,
+    UNIQUE KEY uq_books_isbn (live_isbn),
+    INDEX idx_books_deleted_at (deleted_at)
+);
+
+-- One row per physical copy. A title's available copies are counted from here (see
+-- CopyInventory) instead of being kept in a counter on books, which every checkout and return of
+-- that title would have to lock; checkouts claim any free copy with SKIP LOCKED.
+CREATE TABLE book_copies (
+    copy_id INT AUTO_INCREMENT PRIMARY KEY,
+    book_id INT NOT NULL,
+    barcode VARCHAR(40) UNIQUE NOT NULL,
+    status ENUM('AVAILABLE', 'ON_LOAN', 'WITHDRAWN') NOT NULL DEFAULT 'AVAILABLE',
+    -- Covers both the claim and the per-title count.
+    INDEX idx_book_copies_status (book_id, status),
+    FOREIGN KEY (book_id) REFERENCES books(book_id) ON DELETE CASCADE
 );
 
 CREATE TABLE loans (
     loan_id INT AUTO_INCREMENT PRIMARY KEY,
+    branch_id SMALLINT NOT NULL DEFAULT 1,
     user_id INT NOT NULL,
     book_id INT NOT NULL,
+    -- The copy lent; NULL for loans recorded before copies were tracked.
+    copy_id INT,
     loan_date DATE NOT NULL,
     return_date DATE,
+    -- Date-range reports query one month at a time.
+    INDEX idx_loans_loan_date (loan_date),
+    -- Lets the archiver find returned loans past the hot window without a full scan.
+    INDEX idx_loans_return_date (return_date),
     FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE,
-    FOREIGN KEY (book_id) REFERENCES books(book_id) ON DELETE CASCADE
+    FOREIGN KEY (book_id) REFERENCES books(book_id) ON DELETE CASCADE,
+    CONSTRAINT fk_loans_copy FOREIGN KEY (copy_id) REFERENCES book_copies(copy_id) ON DELETE SET NULL
 );
 
+-- Cold storage for returned loans older than the hot window (see LoanArchiver). Partitioned by
+-- loan year so historical reports only touch the years they ask for. Partitioned InnoDB tables
+-- cannot have foreign keys, which suits the archive: it is the loan history, and keeps the loans
+-- of users and books that have since been purged.
+CREATE TABLE loans_archive (
+    loan_id INT NOT NULL,
+    branch_id SMALLINT NOT NULL DEFAULT 1,
+    user_id INT NOT NULL,
+    book_id INT NOT NULL,
+    loan_date DATE NOT NULL,
+    return_date DATE NOT NULL,
+    archived_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (loan_id, loan_date),
+    INDEX idx_loans_archive_user (user_id),
+    INDEX idx_loans_archive_book (book_id),
+    INDEX idx_loans_archive_date (loan_date)
+)
+PARTITION BY RANGE (YEAR(loan_date)) (
+    PARTITION p2020 VALUES LESS THAN (2021),
+    PARTITION p2021 VALUES LESS THAN (2022),
+    PARTITION p2022 VALUES LESS THAN (2023),
+    PARTITION p2023 VALUES LESS THAN (2024),
+    PARTITION p2024 VALUES LESS THAN (2025),
+    PARTITION p2025 VALUES LESS THAN (2026),
+    PARTITION p2026 VALUES LESS THAN (2027),
+    PARTITION p2027 VALUES LESS THAN (2028),
+    PARTITION p2028 VALUES LESS THAN (2029),
+    PARTITION p2029 VALUES LESS THAN (2030),
+    PARTITION pfuture VALUES LESS THAN MAXVALUE
+);
+
+-- Transactional outbox: checkouts and returns add their notifications here in the same
+-- transaction (see Outbox), and NotificationDispatcher sends them. No foreign keys, so a purged
+-- user or book does not block on its old notifications; the dispatcher cancels those instead.
+CREATE TABLE notification_outbox (
+    outbox_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    kind VARCHAR(20) NOT NULL,
+    user_id INT NOT NULL,
+    loan_id INT NOT NULL,
+    book_id INT NOT NULL,
+    status ENUM('PENDING', 'SENDING', 'SENT', 'FAILED', 'CANCELLED') NOT NULL DEFAULT 'PENDING',
+    not_before DATETIME(3) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    last_error VARCHAR(500),
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    sent_at DATETIME(3),
+    INDEX idx_outbox_due (status, not_before)
+);
+
+-- Change feed: every write to the tables above is logged here by the triggers below so that
+-- clients can poll for deltas (seq > last seen) instead of reloading whole tables.
+CREATE TABLE change_log (
+    seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+    table_name VARCHAR(20) NOT NULL,
+    row_id INT NOT NULL,
+    operation CHAR(1) NOT NULL,
+    changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+-- Where each desk's change feed has read up to, reported every half minute. ChangeLogPruner
+-- keeps every change_log row a recently seen reader has not read yet.
+CREATE TABLE change_log_readers (
+    reader_id CHAR(36) PRIMARY KEY,
+    seq BIGINT NOT NULL,
+    seen_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+DELIMITER //
+
+CREATE TRIGGER users_ai AFTER INSERT ON users FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('users', NEW.user_id, 'I')//
+CREATE TRIGGER users_au AFTER UPDATE ON users FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('users', NEW.user_id, 'U')//
+CREATE TRIGGER users_ad AFTER DELETE ON users FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('users', OLD.user_id, 'D')//
+
+CREATE TRIGGER books_ai AFTER INSERT ON books FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'I')//
+CREATE TRIGGER books_au AFTER UPDATE ON books FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'U')//
+CREATE TRIGGER books_ad AFTER DELETE ON books FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', OLD.book_id, 'D')//
+
+-- A copy going out or coming back changes the title's available copies, and nothing else about
+-- it; 'C' lets subscribers that do not show copies skip it.
+CREATE TRIGGER book_copies_ai AFTER INSERT ON book_copies FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'C')//
+CREATE TRIGGER book_copies_au AFTER UPDATE ON book_copies FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'C')//
+
+CREATE TRIGGER loans_ai AFTER INSERT ON loans FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('loans', NEW.loan_id, 'I')//
+CREATE TRIGGER loans_au AFTER UPDATE ON loans FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('loans', NEW.loan_id, 'U')//
+CREATE TRIGGER loans_ad AFTER DELETE ON loans FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('loans', OLD.loan_id, 'D')//
+
+DELIMITER ;
+
 INSERT INTO users (name, email) VALUES
 ('Alice Johnson', 'alice@example.com'),
 ('Bob Smith', 'bob@example.com'),
 ('Carol White', 'carol@example.com');
 
-INSERT INTO books (title, author, isbn, published_year, copies_available) VALUES
-('The Great Gatsby', 'F. Scott Fitzgerald', '9780743273565', 1925, 3),
-('1984', 'George Orwell', '9780451524935', 1949, 5),
-('To Kill a Mockingbird', 'Harper Lee', '9780061120084', 1960, 2);
+INSERT INTO books (title, author, isbn, published_year) VALUES
+('The Great Gatsby', 'F. Scott Fitzgerald', '9780743273565', 1925),
+('1984', 'George Orwell', '9780451524935', 1949),
+('To Kill a Mockingbird', 'Harper Lee', '9780061120084', 1960);
+
+INSERT INTO book_copies (book_id, barcode, status) VALUES
+(1, 'BK1-1', 'AVAILABLE'), (1, 'BK1-2', 'AVAILABLE'), (1, 'BK1-3', 'AVAILABLE'),
+(2, 'BK2-1', 'AVAILABLE'), (2, 'BK2-2', 'AVAILABLE'), (2, 'BK2-3', 'AVAILABLE'), (2, 'BK2-4', 'AVAILABLE'),
+(2, 'BK2-5', 'AVAILABLE'), (2, 'BK2-6', 'ON_LOAN'),
+(3, 'BK3-1', 'AVAILABLE'), (3, 'BK3-2', 'AVAILABLE'), (3, 'BK3-3', 'ON_LOAN');
 
-INSERT INTO loans (user_id, book_id, loan_date, return_date) VALUES
-(1, 2, '2025-07-01', NULL),
-(2, 1, '2025-07-03', '2025-07-07'),
-(3, 3, '2025-07-05', NULL);
+INSERT INTO loans (user_id, book_id, copy_id, loan_date, return_date) VALUES
+(1, 2, 9, '2025-07-01', NULL),
+(2, 1, 1, '2025-07-03', '2025-07-07'),
+(3, 3, 12, '2025-07-05', NULL);
@@ -0,0 +1,162 @@
+-- Brings a database created by an older init.sql up to the current schema without losing data.
+-- Safe to run more than once: every step checks what is already there. Stop the desks and the
+-- headless server first, then run it against each branch database:
+--
+--   docker exec -i bookstore-db mariadb -u root -proot bookstore < migrate.sql
+--
+-- Needs MariaDB 10.2 or later (IF [NOT] EXISTS on columns, indexes and triggers).
+USE bookstore;
+
+-- Soft delete and branches (see init.sql). Email and ISBN stay unique only among live rows.
+ALTER TABLE users
+    ADD COLUMN IF NOT EXISTS branch_id SMALLINT NOT NULL DEFAULT 1 AFTER user_id,
+    ADD COLUMN IF NOT EXISTS deleted_at DATETIME,
+    ADD COLUMN IF NOT EXISTS live_email VARCHAR(100) AS (IF(deleted_at IS NULL, email, NULL)) PERSISTENT,
+    DROP INDEX IF EXISTS email,
+    ADD UNIQUE KEY IF NOT EXISTS uq_users_email (live_email),
+    ADD INDEX IF NOT EXISTS idx_users_deleted_at (deleted_at);
+
+ALTER TABLE books
+    ADD COLUMN IF NOT EXISTS branch_id SMALLINT NOT NULL DEFAULT 1 AFTER book_id,
+    ADD COLUMN IF NOT EXISTS deleted_at DATETIME,
+    ADD COLUMN IF NOT EXISTS live_isbn VARCHAR(20) AS (IF(deleted_at IS NULL, isbn, NULL)) PERSISTENT,
+    DROP INDEX IF EXISTS isbn,
+    ADD UNIQUE KEY IF NOT EXISTS uq_books_isbn (live_isbn),
+    ADD INDEX IF NOT EXISTS idx_books_deleted_at (deleted_at);
+
+CREATE TABLE IF NOT EXISTS book_copies (
+    copy_id INT AUTO_INCREMENT PRIMARY KEY,
+    book_id INT NOT NULL,
+    barcode VARCHAR(40) UNIQUE NOT NULL,
+    status ENUM('AVAILABLE', 'ON_LOAN', 'WITHDRAWN') NOT NULL DEFAULT 'AVAILABLE',
+    INDEX idx_book_copies_status (book_id, status),
+    FOREIGN KEY (book_id) REFERENCES books(book_id) ON DELETE CASCADE
+);
+
+ALTER TABLE loans
+    ADD COLUMN IF NOT EXISTS branch_id SMALLINT NOT NULL DEFAULT 1 AFTER loan_id,
+    ADD COLUMN IF NOT EXISTS copy_id INT AFTER book_id,
+    ADD INDEX IF NOT EXISTS idx_loans_loan_date (loan_date),
+    ADD INDEX IF NOT EXISTS idx_loans_return_date (return_date),
+    ADD CONSTRAINT fk_loans_copy FOREIGN KEY IF NOT EXISTS (copy_id) REFERENCES book_copies(copy_id) ON DELETE SET NULL;
+
+CREATE TABLE IF NOT EXISTS loans_archive (
+    loan_id INT NOT NULL,
+    branch_id SMALLINT NOT NULL DEFAULT 1,
+    user_id INT NOT NULL,
+    book_id INT NOT NULL,
+    loan_date DATE NOT NULL,
+    return_date DATE NOT NULL,
+    archived_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (loan_id, loan_date),
+    INDEX idx_loans_archive_user (user_id),
+    INDEX idx_loans_archive_book (book_id),
+    INDEX idx_loans_archive_date (loan_date)
+)
+PARTITION BY RANGE (YEAR(loan_date)) (
+    PARTITION p2020 VALUES LESS THAN (2021),
+    PARTITION p2021 VALUES LESS THAN (2022),
+    PARTITION p2022 VALUES LESS THAN (2023),
+    PARTITION p2023 VALUES LESS THAN (2024),
+    PARTITION p2024 VALUES LESS THAN (2025),
+    PARTITION p2025 VALUES LESS THAN (2026),
+    PARTITION p2026 VALUES LESS THAN (2027),
+    PARTITION p2027 VALUES LESS THAN (2028),
+    PARTITION p2028 VALUES LESS THAN (2029),
+    PARTITION p2029 VALUES LESS THAN (2030),
+    PARTITION pfuture VALUES LESS THAN MAXVALUE
+);
+
+ALTER TABLE loans_archive
+    ADD COLUMN IF NOT EXISTS branch_id SMALLINT NOT NULL DEFAULT 1 AFTER loan_id,
+    ADD INDEX IF NOT EXISTS idx_loans_archive_date (loan_date);
+
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    outbox_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    kind VARCHAR(20) NOT NULL,
+    user_id INT NOT NULL,
+    loan_id INT NOT NULL,
+    book_id INT NOT NULL,
+    status ENUM('PENDING', 'SENDING', 'SENT', 'FAILED', 'CANCELLED') NOT NULL DEFAULT 'PENDING',
+    not_before DATETIME(3) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    last_error VARCHAR(500),
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    sent_at DATETIME(3),
+    INDEX idx_outbox_due (status, not_before)
+);
+
+CREATE TABLE IF NOT EXISTS change_log (
+    seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+    table_name VARCHAR(20) NOT NULL,
+    row_id INT NOT NULL,
+    operation CHAR(1) NOT NULL,
+    changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+CREATE TABLE IF NOT EXISTS change_log_readers (
+    reader_id CHAR(36) PRIMARY KEY,
+    seq BIGINT NOT NULL,
+    seen_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+DELIMITER //
+
+-- The old books.copies_available counted the copies on the shelf; copies out on loan were not in
+-- it. Each becomes an AVAILABLE row, and each open loan gets an ON_LOAN copy of its own that the
+-- loan points to. Barcodes are derived from the ids, so a run that stopped halfway can be repeated
+-- (INSERT IGNORE skips the copies already made). The column goes once every copy exists.
+BEGIN NOT ATOMIC
+    DECLARE n INT DEFAULT 1;
+    DECLARE most INT;
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'books' AND column_name = 'copies_available') THEN
+        SELECT COALESCE(MAX(copies_available), 0) INTO most FROM books;
+        WHILE n <= most DO
+            INSERT IGNORE INTO book_copies (book_id, barcode, status)
+                SELECT book_id, CONCAT('BK', book_id, '-', n), 'AVAILABLE' FROM books WHERE copies_available >= n;
+            SET n = n + 1;
+        END WHILE;
+        INSERT IGNORE INTO book_copies (book_id, barcode, status)
+            SELECT book_id, CONCAT('BK', book_id, '-L', loan_id), 'ON_LOAN' FROM loans WHERE return_date IS NULL;
+        UPDATE loans l
+            JOIN book_copies c ON c.barcode = CONCAT('BK', l.book_id, '-L', l.loan_id)
+            SET l.copy_id = c.copy_id
+            WHERE l.return_date IS NULL AND l.copy_id IS NULL;
+        ALTER TABLE books DROP COLUMN copies_available;
+    END IF;
+END//
+
+-- Change feed triggers, as in init.sql. Created after the copies above, so the migration does not
+-- fill the log with one entry per copy. The archive triggers of an earlier version are dropped:
+-- purged rows keep their archived loans.
+DROP TRIGGER IF EXISTS users_ad_archive//
+DROP TRIGGER IF EXISTS books_ad_archive//
+
+CREATE OR REPLACE TRIGGER users_ai AFTER INSERT ON users FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('users', NEW.user_id, 'I')//
+CREATE OR REPLACE TRIGGER users_au AFTER UPDATE ON users FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('users', NEW.user_id, 'U')//
+CREATE OR REPLACE TRIGGER users_ad AFTER DELETE ON users FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('users', OLD.user_id, 'D')//
+
+CREATE OR REPLACE TRIGGER books_ai AFTER INSERT ON books FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'I')//
+CREATE OR REPLACE TRIGGER books_au AFTER UPDATE ON books FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'U')//
+CREATE OR REPLACE TRIGGER books_ad AFTER DELETE ON books FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', OLD.book_id, 'D')//
+
+CREATE OR REPLACE TRIGGER book_copies_ai AFTER INSERT ON book_copies FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'C')//
+CREATE OR REPLACE TRIGGER book_copies_au AFTER UPDATE ON book_copies FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.book_id, 'C')//
+
+CREATE OR REPLACE TRIGGER loans_ai AFTER INSERT ON loans FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('loans', NEW.loan_id, 'I')//
+CREATE OR REPLACE TRIGGER loans_au AFTER UPDATE ON loans FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('loans', NEW.loan_id, 'U')//
+CREATE OR REPLACE TRIGGER loans_ad AFTER DELETE ON loans FOR EACH ROW
+    INSERT INTO change_log (table_name, row_id, operation) VALUES ('loans', OLD.loan_id, 'D')//
+
+DELIMITER ;
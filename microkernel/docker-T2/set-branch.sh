@@ -0,0 +1,15 @@
+#!/bin/bash
+# Runs after init.sql when a branch database is first created: makes this container's branch
+# (LIBRARY_BRANCH_ID, default 1) the default branch_id and tags the seed rows with it.
+set -e
+branch="${LIBRARY_BRANCH_ID:-1}"
+mariadb -uroot -p"$MYSQL_ROOT_PASSWORD" bookstore <<SQL
+ALTER TABLE users ALTER COLUMN branch_id SET DEFAULT $branch;
+ALTER TABLE books ALTER COLUMN branch_id SET DEFAULT $branch;
+ALTER TABLE loans ALTER COLUMN branch_id SET DEFAULT $branch;
+ALTER TABLE loans_archive ALTER COLUMN branch_id SET DEFAULT $branch;
+UPDATE users SET branch_id = $branch;
+UPDATE books SET branch_id = $branch;
+UPDATE loans SET branch_id = $branch;
+UPDATE loans_archive SET branch_id = $branch;
+SQL
@@ -0,0 +1,16 @@
+package br.edu.ifba.inf008.interfaces;
+
+public interface IApiController
+{
+    /**
+     * Exposes an operation on the headless HTTP API under {@code /api}. Handlers run on request
+     * threads, never on the FX thread.
+     */
+    public abstract void registerEndpoint(String method, String path, IApiHandler handler);
+
+    /**
+     * Like {@link #registerEndpoint}, but also open to the kiosk token. Only for reads that return
+     * no patron data, such as the catalog.
+     */
+    public abstract void registerPublicEndpoint(String method, String path, IApiHandler handler);
+}
@@ -0,0 +1,12 @@
+package br.edu.ifba.inf008.interfaces;
+
+import java.util.Map;
+
+public interface IApiHandler
+{
+    /**
+     * @param parameters query string and JSON body fields, merged
+     * @return the response body; serialised to JSON by the core
+     */
+    public abstract Object handle(Map<String, String> parameters) throws Exception;
+}
@@ -10,6 +10,14 @@ public abstract class ICore
     public abstract IAuthenticationController getAuthenticationController();
     public abstract IIOController getIOController();
     public abstract IPluginController getPluginController();
+    public abstract IApiController getApiController();
+    public abstract IServiceRegistry getServiceRegistry();
+
+    /**
+     * True when the core runs as an HTTP server without a JavaFX window. Plugins register API
+     * endpoints instead of UI in that mode.
+     */
+    public abstract boolean isHeadless();
 
     protected static ICore instance = null;
 }
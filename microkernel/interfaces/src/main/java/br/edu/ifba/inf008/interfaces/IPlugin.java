@@ -5,4 +5,13 @@ import br.edu.ifba.inf008.interfaces.ICore;
 public interface IPlugin
 {
     public abstract boolean init();
+
+    /**
+     * Called once after {@link #init()} on a background thread during startup, in parallel with
+     * the other plugins. Plugins prefetch whatever their first tab needs here and hand a
+     * pre-built pane to {@link IUIController#prepareTab}. Must not touch live UI nodes.
+     */
+    public default boolean warmUp() {
+        return true;
+    }
 }
@@ -5,4 +5,10 @@ import br.edu.ifba.inf008.interfaces.ICore;
 public interface IPluginController
 {
     public abstract boolean init();
+
+    /**
+     * The executor reserved for {@code plugin}. Blocking work (database calls in particular) should
+     * run here rather than on the FX thread or a shared pool.
+     */
+    public abstract IPluginExecutor getExecutor(IPlugin plugin);
 }
@@ -0,0 +1,28 @@
+package br.edu.ifba.inf008.interfaces;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import javafx.application.Platform;
+
+/**
+ * A plugin's own bounded worker pool. Database access from its threads counts against the
+ * plugin's connection quota, so a heavy plugin slows down only itself.
+ */
+public interface IPluginExecutor
+{
+    /**
+     * Queues {@code task}. The future fails with {@link java.util.concurrent.RejectedExecutionException}
+     * when the plugin's queue is full and with {@link java.util.concurrent.TimeoutException} when
+     * the task runs past the plugin's time limit (the task is then interrupted).
+     */
+    public abstract <T> CompletableFuture<T> submit(Callable<T> task);
+
+    /**
+     * Runs {@code task} on the pool and hands its result or failure to {@code onFxThread} on the
+     * FX thread; the usual way to load data for a tab.
+     */
+    public default <T> void submitForUI(Callable<T> task, BiConsumer<T, Throwable> onFxThread) {
+        submit(task).whenComplete((result, error) -> Platform.runLater(() -> onFxThread.accept(result, error)));
+    }
+}
@@ -0,0 +1,24 @@
+package br.edu.ifba.inf008.interfaces;
+
+import java.util.Optional;
+
+/**
+ * Services plugins publish for each other, keyed by their interface. A plugin registers what it
+ * declares under {@code provides} in its descriptor during {@link IPlugin#init()}; since plugins
+ * are initialized after everything they require, a consumer can look its services up in its own
+ * {@code init()}.
+ */
+public interface IServiceRegistry
+{
+    /**
+     * @throws IllegalStateException if another implementation of {@code type} is already registered
+     */
+    public abstract <T> void register(Class<T> type, T service);
+
+    /**
+     * @throws IllegalStateException if no plugin has registered {@code type}
+     */
+    public abstract <T> T get(Class<T> type);
+
+    public abstract <T> Optional<T> find(Class<T> type);
+}
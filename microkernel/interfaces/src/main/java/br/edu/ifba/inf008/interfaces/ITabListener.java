@@ -0,0 +1,21 @@
+package br.edu.ifba.inf008.interfaces;
+
+/**
+ * Lifecycle callbacks for a tab opened through {@link IUIController#showTab}. All callbacks run on
+ * the FX thread.
+ */
+public interface ITabListener
+{
+    public default void onShown() {
+    }
+
+    public default void onHidden() {
+    }
+
+    /**
+     * The tab was closed by the user. Plugins should drop every reference to the tab's nodes and
+     * data here; reopening the tab runs its content supplier again.
+     */
+    public default void onClosed() {
+    }
+}
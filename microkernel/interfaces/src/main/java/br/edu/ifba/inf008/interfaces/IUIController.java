@@ -7,9 +7,34 @@ import javafx.scene.control.Tab;
 import java.util.function.Supplier;
 
 public interface IUIController {
+    /**
+     * May be called from any thread, as plugins are initialized in parallel; the item is added to
+     * the menu on the FX thread.
+     */
     public abstract MenuItem createMenuItem(String menuText, String menuItemText);
 
     public abstract boolean showTab(String tabText, Supplier<Node> contentSupplier);
 
+    /**
+     * Builds the content of a tab ahead of time so the next {@link #showTab} for the same text
+     * only has to attach it. May be called from any thread; the supplier runs on the FX thread.
+     */
+    public abstract void prepareTab(String tabText, Supplier<Node> contentSupplier);
+
+    /**
+     * May be called from any thread; the button is added to the home pane on the FX thread.
+     */
     public abstract Button addQuickAccessButton(String text, Runnable action);
+
+    /**
+     * As {@link #addQuickAccessButton(String, Runnable)}, with {@code graphic} set on the button on
+     * the FX thread. Plugins must not touch the returned button from their init thread.
+     */
+    public abstract Button addQuickAccessButton(String text, Node graphic, Runnable action);
+
+    /**
+     * Registers lifecycle callbacks for the tab with the given text. The listener stays registered
+     * across close/reopen cycles of that tab.
+     */
+    public abstract void addTabListener(String tabText, ITabListener listener);
 }
@@ -0,0 +1,31 @@
+package br.edu.ifba.inf008.loadtest;
+
+/**
+ * The little the self-checks in this module share: a failed expectation ends the run with a
+ * message and exit status 1, so a script or CI job can tell.
+ */
+final class Checks {
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+    private Checks() {
+    }
+
+    static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    static void run(String name, Body body) {
+        try {
+            body.run();
+        } catch (Exception | AssertionError e) {
+            System.out.println(name + " FAILED: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println(name + " passed");
+    }
+}
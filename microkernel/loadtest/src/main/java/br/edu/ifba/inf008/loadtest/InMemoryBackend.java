@@ -0,0 +1,390 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.plugins.data.BookDAO;
+import br.edu.ifba.inf008.plugins.data.CartItemResult;
+import br.edu.ifba.inf008.plugins.data.LoanDAO;
+import br.edu.ifba.inf008.plugins.data.ReportDAO;
+import br.edu.ifba.inf008.plugins.data.ReportQuery;
+import br.edu.ifba.inf008.plugins.data.UserDAO;
+import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.model.Loan;
+import br.edu.ifba.inf008.shell.model.User;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Implements the four DAO interfaces over concurrent maps, with a lock-free shelf count per title
+ * standing in for the copy rows that checkouts claim with {@code SKIP LOCKED}, so nothing here
+ * waits for a lock. It needs no database, so the harness itself and the shape of the workload can
+ * be checked anywhere; the numbers it reports are not database numbers.
+ */
+public class InMemoryBackend implements LibraryBackend, BookDAO, UserDAO, LoanDAO, ReportDAO {
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Book> books = new ConcurrentHashMap<>();
+    private final Map<Integer, Loan> loans = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> shelves = new ConcurrentHashMap<>();
+    private final AtomicInteger nextUserId = new AtomicInteger(1);
+    private final AtomicInteger nextBookId = new AtomicInteger(1);
+    private final AtomicInteger nextLoanId = new AtomicInteger(1);
+
+    @Override
+    public String describe() {
+        return "in-memory";
+    }
+
+    @Override
+    public void seed(SeedData data) throws Exception {
+        data.forEachUser((index, name, email) -> {
+            User user = new User();
+            user.setName(name);
+            user.setEmail(email);
+            addUser(user);
+        });
+        data.forEachBook((index, title, author, isbn, year, copies) -> {
+            Book book = new Book();
+            book.setTitle(title);
+            book.setAuthor(author);
+            book.setIsbn(isbn);
+            book.setYear(year);
+            book.setCopies(copies);
+            addBook(book);
+        });
+        data.forEachLoan((index, userIndex, bookIndex, loanDate, returnDate) -> {
+            Loan loan = new Loan();
+            loan.setLoanId(nextLoanId.getAndIncrement());
+            loan.setUser(users.get(userId(userIndex)));
+            loan.setBook(books.get(bookId(bookIndex)));
+            loan.setLoanDate(loanDate);
+            loan.setReturnDate(returnDate);
+            loans.put(loan.getLoanId(), loan);
+        });
+    }
+
+    @Override
+    public int userId(int userIndex) {
+        return userIndex + 1;
+    }
+
+    @Override
+    public int bookId(int bookIndex) {
+        return bookIndex + 1;
+    }
+
+    @Override
+    public List<Integer> activeLoanIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (Loan loan : loans.values()) {
+            if (loan.getReturnDate() == null) {
+                ids.add(loan.getLoanId());
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public long lockWaits() {
+        return 0;
+    }
+
+    @Override
+    public BookDAO books() {
+        return this;
+    }
+
+    @Override
+    public UserDAO users() {
+        return this;
+    }
+
+    @Override
+    public LoanDAO loans() {
+        return this;
+    }
+
+    @Override
+    public ReportDAO reports() {
+        return this;
+    }
+
+    /**
+     * Copies the shelf count into the book, as the database derives it on every read.
+     */
+    private Book withCopies(Book book) {
+        AtomicInteger shelf = shelves.get(book.getBookId());
+        book.setCopies(shelf == null ? 0 : shelf.get());
+        return book;
+    }
+
+    // BookDAO
+
+    @Override
+    public void addBook(Book book) {
+        book.setBookId(nextBookId.getAndIncrement());
+        shelves.put(book.getBookId(), new AtomicInteger(book.getCopies()));
+        books.put(book.getBookId(), book);
+    }
+
+    @Override
+    public void updateBook(Book book) {
+        shelves.computeIfAbsent(book.getBookId(), id -> new AtomicInteger()).set(book.getCopies());
+        books.put(book.getBookId(), book);
+    }
+
+    @Override
+    public void deleteBook(int bookId) {
+        books.remove(bookId);
+        shelves.remove(bookId);
+        loans.values().removeIf(loan -> loan.getBook().getBookId() == bookId);
+    }
+
+    @Override
+    public List<Book> getAllBooks() {
+        List<Book> result = new ArrayList<>();
+        for (Book book : books.values()) {
+            result.add(withCopies(book));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Book> getBooksByIds(Collection<Integer> bookIds) {
+        List<Book> result = new ArrayList<>();
+        for (int bookId : bookIds) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                result.add(withCopies(book));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Book getBookByIsbn(String isbn) {
+        for (Book book : books.values()) {
+            if (book.getIsbn() != null && book.getIsbn().equals(isbn)) {
+                return withCopies(book);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Book> searchAllBranches(String text) {
+        String needle = text.toLowerCase();
+        List<Book> result = new ArrayList<>();
+        for (Book book : books.values()) {
+            if (contains(book.getTitle(), needle) || contains(book.getAuthor(), needle) || contains(book.getIsbn(), needle)) {
+                result.add(withCopies(book));
+            }
+        }
+        result.sort(Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER));
+        return result;
+    }
+
+    private static boolean contains(String value, String needle) {
+        return value != null && value.toLowerCase().contains(needle);
+    }
+
+    @Override
+    public List<Book> getAvailableBooks() {
+        List<Book> result = new ArrayList<>();
+        for (Book book : books.values()) {
+            if (withCopies(book).getCopies() > 0) {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+
+    // UserDAO
+
+    @Override
+    public void addUser(User user) {
+        user.setUserId(nextUserId.getAndIncrement());
+        user.setRegisteredAt(LocalDateTime.now());
+        users.put(user.getUserId(), user);
+    }
+
+    @Override
+    public void updateUser(User user) {
+        users.put(user.getUserId(), user);
+    }
+
+    @Override
+    public void deleteUser(int userId) {
+        users.remove(userId);
+        loans.values().removeIf(loan -> loan.getUser().getUserId() == userId);
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        return new ArrayList<>(users.values());
+    }
+
+    @Override
+    public User getUserById(int userId) {
+        return users.get(userId);
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        for (User user : users.values()) {
+            if (user.getEmail() != null && user.getEmail().equals(email)) {
+                return user;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) {
+        List<User> result = new ArrayList<>();
+        for (int userId : userIds) {
+            User user = users.get(userId);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    // LoanDAO and ReportDAO
+
+    @Override
+    public List<Loan> getAllLoans() {
+        List<Loan> result = new ArrayList<>(loans.values());
+        result.sort(Comparator.comparing(Loan::getLoanDate).reversed());
+        return result;
+    }
+
+    @Override
+    public void addLoan(Loan loan) throws SQLException {
+        int bookId = loan.getBook().getBookId();
+        Book book = books.get(bookId);
+        AtomicInteger shelf = shelves.get(bookId);
+        if (book == null || shelf == null) {
+            throw new SQLException("Book not found.");
+        }
+        if (shelf.getAndUpdate(copies -> copies > 0 ? copies - 1 : copies) <= 0) {
+            throw new IllegalStateException("No copies available for this book.");
+        }
+        loan.setLoanId(nextLoanId.getAndIncrement());
+        loan.setBook(book);
+        loans.put(loan.getLoanId(), loan);
+    }
+
+    @Override
+    public void returnLoan(int loanId) throws SQLException {
+        Loan loan = loans.get(loanId);
+        if (loan == null) {
+            throw new SQLException("Loan not found or already returned.");
+        }
+        synchronized (loan) {
+            if (loan.getReturnDate() != null) {
+                throw new SQLException("Loan not found or already returned.");
+            }
+            loan.setReturnDate(LocalDate.now());
+        }
+        AtomicInteger shelf = shelves.get(loan.getBook().getBookId());
+        if (shelf != null) {
+            shelf.incrementAndGet();
+        }
+    }
+
+    /**
+     * Item by item rather than in one transaction; the outcome per item is the same.
+     */
+    @Override
+    public List<CartItemResult> checkoutCart(int userId, List<Integer> bookIds) throws SQLException {
+        User user = users.get(userId);
+        if (user == null) {
+            throw new SQLException("User not found.");
+        }
+        List<CartItemResult> results = new ArrayList<>();
+        for (int bookId : bookIds) {
+            Loan loan = new Loan();
+            loan.setUser(user);
+            Book book = new Book();
+            book.setBookId(bookId);
+            loan.setBook(book);
+            loan.setLoanDate(LocalDate.now());
+            try {
+                addLoan(loan);
+                results.add(CartItemResult.succeeded(bookId, loan.getLoanId(), bookId));
+            } catch (SQLException | IllegalStateException e) {
+                results.add(CartItemResult.failed(bookId, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<CartItemResult> returnCart(List<Integer> loanIds) {
+        List<CartItemResult> results = new ArrayList<>();
+        for (int loanId : loanIds) {
+            try {
+                returnLoan(loanId);
+                results.add(CartItemResult.succeeded(loanId, loanId, loans.get(loanId).getBook().getBookId()));
+            } catch (SQLException e) {
+                results.add(CartItemResult.failed(loanId, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Loan> getLoansByIds(Collection<Integer> loanIds) {
+        List<Loan> result = new ArrayList<>();
+        for (int loanId : loanIds) {
+            Loan loan = loans.get(loanId);
+            if (loan != null) {
+                result.add(loan);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Loan> getActiveLoans() {
+        return loansMatching(loan -> loan.getReturnDate() == null);
+    }
+
+    @Override
+    public List<Loan> getReturnedLoans() {
+        return loansMatching(loan -> loan.getReturnDate() != null);
+    }
+
+    @Override
+    public List<Loan> getLoans(ReportQuery query) {
+        List<Loan> result = loansMatching(query::matches);
+        result.sort(query.getOrder());
+        return result;
+    }
+
+    @Override
+    public void streamLoans(ReportQuery query, Consumer<List<Loan>> sink) {
+        sink.accept(getLoans(query));
+    }
+
+    private List<Loan> loansMatching(Predicate<Loan> filter) {
+        List<Loan> result = new ArrayList<>();
+        for (Loan loan : loans.values()) {
+            if (filter.test(loan)) {
+                result.add(loan);
+            }
+        }
+        result.sort(Comparator.comparing(Loan::getLoanDate).reversed());
+        return result;
+    }
+}
@@ -0,0 +1,259 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.shell.journal.CirculationState;
+import br.edu.ifba.inf008.shell.journal.JournalEvent;
+import br.edu.ifba.inf008.shell.journal.LoanJournal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static br.edu.ifba.inf008.loadtest.Checks.require;
+
+/**
+ * Self-check of the loan journal, run against a scratch directory and no database:
+ * <ul>
+ * <li>events read back after a reopen equal what was appended, in sequence order;</li>
+ * <li>a record whose bytes were flipped on disk is not returned, and reading stops there;</li>
+ * <li>{@code stateAt()}, which starts from a snapshot, matches a straight replay of the events
+ * read back, at every point in time.</li>
+ * </ul>
+ *
+ * {@code mvn -q exec:java -pl loadtest -Dexec.mainClass=br.edu.ifba.inf008.loadtest.JournalCheck}
+ */
+public class JournalCheck {
+    private static final int EVENTS = 2_000;
+
+    public static void main(String[] args) {
+        Checks.run("Journal check", () -> {
+            Path directory = Files.createTempDirectory("journal-check");
+            try {
+                List<JournalEvent> appended = appendHistory(directory, new Random(42));
+                checkRoundTrip(directory, appended);
+                checkStateAt(directory);
+                checkCorruptRecord(directory, appended);
+            } finally {
+                deleteRecursively(directory);
+            }
+        });
+    }
+
+    /**
+     * A seeded mix of every event type, spread over a few milliseconds so point-in-time replay
+     * has something to cut, with a snapshot halfway.
+     */
+    private static List<JournalEvent> appendHistory(Path directory, Random random) throws Exception {
+        List<JournalEvent> appended = new ArrayList<>();
+        LoanJournal journal = new LoanJournal(directory);
+        try {
+            List<Integer> open = new ArrayList<>();
+            int nextLoan = 1;
+            for (int book = 1; book <= 20; book++) {
+                appended.add(append(journal, JournalEvent.bookAdded(book, 1 + random.nextInt(5))));
+            }
+            while (appended.size() < EVENTS) {
+                int roll = random.nextInt(100);
+                JournalEvent event;
+                if (roll < 45 || open.isEmpty()) {
+                    event = JournalEvent.loanCreated(nextLoan, 1 + random.nextInt(50), 1 + random.nextInt(20));
+                    open.add(nextLoan++);
+                } else if (roll < 85) {
+                    int loanId = open.remove(random.nextInt(open.size()));
+                    event = JournalEvent.loanReturned(loanId, bookOf(appended, loanId));
+                } else if (roll < 95) {
+                    event = JournalEvent.copiesSet(1 + random.nextInt(20), random.nextInt(6));
+                } else {
+                    event = JournalEvent.bookDeleted(21 + random.nextInt(5));
+                }
+                appended.add(append(journal, event));
+                if (appended.size() % 100 == 0) {
+                    Thread.sleep(2);
+                }
+                if (appended.size() == EVENTS / 2) {
+                    journal.snapshot();
+                }
+            }
+        } finally {
+            journal.close();
+        }
+        return appended;
+    }
+
+    private static JournalEvent append(LoanJournal journal, JournalEvent event) throws IOException {
+        long sequence = journal.append(event);
+        require(sequence > 0, "append returned sequence " + sequence);
+        return event;
+    }
+
+    private static int bookOf(List<JournalEvent> events, int loanId) {
+        for (JournalEvent event : events) {
+            if (event.getType() == JournalEvent.Type.LOAN_CREATED && event.getLoanId() == loanId) {
+                return event.getBookId();
+            }
+        }
+        throw new IllegalStateException("no checkout for loan " + loanId);
+    }
+
+    private static void checkRoundTrip(Path directory, List<JournalEvent> appended) throws IOException {
+        List<JournalEvent> read = readAll(directory);
+        require(read.size() == appended.size(), "read back " + read.size() + " of " + appended.size() + " events");
+        long lastTimestamp = Long.MIN_VALUE;
+        for (int i = 0; i < read.size(); i++) {
+            JournalEvent expected = appended.get(i);
+            JournalEvent actual = read.get(i);
+            require(actual.getSequence() == i + 1, "event " + i + " has sequence " + actual.getSequence());
+            require(actual.getType() == expected.getType()
+                            && actual.getLoanId() == expected.getLoanId()
+                            && actual.getUserId() == expected.getUserId()
+                            && actual.getBookId() == expected.getBookId()
+                            && actual.getCopies() == expected.getCopies()
+                            && actual.getActor().equals(expected.getActor()),
+                    "event " + (i + 1) + " read back as " + actual + ", appended " + expected);
+            require(actual.getTimestamp() >= lastTimestamp, "timestamps go backwards at " + actual);
+            lastTimestamp = actual.getTimestamp();
+        }
+
+        LoanJournal reopened = new LoanJournal(directory);
+        try {
+            long next = reopened.append(JournalEvent.copiesSet(1, 3));
+            require(next == appended.size() + 1, "reopened journal continued at " + next);
+        } finally {
+            reopened.close();
+        }
+        appended.add(JournalEvent.copiesSet(1, 3));
+    }
+
+    private static void checkStateAt(Path directory) throws IOException {
+        List<JournalEvent> events = readAll(directory);
+        LoanJournal journal = new LoanJournal(directory);
+        try {
+            List<Long> instants = new ArrayList<>();
+            for (int i = 0; i < events.size(); i += 97) {
+                instants.add(events.get(i).getTimestamp());
+            }
+            instants.add(events.get(events.size() - 1).getTimestamp());
+            instants.add(events.get(0).getTimestamp() - 1);
+            for (long at : instants) {
+                CirculationState state = journal.stateAt(Instant.ofEpochMilli(at));
+                Replay expected = new Replay();
+                for (JournalEvent event : events) {
+                    if (event.getTimestamp() <= at) {
+                        expected.apply(event);
+                    }
+                }
+                require(state.getCopiesByBook().equals(expected.copiesByBook),
+                        "copies at " + at + " are " + state.getCopiesByBook() + ", replay gives " + expected.copiesByBook);
+                Map<Integer, Integer> loans = new HashMap<>();
+                state.getActiveLoans().forEach((loanId, loan) -> loans.put(loanId, loan.getBookId()));
+                require(loans.equals(expected.activeLoans),
+                        "active loans at " + at + " differ: " + loans.size() + " against " + expected.activeLoans.size() + " replayed");
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Flips one byte inside a record in the middle of the segment: everything before it must
+     * still be read, and nothing from it on.
+     */
+    private static void checkCorruptRecord(Path directory, List<JournalEvent> appended) throws IOException {
+        Path segment = segments(directory).get(0);
+        int victim = appended.size() / 3;
+        long offset = 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            for (int i = 0; i < victim; i++) {
+                header.clear();
+                channel.read(header, offset);
+                offset += 8 + header.getInt(0);
+            }
+            // Inside the payload, past the length and checksum.
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, offset + 8 + 20);
+            one.put(0, (byte) (one.get(0) ^ 0x5A)).rewind();
+            channel.write(one, offset + 8 + 20);
+        }
+        List<JournalEvent> read = new ArrayList<>();
+        LoanJournal journal = new LoanJournal(directory);
+        try {
+            journal.forEach(1, read::add);
+        } finally {
+            journal.close();
+        }
+        require(read.size() == victim, "read " + read.size() + " events past a corrupt record at " + (victim + 1));
+        require(read.get(read.size() - 1).getSequence() == victim, "last intact event is " + read.get(read.size() - 1));
+    }
+
+    private static List<JournalEvent> readAll(Path directory) throws IOException {
+        List<JournalEvent> events = new ArrayList<>();
+        LoanJournal journal = new LoanJournal(directory);
+        try {
+            journal.forEach(1, events::add);
+        } finally {
+            journal.close();
+        }
+        return events;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(Comparator.naturalOrder());
+        return segments;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * What the events mean, written out independently of {@link CirculationState}: a checkout of
+     * a loan already out and a return of one not out change nothing.
+     */
+    private static class Replay {
+        private final Map<Integer, Integer> copiesByBook = new HashMap<>();
+        private final Map<Integer, Integer> activeLoans = new HashMap<>();
+
+        void apply(JournalEvent event) {
+            switch (event.getType()) {
+                case LOAN_CREATED:
+                    if (activeLoans.putIfAbsent(event.getLoanId(), event.getBookId()) == null) {
+                        copiesByBook.merge(event.getBookId(), -1, Integer::sum);
+                    }
+                    break;
+                case LOAN_RETURNED:
+                    if (activeLoans.remove(event.getLoanId()) != null) {
+                        copiesByBook.merge(event.getBookId(), 1, Integer::sum);
+                    }
+                    break;
+                case BOOK_ADDED:
+                case COPIES_SET:
+                    copiesByBook.put(event.getBookId(), event.getCopies());
+                    break;
+                case BOOK_DELETED:
+                    copiesByBook.remove(event.getBookId());
+                    activeLoans.values().removeIf(bookId -> bookId == event.getBookId());
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.plugins.data.BookDAO;
+import br.edu.ifba.inf008.plugins.data.LoanDAO;
+import br.edu.ifba.inf008.plugins.data.ReportDAO;
+import br.edu.ifba.inf008.plugins.data.UserDAO;
+
+import java.util.List;
+
+/**
+ * The DAO implementations under test plus the hooks the harness needs around them.
+ */
+public interface LibraryBackend {
+    String describe();
+
+    BookDAO books();
+
+    UserDAO users();
+
+    LoanDAO loans();
+
+    ReportDAO reports();
+
+    /**
+     * Loads the data set. User, book and loan indexes from {@link SeedData} map to ids through
+     * {@link #userId(int)} and {@link #bookId(int)}.
+     */
+    void seed(SeedData data) throws Exception;
+
+    int userId(int userIndex);
+
+    int bookId(int bookIndex);
+
+    List<Integer> activeLoanIds() throws Exception;
+
+    /**
+     * Cumulative count of transactions that had to wait for a row lock.
+     */
+    long lockWaits() throws Exception;
+}
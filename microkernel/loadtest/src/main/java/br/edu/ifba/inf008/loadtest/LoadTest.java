@@ -0,0 +1,111 @@
+package br.edu.ifba.inf008.loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load test of the circulation DAOs: N terminals each run a seeded mix of checkouts,
+ * returns, searches and reports, and the run ends with throughput, latency percentiles, errors and
+ * lock waits per operation. Running the same seed with {@code --group-commit on} and {@code off}
+ * compares group commit against one transaction per request.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config;
+        try {
+            config = LoadTestConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(LoadTestConfig.usage());
+            return;
+        }
+
+        // Must be set before the DAOs touch the executor for the first time.
+        System.setProperty("library.groupCommit.flushers", String.valueOf(config.getFlushers()));
+        if (!config.isGroupCommit()) {
+            System.setProperty("library.groupCommit.maxBatchSize", "1");
+            System.setProperty("library.groupCommit.maxWaitMillis", "0");
+        }
+
+        LibraryBackend backend = createBackend(config);
+        SeedData data = new SeedData(config.getSeed(), config.getUserRows(), config.getBookRows(), config.getLoanRows())
+                .withHotTitles(config.getHotTitles(), config.getHotCopies());
+        long seedStart = System.nanoTime();
+        if (config.isSeedData()) {
+            backend.seed(data);
+        } else if (backend instanceof MariaDbBackend) {
+            ((MariaDbBackend) backend).resolveIdRanges(data);
+        }
+        System.out.printf("Backend: %s, seed %d, %d users, %d books, %d loans (%s in %d ms)%n",
+                backend.describe(), config.getSeed(), data.getUsers(), data.getBooks(), data.getLoans(),
+                config.isSeedData() ? "seeded" : "reused", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+        System.out.printf("Terminals: %d x %d operations, mix %s, group commit %s, %d flushers%s%n",
+                config.getTerminals(), config.getOperationsPerTerminal(), config.getMix(), config.isGroupCommit() ? "on" : "off",
+                config.getFlushers(), config.getHotTitles() > 0 ? ", checkouts on " + config.getHotTitles() + " hot titles" : "");
+
+        ConcurrentLinkedQueue<Integer> activeLoans = new ConcurrentLinkedQueue<>(backend.activeLoanIds());
+        long lockWaitsBefore = backend.lockWaits();
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.getTerminals());
+        List<Future<Map<Operation, OperationStats>>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < config.getTerminals(); i++) {
+            results.add(executor.submit(new Terminal(i, config, backend, activeLoans)));
+        }
+
+        Map<Operation, OperationStats> total = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            total.put(operation, new OperationStats());
+        }
+        for (Future<Map<Operation, OperationStats>> result : results) {
+            for (Map.Entry<Operation, OperationStats> entry : result.get().entrySet()) {
+                total.get(entry.getKey()).merge(entry.getValue());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        printReport(total, elapsed, backend.lockWaits() - lockWaitsBefore);
+        System.exit(0);
+    }
+
+    private static LibraryBackend createBackend(LoadTestConfig config) {
+        switch (config.getBackend()) {
+            case MARIADB:
+                return new MariaDbBackend(config.getSeed());
+            case MEMORY:
+            default:
+                return new InMemoryBackend();
+        }
+    }
+
+    private static void printReport(Map<Operation, OperationStats> total, long elapsedNanos, long lockWaits) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        OperationStats all = new OperationStats();
+        System.out.println();
+        System.out.printf("%-9s %8s %9s %9s %9s %9s %9s %8s %7s %6s%n",
+                "operation", "count", "ops/s", "p50 us", "p95 us", "p99 us", "max us", "rejected", "errors", "locks");
+        for (Map.Entry<Operation, OperationStats> entry : total.entrySet()) {
+            printRow(entry.getKey().name().toLowerCase(), entry.getValue(), seconds);
+            all.merge(entry.getValue());
+        }
+        printRow("total", all, seconds);
+        System.out.println();
+        System.out.printf("Elapsed %.2f s, error rate %.3f%%, row lock waits %d%n", seconds, all.getErrorRate() * 100, lockWaits);
+    }
+
+    private static void printRow(String label, OperationStats stats, double seconds) {
+        System.out.printf("%-9s %8d %9.1f %9d %9d %9d %9d %8d %7d %6d%n",
+                label, stats.getCount(), stats.getCount() / seconds,
+                stats.percentileMicros(50), stats.percentileMicros(95), stats.percentileMicros(99), stats.percentileMicros(100),
+                stats.getRejected(), stats.getErrors(), stats.getLockErrors());
+    }
+}
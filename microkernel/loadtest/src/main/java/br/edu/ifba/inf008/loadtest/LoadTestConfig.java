@@ -0,0 +1,146 @@
+package br.edu.ifba.inf008.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Command-line options of the load test. Every option has a default so a bare run works against
+ * the in-memory backend.
+ */
+public class LoadTestConfig {
+    public enum Backend {
+        MEMORY,
+        MARIADB
+    }
+
+    private Backend backend = Backend.MEMORY;
+    private int terminals = 8;
+    private int operationsPerTerminal = 2000;
+    private long seed = 42;
+    private int loanRows = 10_000;
+    private boolean seedData = true;
+    private boolean groupCommit = true;
+    private int flushers = 4;
+    private int hotTitles;
+    private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+
+    public LoadTestConfig() {
+        mix.put(Operation.CHECKOUT, 40);
+        mix.put(Operation.RETURN, 35);
+        mix.put(Operation.SEARCH, 20);
+        mix.put(Operation.REPORT, 5);
+    }
+
+    public static LoadTestConfig parse(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if ("--no-seed".equals(option)) {
+                config.seedData = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--backend":
+                    config.backend = Backend.valueOf(value.toUpperCase());
+                    break;
+                case "--terminals":
+                    config.terminals = Integer.parseInt(value);
+                    break;
+                case "--operations":
+                    config.operationsPerTerminal = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                case "--rows":
+                    config.loanRows = Integer.parseInt(value);
+                    break;
+                case "--group-commit":
+                    config.groupCommit = !"off".equalsIgnoreCase(value);
+                    break;
+                case "--flushers":
+                    config.flushers = Integer.parseInt(value);
+                    break;
+                case "--hot-titles":
+                    config.hotTitles = Integer.parseInt(value);
+                    break;
+                case "--mix":
+                    config.mix.clear();
+                    for (String part : value.split(",")) {
+                        String[] pair = part.split("=");
+                        config.mix.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        return config;
+    }
+
+    public static String usage() {
+        return "Options: --backend memory|mariadb  --terminals N  --operations N (per terminal)\n"
+                + "         --rows N (loans to seed; users and books are a tenth of that)  --seed N\n"
+                + "         --mix checkout=40,return=35,search=20,report=5  --group-commit on|off  --flushers N\n"
+                + "         --hot-titles N (every checkout picks one of the first N titles)  --no-seed";
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public int getTerminals() {
+        return terminals;
+    }
+
+    public int getOperationsPerTerminal() {
+        return operationsPerTerminal;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getLoanRows() {
+        return loanRows;
+    }
+
+    public int getUserRows() {
+        return Math.max(1, loanRows / 10);
+    }
+
+    public int getBookRows() {
+        return Math.max(1, loanRows / 10);
+    }
+
+    public boolean isSeedData() {
+        return seedData;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    public int getFlushers() {
+        return flushers;
+    }
+
+    public int getHotTitles() {
+        return hotTitles;
+    }
+
+    /**
+     * Enough copies of each hot title that checkouts are limited by contention, not by stock.
+     */
+    public int getHotCopies() {
+        return terminals * operationsPerTerminal;
+    }
+
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+}
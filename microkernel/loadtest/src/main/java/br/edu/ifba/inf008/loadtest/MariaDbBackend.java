@@ -0,0 +1,209 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.plugins.data.BookDAO;
+import br.edu.ifba.inf008.plugins.data.BookDAOImpl;
+import br.edu.ifba.inf008.plugins.data.LoanDAO;
+import br.edu.ifba.inf008.plugins.data.LoanDAOImpl;
+import br.edu.ifba.inf008.plugins.data.ReportDAO;
+import br.edu.ifba.inf008.plugins.data.ReportDAOImpl;
+import br.edu.ifba.inf008.plugins.data.UserDAO;
+import br.edu.ifba.inf008.plugins.data.UserDAOImpl;
+import br.edu.ifba.inf008.shell.data.CopyInventory;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the real plugin DAOs against the database configured in {@link DatabaseConnection} (the
+ * docker-T2 container). Seeded rows get explicit ids after the current maximum and seed-specific
+ * emails/ISBNs, so several data sets can coexist and a later run can reuse one with --no-seed.
+ */
+public class MariaDbBackend implements LibraryBackend {
+    private static final int SEED_CHUNK = 5000;
+
+    private final BookDAO bookDAO = new BookDAOImpl();
+    private final UserDAO userDAO = new UserDAOImpl();
+    private final LoanDAO loanDAO = new LoanDAOImpl();
+    private final ReportDAO reportDAO = new ReportDAOImpl();
+    private final long seed;
+    private int firstUserId;
+    private int firstBookId;
+    private int userCount;
+
+    public MariaDbBackend(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String describe() {
+        return "MariaDB (" + DatabaseConnection.class.getSimpleName() + ")";
+    }
+
+    @Override
+    public void seed(SeedData data) throws Exception {
+        userCount = data.getUsers();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            int userBase = maxId(conn, "users", "user_id");
+            int bookBase = maxId(conn, "books", "book_id");
+
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO users (user_id, name, email) VALUES (?, ?, ?)")) {
+                data.forEachUser((index, name, email) -> {
+                    insert.setInt(1, userBase + index + 1);
+                    insert.setString(2, name);
+                    insert.setString(3, email);
+                    addToBatch(conn, insert, index);
+                });
+                flush(conn, insert);
+            }
+
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO books (book_id, title, author, isbn, published_year) VALUES (?, ?, ?, ?, ?)")) {
+                data.forEachBook((index, title, author, isbn, year, copies) -> {
+                    insert.setInt(1, bookBase + index + 1);
+                    insert.setString(2, title);
+                    insert.setString(3, author);
+                    insert.setString(4, isbn);
+                    insert.setInt(5, year);
+                    addToBatch(conn, insert, index);
+                });
+                flush(conn, insert);
+            }
+
+            // Seeded loans are not tied to a copy; returning one puts a new copy on the shelf.
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO book_copies (book_id, barcode) VALUES (?, ?)")) {
+                int[] rows = { 0 };
+                data.forEachBook((index, title, author, isbn, year, copies) -> {
+                    int bookId = bookBase + index + 1;
+                    for (int copy = 1; copy <= copies; copy++) {
+                        insert.setInt(1, bookId);
+                        insert.setString(2, CopyInventory.barcode(bookId, copy));
+                        addToBatch(conn, insert, rows[0]++);
+                    }
+                });
+                flush(conn, insert);
+            }
+
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO loans (user_id, book_id, loan_date, return_date) VALUES (?, ?, ?, ?)")) {
+                data.forEachLoan((index, userIndex, bookIndex, loanDate, returnDate) -> {
+                    insert.setInt(1, userBase + userIndex + 1);
+                    insert.setInt(2, bookBase + bookIndex + 1);
+                    insert.setDate(3, Date.valueOf(loanDate));
+                    insert.setDate(4, returnDate == null ? null : Date.valueOf(returnDate));
+                    addToBatch(conn, insert, index);
+                });
+                flush(conn, insert);
+            }
+            conn.setAutoCommit(true);
+        }
+        resolveIdRanges(data);
+    }
+
+    /**
+     * Finds where a data set with this seed starts, for runs that reuse an earlier seeding.
+     */
+    public void resolveIdRanges(SeedData data) throws SQLException {
+        userCount = data.getUsers();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            firstUserId = minId(conn, "SELECT MIN(user_id) FROM users WHERE email LIKE ?", "patron-" + seed + "-%");
+            firstBookId = minId(conn, "SELECT MIN(book_id) FROM books WHERE isbn LIKE ?", String.format("LT%d%%", seed % 1000));
+        }
+        if (firstUserId == 0 || firstBookId == 0) {
+            throw new SQLException("No data set seeded with seed " + seed + "; run without --no-seed first.");
+        }
+    }
+
+    private static void addToBatch(Connection conn, PreparedStatement insert, int index) throws SQLException {
+        insert.addBatch();
+        if ((index + 1) % SEED_CHUNK == 0) {
+            flush(conn, insert);
+        }
+    }
+
+    private static void flush(Connection conn, PreparedStatement insert) throws SQLException {
+        insert.executeBatch();
+        conn.commit();
+    }
+
+    private static int maxId(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static int minId(Connection conn, String sql, String pattern) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, pattern);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    @Override
+    public int userId(int userIndex) {
+        return firstUserId + userIndex;
+    }
+
+    @Override
+    public int bookId(int bookIndex) {
+        return firstBookId + bookIndex;
+    }
+
+    @Override
+    public List<Integer> activeLoanIds() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        String sql = "SELECT loan_id FROM loans WHERE return_date IS NULL AND user_id BETWEEN ? AND ?";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, firstUserId);
+            pstmt.setInt(2, firstUserId + userCount - 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public long lockWaits() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW GLOBAL STATUS LIKE 'Innodb_row_lock_waits'")) {
+            return rs.next() ? rs.getLong(2) : 0;
+        }
+    }
+
+    @Override
+    public BookDAO books() {
+        return bookDAO;
+    }
+
+    @Override
+    public UserDAO users() {
+        return userDAO;
+    }
+
+    @Override
+    public LoanDAO loans() {
+        return loanDAO;
+    }
+
+    @Override
+    public ReportDAO reports() {
+        return reportDAO;
+    }
+}
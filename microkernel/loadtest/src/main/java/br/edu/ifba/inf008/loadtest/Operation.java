@@ -0,0 +1,11 @@
+package br.edu.ifba.inf008.loadtest;
+
+/**
+ * What a simulated desk does, mirroring the actions available in the plugins.
+ */
+public enum Operation {
+    CHECKOUT,
+    RETURN,
+    SEARCH,
+    REPORT
+}
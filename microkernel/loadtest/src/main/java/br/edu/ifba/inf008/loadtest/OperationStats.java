@@ -0,0 +1,94 @@
+package br.edu.ifba.inf008.loadtest;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Latencies and outcomes of one operation type. Each terminal fills its own instance, so recording
+ * needs no synchronisation; {@link #merge} combines them once the run is over and percentiles are
+ * computed exactly from the sorted samples.
+ */
+public class OperationStats {
+    private long[] latencies = new long[1024];
+    private int count;
+    private int rejected;
+    private int errors;
+    private int lockErrors;
+
+    public void record(long nanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+    }
+
+    /**
+     * A business rule said no (no copies left, nothing to return). Counted apart from errors.
+     */
+    public void reject(long nanos) {
+        record(nanos);
+        rejected++;
+    }
+
+    public void fail(long nanos, Exception e) {
+        record(nanos);
+        errors++;
+        if (isLockFailure(e)) {
+            lockErrors++;
+        }
+    }
+
+    public void merge(OperationStats other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.latencies[i]);
+        }
+        rejected += other.rejected;
+        errors += other.errors;
+        lockErrors += other.lockErrors;
+    }
+
+    /**
+     * Deadlocks (1213), lock wait timeouts (1205) and serialization failures (SQLSTATE 40001).
+     */
+    private static boolean isLockFailure(Exception e) {
+        if (!(e instanceof SQLException)) {
+            return false;
+        }
+        SQLException sqlException = (SQLException) e;
+        return sqlException.getErrorCode() == 1213 || sqlException.getErrorCode() == 1205
+                || "40001".equals(sqlException.getSQLState());
+    }
+
+    /**
+     * @return the latency in microseconds below which {@code percentile} percent of the samples fall
+     */
+    public long percentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1000;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public int getLockErrors() {
+        return lockErrors;
+    }
+
+    public double getErrorRate() {
+        return count == 0 ? 0 : (double) errors / count;
+    }
+}
@@ -0,0 +1,144 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.shell.PluginDescriptor;
+import br.edu.ifba.inf008.shell.PluginGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static br.edu.ifba.inf008.loadtest.Checks.require;
+
+/**
+ * Self-check of the plugin dependency graph, on descriptors made up in memory:
+ * <ul>
+ * <li>a cycle is refused, and the error names every plugin on it;</li>
+ * <li>two providers of one service are refused;</li>
+ * <li>a provider with another major version, or a lower minor version, leaves the plugin out;</li>
+ * <li>plugins that depend on a left-out plugin, directly or not, are left out too, and the rest
+ * still load in dependency order.</li>
+ * </ul>
+ *
+ * {@code mvn -q exec:java -pl loadtest -Dexec.mainClass=br.edu.ifba.inf008.loadtest.PluginGraphCheck}
+ */
+public class PluginGraphCheck {
+
+    public static void main(String[] args) {
+        Checks.run("Plugin graph check", () -> {
+            checkCycle();
+            checkDuplicateProvider();
+            checkVersions();
+            checkDependentsOfExcluded();
+        });
+    }
+
+    private static void checkCycle() {
+        // catalog -> loans -> users -> catalog, with an unrelated plugin sorting first.
+        List<PluginDescriptor> plugins = Arrays.asList(
+                plugin("alerts", "", ""),
+                plugin("catalog", "books@1.0", "loans@1.0"),
+                plugin("loans", "loans@1.0", "users@1.0"),
+                plugin("users", "users@1.0", "books@1.0"));
+        String message = failure(plugins);
+        require(message != null, "a cycle was accepted");
+        require(message.contains("catalog -> loans -> users -> catalog"), "cycle reported as: " + message);
+
+        String self = failure(Arrays.asList(plugin("a", "x@1.0", "y@1.0"), plugin("b", "y@1.0", "x@1.0")));
+        require(self != null && self.contains("a -> b -> a"), "two-plugin cycle reported as: " + self);
+    }
+
+    private static void checkDuplicateProvider() {
+        String message = failure(Arrays.asList(
+                plugin("books", "books@1.0", ""),
+                plugin("legacyBooks", "books@1.2", ""),
+                plugin("loans", "", "books@1.0")));
+        require(message != null, "two providers of one service were accepted");
+        require(message.contains("'books'") && message.contains("both books and legacyBooks"),
+                "duplicate provider reported as: " + message);
+    }
+
+    private static void checkVersions() {
+        PluginGraph graph = new PluginGraph(Arrays.asList(
+                plugin("books", "books@2.1", ""),
+                plugin("newMajor", "", "books@3.0"),
+                plugin("oldMajor", "", "books@1.0"),
+                plugin("newerMinor", "", "books@2.2"),
+                plugin("sameMinor", "", "books@2.1"),
+                plugin("olderMinor", "", "books@2.0")));
+        require(names(graph.getOrder()).equals(Arrays.asList("books", "olderMinor", "sameMinor")),
+                "loaded " + names(graph.getOrder()));
+        Map<String, String> excluded = reasons(graph);
+        require(excluded.keySet().equals(new HashSet<>(Arrays.asList("newMajor", "oldMajor", "newerMinor"))),
+                "left out " + excluded);
+        require(excluded.get("newerMinor").contains("books@2.1") && excluded.get("newerMinor").contains("2.2"),
+                "minor mismatch reported as: " + excluded.get("newerMinor"));
+        require(PluginDescriptor.isCompatible("1.10", "1.9") && !PluginDescriptor.isCompatible("1.9", "1.10"),
+                "minor versions compared as text");
+    }
+
+    private static void checkDependentsOfExcluded() {
+        // reports -> loans -> users -> mail@2, but only mail@1 exists; catalog needs nothing missing.
+        PluginGraph graph = new PluginGraph(Arrays.asList(
+                plugin("reports", "", "loans@1.0, books@1.0"),
+                plugin("loans", "loans@1.0", "users@1.0, books@1.0"),
+                plugin("users", "users@1.0", "mail@2.0"),
+                plugin("mail", "mail@1.4", ""),
+                plugin("catalog", "books@1.0", ""),
+                plugin("search", "", "books@1.0")));
+        Map<String, String> excluded = reasons(graph);
+        require(excluded.keySet().equals(new HashSet<>(Arrays.asList("users", "loans", "reports"))),
+                "left out " + excluded);
+        require(excluded.get("loans").contains("users") && excluded.get("reports").contains("loans"),
+                "reasons were " + excluded);
+        List<String> order = names(graph.getOrder());
+        require(order.equals(Arrays.asList("catalog", "mail", "search")), "loaded " + order);
+        require(graph.getDepth() == 2, "depth " + graph.getDepth());
+        require(reasons(new PluginGraph(Arrays.asList(plugin("orphan", "", "nothing@1.0")))).get("orphan")
+                .contains("'nothing'"), "a missing provider was not reported");
+    }
+
+    /**
+     * The message the graph is refused with, or null if it was accepted.
+     */
+    private static String failure(List<PluginDescriptor> plugins) {
+        try {
+            new PluginGraph(plugins);
+            return null;
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static PluginDescriptor plugin(String name, String provides, String requires) {
+        return new PluginDescriptor(name, "test." + name, "1.0", services(provides), services(requires));
+    }
+
+    private static Map<String, String> services(String list) {
+        Map<String, String> services = new LinkedHashMap<>();
+        for (String item : list.split(",")) {
+            item = item.trim();
+            if (!item.isEmpty()) {
+                String[] parts = item.split("@");
+                services.put(parts[0], parts[1]);
+            }
+        }
+        return services;
+    }
+
+    private static List<String> names(List<PluginDescriptor> plugins) {
+        List<String> names = new ArrayList<>();
+        for (PluginDescriptor plugin : plugins) {
+            names.add(plugin.getName());
+        }
+        return names;
+    }
+
+    private static Map<String, String> reasons(PluginGraph graph) {
+        Map<String, String> reasons = new LinkedHashMap<>();
+        graph.getExcluded().forEach((plugin, reason) -> reasons.put(plugin.getName(), reason));
+        return reasons;
+    }
+}
@@ -0,0 +1,105 @@
+package br.edu.ifba.inf008.loadtest;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Deterministic data set: the same seed and sizes always produce the same users, books and loans,
+ * generated on the fly so seeding millions of rows needs no memory.
+ */
+public class SeedData {
+
+    public interface UserSink {
+        void accept(int index, String name, String email) throws Exception;
+    }
+
+    public interface BookSink {
+        void accept(int index, String title, String author, String isbn, int year, int copies) throws Exception;
+    }
+
+    public interface LoanSink {
+        void accept(int index, int userIndex, int bookIndex, LocalDate loanDate, LocalDate returnDate) throws Exception;
+    }
+
+    private static final String[] WORDS = { "Silent", "River", "Empire", "Garden", "Shadow", "Winter", "Code",
+            "Atlas", "Ocean", "Night", "Stone", "Light", "Memory", "Storm", "Harbor", "Paper", "Iron", "Glass" };
+    private static final int AUTHORS = 500;
+
+    private final long seed;
+    private final int users;
+    private final int books;
+    private final int loans;
+    private int hotTitles;
+    private int hotCopies;
+
+    public SeedData(long seed, int users, int books, int loans) {
+        this.seed = seed;
+        this.users = users;
+        this.books = books;
+        this.loans = loans;
+    }
+
+    /**
+     * Gives the first {@code titles} books {@code copies} copies each, for the contention
+     * scenario where every desk lends the same few titles.
+     */
+    public SeedData withHotTitles(int titles, int copies) {
+        this.hotTitles = titles;
+        this.hotCopies = copies;
+        return this;
+    }
+
+    public void forEachUser(UserSink sink) throws Exception {
+        for (int i = 0; i < users; i++) {
+            sink.accept(i, "Patron " + i, "patron-" + seed + "-" + i + "@loadtest.example");
+        }
+    }
+
+    public void forEachBook(BookSink sink) throws Exception {
+        Random random = new Random(seed);
+        for (int i = 0; i < books; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            String author = "Author " + random.nextInt(AUTHORS);
+            String isbn = String.format("LT%d%011d", seed % 1000, i);
+            int year = 1950 + random.nextInt(75);
+            int copies = 1 + random.nextInt(5);
+            sink.accept(i, title, author, isbn, year, i < hotTitles ? hotCopies : copies);
+        }
+    }
+
+    /**
+     * About one in five seeded loans is still active; the rest were returned within four weeks.
+     */
+    public void forEachLoan(LoanSink sink) throws Exception {
+        Random random = new Random(seed * 31 + 7);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < loans; i++) {
+            LocalDate loanDate = today.minusDays(random.nextInt(3 * 365));
+            LocalDate returnDate = random.nextInt(5) == 0 ? null : loanDate.plusDays(1 + random.nextInt(28));
+            if (returnDate != null && returnDate.isAfter(today)) {
+                returnDate = today;
+            }
+            sink.accept(i, random.nextInt(users), pickBook(random, books), loanDate, returnDate);
+        }
+    }
+
+    /**
+     * A fifth of the picks go to the most popular 1% of titles, like textbooks at semester start.
+     */
+    public static int pickBook(Random random, int books) {
+        int hot = Math.max(1, books / 100);
+        return random.nextInt(5) == 0 ? random.nextInt(hot) : random.nextInt(books);
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getBooks() {
+        return books;
+    }
+
+    public int getLoans() {
+        return loans;
+    }
+}
@@ -0,0 +1,358 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.interfaces.IApiController;
+import br.edu.ifba.inf008.interfaces.IAuthenticationController;
+import br.edu.ifba.inf008.interfaces.ICore;
+import br.edu.ifba.inf008.interfaces.IIOController;
+import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginController;
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
+import br.edu.ifba.inf008.interfaces.IServiceRegistry;
+import br.edu.ifba.inf008.interfaces.ITabListener;
+import br.edu.ifba.inf008.interfaces.IUIController;
+import br.edu.ifba.inf008.plugins.BookManagementPlugin;
+import br.edu.ifba.inf008.plugins.LoanManagementPlugin;
+import br.edu.ifba.inf008.plugins.ReportPlugin;
+import br.edu.ifba.inf008.plugins.UserManagementPlugin;
+import br.edu.ifba.inf008.shell.PluginExecutor;
+import br.edu.ifba.inf008.shell.ServiceRegistry;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.stage.Stage;
+
+import static br.edu.ifba.inf008.loadtest.Checks.require;
+
+/**
+ * Soak test of the tab lifecycle: the four bundled plugins run in a minimal shell whose tabs live
+ * in a real window, and each plugin's tab is opened, hidden, shown again and closed hundreds of
+ * times. Afterwards every closed tab's node graph must have been collected, and the heap, measured
+ * after a full GC, must be back within a small margin of where it was after a few warm-up cycles.
+ *
+ * The plugins load their data from the library database, and JavaFX needs a display; on a server
+ * run it under {@code xvfb-run}. Arguments: cycles (default 300) and allowed growth in MB
+ * (default 4).
+ *
+ * {@code xvfb-run mvn -q exec:java -pl loadtest -Dexec.mainClass=br.edu.ifba.inf008.loadtest.TabSoakCheck -Dexec.args="300 4"}
+ */
+public class TabSoakCheck {
+    private static final int WARM_UP_CYCLES = 20;
+    private static final long SETTLE_TIMEOUT_MILLIS = 30_000;
+
+    public static void main(String[] args) {
+        int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        long allowedGrowth = (args.length > 1 ? Long.parseLong(args[1]) : 4) * 1024 * 1024;
+
+        Checks.run("Tab soak check", () -> {
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                require(conn.isValid(5), "the library database does not answer");
+            } catch (SQLException e) {
+                throw new IllegalStateException("needs the library database: " + e.getMessage());
+            }
+            try {
+                Platform.startup(() -> {
+                });
+            } catch (UnsupportedOperationException e) {
+                throw new IllegalStateException("needs a display (run it under xvfb-run): " + e.getMessage());
+            }
+            Platform.setImplicitExit(false);
+
+            SoakShell shell = new SoakShell();
+            onFxThread(shell::show);
+            // Users and books register the lookup services that loans need, as in the real load order.
+            List<IPlugin> plugins = Arrays.asList(new UserManagementPlugin(), new BookManagementPlugin(),
+                    new LoanManagementPlugin(), new ReportPlugin());
+            for (IPlugin plugin : plugins) {
+                require(plugin.init(), plugin.getClass().getSimpleName() + " failed to initialize");
+            }
+            shell.settle();
+            require(shell.buttons.size() == plugins.size(), shell.buttons.size() + " plugins added a button");
+
+            shell.cycle(WARM_UP_CYCLES);
+            long baseline = usedHeapAfterGc();
+            List<WeakReference<Node>> closedTabs = shell.cycle(cycles);
+            long after = usedHeapAfterGc();
+
+            long reachable = closedTabs.stream().filter(tab -> tab.get() != null).count();
+            System.out.printf("%d cycles of %d tabs: heap %.1f MB after warm-up, %.1f MB after, %d closed tabs reachable%n",
+                    cycles, plugins.size(), baseline / 1048576.0, after / 1048576.0, reachable);
+            require(shell.failures.isEmpty(), "plugin tasks failed: " + shell.failures);
+            require(reachable == 0, reachable + " of " + closedTabs.size() + " closed tabs are still reachable");
+            require(after - baseline <= allowedGrowth, "heap grew by " + (after - baseline) / 1024 + " KB");
+        });
+        Platform.exit();
+        System.exit(0);
+    }
+
+    /**
+     * The least used heap over a few full collections, so a collection still finishing in the
+     * background does not count as growth.
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(200);
+            least = Math.min(least, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return least;
+    }
+
+    private static void onFxThread(Runnable action) throws InterruptedException {
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                failure.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        require(done.await(SETTLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "the FX thread did not answer");
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Just enough of the core for the plugins: tabs are attached to a {@link TabPane} in a window
+     * and report shown, hidden and closed the way the desk shell does, and every plugin gets its
+     * real executor, wrapped to tell when its work (including the FX callback) is done.
+     */
+    private static class SoakShell extends ICore implements IUIController, IPluginController {
+        private final IServiceRegistry serviceRegistry = new ServiceRegistry();
+        private final Map<IPlugin, IPluginExecutor> executors = new ConcurrentHashMap<>();
+        private final Map<String, List<ITabListener>> tabListeners = new ConcurrentHashMap<>();
+        private final List<Runnable> buttons = new CopyOnWriteArrayList<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        private TabPane tabPane;
+
+        SoakShell() {
+            instance = this;
+        }
+
+        void show() {
+            tabPane = new TabPane();
+            Stage stage = new Stage();
+            stage.setScene(new Scene(tabPane, 960, 600));
+            stage.show();
+        }
+
+        /**
+         * Opens, hides, shows again and closes each plugin's tab, {@code cycles} times over.
+         *
+         * @return the content of every tab closed
+         */
+        List<WeakReference<Node>> cycle(int cycles) throws InterruptedException {
+            List<WeakReference<Node>> closed = new ArrayList<>();
+            for (int i = 0; i < cycles; i++) {
+                for (Runnable button : buttons) {
+                    onFxThread(button);
+                    settle();
+                    // A second tab selected and dropped again hides and shows the plugin's tab.
+                    onFxThread(() -> {
+                        Tab other = new Tab("Other");
+                        tabPane.getTabs().add(other);
+                        tabPane.getSelectionModel().select(other);
+                        tabPane.getTabs().remove(other);
+                    });
+                    settle();
+                    onFxThread(() -> {
+                        Tab tab = tabPane.getTabs().get(0);
+                        closed.add(new WeakReference<>(tab.getContent()));
+                        tabPane.getTabs().remove(tab);
+                        Event.fireEvent(tab, new Event(Tab.CLOSED_EVENT));
+                    });
+                    settle();
+                }
+            }
+            return closed;
+        }
+
+        /**
+         * Waits until no plugin task is queued, running or waiting for its FX callback, and the
+         * FX thread has caught up with anything else queued.
+         */
+        void settle() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MILLIS;
+            while (inFlight.get() > 0) {
+                // A failed load opens an error dialog, which waits for a click that never comes.
+                require(System.currentTimeMillis() < deadline, inFlight.get() + " plugin tasks still running"
+                        + (failures.isEmpty() ? "" : ", failures: " + failures));
+                Thread.sleep(5);
+            }
+            onFxThread(() -> {
+            });
+        }
+
+        @Override
+        public MenuItem createMenuItem(String menuText, String menuItemText) {
+            return new MenuItem(menuItemText);
+        }
+
+        @Override
+        public boolean showTab(String tabText, Supplier<Node> contentSupplier) {
+            for (Tab tab : tabPane.getTabs()) {
+                if (tabText.equals(tab.getText())) {
+                    tabPane.getSelectionModel().select(tab);
+                    return true;
+                }
+            }
+            Tab tab = new Tab(tabText);
+            tab.setContent(contentSupplier.get());
+            List<ITabListener> listeners = tabListeners.computeIfAbsent(tabText, key -> new CopyOnWriteArrayList<>());
+            tab.selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+                for (ITabListener listener : listeners) {
+                    if (isSelected) {
+                        listener.onShown();
+                    } else {
+                        listener.onHidden();
+                    }
+                }
+            });
+            tab.setOnClosed(e -> {
+                for (ITabListener listener : listeners) {
+                    listener.onClosed();
+                }
+                tab.setContent(null);
+            });
+            tabPane.getTabs().add(tab);
+            tabPane.getSelectionModel().select(tab);
+            return true;
+        }
+
+        @Override
+        public void prepareTab(String tabText, Supplier<Node> contentSupplier) {
+            // Warm-up is not part of the cycle; every tab is built on open.
+        }
+
+        @Override
+        public Button addQuickAccessButton(String text, Runnable action) {
+            return addQuickAccessButton(text, null, action);
+        }
+
+        @Override
+        public Button addQuickAccessButton(String text, Node graphic, Runnable action) {
+            buttons.add(action);
+            return new Button(text);
+        }
+
+        @Override
+        public void addTabListener(String tabText, ITabListener listener) {
+            tabListeners.computeIfAbsent(tabText, key -> new CopyOnWriteArrayList<>()).add(listener);
+        }
+
+        @Override
+        public boolean init() {
+            return true;
+        }
+
+        @Override
+        public IPluginExecutor getExecutor(IPlugin plugin) {
+            return executors.computeIfAbsent(plugin, key -> new TrackedExecutor(
+                    new PluginExecutor(plugin.getClass().getSimpleName())));
+        }
+
+        @Override
+        public IUIController getUIController() {
+            return this;
+        }
+
+        @Override
+        public IAuthenticationController getAuthenticationController() {
+            return null;
+        }
+
+        @Override
+        public IIOController getIOController() {
+            return null;
+        }
+
+        @Override
+        public IPluginController getPluginController() {
+            return this;
+        }
+
+        @Override
+        public IApiController getApiController() {
+            return null;
+        }
+
+        @Override
+        public IServiceRegistry getServiceRegistry() {
+            return serviceRegistry;
+        }
+
+        @Override
+        public boolean isHeadless() {
+            return false;
+        }
+
+        private class TrackedExecutor implements IPluginExecutor {
+            private final IPluginExecutor pool;
+
+            TrackedExecutor(IPluginExecutor pool) {
+                this.pool = pool;
+            }
+
+            @Override
+            public <T> CompletableFuture<T> submit(Callable<T> task) {
+                inFlight.incrementAndGet();
+                CompletableFuture<T> result = pool.submit(task);
+                result.whenComplete((value, error) -> {
+                    noteFailure(error);
+                    inFlight.decrementAndGet();
+                });
+                return result;
+            }
+
+            @Override
+            public <T> void submitForUI(Callable<T> task, BiConsumer<T, Throwable> onFxThread) {
+                inFlight.incrementAndGet();
+                pool.submit(task).whenComplete((value, error) -> Platform.runLater(() -> {
+                    try {
+                        noteFailure(error);
+                        onFxThread.accept(value, error);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }));
+            }
+
+            private void noteFailure(Throwable error) {
+                if (error != null) {
+                    failures.add(String.valueOf(error.getMessage()));
+                }
+            }
+        }
+    }
+}
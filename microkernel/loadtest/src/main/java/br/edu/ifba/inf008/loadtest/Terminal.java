@@ -0,0 +1,131 @@
+package br.edu.ifba.inf008.loadtest;
+
+import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.model.Loan;
+import br.edu.ifba.inf008.shell.model.User;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * One simulated circulation desk: runs a fixed number of operations picked by weight from the mix,
+ * back to back, against the backend's DAOs. The random stream depends only on the seed and the
+ * terminal index, so a run can be repeated operation for operation.
+ */
+public class Terminal implements Callable<Map<Operation, OperationStats>> {
+    private final int index;
+    private final LoadTestConfig config;
+    private final LibraryBackend backend;
+    private final Queue<Integer> activeLoans;
+    private final Random random;
+    private final Operation[] weighted;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+
+    public Terminal(int index, LoadTestConfig config, LibraryBackend backend, Queue<Integer> activeLoans) {
+        this.index = index;
+        this.config = config;
+        this.backend = backend;
+        this.activeLoans = activeLoans;
+        this.random = new Random(config.getSeed() * 31 + index);
+        this.weighted = expandMix(config.getMix());
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    private static Operation[] expandMix(Map<Operation, Integer> mix) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (total <= 0) {
+            throw new IllegalArgumentException("The operation mix needs at least one positive weight.");
+        }
+        Operation[] weighted = new Operation[total];
+        int position = 0;
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                weighted[position++] = entry.getKey();
+            }
+        }
+        return weighted;
+    }
+
+    @Override
+    public Map<Operation, OperationStats> call() {
+        Thread.currentThread().setName("terminal-" + index);
+        for (int i = 0; i < config.getOperationsPerTerminal(); i++) {
+            Operation operation = weighted[random.nextInt(weighted.length)];
+            OperationStats operationStats = stats.get(operation);
+            long start = System.nanoTime();
+            try {
+                if (run(operation)) {
+                    operationStats.record(System.nanoTime() - start);
+                } else {
+                    operationStats.reject(System.nanoTime() - start);
+                }
+            } catch (IllegalStateException e) {
+                operationStats.reject(System.nanoTime() - start);
+            } catch (Exception e) {
+                operationStats.fail(System.nanoTime() - start, e);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return false when the operation was turned away by a business rule
+     */
+    private boolean run(Operation operation) throws Exception {
+        switch (operation) {
+            case CHECKOUT:
+                return checkout();
+            case RETURN:
+                return checkin();
+            case SEARCH:
+                return search();
+            case REPORT:
+                backend.reports().getActiveLoans();
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private boolean checkout() throws Exception {
+        User user = new User();
+        user.setUserId(backend.userId(random.nextInt(config.getUserRows())));
+        Book book = new Book();
+        int bookIndex = config.getHotTitles() > 0
+                ? random.nextInt(Math.min(config.getHotTitles(), config.getBookRows()))
+                : SeedData.pickBook(random, config.getBookRows());
+        book.setBookId(backend.bookId(bookIndex));
+
+        Loan loan = new Loan();
+        loan.setUser(user);
+        loan.setBook(book);
+        loan.setLoanDate(LocalDate.now());
+        backend.loans().addLoan(loan);
+        activeLoans.add(loan.getLoanId());
+        return true;
+    }
+
+    private boolean checkin() throws Exception {
+        Integer loanId = activeLoans.poll();
+        if (loanId == null) {
+            return false;
+        }
+        backend.loans().returnLoan(loanId);
+        return true;
+    }
+
+    private boolean search() throws Exception {
+        String term = "Author " + random.nextInt(500);
+        List<Book> books = backend.books().getAllBooks();
+        // Same work as the search box in the book plugin: load the catalog, filter client-side.
+        books.removeIf(book -> !term.equals(book.getAuthor()));
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+@echo off
+rem Windows counterpart of bin/library: starts the library shell on the bundled runtime, with an
+rem application class-data-sharing (AppCDS) archive of the shell and plugin classes.
+rem
+rem The archive is tied to the exact jars it was made from. When any jar in lib\ or plugins\ has
+rem changed (or there is no archive yet) this run records a new one, written when the shell exits;
+rem from the next start on it is used. Jars are compared by name, size and modification time.
+rem Arguments are passed to the shell (e.g. --headless 8080). Extra JVM options can be given in
+rem LIBRARY_JAVA_OPTS.
+setlocal EnableDelayedExpansion
+
+rem Plugins are loaded from .\plugins.
+cd /d "%~dp0.." || exit /b 1
+
+set "JAVA=runtime\bin\java.exe"
+set "ARCHIVE=cds\library.jsa"
+set "STAMP=cds\library.jsa.stamp"
+set "FINGERPRINT=cds\library.jsa.current"
+
+set "CLASSPATH="
+for %%j in (lib\*.jar) do set "CLASSPATH=!CLASSPATH!;%%j"
+set "CLASSPATH=!CLASSPATH:~1!"
+
+if not exist cds mkdir cds
+(for %%j in (lib\*.jar plugins\*.jar runtime\lib\modules) do echo %%j %%~zj %%~tj) > "%FINGERPRINT%"
+
+if exist "%ARCHIVE%" (
+    fc "%FINGERPRINT%" "%STAMP%" >nul 2>&1
+    if not errorlevel 1 (
+        set "CDS_OPTS=-XX:SharedArchiveFile=%ARCHIVE%"
+        set "RECORD=false"
+        goto run
+    )
+)
+del /q "%ARCHIVE%" "%STAMP%" 2>nul
+rem Classes that cannot be archived are skipped with a warning each; keep the console quiet.
+set "CDS_OPTS=-XX:ArchiveClassesAtExit=%ARCHIVE% -Xlog:cds=off -Xlog:cds+dynamic=off"
+set "RECORD=true"
+
+:run
+rem -Xshare:auto: a stale or unreadable archive is ignored instead of stopping the start.
+"%JAVA%" -Xshare:auto %CDS_OPTS% %LIBRARY_JAVA_OPTS% -cp "%CLASSPATH%" br.edu.ifba.inf008.App %*
+set "STATUS=%ERRORLEVEL%"
+
+if "%RECORD%"=="true" if exist "%ARCHIVE%" move /y "%FINGERPRINT%" "%STAMP%" >nul
+exit /b %STATUS%
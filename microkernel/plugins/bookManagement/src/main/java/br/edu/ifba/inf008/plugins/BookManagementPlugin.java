@@ -1,22 +1,34 @@
 package br.edu.ifba.inf008.plugins;
 
 import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.interfaces.IApiController;
 import br.edu.ifba.inf008.interfaces.ICore;
 import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
+import br.edu.ifba.inf008.interfaces.ITabListener;
 import br.edu.ifba.inf008.interfaces.IUIController;
+import br.edu.ifba.inf008.shell.data.ChangeEvent;
+import br.edu.ifba.inf008.shell.data.ChangeFeed;
+import br.edu.ifba.inf008.shell.data.RowDelta;
+import br.edu.ifba.inf008.shell.api.ApiParameters;
 import br.edu.ifba.inf008.plugins.data.BookDAO;
 import br.edu.ifba.inf008.plugins.data.BookDAOImpl;
+import br.edu.ifba.inf008.plugins.data.BookLookupServiceImpl;
+import br.edu.ifba.inf008.shell.service.BookLookupService;
 
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -29,29 +41,43 @@ import javafx.scene.layout.ColumnConstraints;
 public class BookManagementPlugin implements IPlugin {
 
     private final BookDAO bookDAO = new BookDAOImpl();
-    private TableView<Book> bookTable = new TableView<>();
-    private ObservableList<Book> masterData = FXCollections.observableArrayList();
-    private TextField titleField = new TextField();
-    private TextField authorField = new TextField();
-    private TextField isbnField = new TextField();
-    private TextField yearField = new TextField();
-    private TextField copiesField = new TextField();
-    private Button saveButton = new Button("Add Book");
+    private TableView<Book> bookTable;
+    private ObservableList<Book> masterData;
+    private TextField titleField;
+    private TextField authorField;
+    private TextField isbnField;
+    private TextField yearField;
+    private TextField copiesField;
+    private Button saveButton;
     private Book selectedBook = null;
+    private boolean tabHidden = false;
+    private boolean loading = false;
+    private final Set<Integer> pendingChanges = new HashSet<>();
 
     private IUIController uiController;
+    private IPluginExecutor executor;
 
     @Override
     public boolean init() {
+        ICore.getInstance().getServiceRegistry().register(BookLookupService.class, new BookLookupServiceImpl(bookDAO));
+
+        if (ICore.getInstance().isHeadless()) {
+            registerApiEndpoints(ICore.getInstance().getApiController());
+            return true;
+        }
+
         this.uiController = ICore.getInstance().getUIController();
+        this.executor = ICore.getInstance().getPluginController().getExecutor(this);
 
-        Button booksButton = uiController.addQuickAccessButton("", () -> {
-            uiController.showTab("Book Management", () -> {
-                VBox bookPane = createManagementPane();
+        Image bookIconImage = new Image(
+                getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/bookIcon.png"));
+        ImageView bookIconView = new ImageView(bookIconImage);
+        bookIconView.setFitWidth(48);
+        bookIconView.setFitHeight(48);
 
-                bookPane.getStylesheets().add(
-                        getClass().getResource("/br/edu/ifba/inf008/plugins/css/book-styles.css").toExternalForm());
-                bookPane.getStyleClass().add("main-pane");
+        uiController.addQuickAccessButton("", bookIconView, () -> {
+            uiController.showTab("Book Management", () -> {
+                VBox bookPane = createTabContent();
 
                 loadBookData();
 
@@ -59,17 +85,119 @@ public class BookManagementPlugin implements IPlugin {
             });
         });
 
-        Image bookIconImage = new Image(
-                getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/bookIcon.png"));
-        ImageView bookIconView = new ImageView(bookIconImage);
-        bookIconView.setFitWidth(48);
-        bookIconView.setFitHeight(48);
-        booksButton.setGraphic(bookIconView);
+        uiController.addTabListener("Book Management", new ITabListener() {
+            @Override
+            public void onShown() {
+                // Changes from the feed are only queued while hidden; apply them once on return
+                // instead of refreshing a table nobody is looking at.
+                if (tabHidden) {
+                    tabHidden = false;
+                    catchUp();
+                }
+            }
+
+            @Override
+            public void onHidden() {
+                tabHidden = true;
+            }
+
+            @Override
+            public void onClosed() {
+                tabHidden = false;
+                loading = false;
+                pendingChanges.clear();
+                releaseViewState();
+            }
+        });
+
+        ChangeFeed.getInstance().subscribe("books", changes -> Platform.runLater(() -> onRowsChanged(changes)));
 
         return true;
     }
 
+    private void registerApiEndpoints(IApiController api) {
+        api.registerPublicEndpoint("GET", "/api/books", params -> bookDAO.getAllBooks());
+        api.registerEndpoint("GET", "/api/books/search", params -> bookDAO.searchAllBranches(ApiParameters.require(params, "q")));
+        api.registerEndpoint("POST", "/api/books", params -> {
+            Book book = bookFromParameters(params);
+            bookDAO.addBook(book);
+            return book;
+        });
+        api.registerEndpoint("PUT", "/api/books", params -> {
+            Book book = bookFromParameters(params);
+            book.setBookId(ApiParameters.requireInt(params, "bookId"));
+            bookDAO.updateBook(book);
+            return book;
+        });
+        api.registerEndpoint("DELETE", "/api/books", params -> {
+            bookDAO.deleteBook(ApiParameters.requireInt(params, "bookId"));
+            return ApiParameters.ok();
+        });
+    }
+
+    private Book bookFromParameters(Map<String, String> params) {
+        Book book = new Book();
+        book.setTitle(ApiParameters.require(params, "title"));
+        book.setAuthor(ApiParameters.require(params, "author"));
+        book.setIsbn(ApiParameters.require(params, "isbn"));
+        book.setYear(ApiParameters.requireInt(params, "year"));
+        book.setCopies(ApiParameters.requireInt(params, "copies"));
+        return book;
+    }
+
+    @Override
+    public boolean warmUp() {
+        try {
+            List<Book> books = bookDAO.getAllBooks();
+            uiController.prepareTab("Book Management", () -> {
+                VBox bookPane = createTabContent();
+                masterData.setAll(books);
+                return bookPane;
+            });
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Warm-up of Book Management skipped: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private VBox createTabContent() {
+        VBox bookPane = createManagementPane();
+
+        bookPane.getStylesheets().add(
+                getClass().getResource("/br/edu/ifba/inf008/plugins/css/book-styles.css").toExternalForm());
+        bookPane.getStyleClass().add("main-pane");
+
+        return bookPane;
+    }
+
+    private void createViewState() {
+        bookTable = new TableView<>();
+        masterData = FXCollections.observableArrayList();
+        titleField = new TextField();
+        authorField = new TextField();
+        isbnField = new TextField();
+        yearField = new TextField();
+        copiesField = new TextField();
+        saveButton = new Button("Add Book");
+        selectedBook = null;
+    }
+
+    private void releaseViewState() {
+        bookTable = null;
+        masterData = null;
+        titleField = null;
+        authorField = null;
+        isbnField = null;
+        yearField = null;
+        copiesField = null;
+        saveButton = null;
+        selectedBook = null;
+    }
+
     private VBox createManagementPane() {
+        createViewState();
+
         TextField searchField = new TextField();
         searchField.setPromptText("Search by title or author...");
         searchField.getStyleClass().add("search-field");
@@ -122,15 +250,15 @@ public class BookManagementPlugin implements IPlugin {
     private void setupTableColumns() {
         bookTable.getColumns().clear();
         TableColumn<Book, String> titleCol = new TableColumn<>("Title");
-        titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
+        titleCol.setCellValueFactory(cell -> cell.getValue().titleProperty());
         TableColumn<Book, String> authorCol = new TableColumn<>("Author");
-        authorCol.setCellValueFactory(new PropertyValueFactory<>("author"));
+        authorCol.setCellValueFactory(cell -> cell.getValue().authorProperty());
         TableColumn<Book, String> isbnCol = new TableColumn<>("ISBN");
-        isbnCol.setCellValueFactory(new PropertyValueFactory<>("isbn"));
-        TableColumn<Book, Integer> yearCol = new TableColumn<>("Year");
-        yearCol.setCellValueFactory(new PropertyValueFactory<>("year"));
-        TableColumn<Book, Integer> copiesCol = new TableColumn<>("Copies");
-        copiesCol.setCellValueFactory(new PropertyValueFactory<>("copies"));
+        isbnCol.setCellValueFactory(cell -> cell.getValue().isbnProperty());
+        TableColumn<Book, Number> yearCol = new TableColumn<>("Year");
+        yearCol.setCellValueFactory(cell -> cell.getValue().yearProperty());
+        TableColumn<Book, Number> copiesCol = new TableColumn<>("Copies");
+        copiesCol.setCellValueFactory(cell -> cell.getValue().copiesProperty());
         bookTable.getColumns().addAll(titleCol, authorCol, isbnCol, yearCol, copiesCol);
         bookTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
     }
@@ -183,74 +311,170 @@ public class BookManagementPlugin implements IPlugin {
         return grid;
     }
 
-    private void loadBookData() {
-        try {
-            masterData.setAll(bookDAO.getAllBooks());
-        } catch (SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load books: " + ex.getMessage());
+    private void onRowsChanged(List<ChangeEvent> changes) {
+        if (masterData == null) {
+            return;
+        }
+        for (ChangeEvent change : changes) {
+            pendingChanges.add(change.getRowId());
+        }
+        if (!tabHidden && !loading) {
+            applyPendingChanges();
         }
     }
 
-    private void handleSave() {
-        try {
-            String title = titleField.getText();
-            String author = authorField.getText();
-            String isbn = isbnField.getText();
-            int year = Integer.parseInt(yearField.getText());
-            int copies = Integer.parseInt(copiesField.getText());
-
-            if (title.isEmpty() || author.isEmpty() || isbn.isEmpty()) {
-                showAlert(Alert.AlertType.ERROR, "Validation Error", "Title, Author, and ISBN cannot be empty.");
+    private void catchUp() {
+        if (ChangeFeed.getInstance().isHealthy()) {
+            if (!loading) {
+                applyPendingChanges();
+            }
+        } else {
+            pendingChanges.clear();
+            loadBookData();
+        }
+    }
+
+    /**
+     * Fetches the changed rows on the plugin's executor and merges them on the FX thread. Changes
+     * that arrive meanwhile wait, like during a full load, and are applied right after.
+     */
+    private void applyPendingChanges() {
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+        Set<Integer> changedIds = new HashSet<>(pendingChanges);
+        pendingChanges.clear();
+        ObservableList<Book> target = masterData;
+        loading = true;
+        executor.submitForUI(() -> bookDAO.getBooksByIds(changedIds), (books, error) -> {
+            if (masterData != target) {
                 return;
             }
+            loading = false;
+            if (error != null) {
+                loadBookData();
+            } else {
+                RowDelta.merge(masterData, changedIds, books, Book::getBookId, book -> true, Book::copyFrom);
+                applyPendingChanges();
+            }
+        });
+    }
 
-            if (selectedBook == null) {
-                Book newBook = new Book();
-                newBook.setTitle(title);
-                newBook.setAuthor(author);
-                newBook.setIsbn(isbn);
-                newBook.setYear(year);
-                newBook.setCopies(copies);
-                bookDAO.addBook(newBook);
-                showAlert(Alert.AlertType.INFORMATION, "Success", "Book added successfully.");
+    /**
+     * Runs on the plugin's executor; changes from the feed are held back until the load is in.
+     */
+    private void loadBookData() {
+        ObservableList<Book> target = masterData;
+        loading = true;
+        executor.submitForUI(bookDAO::getAllBooks, (books, error) -> {
+            if (masterData != target) {
+                return; // the tab was closed while loading
+            }
+            loading = false;
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load books: " + error.getMessage());
             } else {
-                selectedBook.setTitle(title);
-                selectedBook.setAuthor(author);
-                selectedBook.setIsbn(isbn);
-                selectedBook.setYear(year);
-                selectedBook.setCopies(copies);
-                bookDAO.updateBook(selectedBook);
-                showAlert(Alert.AlertType.INFORMATION, "Success", "Book updated successfully.");
+                masterData.setAll(books);
+                applyPendingChanges();
             }
-            loadBookData();
-            clearForm();
+        });
+    }
+
+    private void handleSave() {
+        String title = titleField.getText();
+        String author = authorField.getText();
+        String isbn = isbnField.getText();
+        int year;
+        int copies;
+        try {
+            year = Integer.parseInt(yearField.getText());
+            copies = Integer.parseInt(copiesField.getText());
         } catch (NumberFormatException e) {
             showAlert(Alert.AlertType.ERROR, "Validation Error", "Year and Copies must be valid numbers.");
-        } catch (SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Database Error", "Operation failed: " + ex.getMessage());
+            return;
         }
+
+        if (title.isEmpty() || author.isEmpty() || isbn.isEmpty()) {
+            showAlert(Alert.AlertType.ERROR, "Validation Error", "Title, Author, and ISBN cannot be empty.");
+            return;
+        }
+
+        Book selected = selectedBook;
+        // Saved from a copy: if the update fails, the row keeps showing what is stored.
+        Book edited = new Book();
+        if (selected != null) {
+            edited.setBookId(selected.getBookId());
+            edited.setBranchId(selected.getBranchId());
+            edited.copyFrom(selected);
+        }
+        edited.setTitle(title);
+        edited.setAuthor(author);
+        edited.setIsbn(isbn);
+        edited.setYear(year);
+        edited.setCopies(copies);
+        saveButton.setDisable(true);
+        executor.submitForUI(() -> {
+            if (selected == null) {
+                bookDAO.addBook(edited);
+            } else {
+                bookDAO.updateBook(edited);
+            }
+            return edited;
+        }, (saved, error) -> {
+            if (masterData == null) {
+                return; // the tab was closed while saving
+            }
+            saveButton.setDisable(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Database Error", "Operation failed: " + error.getMessage());
+                return;
+            }
+            if (selected != null) {
+                selected.copyFrom(saved);
+            }
+            showAlert(Alert.AlertType.INFORMATION, "Success", selected == null ? "Book added successfully." : "Book updated successfully.");
+            // The edited row already shows its new values and the change feed adds new rows, so
+            // only reload when the feed is down.
+            if (!ChangeFeed.getInstance().isHealthy()) {
+                loadBookData();
+            }
+            if (selectedBook == selected) {
+                clearForm();
+            }
+        });
     }
 
     private void handleDelete() {
         if (selectedBook == null) {
             return;
         }
+        Book selected = selectedBook;
 
         Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION,
-                "Are you sure you want to delete '" + selectedBook.getTitle() + "'?", ButtonType.YES, ButtonType.NO);
+                "Are you sure you want to delete '" + selected.getTitle() + "'?", ButtonType.YES, ButtonType.NO);
         confirmation.getDialogPane().getStylesheets()
                 .add(getClass().getResource("/br/edu/ifba/inf008/plugins/css/loan-styles.css").toExternalForm());
 
         confirmation.showAndWait().ifPresent(response -> {
-            if (response == ButtonType.YES) {
-                try {
-                    bookDAO.deleteBook(selectedBook.getBookId());
-                    showAlert(Alert.AlertType.INFORMATION, "Success", "Book deleted successfully.");
+            if (response != ButtonType.YES) {
+                return;
+            }
+            executor.submitForUI(() -> {
+                bookDAO.deleteBook(selected.getBookId());
+                return selected;
+            }, (deleted, error) -> {
+                if (masterData == null) {
+                    return;
+                }
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete book: " + error.getMessage());
+                    return;
+                }
+                showAlert(Alert.AlertType.INFORMATION, "Success", "Book deleted successfully.");
+                if (!ChangeFeed.getInstance().isHealthy()) {
                     loadBookData();
-                } catch (SQLException ex) {
-                    showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete book: " + ex.getMessage());
                 }
-            }
+            });
         });
     }
 
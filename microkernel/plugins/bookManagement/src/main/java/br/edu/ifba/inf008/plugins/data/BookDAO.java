@@ -2,6 +2,7 @@ package br.edu.ifba.inf008.plugins.data;
 
 import br.edu.ifba.inf008.shell.model.Book;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 public interface BookDAO {
@@ -9,4 +10,12 @@ public interface BookDAO {
     void updateBook(Book book) throws SQLException;
     void deleteBook(int bookId) throws SQLException;
     List<Book> getAllBooks() throws SQLException;
+    List<Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException;
+    Book getBookByIsbn(String isbn) throws SQLException;
+    List<Book> getAvailableBooks() throws SQLException;
+
+    /**
+     * Titles, authors or ISBNs containing {@code text}, from every branch, ordered by title.
+     */
+    List<Book> searchAllBranches(String text) throws SQLException;
 }
\ No newline at end of file
@@ -1,69 +1,190 @@
 package br.edu.ifba.inf008.plugins.data;
 
+import br.edu.ifba.inf008.shell.data.CopyInventory;
 import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+import br.edu.ifba.inf008.shell.data.LastKnownData;
+import br.edu.ifba.inf008.shell.data.LocalSnapshot;
+import br.edu.ifba.inf008.shell.data.ModelCodecs;
+import br.edu.ifba.inf008.shell.data.ModelMappers;
+import br.edu.ifba.inf008.shell.data.RowMapper;
+import br.edu.ifba.inf008.shell.data.ShardMap;
+import br.edu.ifba.inf008.shell.journal.JournalEvent;
+import br.edu.ifba.inf008.shell.journal.LoanJournal;
 import br.edu.ifba.inf008.shell.model.Book;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 public class BookDAOImpl implements BookDAO {
+    // Copies are counted from book_copies; see CopyInventory. Deleted books are left out.
+    private static final String SELECT_BOOKS = "SELECT b.book_id, b.title, b.author, b.isbn, b.published_year, " +
+                                               CopyInventory.AVAILABLE_COPIES + " FROM books b WHERE b.deleted_at IS NULL ";
+    private static final int SEARCH_LIMIT_PER_BRANCH = 200;
+    private static final LocalSnapshot<Book> CATALOG = new LocalSnapshot<>("books", ModelCodecs.BOOK_VERSION,
+            ModelCodecs.BOOK, Book::getBookId, Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER));
+
     @Override
     public List<Book> getAllBooks() throws SQLException {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books ORDER BY title";
+        return LastKnownData.read("books.all", () -> CATALOG.load(this::queryAllBooks, this::getBooksByIds));
+    }
+
+    private List<Book> queryAllBooks() throws SQLException {
+        String sql = SELECT_BOOKS + "ORDER BY b.title";
         try (Connection conn = DatabaseConnection.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Book book = new Book();
-                book.setBookId(rs.getInt("book_id"));
-                book.setTitle(rs.getString("title"));
-                book.setAuthor(rs.getString("author"));
-                book.setIsbn(rs.getString("isbn"));
-                book.setYear(rs.getInt("published_year"));
-                book.setCopies(rs.getInt("copies_available"));
-                books.add(book);
-            }
+            return RowMapper.list(rs, ModelMappers.BOOK);
         }
-        return books;
     }
 
     @Override
-    public void addBook(Book book) throws SQLException {
-        String sql = "INSERT INTO books (title, author, isbn, published_year, copies_available) VALUES (?, ?, ?, ?, ?)";
+    public List<Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException {
+        if (bookIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = SELECT_BOOKS + "AND b.book_id IN (" + String.join(",", Collections.nCopies(bookIds.size(), "?")) + ")";
         try (Connection conn = DatabaseConnection.getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, book.getTitle());
-            pstmt.setString(2, book.getAuthor());
-            pstmt.setString(3, book.getIsbn());
-            pstmt.setInt(4, book.getYear());
-            pstmt.setInt(5, book.getCopies());
-            pstmt.executeUpdate();
+            int index = 1;
+            for (int bookId : bookIds) {
+                pstmt.setInt(index++, bookId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.list(rs, ModelMappers.BOOK);
+            }
         }
     }
 
     @Override
-    public void updateBook(Book book) throws SQLException {
-        String sql = "UPDATE books SET title = ?, author = ?, isbn = ?, published_year = ?, copies_available = ? WHERE book_id = ?";
+    public Book getBookByIsbn(String isbn) throws SQLException {
+        String sql = SELECT_BOOKS + "AND b.isbn = ?";
         try (Connection conn = DatabaseConnection.getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, book.getTitle());
-            pstmt.setString(2, book.getAuthor());
-            pstmt.setString(3, book.getIsbn());
-            pstmt.setInt(4, book.getYear());
-            pstmt.setInt(5, book.getCopies());
-            pstmt.setInt(6, book.getBookId());
-            pstmt.executeUpdate();
+            pstmt.setString(1, isbn);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.first(rs, ModelMappers.BOOK);
+            }
         }
     }
 
+    @Override
+    public List<Book> getAvailableBooks() throws SQLException {
+        String sql = SELECT_BOOKS +
+                "AND EXISTS (SELECT 1 FROM book_copies c WHERE c.book_id = b.book_id AND c.status = 'AVAILABLE') " +
+                "ORDER BY b.title";
+        return LastKnownData.read("books.available", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                    Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery(sql)) {
+                return RowMapper.list(rs, ModelMappers.BOOK);
+            }
+        });
+    }
+
+    @Override
+    public List<Book> searchAllBranches(String text) throws SQLException {
+        String sql = SELECT_BOOKS + "AND (b.title LIKE ? OR b.author LIKE ? OR b.isbn LIKE ?) " +
+                     "ORDER BY b.title LIMIT " + SEARCH_LIMIT_PER_BRANCH;
+        String pattern = "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        List<Book> books = ShardMap.getInstance().gather(branch -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, pattern);
+                pstmt.setString(2, pattern);
+                pstmt.setString(3, pattern);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return RowMapper.list(rs, ModelMappers.BOOK);
+                }
+            }
+        });
+        books.sort(Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER).thenComparing(Book::getBranchId));
+        return books;
+    }
+
+    @Override
+    public void addBook(Book book) throws SQLException {
+        String sql = "INSERT INTO books (title, author, isbn, published_year) VALUES (?, ?, ?, ?)";
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, book.getTitle());
+                pstmt.setString(2, book.getAuthor());
+                pstmt.setString(3, book.getIsbn());
+                pstmt.setInt(4, book.getYear());
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        book.setBookId(keys.getInt(1));
+                    }
+                }
+                CopyInventory.addCopies(conn, book.getBookId(), book.getCopies());
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        LoanJournal.record(JournalEvent.bookAdded(book.getBookId(), book.getCopies()));
+    }
+
+    /**
+     * The copies field is what the librarian counted on the shelf: copies are added or withdrawn to
+     * match it, and copies on loan are not affected.
+     */
+    @Override
+    public void updateBook(Book book) throws SQLException {
+        String sql = "UPDATE books SET title = ?, author = ?, isbn = ?, published_year = ? WHERE book_id = ? AND deleted_at IS NULL";
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, book.getTitle());
+                pstmt.setString(2, book.getAuthor());
+                pstmt.setString(3, book.getIsbn());
+                pstmt.setInt(4, book.getYear());
+                pstmt.setInt(5, book.getBookId());
+                if (pstmt.executeUpdate() == 0) {
+                    throw new SQLException("Book not found.");
+                }
+                CopyInventory.setAvailable(conn, book.getBookId(), book.getCopies());
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        LoanJournal.record(JournalEvent.copiesSet(book.getBookId(), book.getCopies()));
+    }
+
+    /**
+     * Flags the book and takes its copies off the shelf, so it can no longer be lent; copies on
+     * loan can still be returned. Its loans stay in the history until the purge job removes them
+     * in small chunks, so deleting a much-lent title does not lock the loans of other desks.
+     */
     @Override
     public void deleteBook(int bookId) throws SQLException {
-        String sql = "DELETE FROM books WHERE book_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, bookId);
-            pstmt.executeUpdate();
+        String sql = "UPDATE books SET deleted_at = CURRENT_TIMESTAMP WHERE book_id = ? AND deleted_at IS NULL";
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, bookId);
+                if (pstmt.executeUpdate() > 0) {
+                    CopyInventory.setAvailable(conn, bookId, 0);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         }
+        LoanJournal.record(JournalEvent.bookDeleted(bookId));
     }
 }
\ No newline at end of file
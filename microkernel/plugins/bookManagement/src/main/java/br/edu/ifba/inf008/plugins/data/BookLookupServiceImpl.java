@@ -0,0 +1,42 @@
+package br.edu.ifba.inf008.plugins.data;
+
+import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.service.BookLookupService;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BookLookupServiceImpl implements BookLookupService {
+    private final BookDAO bookDAO;
+
+    public BookLookupServiceImpl(BookDAO bookDAO) {
+        this.bookDAO = bookDAO;
+    }
+
+    @Override
+    public Book getBook(int bookId) throws SQLException {
+        return getBooks(Collections.singleton(bookId)).get(bookId);
+    }
+
+    @Override
+    public Book getBookByIsbn(String isbn) throws SQLException {
+        return bookDAO.getBookByIsbn(isbn);
+    }
+
+    @Override
+    public Map<Integer, Book> getBooks(Collection<Integer> bookIds) throws SQLException {
+        Map<Integer, Book> books = new LinkedHashMap<>();
+        for (Book book : bookDAO.getBooksByIds(bookIds)) {
+            books.put(book.getBookId(), book);
+        }
+        return books;
+    }
+
+    @Override
+    public List<Book> getAvailableBooks() throws SQLException {
+        return bookDAO.getAvailableBooks();
+    }
+}
@@ -3,23 +3,41 @@ package br.edu.ifba.inf008.plugins;
 import br.edu.ifba.inf008.shell.model.Book;
 import br.edu.ifba.inf008.shell.model.Loan;
 import br.edu.ifba.inf008.shell.model.User;
+import br.edu.ifba.inf008.interfaces.IApiController;
 import br.edu.ifba.inf008.interfaces.ICore;
 import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
+import br.edu.ifba.inf008.interfaces.ITabListener;
 import br.edu.ifba.inf008.interfaces.IUIController;
+import br.edu.ifba.inf008.shell.data.ChangeEvent;
+import br.edu.ifba.inf008.shell.data.ChangeFeed;
+import br.edu.ifba.inf008.shell.data.RowDelta;
+import br.edu.ifba.inf008.shell.api.ApiParameters;
+import br.edu.ifba.inf008.plugins.data.CartItemResult;
 import br.edu.ifba.inf008.plugins.data.LoanDAO;
 import br.edu.ifba.inf008.plugins.data.LoanDAOImpl;
+import br.edu.ifba.inf008.shell.service.BookLookupService;
+import br.edu.ifba.inf008.shell.service.UserLookupService;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
 import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.collections.ListChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
@@ -32,29 +50,52 @@ import javafx.scene.layout.ColumnConstraints;
 public class LoanManagementPlugin implements IPlugin {
 
     private final LoanDAO loanDAO = new LoanDAOImpl();
-    private ObservableList<Loan> masterData = FXCollections.observableArrayList();
-    private ObservableList<User> allUsersMasterData = FXCollections.observableArrayList();
-    private ObservableList<Book> allBooksMasterData = FXCollections.observableArrayList();
-
-    private TableView<Loan> loanTable = new TableView<>();
-    private ComboBox<User> userComboBox = new ComboBox<>();
-    private ComboBox<Book> bookComboBox = new ComboBox<>();
-
-    private Button returnLoanButton = new Button("Return Selected Loan");
+    private UserLookupService userLookup;
+    private BookLookupService bookLookup;
+    private ObservableList<Loan> masterData;
+    private ObservableList<User> allUsersMasterData;
+    private ObservableList<Book> allBooksMasterData;
+
+    private TableView<Loan> loanTable;
+    private ComboBox<User> userComboBox;
+    private ComboBox<Book> bookComboBox;
+    private ObservableList<Book> cartItems;
+    private ListView<Book> cartList;
+
+    private Button returnLoanButton;
+    private boolean tabHidden = false;
+    private boolean loading = false;
+    private final Set<Integer> pendingLoanChanges = new HashSet<>();
+    private final Set<Integer> pendingUserChanges = new HashSet<>();
+    private final Set<Integer> pendingBookChanges = new HashSet<>();
 
     private IUIController uiController;
+    private IPluginExecutor executor;
 
     @Override
     public boolean init() {
+        // Published by the user and book plugins, which are initialized before this one.
+        this.userLookup = ICore.getInstance().getServiceRegistry().get(UserLookupService.class);
+        this.bookLookup = ICore.getInstance().getServiceRegistry().get(BookLookupService.class);
+
+        if (ICore.getInstance().isHeadless()) {
+            registerApiEndpoints(ICore.getInstance().getApiController());
+            return true;
+        }
+
         this.uiController = ICore.getInstance().getUIController();
+        this.executor = ICore.getInstance().getPluginController().getExecutor(this);
 
-        Button loanButton = uiController.addQuickAccessButton("", () -> {
-            uiController.showTab("Loan Management", () -> {
-                VBox loanPane = createManagementPane();
+        Image loanIconImage = new Image(
+                getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/loanIcon.png"));
+        ImageView loanIconView = new ImageView(
+                loanIconImage);
+        loanIconView.setFitWidth(68);
+        loanIconView.setFitHeight(68);
 
-                loanPane.getStylesheets().add(
-                        getClass().getResource("/br/edu/ifba/inf008/plugins/css/loan-styles.css").toExternalForm());
-                loanPane.getStyleClass().add("main-pane");
+        uiController.addQuickAccessButton("", loanIconView, () -> {
+            uiController.showTab("Loan Management", () -> {
+                VBox loanPane = createTabContent();
 
                 loadData();
 
@@ -62,18 +103,120 @@ public class LoanManagementPlugin implements IPlugin {
             });
         });
 
-        Image loanIconImage = new Image(
-                getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/loanIcon.png"));
-        ImageView loanIconView = new ImageView(
-                loanIconImage);
-        loanIconView.setFitWidth(68);
-        loanIconView.setFitHeight(68);
-        loanButton.setGraphic(loanIconView);
+        uiController.addTabListener("Loan Management", new ITabListener() {
+            @Override
+            public void onShown() {
+                // Feed changes are only queued while hidden; apply them once on return.
+                if (tabHidden) {
+                    tabHidden = false;
+                    catchUp();
+                }
+            }
+
+            @Override
+            public void onHidden() {
+                tabHidden = true;
+            }
+
+            @Override
+            public void onClosed() {
+                tabHidden = false;
+                loading = false;
+                clearPendingChanges();
+                releaseViewState();
+            }
+        });
+
+        ChangeFeed.getInstance().subscribe("loans", changes -> Platform.runLater(() -> onRowsChanged(pendingLoanChanges, changes)));
+        ChangeFeed.getInstance().subscribe("users", changes -> Platform.runLater(() -> onRowsChanged(pendingUserChanges, changes)));
+        ChangeFeed.getInstance().subscribe("books", changes -> Platform.runLater(() -> onRowsChanged(pendingBookChanges, changes)));
 
         return true;
     }
 
+    private void registerApiEndpoints(IApiController api) {
+        api.registerEndpoint("GET", "/api/loans", params -> loanDAO.getAllLoans());
+        api.registerPublicEndpoint("GET", "/api/loans/available-books", params -> bookLookup.getAvailableBooks());
+        api.registerEndpoint("POST", "/api/loans", params -> {
+            User user = new User();
+            user.setUserId(ApiParameters.requireInt(params, "userId"));
+            Book book = new Book();
+            book.setBookId(ApiParameters.requireInt(params, "bookId"));
+
+            Loan loan = new Loan();
+            loan.setUser(user);
+            loan.setBook(book);
+            loan.setLoanDate(LocalDate.now());
+            loanDAO.addLoan(loan);
+            return Map.of("loanId", loan.getLoanId());
+        });
+        api.registerEndpoint("POST", "/api/loans/return", params -> {
+            loanDAO.returnLoan(ApiParameters.requireInt(params, "loanId"));
+            return ApiParameters.ok();
+        });
+        api.registerEndpoint("POST", "/api/loans/cart", params ->
+                loanDAO.checkoutCart(ApiParameters.requireInt(params, "userId"), ApiParameters.requireIntList(params, "bookIds")));
+        api.registerEndpoint("POST", "/api/loans/return-cart", params ->
+                loanDAO.returnCart(ApiParameters.requireIntList(params, "loanIds")));
+    }
+
+    @Override
+    public boolean warmUp() {
+        try {
+            List<Loan> loans = loanDAO.getAllLoans();
+            List<User> users = userLookup.getAllUsers();
+            List<Book> books = bookLookup.getAvailableBooks();
+            uiController.prepareTab("Loan Management", () -> {
+                VBox loanPane = createTabContent();
+                masterData.setAll(loans);
+                allUsersMasterData.setAll(users);
+                allBooksMasterData.setAll(books);
+                return loanPane;
+            });
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Warm-up of Loan Management skipped: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private VBox createTabContent() {
+        VBox loanPane = createManagementPane();
+
+        loanPane.getStylesheets().add(
+                getClass().getResource("/br/edu/ifba/inf008/plugins/css/loan-styles.css").toExternalForm());
+        loanPane.getStyleClass().add("main-pane");
+
+        return loanPane;
+    }
+
+    private void createViewState() {
+        masterData = FXCollections.observableArrayList();
+        allUsersMasterData = FXCollections.observableArrayList();
+        allBooksMasterData = FXCollections.observableArrayList();
+        loanTable = new TableView<>();
+        userComboBox = new ComboBox<>();
+        bookComboBox = new ComboBox<>();
+        cartItems = FXCollections.observableArrayList();
+        cartList = new ListView<>(cartItems);
+        returnLoanButton = new Button("Return Selected Loans");
+    }
+
+    private void releaseViewState() {
+        masterData = null;
+        allUsersMasterData = null;
+        allBooksMasterData = null;
+        loanTable = null;
+        userComboBox = null;
+        bookComboBox = null;
+        cartItems = null;
+        cartList = null;
+        returnLoanButton = null;
+    }
+
     private VBox createManagementPane() {
+        createViewState();
+
         TextField searchField = new TextField();
         searchField.setPromptText("Search by user or book...");
         searchField.getStyleClass().add("search-field");
@@ -97,30 +240,16 @@ public class LoanManagementPlugin implements IPlugin {
     private void setupTableAndFilters(TextField searchField, CheckBox activeOnlyCheckBox) {
         loanTable.getColumns().clear();
 
-        TableColumn<Loan, User> userCol = new TableColumn<>("User");
-        userCol.setCellValueFactory(new PropertyValueFactory<>("user"));
-        userCol.setCellFactory(col -> new TableCell<>() {
-            @Override
-            protected void updateItem(User user, boolean empty) {
-                super.updateItem(user, empty);
-                setText(empty || user == null ? null : user.getName());
-            }
-        });
+        TableColumn<Loan, String> userCol = new TableColumn<>("User");
+        userCol.setCellValueFactory(cell -> cell.getValue().getUser().nameProperty());
 
-        TableColumn<Loan, Book> bookCol = new TableColumn<>("Book Title");
-        bookCol.setCellValueFactory(new PropertyValueFactory<>("book"));
-        bookCol.setCellFactory(col -> new TableCell<>() {
-            @Override
-            protected void updateItem(Book book, boolean empty) {
-                super.updateItem(book, empty);
-                setText(empty || book == null ? null : book.getTitle());
-            }
-        });
+        TableColumn<Loan, String> bookCol = new TableColumn<>("Book Title");
+        bookCol.setCellValueFactory(cell -> cell.getValue().getBook().titleProperty());
 
         TableColumn<Loan, LocalDate> loanDateCol = new TableColumn<>("Loan Date");
-        loanDateCol.setCellValueFactory(new PropertyValueFactory<>("loanDate"));
+        loanDateCol.setCellValueFactory(cell -> cell.getValue().loanDateProperty());
         TableColumn<Loan, LocalDate> returnDateCol = new TableColumn<>("Return Date");
-        returnDateCol.setCellValueFactory(new PropertyValueFactory<>("returnDate"));
+        returnDateCol.setCellValueFactory(cell -> cell.getValue().returnDateProperty());
         loanTable.getColumns().addAll(bookCol, userCol, loanDateCol, returnDateCol);
         loanTable.getStyleClass().add("table-view");
 
@@ -150,10 +279,22 @@ public class LoanManagementPlugin implements IPlugin {
         searchField.textProperty().addListener((obs, oldV, newV) -> filterUpdater.run());
         activeOnlyCheckBox.selectedProperty().addListener((obs, oldV, newV) -> filterUpdater.run());
 
-        loanTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
-            boolean isReturnable = (newSelection != null && newSelection.getReturnDate() == null);
-            returnLoanButton.setDisable(!isReturnable);
-        });
+        loanTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        loanTable.getSelectionModel().getSelectedItems().addListener((ListChangeListener<Loan>) change -> updateReturnButton());
+    }
+
+    private void updateReturnButton() {
+        returnLoanButton.setDisable(selectedActiveLoans().isEmpty());
+    }
+
+    private List<Loan> selectedActiveLoans() {
+        List<Loan> active = new ArrayList<>();
+        for (Loan loan : loanTable.getSelectionModel().getSelectedItems()) {
+            if (loan != null && loan.getReturnDate() == null) {
+                active.add(loan);
+            }
+        }
+        return active;
     }
 
     private GridPane createFormPane() {
@@ -164,22 +305,59 @@ public class LoanManagementPlugin implements IPlugin {
         setupComboBoxFiltering();
 
         Button registerButton = new Button("Register New Loan");
-        registerButton.setOnAction(e -> handleRegisterLoan());
+        registerButton.setOnAction(e -> handleRegisterLoan(registerButton));
+
+        Button addToCartButton = new Button("Add to Cart");
+        addToCartButton.setOnAction(e -> {
+            if (addToCart(bookComboBox.getValue())) {
+                bookComboBox.getSelectionModel().clearSelection();
+                bookComboBox.getEditor().clear();
+            }
+        });
+
+        TextField scanField = new TextField();
+        scanField.setPromptText("Scan or type an ISBN and press Enter...");
+        scanField.setOnAction(e -> {
+            if (addToCart(findAvailableByIsbn(scanField.getText().trim()))) {
+                scanField.clear();
+            }
+        });
+
+        Button removeFromCartButton = new Button("Remove");
+        removeFromCartButton.setOnAction(e -> {
+            int index = cartList.getSelectionModel().getSelectedIndex();
+            if (index >= 0) {
+                cartItems.remove(index);
+            }
+        });
+        Button checkoutCartButton = new Button("Check Out Cart");
+        checkoutCartButton.setOnAction(e -> handleCheckoutCart(checkoutCartButton));
+        checkoutCartButton.disableProperty().bind(Bindings.isEmpty(cartItems));
+        removeFromCartButton.disableProperty().bind(Bindings.isEmpty(cartItems));
+
+        cartList.getStyleClass().add("cart-list");
+        cartList.setPrefHeight(120);
+        cartList.setPlaceholder(new Label("The cart is empty."));
 
-        returnLoanButton.setOnAction(e -> handleReturnLoan());
+        returnLoanButton.setOnAction(e -> handleReturnLoans());
         returnLoanButton.setDisable(true);
 
         userComboBox.setMaxWidth(Double.MAX_VALUE);
         bookComboBox.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(bookComboBox, Priority.ALWAYS);
 
         grid.add(new Label("Search User:"), 0, 0);
         grid.add(userComboBox, 1, 0);
         grid.add(new Label("Search Available Book:"), 0, 1);
-        grid.add(bookComboBox, 1, 1);
+        grid.add(new HBox(10, bookComboBox, addToCartButton), 1, 1);
+        grid.add(new Label("Scan ISBN:"), 0, 2);
+        grid.add(scanField, 1, 2);
+        grid.add(new Label("Cart:"), 0, 3);
+        grid.add(cartList, 1, 3);
 
-        HBox buttonBox = new HBox(10, registerButton, returnLoanButton);
+        HBox buttonBox = new HBox(10, registerButton, removeFromCartButton, checkoutCartButton, returnLoanButton);
         buttonBox.setAlignment(Pos.CENTER_RIGHT);
-        grid.add(buttonBox, 1, 2);
+        grid.add(buttonBox, 1, 4);
 
         ColumnConstraints col1 = new ColumnConstraints();
         ColumnConstraints col2 = new ColumnConstraints();
@@ -247,17 +425,147 @@ public class LoanManagementPlugin implements IPlugin {
         });
     }
 
+    private void onRowsChanged(Set<Integer> pending, List<ChangeEvent> changes) {
+        if (masterData == null) {
+            return;
+        }
+        for (ChangeEvent change : changes) {
+            pending.add(change.getRowId());
+        }
+        if (!tabHidden && !loading) {
+            applyPendingChanges();
+        }
+    }
+
+    private void catchUp() {
+        if (ChangeFeed.getInstance().isHealthy()) {
+            if (!loading) {
+                applyPendingChanges();
+            }
+        } else {
+            clearPendingChanges();
+            loadData();
+        }
+    }
+
+    private void clearPendingChanges() {
+        pendingLoanChanges.clear();
+        pendingUserChanges.clear();
+        pendingBookChanges.clear();
+    }
+
+    /**
+     * Fetches the changed rows on the plugin's executor and merges them on the FX thread. Changes
+     * that arrive meanwhile wait, like during a full load, and are applied right after.
+     */
+    private void applyPendingChanges() {
+        if (pendingLoanChanges.isEmpty() && pendingUserChanges.isEmpty() && pendingBookChanges.isEmpty()) {
+            return;
+        }
+        Set<Integer> loanIds = drain(pendingLoanChanges);
+        Set<Integer> userIds = drain(pendingUserChanges);
+        Set<Integer> bookIds = drain(pendingBookChanges);
+        ObservableList<Loan> target = masterData;
+        loading = true;
+        executor.submitForUI(() -> new ChangedRows(
+                        loanIds.isEmpty() ? List.of() : loanDAO.getLoansByIds(loanIds),
+                        userIds.isEmpty() ? Map.of() : userLookup.getUsers(userIds),
+                        bookIds.isEmpty() ? Map.of() : bookLookup.getBooks(bookIds)),
+                (rows, error) -> {
+                    if (masterData != target) {
+                        return;
+                    }
+                    loading = false;
+                    if (error != null) {
+                        clearPendingChanges();
+                        loadData();
+                        return;
+                    }
+                    if (!loanIds.isEmpty()) {
+                        RowDelta.apply(masterData, loanIds, rows.loans, Loan::getLoanId);
+                    }
+                    if (!userIds.isEmpty()) {
+                        RowDelta.merge(allUsersMasterData, userIds, rows.users.values(), User::getUserId, user -> true, User::copyFrom);
+                        refreshLoans(loan -> loan.getUser().getUserId(), userIds, rows.users, (loan, user) -> loan.getUser().copyFrom(user));
+                    }
+                    if (!bookIds.isEmpty()) {
+                        RowDelta.merge(allBooksMasterData, bookIds, rows.books.values(), Book::getBookId, book -> book.getCopies() > 0, Book::copyFrom);
+                        refreshLoans(loan -> loan.getBook().getBookId(), bookIds, rows.books, (loan, book) -> loan.getBook().copyFrom(book));
+                    }
+                    applyPendingChanges();
+                });
+    }
+
+    /**
+     * Updates the user or book of the affected loans in place, so only the changed cells repaint.
+     * Loans of a deleted user or book keep their last values: deletion only flags the row, and the
+     * loans stay in the history until the purge job deletes them, which the loans feed reports.
+     */
+    private <T> void refreshLoans(ToIntFunction<Loan> idOf, Set<Integer> changedIds, Map<Integer, T> fresh,
+            BiConsumer<Loan, T> update) {
+        for (Loan loan : masterData) {
+            int id = idOf.applyAsInt(loan);
+            T replacement = changedIds.contains(id) ? fresh.get(id) : null;
+            if (replacement != null) {
+                update.accept(loan, replacement);
+            }
+        }
+    }
+
+    private static Set<Integer> drain(Set<Integer> pending) {
+        Set<Integer> drained = new HashSet<>(pending);
+        pending.clear();
+        return drained;
+    }
+
+    /**
+     * Runs on the plugin's executor; changes from the feed are held back until the load is in.
+     */
     private void loadData() {
-        try {
-            masterData.setAll(loanDAO.getAllLoans());
-            allUsersMasterData.setAll(loanDAO.getAllUsers());
-            allBooksMasterData.setAll(loanDAO.getAvailableBooks());
-        } catch (SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load initial data: " + ex.getMessage());
+        ObservableList<Loan> target = masterData;
+        loading = true;
+        executor.submitForUI(() -> new LoadedData(loanDAO.getAllLoans(), userLookup.getAllUsers(), bookLookup.getAvailableBooks()),
+                (data, error) -> {
+                    if (masterData != target) {
+                        return; // the tab was closed while loading
+                    }
+                    loading = false;
+                    if (error != null) {
+                        showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load initial data: " + error.getMessage());
+                    } else {
+                        masterData.setAll(data.loans);
+                        allUsersMasterData.setAll(data.users);
+                        allBooksMasterData.setAll(data.books);
+                        applyPendingChanges();
+                    }
+                });
+    }
+
+    private static class LoadedData {
+        private final List<Loan> loans;
+        private final List<User> users;
+        private final List<Book> books;
+
+        LoadedData(List<Loan> loans, List<User> users, List<Book> books) {
+            this.loans = loans;
+            this.users = users;
+            this.books = books;
         }
     }
 
-    private void handleRegisterLoan() {
+    private static class ChangedRows {
+        private final List<Loan> loans;
+        private final Map<Integer, User> users;
+        private final Map<Integer, Book> books;
+
+        ChangedRows(List<Loan> loans, Map<Integer, User> users, Map<Integer, Book> books) {
+            this.loans = loans;
+            this.users = users;
+            this.books = books;
+        }
+    }
+
+    private void handleRegisterLoan(Button registerButton) {
         User selectedUser = userComboBox.getValue();
         Book selectedBook = bookComboBox.getValue();
 
@@ -271,43 +579,178 @@ public class LoanManagementPlugin implements IPlugin {
         newLoan.setBook(selectedBook);
         newLoan.setLoanDate(LocalDate.now());
 
-        try {
+        // Transient database errors are retried in the data layer; a second click meanwhile would
+        // register a second loan.
+        registerButton.setDisable(true);
+        executor.submitForUI(() -> {
             loanDAO.addLoan(newLoan);
+            return newLoan;
+        }, (registered, error) -> {
+            registerButton.setDisable(false);
+            if (masterData == null) {
+                return;
+            }
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Operation Failed", error.getMessage());
+                return;
+            }
             showAlert(Alert.AlertType.INFORMATION, "Success", "Loan registered successfully.");
-            loadData();
+            // The change feed brings in the new loan and the book's remaining copies.
+            if (!ChangeFeed.getInstance().isHealthy()) {
+                loadData();
+            }
             userComboBox.getSelectionModel().clearSelection();
             userComboBox.getEditor().clear();
             bookComboBox.getSelectionModel().clearSelection();
             bookComboBox.getEditor().clear();
-        } catch (IllegalStateException | SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Operation Failed", ex.getMessage());
+        });
+    }
+
+    /**
+     * Adds one copy of the book to the cart, unless the cart already holds every copy on the shelf.
+     */
+    private boolean addToCart(Book book) {
+        if (book == null) {
+            showAlert(Alert.AlertType.ERROR, "Validation Error", "No available book matches that selection.");
+            return false;
+        }
+        long inCart = cartItems.stream().filter(item -> item.getBookId() == book.getBookId()).count();
+        if (inCart >= book.getCopies()) {
+            showAlert(Alert.AlertType.ERROR, "Validation Error",
+                    "Every available copy of '" + book.getTitle() + "' is already in the cart.");
+            return false;
+        }
+        cartItems.add(book);
+        return true;
+    }
+
+    private Book findAvailableByIsbn(String isbn) {
+        return allBooksMasterData.stream().filter(book -> isbn.equals(book.getIsbn())).findFirst().orElse(null);
+    }
+
+    /**
+     * Lends the whole cart in one transaction. Books that could not be lent stay in the cart.
+     */
+    private void handleCheckoutCart(Button checkoutButton) {
+        User selectedUser = userComboBox.getValue();
+        if (selectedUser == null) {
+            showAlert(Alert.AlertType.ERROR, "Validation Error", "You must select a user.");
+            return;
         }
+        List<Book> items = new ArrayList<>(cartItems);
+        List<Integer> bookIds = new ArrayList<>();
+        for (Book book : items) {
+            bookIds.add(book.getBookId());
+        }
+
+        checkoutButton.disableProperty().unbind();
+        checkoutButton.setDisable(true);
+        executor.submitForUI(() -> loanDAO.checkoutCart(selectedUser.getUserId(), bookIds), (results, error) -> {
+            if (masterData == null) {
+                return;
+            }
+            checkoutButton.disableProperty().bind(Bindings.isEmpty(cartItems));
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Operation Failed", error.getMessage());
+                return;
+            }
+            List<Book> failed = new ArrayList<>();
+            List<String> labels = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                labels.add(items.get(i).getTitle());
+                if (!results.get(i).isSucceeded()) {
+                    failed.add(items.get(i));
+                }
+            }
+            cartItems.setAll(failed);
+            if (failed.isEmpty()) {
+                userComboBox.getSelectionModel().clearSelection();
+                userComboBox.getEditor().clear();
+            }
+            showCartOutcome(results, labels, "lent", "Loans registered successfully.");
+            applyCartResults(results);
+        });
     }
 
-    private void handleReturnLoan() {
-        Loan selectedLoan = loanTable.getSelectionModel().getSelectedItem();
-        if (selectedLoan == null) {
+    private void handleReturnLoans() {
+        List<Loan> selectedLoans = selectedActiveLoans();
+        if (selectedLoans.isEmpty()) {
             return;
         }
 
-        Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION,
-                "Return the book '" + selectedLoan.getBook().getTitle() + "'?", ButtonType.YES, ButtonType.NO);
+        String question = selectedLoans.size() == 1
+                ? "Return the book '" + selectedLoans.get(0).getBook().getTitle() + "'?"
+                : "Return the " + selectedLoans.size() + " selected books?";
+        Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION, question, ButtonType.YES, ButtonType.NO);
         confirmation.getDialogPane().getStylesheets()
                 .add(getClass().getResource("/br/edu/ifba/inf008/plugins/css/loan-styles.css").toExternalForm());
 
         confirmation.showAndWait().ifPresent(response -> {
             if (response == ButtonType.YES) {
-                try {
-                    loanDAO.returnLoan(selectedLoan.getLoanId());
-                    showAlert(Alert.AlertType.INFORMATION, "Success", "Book returned successfully.");
-                    loadData();
-                } catch (SQLException ex) {
-                    showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to return the book: " + ex.getMessage());
+                List<Integer> loanIds = new ArrayList<>();
+                List<String> labels = new ArrayList<>();
+                for (Loan loan : selectedLoans) {
+                    loanIds.add(loan.getLoanId());
+                    labels.add(loan.getBook().getTitle() + " (" + loan.getUser().getName() + ")");
                 }
+                returnLoanButton.setDisable(true);
+                executor.submitForUI(() -> loanDAO.returnCart(loanIds), (results, error) -> {
+                    if (masterData == null) {
+                        return;
+                    }
+                    updateReturnButton();
+                    if (error != null) {
+                        showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to return the books: " + error.getMessage());
+                        return;
+                    }
+                    showCartOutcome(results, labels, "returned",
+                            results.size() == 1 ? "Book returned successfully." : "Books returned successfully.");
+                    applyCartResults(results);
+                });
             }
         });
     }
 
+    /**
+     * One dialog for the whole cart, naming the items that failed and why.
+     */
+    private void showCartOutcome(List<CartItemResult> results, List<String> labels, String verb, String allDone) {
+        StringBuilder failures = new StringBuilder();
+        int succeeded = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isSucceeded()) {
+                succeeded++;
+            } else {
+                failures.append("\n- ").append(labels.get(i)).append(": ").append(results.get(i).getError());
+            }
+        }
+        if (succeeded == results.size()) {
+            showAlert(Alert.AlertType.INFORMATION, "Success", allDone);
+        } else {
+            showAlert(succeeded == 0 ? Alert.AlertType.ERROR : Alert.AlertType.WARNING, "Operation Failed",
+                    succeeded + " of " + results.size() + " books " + verb + ". Not " + verb + ":" + failures);
+        }
+    }
+
+    /**
+     * The change feed brings in the new or returned loans and the books' remaining copies. Without
+     * it, only the rows the cart touched are fetched, in one delta instead of a full reload.
+     */
+    private void applyCartResults(List<CartItemResult> results) {
+        if (ChangeFeed.getInstance().isHealthy()) {
+            return;
+        }
+        for (CartItemResult result : results) {
+            if (result.isSucceeded()) {
+                pendingLoanChanges.add(result.getLoanId());
+                pendingBookChanges.add(result.getBookId());
+            }
+        }
+        if (!loading) {
+            applyPendingChanges();
+        }
+    }
+
     private void showAlert(Alert.AlertType alertType, String title, String message) {
         Alert alert = new Alert(alertType);
         alert.setTitle(title);
@@ -0,0 +1,51 @@
+package br.edu.ifba.inf008.plugins.data;
+
+/**
+ * The outcome of one item of a checkout or return cart. {@code itemId} is the book id for a
+ * checkout and the loan id for a return; {@code loanId} and {@code bookId} are the loan created or
+ * closed and its book, or 0 when the item failed.
+ */
+public class CartItemResult {
+    private final int itemId;
+    private final int loanId;
+    private final int bookId;
+    private final String error;
+
+    private CartItemResult(int itemId, int loanId, int bookId, String error) {
+        this.itemId = itemId;
+        this.loanId = loanId;
+        this.bookId = bookId;
+        this.error = error;
+    }
+
+    public static CartItemResult succeeded(int itemId, int loanId, int bookId) {
+        return new CartItemResult(itemId, loanId, bookId, null);
+    }
+
+    public static CartItemResult failed(int itemId, String error) {
+        return new CartItemResult(itemId, 0, 0, error);
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public int getLoanId() {
+        return loanId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public boolean isSucceeded() {
+        return error == null;
+    }
+
+    /**
+     * Why the item failed, or null if it succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+}
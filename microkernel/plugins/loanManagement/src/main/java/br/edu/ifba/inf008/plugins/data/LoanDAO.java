@@ -1,9 +1,8 @@
 package br.edu.ifba.inf008.plugins.data;
 
 import br.edu.ifba.inf008.shell.model.Loan;
-import br.edu.ifba.inf008.shell.model.User;
-import br.edu.ifba.inf008.shell.model.Book;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 public interface LoanDAO {
@@ -13,6 +12,18 @@ public interface LoanDAO {
     void addLoan(Loan loan) throws SQLException, IllegalStateException;
 
     void returnLoan(int loanId) throws SQLException;
-    List<User> getAllUsers() throws SQLException;
-    List<Book> getAvailableBooks() throws SQLException;
+
+    /**
+     * Lends one copy of each book to the user in a single transaction. A book that is missing or
+     * has no copy left fails alone; the rest are lent. Results are in the order of {@code bookIds}.
+     */
+    List<CartItemResult> checkoutCart(int userId, List<Integer> bookIds) throws SQLException;
+
+    /**
+     * Returns the loans in a single transaction. A loan that is missing or already returned fails
+     * alone; the rest are returned. Results are in the order of {@code loanIds}.
+     */
+    List<CartItemResult> returnCart(List<Integer> loanIds) throws SQLException;
+
+    List<Loan> getLoansByIds(Collection<Integer> loanIds) throws SQLException;
 }
@@ -1,17 +1,33 @@
 package br.edu.ifba.inf008.plugins.data;
 
+import br.edu.ifba.inf008.shell.data.CopyInventory;
 import br.edu.ifba.inf008.shell.data.DatabaseConnection;
-import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.data.LastKnownData;
+import br.edu.ifba.inf008.shell.data.ModelMappers;
+import br.edu.ifba.inf008.shell.data.RowMapper;
+import br.edu.ifba.inf008.shell.data.TransactionTemplate;
+import br.edu.ifba.inf008.shell.journal.JournalEvent;
+import br.edu.ifba.inf008.shell.journal.LoanJournal;
 import br.edu.ifba.inf008.shell.model.Loan;
-import br.edu.ifba.inf008.shell.model.User;
+import br.edu.ifba.inf008.shell.notify.Outbox;
+import br.edu.ifba.inf008.shell.notify.OutboxEntry;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class LoanDAOImpl implements LoanDAO {
     @Override
     public List<Loan> getAllLoans() throws SQLException {
-        List<Loan> loans = new ArrayList<>();
         String sql = "SELECT l.loan_id, l.loan_date, l.return_date, " +
                      "u.user_id, u.name, u.email, " +
                      "b.book_id, b.title, b.author " +
@@ -20,159 +36,317 @@ public class LoanDAOImpl implements LoanDAO {
                      "JOIN books b ON l.book_id = b.book_id " +
                      "ORDER BY l.loan_date DESC";
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                User user = new User();
-                user.setUserId(rs.getInt("user_id"));
-                user.setName(rs.getString("name"));
-                user.setEmail(rs.getString("email"));
-
-                Book book = new Book();
-                book.setBookId(rs.getInt("book_id"));
-                book.setTitle(rs.getString("title"));
-                book.setAuthor(rs.getString("author"));
-
-                Loan loan = new Loan();
-                loan.setLoanId(rs.getInt("loan_id"));
-                loan.setUser(user);
-                loan.setBook(book);
-                loan.setLoanDate(rs.getDate("loan_date").toLocalDate());
-                if (rs.getDate("return_date") != null) {
-                    loan.setReturnDate(rs.getDate("return_date").toLocalDate());
-                }
-                loans.add(loan);
+        return LastKnownData.read("loans.all", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                return RowMapper.list(rs, ModelMappers.LOAN);
             }
-        }
-        return loans;
+        });
     }
 
     @Override
     public void addLoan(Loan loan) throws SQLException, IllegalStateException {
-        String checkSql = "SELECT copies_available FROM books WHERE book_id = ?";
-        String insertLoanSql = "INSERT INTO loans (user_id, book_id, loan_date) VALUES (?, ?, ?)";
-        String updateBookSql = "UPDATE books SET copies_available = copies_available - 1 WHERE book_id = ?";
-        
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                checkStmt.setInt(1, loan.getBook().getBookId());
-                ResultSet rs = checkStmt.executeQuery();
-                if (rs.next()) {
-                    if (rs.getInt("copies_available") <= 0) {
-                        throw new IllegalStateException("No copies available for this book.");
-                    }
-                } else {
-                    throw new SQLException("Book not found.");
+        // Concurrent checkouts from this client share one commit through the group-commit executor;
+        // a deadlock or lock timeout is retried there rather than shown to the desk.
+        TransactionTemplate.getInstance().execute("checkout", false, conn -> {
+            checkout(conn, loan);
+            return null;
+        });
+        LoanJournal.record(JournalEvent.loanCreated(loan.getLoanId(), loan.getUser().getUserId(), loan.getBook().getBookId()));
+    }
+
+    @Override
+    public void returnLoan(int loanId) throws SQLException {
+        int bookId = TransactionTemplate.getInstance().execute("return", false, conn -> checkin(conn, loanId));
+        LoanJournal.record(JournalEvent.loanReturned(loanId, bookId));
+    }
+
+    @Override
+    public List<CartItemResult> checkoutCart(int userId, List<Integer> bookIds) throws SQLException {
+        if (bookIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<CartItemResult> results = TransactionTemplate.getInstance().execute("checkout-cart", false,
+                conn -> checkoutAll(conn, userId, bookIds));
+        for (CartItemResult result : results) {
+            if (result.isSucceeded()) {
+                LoanJournal.record(JournalEvent.loanCreated(result.getLoanId(), userId, result.getBookId()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<CartItemResult> returnCart(List<Integer> loanIds) throws SQLException {
+        if (loanIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<CartItemResult> results = TransactionTemplate.getInstance().execute("return-cart", false,
+                conn -> checkinAll(conn, loanIds));
+        for (CartItemResult result : results) {
+            if (result.isSucceeded()) {
+                LoanJournal.record(JournalEvent.loanReturned(result.getLoanId(), result.getBookId()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The whole cart costs a fixed number of statements: one lookup of the books, one claim per
+     * distinct title (a class set of one title claims all its copies at once), one batched insert
+     * and one read-back of the new loan ids. Books that cannot be lent are reported and skipped
+     * before anything is written for them.
+     */
+    private List<CartItemResult> checkoutAll(Connection conn, int userId, List<Integer> bookIds) throws SQLException {
+        String userExistsSql = "SELECT 1 FROM users WHERE user_id = ? AND deleted_at IS NULL";
+        String insertLoanSql = "INSERT INTO loans (user_id, book_id, copy_id, loan_date) VALUES (?, ?, ?, ?)";
+
+        try (PreparedStatement checkStmt = conn.prepareStatement(userExistsSql)) {
+            checkStmt.setInt(1, userId);
+            try (ResultSet rs = checkStmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("User not found.");
                 }
             }
+        }
 
-            try (PreparedStatement insertStmt = conn.prepareStatement(insertLoanSql)) {
-                insertStmt.setInt(1, loan.getUser().getUserId());
-                insertStmt.setInt(2, loan.getBook().getBookId());
-                insertStmt.setDate(3, Date.valueOf(loan.getLoanDate()));
-                insertStmt.executeUpdate();
+        Map<Integer, Integer> wanted = new LinkedHashMap<>();
+        for (int bookId : bookIds) {
+            wanted.merge(bookId, 1, Integer::sum);
+        }
+        Set<Integer> existing = new HashSet<>();
+        try (PreparedStatement booksStmt = prepareWithIds(conn,
+                "SELECT book_id FROM books WHERE deleted_at IS NULL AND book_id IN (" + placeholders(wanted.size()) + ")", wanted.keySet());
+             ResultSet rs = booksStmt.executeQuery()) {
+            while (rs.next()) {
+                existing.add(rs.getInt(1));
             }
+        }
+        Map<Integer, Deque<Integer>> claimed = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : wanted.entrySet()) {
+            if (existing.contains(entry.getKey())) {
+                claimed.put(entry.getKey(), new ArrayDeque<>(CopyInventory.claim(conn, entry.getKey(), entry.getValue())));
+            }
+        }
 
-            try (PreparedStatement updateStmt = conn.prepareStatement(updateBookSql)) {
-                updateStmt.setInt(1, loan.getBook().getBookId());
-                updateStmt.executeUpdate();
+        int[] copyOf = new int[bookIds.size()];
+        List<Integer> lentCopies = new ArrayList<>();
+        try (PreparedStatement insertStmt = conn.prepareStatement(insertLoanSql)) {
+            Date today = Date.valueOf(java.time.LocalDate.now());
+            for (int i = 0; i < bookIds.size(); i++) {
+                Deque<Integer> copies = claimed.get(bookIds.get(i));
+                if (copies == null || copies.isEmpty()) {
+                    continue;
+                }
+                copyOf[i] = copies.poll();
+                lentCopies.add(copyOf[i]);
+                insertStmt.setInt(1, userId);
+                insertStmt.setInt(2, bookIds.get(i));
+                insertStmt.setInt(3, copyOf[i]);
+                insertStmt.setDate(4, today);
+                insertStmt.addBatch();
+            }
+            if (!lentCopies.isEmpty()) {
+                insertStmt.executeBatch();
             }
+        }
+
+        // Each claimed copy is locked by this transaction and has exactly one open loan: the new one.
+        Map<Integer, Integer> loanByCopy = new HashMap<>();
+        if (!lentCopies.isEmpty()) {
+            try (PreparedStatement loansStmt = prepareWithIds(conn,
+                    "SELECT copy_id, loan_id FROM loans WHERE return_date IS NULL AND copy_id IN ("
+                            + placeholders(lentCopies.size()) + ")", lentCopies);
+                 ResultSet rs = loansStmt.executeQuery()) {
+                while (rs.next()) {
+                    loanByCopy.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
 
-            conn.commit();
-        } catch (SQLException | IllegalStateException e) {
-            if (conn != null) conn.rollback();
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+        List<CartItemResult> results = new ArrayList<>(bookIds.size());
+        List<OutboxEntry> notifications = new ArrayList<>();
+        for (int i = 0; i < bookIds.size(); i++) {
+            int bookId = bookIds.get(i);
+            if (copyOf[i] != 0) {
+                int loanId = loanByCopy.getOrDefault(copyOf[i], 0);
+                results.add(CartItemResult.succeeded(bookId, loanId, bookId));
+                notifications.addAll(OutboxEntry.checkout(loanId, userId, bookId, java.time.LocalDate.now()));
+            } else if (!existing.contains(bookId)) {
+                results.add(CartItemResult.failed(bookId, "Book not found."));
+            } else {
+                results.add(CartItemResult.failed(bookId, "No copies available for this book."));
             }
         }
+        Outbox.add(conn, notifications);
+        return results;
     }
 
-    @Override
-    public void returnLoan(int loanId) throws SQLException {
-        String selectBookIdSql = "SELECT book_id FROM loans WHERE loan_id = ?";
-        String updateLoanSql = "UPDATE loans SET return_date = ? WHERE loan_id = ?";
-        String updateBookSql = "UPDATE books SET copies_available = copies_available + 1 WHERE book_id = ?";
-        
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            int bookId = -1;
-            try (PreparedStatement selectStmt = conn.prepareStatement(selectBookIdSql)) {
-                selectStmt.setInt(1, loanId);
-                ResultSet rs = selectStmt.executeQuery();
-                if (rs.next()) {
-                    bookId = rs.getInt("book_id");
-                } else {
-                    throw new SQLException("Loan not found.");
-                }
+    /**
+     * Locks the open loans of the cart with one select, then closes them with one update and puts
+     * their copies back with another.
+     */
+    private List<CartItemResult> checkinAll(Connection conn, List<Integer> loanIds) throws SQLException {
+        Set<Integer> distinct = new LinkedHashSet<>(loanIds);
+        Map<Integer, int[]> open = new HashMap<>();
+        try (PreparedStatement selectStmt = prepareWithIds(conn,
+                "SELECT loan_id, book_id, copy_id, user_id FROM loans WHERE return_date IS NULL AND loan_id IN ("
+                        + placeholders(distinct.size()) + ") FOR UPDATE", distinct);
+             ResultSet rs = selectStmt.executeQuery()) {
+            while (rs.next()) {
+                open.put(rs.getInt(1), new int[] {rs.getInt(2), rs.getInt(3), rs.getInt(4)});
             }
+        }
 
-            try (PreparedStatement updateLoanStmt = conn.prepareStatement(updateLoanSql)) {
-                updateLoanStmt.setDate(1, Date.valueOf(java.time.LocalDate.now()));
-                updateLoanStmt.setInt(2, loanId);
-                updateLoanStmt.executeUpdate();
+        List<CartItemResult> results = new ArrayList<>(loanIds.size());
+        Set<Integer> returning = new LinkedHashSet<>();
+        for (int loanId : loanIds) {
+            int[] loan = open.get(loanId);
+            if (loan != null && returning.add(loanId)) {
+                results.add(CartItemResult.succeeded(loanId, loanId, loan[0]));
+            } else {
+                results.add(CartItemResult.failed(loanId, "Loan not found or already returned."));
             }
+        }
+        if (returning.isEmpty()) {
+            return results;
+        }
 
-            try (PreparedStatement updateBookStmt = conn.prepareStatement(updateBookSql)) {
-                updateBookStmt.setInt(1, bookId);
-                updateBookStmt.executeUpdate();
+        try (PreparedStatement updateStmt = conn.prepareStatement(
+                "UPDATE loans SET return_date = ? WHERE loan_id IN (" + placeholders(returning.size()) + ")")) {
+            updateStmt.setDate(1, Date.valueOf(java.time.LocalDate.now()));
+            int index = 2;
+            for (int loanId : returning) {
+                updateStmt.setInt(index++, loanId);
             }
-            
-            conn.commit();
-        } catch (SQLException e) {
-            if (conn != null) conn.rollback();
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+            updateStmt.executeUpdate();
+        }
+
+        List<Integer> copies = new ArrayList<>();
+        List<OutboxEntry> notifications = new ArrayList<>();
+        for (int loanId : returning) {
+            int[] loan = open.get(loanId);
+            notifications.addAll(OutboxEntry.returned(loanId, loan[2], loan[0]));
+            if (loan[1] != 0) {
+                copies.add(loan[1]);
+            } else {
+                // Loans recorded before copies were tracked: the returned book goes back as a new copy.
+                CopyInventory.addCopies(conn, loan[0], 1);
             }
         }
+        CopyInventory.release(conn, copies);
+        Outbox.add(conn, notifications);
+        return results;
     }
 
-    @Override
-    public List<User> getAllUsers() throws SQLException {
-        List<User> users = new ArrayList<>();
-        String sql = "SELECT user_id, name, email FROM users ORDER BY name";
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                User user = new User();
-                user.setUserId(rs.getInt("user_id"));
-                user.setName(rs.getString("name"));
-                user.setEmail(rs.getString("email"));
-                users.add(user);
+    /**
+     * Claims any free copy of the book rather than decrementing a counter on the book row, so
+     * checkouts of one popular title run side by side instead of queueing on that row. A deleted
+     * book has no copies on the shelf; a deleted user inserts no loan, and the claim is rolled back.
+     */
+    private void checkout(Connection conn, Loan loan) throws SQLException, IllegalStateException {
+        String bookExistsSql = "SELECT 1 FROM books WHERE book_id = ? AND deleted_at IS NULL";
+        String insertLoanSql = "INSERT INTO loans (user_id, book_id, copy_id, loan_date) " +
+                               "SELECT user_id, ?, ?, ? FROM users WHERE user_id = ? AND deleted_at IS NULL";
+
+        int copyId = CopyInventory.claim(conn, loan.getBook().getBookId());
+        if (copyId == 0) {
+            try (PreparedStatement checkStmt = conn.prepareStatement(bookExistsSql)) {
+                checkStmt.setInt(1, loan.getBook().getBookId());
+                try (ResultSet rs = checkStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Book not found.");
+                    }
+                }
+            }
+            throw new IllegalStateException("No copies available for this book.");
+        }
+
+        try (PreparedStatement insertStmt = conn.prepareStatement(insertLoanSql, Statement.RETURN_GENERATED_KEYS)) {
+            insertStmt.setInt(1, loan.getBook().getBookId());
+            insertStmt.setInt(2, copyId);
+            insertStmt.setDate(3, Date.valueOf(loan.getLoanDate()));
+            insertStmt.setInt(4, loan.getUser().getUserId());
+            if (insertStmt.executeUpdate() == 0) {
+                throw new SQLException("User not found.");
+            }
+            try (ResultSet keys = insertStmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    loan.setLoanId(keys.getInt(1));
+                }
             }
         }
-        return users;
+        // Committed or rolled back with the loan, so a receipt is never sent for a loan that failed.
+        Outbox.add(conn, OutboxEntry.checkout(loan.getLoanId(), loan.getUser().getUserId(),
+                loan.getBook().getBookId(), loan.getLoanDate()));
+    }
+
+    private int checkin(Connection conn, int loanId) throws SQLException {
+        String selectLoanSql = "SELECT book_id, copy_id, user_id FROM loans WHERE loan_id = ? AND return_date IS NULL FOR UPDATE";
+        String updateLoanSql = "UPDATE loans SET return_date = ? WHERE loan_id = ?";
+
+        int bookId;
+        int copyId;
+        int userId;
+        try (PreparedStatement selectStmt = conn.prepareStatement(selectLoanSql)) {
+            selectStmt.setInt(1, loanId);
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Loan not found or already returned.");
+                }
+                bookId = rs.getInt(1);
+                copyId = rs.getInt(2);
+                userId = rs.getInt(3);
+            }
+        }
+
+        try (PreparedStatement updateLoanStmt = conn.prepareStatement(updateLoanSql)) {
+            updateLoanStmt.setDate(1, Date.valueOf(java.time.LocalDate.now()));
+            updateLoanStmt.setInt(2, loanId);
+            updateLoanStmt.executeUpdate();
+        }
+
+        if (copyId != 0) {
+            CopyInventory.release(conn, copyId);
+        } else {
+            // Loans recorded before copies were tracked: the returned book goes back as a new copy.
+            CopyInventory.addCopies(conn, bookId, 1);
+        }
+        Outbox.add(conn, OutboxEntry.returned(loanId, userId, bookId));
+        return bookId;
     }
 
     @Override
-    public List<Book> getAvailableBooks() throws SQLException {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT book_id, title, author FROM books WHERE copies_available > 0 ORDER BY title";
+    public List<Loan> getLoansByIds(Collection<Integer> loanIds) throws SQLException {
+        if (loanIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT l.loan_id, l.loan_date, l.return_date, " +
+                     "u.user_id, u.name, u.email, " +
+                     "b.book_id, b.title, b.author " +
+                     "FROM loans l " +
+                     "JOIN users u ON l.user_id = u.user_id " +
+                     "JOIN books b ON l.book_id = b.book_id " +
+                     "WHERE l.loan_id IN (" + placeholders(loanIds.size()) + ")";
+
         try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Book book = new Book();
-                book.setBookId(rs.getInt("book_id"));
-                book.setTitle(rs.getString("title"));
-                book.setAuthor(rs.getString("author"));
-                books.add(book);
-            }
+             PreparedStatement pstmt = prepareWithIds(conn, sql, loanIds);
+             ResultSet rs = pstmt.executeQuery()) {
+            return RowMapper.list(rs, ModelMappers.LOAN);
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static PreparedStatement prepareWithIds(Connection conn, String sql, Collection<Integer> ids) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(sql);
+        int index = 1;
+        for (int id : ids) {
+            pstmt.setInt(index++, id);
         }
-        return books;
+        return pstmt;
     }
 }
\ No newline at end of file
@@ -3,19 +3,38 @@ package br.edu.ifba.inf008.plugins;
 import br.edu.ifba.inf008.shell.model.Book;
 import br.edu.ifba.inf008.shell.model.Loan;
 import br.edu.ifba.inf008.shell.model.User;
+import br.edu.ifba.inf008.interfaces.IApiController;
 import br.edu.ifba.inf008.interfaces.ICore;
 import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
+import br.edu.ifba.inf008.interfaces.ITabListener;
 import br.edu.ifba.inf008.interfaces.IUIController;
+import br.edu.ifba.inf008.shell.data.ChangeEvent;
+import br.edu.ifba.inf008.shell.data.ChangeFeed;
+import br.edu.ifba.inf008.shell.data.RowDelta;
+import br.edu.ifba.inf008.shell.data.ShardMap;
+import br.edu.ifba.inf008.shell.api.ApiParameters;
+import br.edu.ifba.inf008.plugins.data.CachedReportDAO;
 import br.edu.ifba.inf008.plugins.data.ReportDAO;
 import br.edu.ifba.inf008.plugins.data.ReportDAOImpl;
+import br.edu.ifba.inf008.plugins.data.ReportQuery;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
@@ -24,23 +43,43 @@ import javafx.scene.image.ImageView;
 
 public class ReportPlugin implements IPlugin {
 
-    private final ReportDAO reportDAO = new ReportDAOImpl();
-    private TableView<Loan> reportTable = new TableView<>();
+    private final ReportDAO reportDAO = new CachedReportDAO(new ReportDAOImpl());
+    private TableView<Loan> reportTable;
     private IUIController uiController;
+    private IPluginExecutor executor;
     private CheckBox activeLoansSwitch;
     private Label statusLabel;
+    private DatePicker fromPicker;
+    private DatePicker toPicker;
+    private TextField userFilter;
+    private TextField bookFilter;
+    private TextField authorFilter;
+    private ReportQuery shownQuery = ReportQuery.of(ReportQuery.Status.ACTIVE);
+    private long reportGeneration = 0;
+    private boolean loading = false;
+    private boolean tabHidden = false;
+    private final Set<Integer> pendingLoanChanges = new HashSet<>();
+    private final Set<Integer> pendingUserChanges = new HashSet<>();
+    private final Set<Integer> pendingBookChanges = new HashSet<>();
 
     @Override
     public boolean init() {
+        if (ICore.getInstance().isHeadless()) {
+            registerApiEndpoints(ICore.getInstance().getApiController());
+            return true;
+        }
+
         this.uiController = ICore.getInstance().getUIController();
+        this.executor = ICore.getInstance().getPluginController().getExecutor(this);
 
-        Button reportsButton = uiController.addQuickAccessButton("", () -> {
-            uiController.showTab("Report", () -> {
-                VBox reportPane = createReportPane();
+        Image reportsIconImage = new Image(getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/reportIcon.png"));
+        ImageView reportsIconView = new ImageView(reportsIconImage);
+        reportsIconView.setFitWidth(48);
+        reportsIconView.setFitHeight(48);
 
-                reportPane.getStylesheets().add(
-                        getClass().getResource("/br/edu/ifba/inf008/plugins/css/report-styles.css").toExternalForm());
-                reportPane.getStyleClass().add("main-pane");
+        uiController.addQuickAccessButton("", reportsIconView, () -> {
+            uiController.showTab("Report", () -> {
+                VBox reportPane = createTabContent();
 
                 loadReportData();
 
@@ -48,16 +87,119 @@ public class ReportPlugin implements IPlugin {
             });
         });
         
-        Image reportsIconImage = new Image(getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/reportIcon.png"));
-        ImageView reportsIconView = new ImageView(reportsIconImage);
-        reportsIconView.setFitWidth(48);
-        reportsIconView.setFitHeight(48);
-        reportsButton.setGraphic(reportsIconView);
+        uiController.addTabListener("Report", new ITabListener() {
+            @Override
+            public void onShown() {
+                // Loans registered while the report was in the background are applied on return.
+                if (tabHidden) {
+                    tabHidden = false;
+                    catchUp();
+                }
+            }
+
+            @Override
+            public void onHidden() {
+                tabHidden = true;
+            }
+
+            @Override
+            public void onClosed() {
+                tabHidden = false;
+                pendingLoanChanges.clear();
+                pendingUserChanges.clear();
+                pendingBookChanges.clear();
+                // Results of a report still loading are dropped.
+                reportGeneration++;
+                loading = false;
+                reportTable = null;
+                activeLoansSwitch = null;
+                statusLabel = null;
+                fromPicker = null;
+                toPicker = null;
+                userFilter = null;
+                bookFilter = null;
+                authorFilter = null;
+            }
+        });
+
+        ChangeFeed.getInstance().subscribe("loans", changes -> Platform.runLater(() -> onLoansChanged(changes)));
+        ChangeFeed.getInstance().subscribe("users", changes -> Platform.runLater(() -> onReferenceDataChanged(pendingUserChanges, changes)));
+        ChangeFeed.getInstance().subscribe("books", changes -> Platform.runLater(() -> onReferenceDataChanged(pendingBookChanges, changes)));
 
         return true;
     }
 
+    private void registerApiEndpoints(IApiController api) {
+        api.registerEndpoint("GET", "/api/reports/active-loans", params -> reportDAO.getActiveLoans());
+        api.registerEndpoint("GET", "/api/reports/returned-loans", params -> reportDAO.getReturnedLoans());
+        api.registerEndpoint("GET", "/api/reports/loans", params -> reportDAO.getLoans(parseQuery(params)));
+    }
+
+    /**
+     * Parameters: status (active, returned or all; default all), branch, from and to (yyyy-MM-dd),
+     * userId, bookId, user, title and author. With several branches, userId and bookId need a branch:
+     * ids are only unique within one.
+     */
+    private ReportQuery parseQuery(Map<String, String> params) {
+        ReportQuery query = new ReportQuery();
+        String status = params.getOrDefault("status", "all");
+        try {
+            query.setStatus(ReportQuery.Status.valueOf(status.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parameter 'status' must be active, returned or all.");
+        }
+        query.setFrom(ApiParameters.optionalDate(params, "from"));
+        query.setTo(ApiParameters.optionalDate(params, "to"));
+        query.setUserId(ApiParameters.optionalInt(params, "userId"));
+        query.setBookId(ApiParameters.optionalInt(params, "bookId"));
+        Integer branch = ApiParameters.optionalInt(params, "branch");
+        if (branch != null && !ShardMap.getInstance().getBranchIds().contains(branch)) {
+            throw new IllegalArgumentException("Unknown branch " + branch + ".");
+        }
+        if (branch == null && (query.getUserId() != null || query.getBookId() != null)) {
+            if (ShardMap.getInstance().isSharded()) {
+                throw new IllegalArgumentException("Parameter 'branch' is required with 'userId' or 'bookId'.");
+            }
+            branch = ShardMap.getInstance().getHomeBranch();
+        }
+        query.setBranchId(branch);
+        query.setUserName(params.get("user"));
+        query.setBookTitle(params.get("title"));
+        query.setAuthor(params.get("author"));
+        return query;
+    }
+
+    @Override
+    public boolean warmUp() {
+        try {
+            List<Loan> activeLoans = reportDAO.getActiveLoans();
+            // Fills the cache so the first switch to the returned view is instant too.
+            reportDAO.getReturnedLoans();
+            uiController.prepareTab("Report", () -> {
+                VBox reportPane = createTabContent();
+                reportTable.setItems(FXCollections.observableArrayList(activeLoans));
+                return reportPane;
+            });
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Warm-up of Report skipped: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private VBox createTabContent() {
+        VBox reportPane = createReportPane();
+
+        reportPane.getStylesheets().add(
+                getClass().getResource("/br/edu/ifba/inf008/plugins/css/report-styles.css").toExternalForm());
+        reportPane.getStyleClass().add("main-pane");
+
+        return reportPane;
+    }
+
     private VBox createReportPane() {
+        reportTable = new TableView<>();
+        activeLoansSwitch = null;
         setupTableColumns();
 
         Label switchLabel = new Label("Active Loans:");
@@ -78,15 +220,66 @@ public class ReportPlugin implements IPlugin {
         HBox topBar = new HBox(10, switchLabel, activeLoansSwitch, refreshButton);
         topBar.setAlignment(Pos.CENTER_LEFT);
 
+        HBox filterBar = createFilterBar();
+
         statusLabel = new Label("Showing: Active Loans");
         statusLabel.getStyleClass().add("status-label");
 
-        VBox mainPane = new VBox(15, topBar, reportTable, statusLabel);
+        VBox mainPane = new VBox(15, topBar, filterBar, reportTable, statusLabel);
         mainPane.setPadding(new Insets(20));
         VBox.setVgrow(reportTable, Priority.ALWAYS);
         return mainPane;
     }
 
+    private HBox createFilterBar() {
+        fromPicker = new DatePicker();
+        fromPicker.setPromptText("Loaned from");
+        toPicker = new DatePicker();
+        toPicker.setPromptText("Loaned until");
+
+        userFilter = new TextField();
+        userFilter.setPromptText("User");
+        bookFilter = new TextField();
+        bookFilter.setPromptText("Book title");
+        authorFilter = new TextField();
+        authorFilter.setPromptText("Author");
+        userFilter.setOnAction(e -> loadReportData());
+        bookFilter.setOnAction(e -> loadReportData());
+        authorFilter.setOnAction(e -> loadReportData());
+
+        Button applyButton = new Button("Apply");
+        applyButton.setOnAction(e -> loadReportData());
+        applyButton.getStyleClass().add("button");
+
+        Button clearButton = new Button("Clear");
+        clearButton.setOnAction(e -> {
+            fromPicker.setValue(null);
+            toPicker.setValue(null);
+            userFilter.clear();
+            bookFilter.clear();
+            authorFilter.clear();
+            loadReportData();
+        });
+        clearButton.getStyleClass().add("button");
+
+        HBox filterBar = new HBox(10, fromPicker, toPicker, userFilter, bookFilter, authorFilter, applyButton, clearButton);
+        filterBar.getStyleClass().add("filter-bar");
+        return filterBar;
+    }
+
+    private ReportQuery currentQuery() {
+        boolean active = activeLoansSwitch == null || activeLoansSwitch.isSelected();
+        ReportQuery query = ReportQuery.of(active ? ReportQuery.Status.ACTIVE : ReportQuery.Status.RETURNED);
+        if (fromPicker != null) {
+            query.setFrom(fromPicker.getValue());
+            query.setTo(toPicker.getValue());
+            query.setUserName(userFilter.getText());
+            query.setBookTitle(bookFilter.getText());
+            query.setAuthor(authorFilter.getText());
+        }
+        return query;
+    }
+
     private void updateSwitchStatus() {
         if (activeLoansSwitch.isSelected()) {
             statusLabel.setText("Showing: Active Loans");
@@ -95,45 +288,39 @@ public class ReportPlugin implements IPlugin {
         }
     }
 
+    private void updateStatus(boolean inProgress) {
+        updateSwitchStatus();
+        if (shownQuery.isUnfiltered()) {
+            return;
+        }
+        int rows = reportTable.getItems().size();
+        statusLabel.setText(statusLabel.getText() + (inProgress ? " (filtered, loading... " + rows + ")" : " (filtered, " + rows + ")"));
+    }
+
     private void setupTableColumns() {
         reportTable.getColumns().clear();
 
-        TableColumn<Loan, Book> titleCol = new TableColumn<>("Book Title");
-        titleCol.setCellValueFactory(new PropertyValueFactory<>("book"));
-        titleCol.setCellFactory(col -> new TableCell<Loan, Book>() {
-            @Override
-            protected void updateItem(Book book, boolean empty) {
-                super.updateItem(book, empty);
-                setText(empty || book == null ? null : book.getTitle());
-            }
-        });
+        TableColumn<Loan, String> titleCol = new TableColumn<>("Book Title");
+        titleCol.setCellValueFactory(cell -> cell.getValue().getBook().titleProperty());
 
-        TableColumn<Loan, Book> authorCol = new TableColumn<>("Author");
-        authorCol.setCellValueFactory(new PropertyValueFactory<>("book"));
-        authorCol.setCellFactory(col -> new TableCell<Loan, Book>() {
-            @Override
-            protected void updateItem(Book book, boolean empty) {
-                super.updateItem(book, empty);
-                setText(empty || book == null ? null : book.getAuthor());
-            }
-        });
+        TableColumn<Loan, String> authorCol = new TableColumn<>("Author");
+        authorCol.setCellValueFactory(cell -> cell.getValue().getBook().authorProperty());
 
-        TableColumn<Loan, User> userCol = new TableColumn<>("User");
-        userCol.setCellValueFactory(new PropertyValueFactory<>("user"));
-        userCol.setCellFactory(col -> new TableCell<Loan, User>() {
-            @Override
-            protected void updateItem(User user, boolean empty) {
-                super.updateItem(user, empty);
-                setText(empty || user == null ? null : user.getName());
-            }
-        });
+        TableColumn<Loan, String> userCol = new TableColumn<>("User");
+        userCol.setCellValueFactory(cell -> cell.getValue().getUser().nameProperty());
 
         TableColumn<Loan, LocalDate> loanDateCol = new TableColumn<>("Loan Date");
-        loanDateCol.setCellValueFactory(new PropertyValueFactory<>("loanDate"));
+        loanDateCol.setCellValueFactory(cell -> cell.getValue().loanDateProperty());
+
+        if (ShardMap.getInstance().isSharded()) {
+            TableColumn<Loan, Number> branchCol = new TableColumn<>("Branch");
+            branchCol.setCellValueFactory(cell -> new ReadOnlyIntegerWrapper(cell.getValue().getBranchId()));
+            reportTable.getColumns().add(branchCol);
+        }
 
         if (activeLoansSwitch != null && !activeLoansSwitch.isSelected()) {
             TableColumn<Loan, LocalDate> returnDateCol = new TableColumn<>("Return Date");
-            returnDateCol.setCellValueFactory(new PropertyValueFactory<>("returnDate"));
+            returnDateCol.setCellValueFactory(cell -> cell.getValue().returnDateProperty());
             reportTable.getColumns().addAll(titleCol, authorCol, userCol, loanDateCol, returnDateCol);
         } else {
             reportTable.getColumns().addAll(titleCol, authorCol, userCol, loanDateCol);
@@ -143,17 +330,184 @@ public class ReportPlugin implements IPlugin {
         reportTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
     }
 
+    private void onLoansChanged(List<ChangeEvent> changes) {
+        if (reportTable == null) {
+            return;
+        }
+        for (ChangeEvent change : changes) {
+            pendingLoanChanges.add(change.getRowId());
+        }
+        if (!tabHidden && !loading) {
+            applyPendingChanges();
+        }
+    }
+
+    /**
+     * Renames and deletes of users and books are patched into the rows that show them. Checkouts
+     * and returns also log the book (its copies changed), which no report column shows.
+     */
+    private void onReferenceDataChanged(Set<Integer> pending, List<ChangeEvent> changes) {
+        if (reportTable == null) {
+            return;
+        }
+        boolean added = false;
+        for (ChangeEvent change : changes) {
+            if (change.getOperation() != ChangeEvent.Operation.COPIES) {
+                added |= pending.add(change.getRowId());
+            }
+        }
+        if (added && !tabHidden && !loading) {
+            applyPendingChanges();
+        }
+    }
+
+    private void catchUp() {
+        if (!ChangeFeed.getInstance().isHealthy()) {
+            loadReportData();
+        } else if (!loading) {
+            applyPendingChanges();
+        }
+    }
+
+    /**
+     * Fetches the changed rows on the plugin's executor and patches them in on the FX thread.
+     * Changes that arrive meanwhile wait, like during a full load, and are applied right after.
+     */
+    private void applyPendingChanges() {
+        ReportQuery query = shownQuery;
+        // A rename can make rows outside the table match the filter; only a reload finds those.
+        if ((!pendingUserChanges.isEmpty() && query.getUserName() != null)
+                || (!pendingBookChanges.isEmpty() && (query.getBookTitle() != null || query.getAuthor() != null))) {
+            loadReportData();
+            return;
+        }
+        if (pendingLoanChanges.isEmpty() && pendingUserChanges.isEmpty() && pendingBookChanges.isEmpty()) {
+            return;
+        }
+        Set<Integer> loanIds = drain(pendingLoanChanges);
+        Set<Integer> userIds = drain(pendingUserChanges);
+        Set<Integer> bookIds = drain(pendingBookChanges);
+        long generation = reportGeneration;
+        loading = true;
+        executor.submitForUI(() -> new ChangedRows(
+                        loanIds.isEmpty() ? List.of() : reportDAO.getLoansByIds(loanIds),
+                        userIds.isEmpty() ? List.of() : reportDAO.getUsersByIds(userIds),
+                        bookIds.isEmpty() ? List.of() : reportDAO.getBooksByIds(bookIds)),
+                (rows, error) -> {
+                    if (generation != reportGeneration) {
+                        return; // superseded by a full load, or the tab was closed
+                    }
+                    loading = false;
+                    if (error != null) {
+                        loadReportData();
+                        return;
+                    }
+                    if (!loanIds.isEmpty()) {
+                        // The feed reports home-branch ids; rows of other branches must not match them.
+                        RowDelta.apply(reportTable.getItems(), loanIds, rows.loans,
+                                loan -> ShardMap.getInstance().localId(loan.getBranchId(), loan.getLoanId()), query::matches);
+                    }
+                    if (!userIds.isEmpty()) {
+                        Map<Integer, User> users = new HashMap<>();
+                        for (User user : rows.users) {
+                            users.put(user.getUserId(), user);
+                        }
+                        patchRows(userIds, loan -> loan.getUser().getUserId(), (loan, id) -> {
+                            User user = users.get(id);
+                            loan.getUser().setName(user == null ? ReportDAO.PURGED_USER_NAME : user.getName());
+                        });
+                    }
+                    if (!bookIds.isEmpty()) {
+                        Map<Integer, Book> books = new HashMap<>();
+                        for (Book book : rows.books) {
+                            books.put(book.getBookId(), book);
+                        }
+                        patchRows(bookIds, loan -> loan.getBook().getBookId(), (loan, id) -> {
+                            Book book = books.get(id);
+                            loan.getBook().setTitle(book == null ? ReportDAO.PURGED_BOOK_TITLE : book.getTitle());
+                            loan.getBook().setAuthor(book == null ? "" : book.getAuthor());
+                        });
+                    }
+                    applyPendingChanges();
+                });
+    }
+
+    private static Set<Integer> drain(Set<Integer> pending) {
+        Set<Integer> drained = new HashSet<>(pending);
+        pending.clear();
+        return drained;
+    }
+
+    /**
+     * Hands every home-branch row that refers to one of {@code ids} to {@code patch}. A user or
+     * book the fetch no longer finds has been purged; its rows stay, like in a fresh report.
+     */
+    private void patchRows(Set<Integer> ids, ToIntFunction<Loan> idOf, BiConsumer<Loan, Integer> patch) {
+        for (Loan loan : reportTable.getItems()) {
+            int id = ShardMap.getInstance().localId(loan.getBranchId(), idOf.applyAsInt(loan));
+            if (ids.contains(id)) {
+                patch.accept(loan, id);
+            }
+        }
+    }
+
+    /**
+     * Runs on the plugin's executor. Filtered reports can span years, so their rows are added to
+     * the table as they arrive; changes from the feed wait until the last chunk is in.
+     */
     private void loadReportData() {
-        try {
-            setupTableColumns();
-            
-            if (activeLoansSwitch != null && activeLoansSwitch.isSelected()) {
-                reportTable.setItems(FXCollections.observableArrayList(reportDAO.getActiveLoans()));
+        pendingLoanChanges.clear();
+        pendingUserChanges.clear();
+        pendingBookChanges.clear();
+        ReportQuery query = currentQuery();
+        shownQuery = query;
+        long generation = ++reportGeneration;
+        setupTableColumns();
+
+        ObservableList<Loan> items = FXCollections.observableArrayList();
+        if (!query.isUnfiltered()) {
+            reportTable.setItems(items);
+        }
+        loading = true;
+        updateStatus(true);
+
+        executor.submitForUI(() -> {
+            if (query.isUnfiltered()) {
+                return query.getStatus() == ReportQuery.Status.ACTIVE ? reportDAO.getActiveLoans() : reportDAO.getReturnedLoans();
+            }
+            reportDAO.streamLoans(query, chunk -> Platform.runLater(() -> {
+                if (generation == reportGeneration) {
+                    items.addAll(chunk);
+                    updateStatus(true);
+                }
+            }));
+            return null;
+        }, (loans, error) -> {
+            if (generation != reportGeneration) {
+                return; // superseded by a newer load, or the tab was closed
+            }
+            loading = false;
+            if (loans != null) {
+                reportTable.setItems(FXCollections.observableArrayList(loans));
+            }
+            updateStatus(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load the report: " + error.getMessage());
             } else {
-                reportTable.setItems(FXCollections.observableArrayList(reportDAO.getReturnedLoans()));
+                applyPendingChanges();
             }
-        } catch (SQLException e) {
-            showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load the report: " + e.getMessage());
+        });
+    }
+
+    private static class ChangedRows {
+        private final List<Loan> loans;
+        private final List<User> users;
+        private final List<Book> books;
+
+        ChangedRows(List<Loan> loans, List<User> users, List<Book> books) {
+            this.loans = loans;
+            this.users = users;
+            this.books = books;
         }
     }
 
@@ -0,0 +1,319 @@
+package br.edu.ifba.inf008.plugins.data;
+
+import br.edu.ifba.inf008.shell.data.ChangeEvent;
+import br.edu.ifba.inf008.shell.data.ChangeFeed;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+import br.edu.ifba.inf008.shell.data.ShardMap;
+import br.edu.ifba.inf008.shell.model.Book;
+import br.edu.ifba.inf008.shell.model.Loan;
+import br.edu.ifba.inf008.shell.model.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the results of the report queries so switching between report views does not rerun the
+ * joins. Results are stored encoded (a string table plus fixed-width rows), which is a fraction of
+ * the size of the Loan/User/Book graph, and decoded into fresh objects on every hit.
+ *
+ * An entry is dropped as soon as the change feed reports a change to a table it was built from,
+ * and before it is served its version is compared with the current head of {@code change_log}, so
+ * a write committed by any desk is never hidden by the cache.
+ */
+public class CachedReportDAO implements ReportDAO {
+    private static final int MAX_ENTRIES = 32;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final Set<String> LOAN_REPORT_TABLES = new HashSet<>(Arrays.asList("loans", "users", "books"));
+
+    private interface Query {
+        List<Loan> run() throws SQLException;
+    }
+
+    private final ReportDAO delegate;
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long hits;
+    private long misses;
+
+    public CachedReportDAO(ReportDAO delegate) {
+        this.delegate = delegate;
+        for (String table : LOAN_REPORT_TABLES) {
+            ChangeFeed.getInstance().subscribe(table, changes -> {
+                // Copy counts are not part of any report.
+                if (changes.stream().anyMatch(change -> change.getOperation() != ChangeEvent.Operation.COPIES)) {
+                    invalidate(table);
+                }
+            });
+        }
+    }
+
+    @Override
+    public List<Loan> getActiveLoans() throws SQLException {
+        return cached("active-loans", LOAN_REPORT_TABLES, delegate::getActiveLoans);
+    }
+
+    @Override
+    public List<Loan> getReturnedLoans() throws SQLException {
+        return cached("returned-loans", LOAN_REPORT_TABLES, delegate::getReturnedLoans);
+    }
+
+    @Override
+    public List<Loan> getLoansByIds(Collection<Integer> loanIds) throws SQLException {
+        // Used to patch rows after a change; caching it would only delay the patch.
+        return delegate.getLoansByIds(loanIds);
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) throws SQLException {
+        return delegate.getUsersByIds(userIds);
+    }
+
+    @Override
+    public List<Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException {
+        return delegate.getBooksByIds(bookIds);
+    }
+
+    @Override
+    public List<Loan> getLoans(ReportQuery query) throws SQLException {
+        return cached(query.getCacheKey(), LOAN_REPORT_TABLES, () -> delegate.getLoans(query));
+    }
+
+    @Override
+    public void streamLoans(ReportQuery query, Consumer<List<Loan>> sink) throws SQLException {
+        String key = query.getCacheKey();
+        long version;
+        try {
+            version = currentVersion();
+        } catch (SQLException e) {
+            delegate.streamLoans(query, sink);
+            return;
+        }
+        byte[] data = lookup(key, version);
+        if (data != null) {
+            List<Loan> loans = decode(data);
+            for (int start = 0; start < loans.size(); start += ReportEngine.CHUNK_SIZE) {
+                sink.accept(new ArrayList<>(loans.subList(start, Math.min(loans.size(), start + ReportEngine.CHUNK_SIZE))));
+            }
+            return;
+        }
+        List<Loan> loans = new ArrayList<>();
+        delegate.streamLoans(query, chunk -> {
+            loans.addAll(chunk);
+            sink.accept(chunk);
+        });
+        store(key, version, LOAN_REPORT_TABLES, loans);
+    }
+
+    public synchronized void invalidate(String table) {
+        entries.values().removeIf(entry -> entry.tables.contains(table));
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized String getStatistics() {
+        return entries.size() + " entries, " + hits + " hits, " + misses + " misses";
+    }
+
+    /**
+     * @param key identifies the query and its parameters
+     * @param tables the tables whose changes make the result stale
+     */
+    private List<Loan> cached(String key, Set<String> tables, Query query) throws SQLException {
+        long version;
+        try {
+            version = currentVersion();
+        } catch (SQLException e) {
+            // No change_log (older schema): nothing to validate against, so do not cache.
+            return query.run();
+        }
+
+        byte[] data = lookup(key, version);
+        if (data != null) {
+            return decode(data);
+        }
+
+        // The version is read before the query, so a change committed while the query runs leaves
+        // the entry one version behind and the next call reloads it.
+        List<Loan> loans = query.run();
+        store(key, version, tables, loans);
+        return loans;
+    }
+
+    private synchronized byte[] lookup(String key, long version) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            hits++;
+            return entry.data;
+        }
+        misses++;
+        return null;
+    }
+
+    private void store(String key, long version, Set<String> tables, List<Loan> loans) {
+        CacheEntry entry = new CacheEntry(version, tables, encode(loans));
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Sum of the highest sequence in each branch's change_log; it grows whenever any branch
+     * changes. Sequences are allocated before commit, so a change can become visible below the
+     * current maximum; the feed delivers those late arrivals too (for the home branch), and that
+     * invalidation covers what this check cannot see.
+     */
+    private static long currentVersion() throws SQLException {
+        long version = 0;
+        for (long head : ShardMap.getInstance().scatter(branch -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM change_log")) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }).values()) {
+            version += head;
+        }
+        return version;
+    }
+
+    /**
+     * Layout: string count, strings (each user name, title and author once), row count, then per
+     * row loan id, branch, loan date and return date as epoch days, user id, name index, book id, title
+     * index and author index.
+     */
+    static byte[] encode(List<Loan> loans) {
+        Map<String, Integer> stringIndex = new LinkedHashMap<>();
+        for (Loan loan : loans) {
+            stringIndex.putIfAbsent(nullToEmpty(loan.getUser().getName()), stringIndex.size());
+            stringIndex.putIfAbsent(nullToEmpty(loan.getBook().getTitle()), stringIndex.size());
+            stringIndex.putIfAbsent(nullToEmpty(loan.getBook().getAuthor()), stringIndex.size());
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + loans.size() * 30);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(stringIndex.size());
+            for (String value : stringIndex.keySet()) {
+                out.writeUTF(value);
+            }
+            out.writeInt(loans.size());
+            for (Loan loan : loans) {
+                out.writeInt(loan.getLoanId());
+                out.writeShort(loan.getBranchId());
+                out.writeInt(epochDay(loan.getLoanDate()));
+                out.writeInt(epochDay(loan.getReturnDate()));
+                out.writeInt(loan.getUser().getUserId());
+                out.writeInt(stringIndex.get(nullToEmpty(loan.getUser().getName())));
+                out.writeInt(loan.getBook().getBookId());
+                out.writeInt(stringIndex.get(nullToEmpty(loan.getBook().getTitle())));
+                out.writeInt(stringIndex.get(nullToEmpty(loan.getBook().getAuthor())));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<Loan> decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            List<Loan> loans = new ArrayList<>(count);
+            // Rows of the same user or book share one object. Ids repeat across branches, so
+            // the key is the branch and the id together.
+            Map<Long, User> users = new HashMap<>();
+            Map<Long, Book> books = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                Loan loan = new Loan();
+                loan.setLoanId(in.readInt());
+                int branch = in.readShort();
+                loan.setBranchId(branch);
+                loan.setLoanDate(toDate(in.readInt()));
+                loan.setReturnDate(toDate(in.readInt()));
+
+                int userId = in.readInt();
+                String name = strings[in.readInt()];
+                loan.setUser(users.computeIfAbsent(key(branch, userId), key -> {
+                    User user = new User();
+                    user.setUserId(userId);
+                    user.setBranchId(branch);
+                    user.setName(name);
+                    return user;
+                }));
+
+                int bookId = in.readInt();
+                String title = strings[in.readInt()];
+                String author = strings[in.readInt()];
+                loan.setBook(books.computeIfAbsent(key(branch, bookId), key -> {
+                    Book book = new Book();
+                    book.setBookId(bookId);
+                    book.setBranchId(branch);
+                    book.setTitle(title);
+                    book.setAuthor(author);
+                    return book;
+                }));
+                loans.add(loan);
+            }
+            return loans;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long key(int branch, int id) {
+        return ((long) branch << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int epochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static LocalDate toDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static class CacheEntry {
+        private final long version;
+        private final Set<String> tables;
+        private final byte[] data;
+
+        CacheEntry(long version, Set<String> tables, byte[] data) {
+            this.version = version;
+            this.tables = tables;
+            this.data = data;
+        }
+    }
+}
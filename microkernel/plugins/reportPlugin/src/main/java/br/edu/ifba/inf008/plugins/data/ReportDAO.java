@@ -1,10 +1,34 @@
 package br.edu.ifba.inf008.plugins.data;
 
+import br.edu.ifba.inf008.shell.model.Book;
 import br.edu.ifba.inf008.shell.model.Loan;
+import br.edu.ifba.inf008.shell.model.User;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ReportDAO {
+    /** Shown for the user of an archived loan once the user has been purged. */
+    String PURGED_USER_NAME = "(removed user)";
+    /** Shown for the book of an archived loan once the book has been purged. */
+    String PURGED_BOOK_TITLE = "(removed book)";
+
     List<Loan> getActiveLoans() throws SQLException;
     List<Loan> getReturnedLoans() throws SQLException;
-} 
\ No newline at end of file
+    List<Loan> getLoansByIds(Collection<Integer> loanIds) throws SQLException;
+    /**
+     * The home-branch users with these ids, deleted ones included: their loans stay in reports.
+     */
+    List<User> getUsersByIds(Collection<Integer> userIds) throws SQLException;
+    /**
+     * The home-branch books with these ids, deleted ones included.
+     */
+    List<Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException;
+    List<Loan> getLoans(ReportQuery query) throws SQLException;
+    /**
+     * Hands the rows of {@code query} to {@code sink} in report order, a chunk at a time, on the
+     * calling thread.
+     */
+    void streamLoans(ReportQuery query, Consumer<List<Loan>> sink) throws SQLException;
+}
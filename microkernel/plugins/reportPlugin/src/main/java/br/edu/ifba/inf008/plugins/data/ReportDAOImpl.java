@@ -1,91 +1,311 @@
 package br.edu.ifba.inf008.plugins.data;
 
 import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+import br.edu.ifba.inf008.shell.data.LastKnownData;
+import br.edu.ifba.inf008.shell.data.LoanArchiver;
+import br.edu.ifba.inf008.shell.data.ModelMappers;
+import br.edu.ifba.inf008.shell.data.RowMapper;
+import br.edu.ifba.inf008.shell.data.ShardMap;
 import br.edu.ifba.inf008.shell.model.Book;
 import br.edu.ifba.inf008.shell.model.Loan;
 import br.edu.ifba.inf008.shell.model.User;
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
+/**
+ * Reports cover every branch: each query runs on all branch databases at once (see
+ * {@link ShardMap}) and the rows are merged in report order. Rows patched in from the change feed
+ * come from the home branch only.
+ */
 public class ReportDAOImpl implements ReportDAO {
+    /**
+     * Outer joins: a purged user or book is gone from its table, but its archived loans still count
+     * in every report, under a placeholder name.
+     */
+    private static final String USER_AND_BOOK_COLUMNS =
+            "l.user_id, COALESCE(u.name, '" + PURGED_USER_NAME + "') AS name, " +
+            "l.book_id, COALESCE(b.title, '" + PURGED_BOOK_TITLE + "') AS title, COALESCE(b.author, '') AS author ";
+    private static final String USER_AND_BOOK_JOINS =
+            "LEFT JOIN users u ON l.user_id = u.user_id " +
+            "LEFT JOIN books b ON l.book_id = b.book_id ";
+
+    private final ReportEngine engine = new ReportEngine(this::getLoansInPartition);
+
     @Override
     public List<Loan> getActiveLoans() throws SQLException {
-        List<Loan> activeLoans = new ArrayList<>();
         String sql = "SELECT l.loan_id, l.loan_date, " +
-                     "u.user_id, u.name, " +
-                     "b.book_id, b.title, b.author " +
+                     USER_AND_BOOK_COLUMNS +
                      "FROM loans l " +
-                     "JOIN users u ON l.user_id = u.user_id " +
-                     "JOIN books b ON l.book_id = b.book_id " +
+                     USER_AND_BOOK_JOINS +
                      "WHERE l.return_date IS NULL " +
                      "ORDER BY l.loan_date ASC";
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                User user = new User();
-                user.setUserId(rs.getInt("user_id"));
-                user.setName(rs.getString("name"));
-
-                Book book = new Book();
-                book.setBookId(rs.getInt("book_id"));
-                book.setTitle(rs.getString("title"));
-                book.setAuthor(rs.getString("author"));
-
-                Loan loan = new Loan();
-                loan.setLoanId(rs.getInt("loan_id"));
-                loan.setUser(user);
-                loan.setBook(book);
-                loan.setLoanDate(rs.getDate("loan_date").toLocalDate());
-                
-                activeLoans.add(loan);
-            }
-        }
-        return activeLoans;
+        return LastKnownData.read("loans.active", () -> acrossBranches(sql, ReportQuery.of(ReportQuery.Status.ACTIVE)));
     }
 
     @Override
     public List<Loan> getReturnedLoans() throws SQLException {
-        List<Loan> returnedLoans = new ArrayList<>();
         String sql = "SELECT l.loan_id, l.loan_date, l.return_date, " +
-                     "u.user_id, u.name, " +
-                     "b.book_id, b.title, b.author " +
+                     USER_AND_BOOK_COLUMNS +
                      "FROM loans l " +
-                     "JOIN users u ON l.user_id = u.user_id " +
-                     "JOIN books b ON l.book_id = b.book_id " +
+                     USER_AND_BOOK_JOINS +
                      "WHERE l.return_date IS NOT NULL " +
                      "ORDER BY l.return_date DESC";
 
+        return LastKnownData.read("loans.returned", () -> acrossBranches(sql, ReportQuery.of(ReportQuery.Status.RETURNED)));
+    }
+
+    /**
+     * Runs {@code sql} on every branch and merges the rows by {@code ordering}'s report order.
+     */
+    private static List<Loan> acrossBranches(String sql, ReportQuery ordering) throws SQLException {
+        List<Loan> loans = ShardMap.getInstance().gather(branch -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+
+                return RowMapper.list(rs, ModelMappers.LOAN);
+            }
+        });
+        if (ShardMap.getInstance().isSharded()) {
+            loans.sort(ordering.getOrder());
+        }
+        return loans;
+    }
+
+    @Override
+    public List<Loan> getLoansByIds(Collection<Integer> loanIds) throws SQLException {
+        if (loanIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT l.loan_id, l.loan_date, l.return_date, " +
+                     USER_AND_BOOK_COLUMNS +
+                     "FROM loans l " +
+                     USER_AND_BOOK_JOINS +
+                     "WHERE l.loan_id IN (" + String.join(",", Collections.nCopies(loanIds.size(), "?")) + ")";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int loanId : loanIds) {
+                pstmt.setInt(index++, loanId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.list(rs, ModelMappers.LOAN);
+            }
+        }
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) throws SQLException {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT user_id, name FROM users WHERE user_id IN (" +
+                     String.join(",", Collections.nCopies(userIds.size(), "?")) + ")";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int userId : userIds) {
+                pstmt.setInt(index++, userId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.list(rs, ModelMappers.USER);
+            }
+        }
+    }
+
+    @Override
+    public List<Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException {
+        if (bookIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT book_id, title, author FROM books WHERE book_id IN (" +
+                     String.join(",", Collections.nCopies(bookIds.size(), "?")) + ")";
         try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                User user = new User();
-                user.setUserId(rs.getInt("user_id"));
-                user.setName(rs.getString("name"));
-
-                Book book = new Book();
-                book.setBookId(rs.getInt("book_id"));
-                book.setTitle(rs.getString("title"));
-                book.setAuthor(rs.getString("author"));
-
-                Loan loan = new Loan();
-                loan.setLoanId(rs.getInt("loan_id"));
-                loan.setUser(user);
-                loan.setBook(book);
-                loan.setLoanDate(rs.getDate("loan_date").toLocalDate());
-                if (rs.getDate("return_date") != null) {
-                    loan.setReturnDate(rs.getDate("return_date").toLocalDate());
-                }
-                
-                returnedLoans.add(loan);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int bookId : bookIds) {
+                pstmt.setInt(index++, bookId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.list(rs, ModelMappers.BOOK);
+            }
+        }
+    }
+
+    @Override
+    public List<Loan> getLoans(ReportQuery query) throws SQLException {
+        List<Loan> loans = new ArrayList<>();
+        streamLoans(query, loans::addAll);
+        return loans;
+    }
+
+    @Override
+    public void streamLoans(ReportQuery query, Consumer<List<Loan>> sink) throws SQLException {
+        LocalDate from = query.getFrom();
+        LocalDate to = query.getTo();
+        if (from == null || to == null) {
+            // Open-ended range: partition only the months that actually hold matching loans.
+            LocalDate[] range = getLoanDateRange(query);
+            if (range == null) {
+                return;
+            }
+            from = from == null || from.isBefore(range[0]) ? range[0] : from;
+            to = to == null || to.isAfter(range[1]) ? range[1] : to;
+        }
+        if (from.isAfter(to)) {
+            return;
+        }
+        engine.run(query, from, to, sink);
+    }
+
+    /**
+     * The first and last loan date matching {@code query} over all branches, or null.
+     */
+    private LocalDate[] getLoanDateRange(ReportQuery query) throws SQLException {
+        LocalDate[] range = null;
+        for (LocalDate[] branchRange : ShardMap.getInstance().scatter(query.getBranches(), branch -> getBranchLoanDateRange(query)).values()) {
+            if (branchRange == null) {
+                continue;
+            }
+            if (range == null) {
+                range = branchRange;
+            } else {
+                range = new LocalDate[] {
+                        branchRange[0].isBefore(range[0]) ? branchRange[0] : range[0],
+                        branchRange[1].isAfter(range[1]) ? branchRange[1] : range[1] };
+            }
+        }
+        return range;
+    }
+
+    private LocalDate[] getBranchLoanDateRange(ReportQuery query) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        String source = query.getFrom() != null && needsArchive(query, query.getFrom())
+                ? "(SELECT loan_id, user_id, book_id, loan_date, return_date FROM loans " +
+                  "UNION ALL SELECT loan_id, user_id, book_id, loan_date, return_date FROM loans_archive)"
+                : "loans";
+        String sql = "SELECT MIN(l.loan_date) AS first_date, MAX(l.loan_date) AS last_date " +
+                     "FROM " + source + " l " +
+                     USER_AND_BOOK_JOINS +
+                     "WHERE " + filterClause(query, parameters);
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql, parameters);
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next() && rs.getDate("first_date") != null) {
+                return new LocalDate[] { rs.getDate("first_date").toLocalDate(), rs.getDate("last_date").toLocalDate() };
+            }
+        }
+        return null;
+    }
+
+    private List<Loan> getLoansInPartition(ReportQuery query, LocalDate from, LocalDate until) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        String source;
+        if (needsArchive(query, from)) {
+            // Old months may be split between the hot table and the archive; the range predicate
+            // inside the union lets the archive prune to the partition for that year.
+            source = "(SELECT loan_id, user_id, book_id, loan_date, return_date FROM loans " +
+                     "WHERE loan_date >= ? AND loan_date < ? " +
+                     "UNION ALL SELECT loan_id, user_id, book_id, loan_date, return_date FROM loans_archive " +
+                     "WHERE loan_date >= ? AND loan_date < ?)";
+            parameters.add(Date.valueOf(from));
+            parameters.add(Date.valueOf(until));
+        } else {
+            source = "(SELECT loan_id, user_id, book_id, loan_date, return_date FROM loans " +
+                     "WHERE loan_date >= ? AND loan_date < ?)";
+        }
+        parameters.add(Date.valueOf(from));
+        parameters.add(Date.valueOf(until));
+        // Must match ReportQuery.getOrder(): the engine merges partitions with that comparator.
+        String order = query.getStatus() == ReportQuery.Status.ACTIVE
+                ? "l.loan_date ASC, l.loan_id ASC"
+                : "(l.return_date IS NULL) DESC, l.return_date DESC, l.loan_date DESC, l.loan_id ASC";
+        String sql = "SELECT l.loan_id, l.loan_date, l.return_date, " +
+                     USER_AND_BOOK_COLUMNS +
+                     "FROM " + source + " l " +
+                     USER_AND_BOOK_JOINS +
+                     "WHERE " + filterClause(query, parameters) + " " +
+                     "ORDER BY " + order;
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql, parameters);
+             ResultSet rs = pstmt.executeQuery()) {
+            return RowMapper.list(rs, ModelMappers.LOAN);
+        }
+    }
+
+    /**
+     * Only returned loans are archived, and only those dated before the hot horizon, so the
+     * archive is read just for ranges that reach back that far.
+     */
+    private static boolean needsArchive(ReportQuery query, LocalDate from) throws SQLException {
+        return query.getStatus() != ReportQuery.Status.ACTIVE
+                && LoanArchiver.isAvailable()
+                && from.isBefore(LoanArchiver.getHotHorizon());
+    }
+
+    private static String filterClause(ReportQuery query, List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (query.getStatus() == ReportQuery.Status.ACTIVE) {
+            conditions.add("l.return_date IS NULL");
+        } else if (query.getStatus() == ReportQuery.Status.RETURNED) {
+            conditions.add("l.return_date IS NOT NULL");
+        }
+        if (query.getFrom() != null) {
+            conditions.add("l.loan_date >= ?");
+            parameters.add(Date.valueOf(query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            conditions.add("l.loan_date <= ?");
+            parameters.add(Date.valueOf(query.getTo()));
+        }
+        // Queries with an id filter run on the branch the ids belong to only (see ReportQuery).
+        if (query.getUserId() != null) {
+            conditions.add("l.user_id = ?");
+            parameters.add(query.getUserId());
+        }
+        if (query.getBookId() != null) {
+            conditions.add("l.book_id = ?");
+            parameters.add(query.getBookId());
+        }
+        if (query.getUserName() != null) {
+            conditions.add("u.name LIKE ?");
+            parameters.add(containsPattern(query.getUserName()));
+        }
+        if (query.getBookTitle() != null) {
+            conditions.add("b.title LIKE ?");
+            parameters.add(containsPattern(query.getBookTitle()));
+        }
+        if (query.getAuthor() != null) {
+            conditions.add("b.author LIKE ?");
+            parameters.add(containsPattern(query.getAuthor()));
+        }
+        return conditions.isEmpty() ? "1 = 1" : String.join(" AND ", conditions);
+    }
+
+    private static String containsPattern(String text) {
+        return "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    private static PreparedStatement prepare(Connection conn, String sql, List<Object> parameters) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < parameters.size(); i++) {
+                pstmt.setObject(i + 1, parameters.get(i));
             }
+        } catch (SQLException e) {
+            pstmt.close();
+            throw e;
         }
-        return returnedLoans;
+        return pstmt;
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package br.edu.ifba.inf008.plugins.data;
+
+import br.edu.ifba.inf008.shell.data.ConnectionQuota;
+import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+import br.edu.ifba.inf008.shell.data.ShardMap;
+import br.edu.ifba.inf008.shell.model.Loan;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs a date-range report as one query per calendar month of loan dates, several months at a
+ * time, and hands the rows on in report order. Active-loan reports are ordered by loan date, so
+ * each month can be passed on as soon as it and the months before it are done; the others are
+ * put back in order with a k-way merge over the sorted months.
+ *
+ * Each month is queried on every branch database the query covers (see {@link ShardMap}); the
+ * branches' rows for a month are merged the same way before the month is passed on.
+ */
+public class ReportEngine {
+
+    public interface PartitionLoader {
+        /**
+         * @return the rows with loan dates in [from, until), sorted by the query's order
+         */
+        List<Loan> load(ReportQuery query, LocalDate from, LocalDate until) throws SQLException;
+    }
+
+    // Leaves room in the connection pool for the rest of the application.
+    private static final int PARALLELISM = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    static final int CHUNK_SIZE = 500;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, runnable -> {
+        Thread thread = new Thread(runnable, "report-partition");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PartitionLoader loader;
+
+    public ReportEngine(PartitionLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Passes the rows of {@code query} between {@code from} and {@code to} (inclusive) to
+     * {@code sink} in chunks of at most {@link #CHUNK_SIZE}, in report order, on the calling thread.
+     */
+    public void run(ReportQuery query, LocalDate from, LocalDate to, Consumer<List<Loan>> sink) throws SQLException {
+        List<LocalDate> bounds = monthBounds(from, to);
+        List<Integer> branches = query.getBranches();
+        // One list of per-branch partitions for each month.
+        List<List<Future<List<Loan>>>> months = new ArrayList<>(bounds.size() - 1);
+        // Partition queries count against the caller's connection quota.
+        ConnectionQuota quota = DatabaseConnection.getBoundQuota();
+        for (int i = 0; i < bounds.size() - 1; i++) {
+            LocalDate start = bounds.get(i);
+            LocalDate until = bounds.get(i + 1);
+            List<Future<List<Loan>>> month = new ArrayList<>(branches.size());
+            for (int branch : branches) {
+                month.add(executor.submit(() -> {
+                    DatabaseConnection.bindQuota(quota);
+                    DatabaseConnection.bindBranch(branch);
+                    try {
+                        return loader.load(query, start, until);
+                    } finally {
+                        DatabaseConnection.bindBranch(null);
+                        DatabaseConnection.bindQuota(null);
+                    }
+                }));
+            }
+            months.add(month);
+        }
+
+        try {
+            if (query.getStatus() == ReportQuery.Status.ACTIVE) {
+                for (List<Future<List<Loan>>> month : months) {
+                    if (month.size() == 1) {
+                        emit(await(month.get(0)), sink);
+                    } else {
+                        merge(awaitAll(month), query.getOrder(), sink);
+                    }
+                }
+            } else {
+                List<List<Loan>> sorted = new ArrayList<>();
+                for (List<Future<List<Loan>>> month : months) {
+                    sorted.addAll(awaitAll(month));
+                }
+                merge(sorted, query.getOrder(), sink);
+            }
+        } finally {
+            for (List<Future<List<Loan>>> month : months) {
+                for (Future<List<Loan>> partition : month) {
+                    partition.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * First day of each month touched by [from, to], then the day after {@code to}.
+     */
+    static List<LocalDate> monthBounds(LocalDate from, LocalDate to) {
+        List<LocalDate> bounds = new ArrayList<>();
+        bounds.add(from);
+        LocalDate next = from.withDayOfMonth(1).plusMonths(1);
+        while (!next.isAfter(to)) {
+            bounds.add(next);
+            next = next.plusMonths(1);
+        }
+        bounds.add(to.plusDays(1));
+        return bounds;
+    }
+
+    static void merge(List<List<Loan>> sorted, Comparator<Loan> order, Consumer<List<Loan>> sink) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>((a, b) -> order.compare(a.peek(), b.peek()));
+        for (List<Loan> partition : sorted) {
+            if (!partition.isEmpty()) {
+                heads.add(new Cursor(partition));
+            }
+        }
+        List<Loan> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            chunk.add(cursor.next());
+            if (cursor.hasNext()) {
+                heads.add(cursor);
+            }
+            if (chunk.size() == CHUNK_SIZE) {
+                sink.accept(chunk);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            sink.accept(chunk);
+        }
+    }
+
+    private static void emit(List<Loan> rows, Consumer<List<Loan>> sink) {
+        for (int start = 0; start < rows.size(); start += CHUNK_SIZE) {
+            sink.accept(new ArrayList<>(rows.subList(start, Math.min(rows.size(), start + CHUNK_SIZE))));
+        }
+    }
+
+    private static List<List<Loan>> awaitAll(List<Future<List<Loan>>> partitions) throws SQLException {
+        List<List<Loan>> rows = new ArrayList<>(partitions.size());
+        for (Future<List<Loan>> partition : partitions) {
+            rows.add(await(partition));
+        }
+        return rows;
+    }
+
+    private static List<Loan> await(Future<List<Loan>> partition) throws SQLException {
+        try {
+            return partition.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the report.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause.getMessage(), cause);
+        }
+    }
+
+    private static class Cursor {
+        private final List<Loan> rows;
+        private int position = 0;
+
+        Cursor(List<Loan> rows) {
+            this.rows = rows;
+        }
+
+        Loan peek() {
+            return rows.get(position);
+        }
+
+        Loan next() {
+            return rows.get(position++);
+        }
+
+        boolean hasNext() {
+            return position < rows.size();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package br.edu.ifba.inf008.plugins.data;
+
+import br.edu.ifba.inf008.shell.data.ShardMap;
+import br.edu.ifba.inf008.shell.model.Loan;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Filters of a loan report. Dates bound the loan date and are inclusive; every filter left null
+ * matches everything. Text filters match any part of the name, title or author, ignoring case.
+ * Archived loans are included only when {@code from} reaches back past the hot window.
+ * User and book ids are only unique within a branch, so a query with an id filter should name the
+ * branch; it then runs on that branch alone.
+ */
+public class ReportQuery {
+
+    public enum Status {
+        ACTIVE,
+        RETURNED,
+        ALL
+    }
+
+    private Status status = Status.ACTIVE;
+    private Integer branchId;
+    private LocalDate from;
+    private LocalDate to;
+    private Integer userId;
+    private Integer bookId;
+    private String userName;
+    private String bookTitle;
+    private String author;
+
+    public static ReportQuery of(Status status) {
+        ReportQuery query = new ReportQuery();
+        query.setStatus(status);
+        return query;
+    }
+
+    /**
+     * True when only the status is set, i.e. the query is one of the two fixed reports.
+     */
+    public boolean isUnfiltered() {
+        return branchId == null && from == null && to == null && userId == null && bookId == null
+                && userName == null && bookTitle == null && author == null;
+    }
+
+    /**
+     * Active loans are listed oldest first, returned (and mixed) ones by most recent return, the
+     * same order as the fixed reports.
+     */
+    public Comparator<Loan> getOrder() {
+        if (status == Status.ACTIVE) {
+            return Comparator.comparing(Loan::getLoanDate).thenComparing(Loan::getLoanId);
+        }
+        return Comparator.comparing(Loan::getReturnDate, Comparator.nullsFirst(Comparator.<LocalDate>reverseOrder()))
+                .thenComparing(Loan::getLoanDate, Comparator.reverseOrder())
+                .thenComparing(Loan::getLoanId);
+    }
+
+    /**
+     * Same test as the SQL filter, for rows patched in from the change feed.
+     */
+    public boolean matches(Loan loan) {
+        if (status == Status.ACTIVE && loan.getReturnDate() != null) {
+            return false;
+        }
+        if (status == Status.RETURNED && loan.getReturnDate() == null) {
+            return false;
+        }
+        if (branchId != null && loan.getBranchId() != branchId) {
+            return false;
+        }
+        if (from != null && loan.getLoanDate().isBefore(from)) {
+            return false;
+        }
+        if (to != null && loan.getLoanDate().isAfter(to)) {
+            return false;
+        }
+        if (userId != null && loan.getUser().getUserId() != userId) {
+            return false;
+        }
+        if (bookId != null && loan.getBook().getBookId() != bookId) {
+            return false;
+        }
+        return contains(loan.getUser().getName(), userName)
+                && contains(loan.getBook().getTitle(), bookTitle)
+                && contains(loan.getBook().getAuthor(), author);
+    }
+
+    private static boolean contains(String value, String filter) {
+        if (filter == null) {
+            return true;
+        }
+        return value != null && value.toLowerCase(Locale.ROOT).contains(filter.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Identifies the query and all its parameters, for caching.
+     */
+    public String getCacheKey() {
+        return "loans|" + status + "|" + branchId + "|" + from + "|" + to + "|" + userId + "|" + bookId
+                + "|" + userName + "|" + bookTitle + "|" + author;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * The branches the query runs on: the one set with {@link #setBranchId}, or all of them.
+     */
+    public List<Integer> getBranches() {
+        return branchId != null ? List.of(branchId) : ShardMap.getInstance().getBranchIds();
+    }
+
+    public Integer getBranchId() {
+        return branchId;
+    }
+
+    public void setBranchId(Integer branchId) {
+        this.branchId = branchId;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Integer getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Integer bookId) {
+        this.bookId = bookId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public void setUserName(String userName) {
+        this.userName = blankToNull(userName);
+    }
+
+    public String getBookTitle() {
+        return bookTitle;
+    }
+
+    public void setBookTitle(String bookTitle) {
+        this.bookTitle = blankToNull(bookTitle);
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = blankToNull(author);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
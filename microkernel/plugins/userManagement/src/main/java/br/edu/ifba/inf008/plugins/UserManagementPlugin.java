@@ -1,22 +1,34 @@
 package br.edu.ifba.inf008.plugins;
 
 import br.edu.ifba.inf008.shell.model.User;
+import br.edu.ifba.inf008.interfaces.IApiController;
 import br.edu.ifba.inf008.interfaces.ICore;
 import br.edu.ifba.inf008.interfaces.IPlugin;
+import br.edu.ifba.inf008.interfaces.IPluginExecutor;
+import br.edu.ifba.inf008.interfaces.ITabListener;
 import br.edu.ifba.inf008.interfaces.IUIController;
+import br.edu.ifba.inf008.shell.data.ChangeEvent;
+import br.edu.ifba.inf008.shell.data.ChangeFeed;
+import br.edu.ifba.inf008.shell.data.RowDelta;
+import br.edu.ifba.inf008.shell.api.ApiParameters;
+import br.edu.ifba.inf008.shell.api.NotFoundException;
 import br.edu.ifba.inf008.plugins.data.UserDAO;
 import br.edu.ifba.inf008.plugins.data.UserDAOImpl;
+import br.edu.ifba.inf008.plugins.data.UserLookupServiceImpl;
+import br.edu.ifba.inf008.shell.service.UserLookupService;
 
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -29,26 +41,40 @@ import javafx.geometry.Pos;
 public class UserManagementPlugin implements IPlugin {
 
     private final UserDAO userDAO = new UserDAOImpl();
-    private TableView<User> userTable = new TableView<>();
-    private ObservableList<User> masterData = FXCollections.observableArrayList();
-    private TextField nameField = new TextField();
-    private TextField emailField = new TextField();
-    private Button saveButton = new Button("Add User");
+    private TableView<User> userTable;
+    private ObservableList<User> masterData;
+    private TextField nameField;
+    private TextField emailField;
+    private Button saveButton;
     private User selectedUser = null;
+    private boolean tabHidden = false;
+    private boolean loading = false;
+    private final Set<Integer> pendingChanges = new HashSet<>();
 
     private IUIController uiController;
+    private IPluginExecutor executor;
 
     @Override
     public boolean init() {
+        ICore.getInstance().getServiceRegistry().register(UserLookupService.class, new UserLookupServiceImpl(userDAO));
+
+        if (ICore.getInstance().isHeadless()) {
+            registerApiEndpoints(ICore.getInstance().getApiController());
+            return true;
+        }
+
         this.uiController = ICore.getInstance().getUIController();
+        this.executor = ICore.getInstance().getPluginController().getExecutor(this);
 
-        Button usersButton = uiController.addQuickAccessButton("", () -> {
-            uiController.showTab("User Management", () -> {
-                VBox userPane = createManagementPane();
+        Image userIconImage = new Image(
+                getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/userIcon.png"));
+        ImageView userIconView = new ImageView(userIconImage);
+        userIconView.setFitWidth(48);
+        userIconView.setFitHeight(48);
 
-                userPane.getStylesheets().add(
-                        getClass().getResource("/br/edu/ifba/inf008/plugins/css/user-styles.css").toExternalForm());
-                userPane.getStyleClass().add("main-pane");
+        uiController.addQuickAccessButton("", userIconView, () -> {
+            uiController.showTab("User Management", () -> {
+                VBox userPane = createTabContent();
 
                 loadUserData();
 
@@ -56,17 +82,113 @@ public class UserManagementPlugin implements IPlugin {
             });
         });
 
-        Image userIconImage = new Image(
-                getClass().getResourceAsStream("/br/edu/ifba/inf008/plugins/images/userIcon.png"));
-        ImageView userIconView = new ImageView(userIconImage);
-        userIconView.setFitWidth(48);
-        userIconView.setFitHeight(48);
-        usersButton.setGraphic(userIconView);
+        uiController.addTabListener("User Management", new ITabListener() {
+            @Override
+            public void onShown() {
+                if (tabHidden) {
+                    tabHidden = false;
+                    catchUp();
+                }
+            }
+
+            @Override
+            public void onHidden() {
+                tabHidden = true;
+            }
+
+            @Override
+            public void onClosed() {
+                tabHidden = false;
+                loading = false;
+                pendingChanges.clear();
+                releaseViewState();
+            }
+        });
+
+        ChangeFeed.getInstance().subscribe("users", changes -> Platform.runLater(() -> onRowsChanged(changes)));
 
         return true;
     }
 
+    private void registerApiEndpoints(IApiController api) {
+        api.registerEndpoint("GET", "/api/users", params -> {
+            if (params.containsKey("userId")) {
+                User user = userDAO.getUserById(ApiParameters.requireInt(params, "userId"));
+                if (user == null) {
+                    throw new NotFoundException("User not found.");
+                }
+                return user;
+            }
+            return userDAO.getAllUsers();
+        });
+        api.registerEndpoint("POST", "/api/users", params -> {
+            User user = new User();
+            user.setName(ApiParameters.require(params, "name"));
+            user.setEmail(ApiParameters.require(params, "email"));
+            userDAO.addUser(user);
+            return ApiParameters.ok();
+        });
+        api.registerEndpoint("PUT", "/api/users", params -> {
+            User user = new User();
+            user.setUserId(ApiParameters.requireInt(params, "userId"));
+            user.setName(ApiParameters.require(params, "name"));
+            user.setEmail(ApiParameters.require(params, "email"));
+            userDAO.updateUser(user);
+            return user;
+        });
+        api.registerEndpoint("DELETE", "/api/users", params -> {
+            userDAO.deleteUser(ApiParameters.requireInt(params, "userId"));
+            return ApiParameters.ok();
+        });
+    }
+
+    @Override
+    public boolean warmUp() {
+        try {
+            List<User> users = userDAO.getAllUsers();
+            uiController.prepareTab("User Management", () -> {
+                VBox userPane = createTabContent();
+                masterData.setAll(users);
+                return userPane;
+            });
+            return true;
+        } catch (SQLException ex) {
+            System.out.println("Warm-up of User Management skipped: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private VBox createTabContent() {
+        VBox userPane = createManagementPane();
+
+        userPane.getStylesheets().add(
+                getClass().getResource("/br/edu/ifba/inf008/plugins/css/user-styles.css").toExternalForm());
+        userPane.getStyleClass().add("main-pane");
+
+        return userPane;
+    }
+
+    private void createViewState() {
+        userTable = new TableView<>();
+        masterData = FXCollections.observableArrayList();
+        nameField = new TextField();
+        emailField = new TextField();
+        saveButton = new Button("Add User");
+        selectedUser = null;
+    }
+
+    private void releaseViewState() {
+        userTable = null;
+        masterData = null;
+        nameField = null;
+        emailField = null;
+        saveButton = null;
+        selectedUser = null;
+    }
+
     private VBox createManagementPane() {
+        createViewState();
+
         TextField searchField = new TextField();
         searchField.setPromptText("Search by name or email...");
 
@@ -119,11 +241,11 @@ public class UserManagementPlugin implements IPlugin {
     private void setupTableColumns() {
         userTable.getColumns().clear();
         TableColumn<User, String> nameCol = new TableColumn<>("Name");
-        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
         TableColumn<User, String> emailCol = new TableColumn<>("Email");
-        emailCol.setCellValueFactory(new PropertyValueFactory<>("email"));
+        emailCol.setCellValueFactory(cell -> cell.getValue().emailProperty());
         TableColumn<User, LocalDateTime> registeredCol = new TableColumn<>("Registered At");
-        registeredCol.setCellValueFactory(new PropertyValueFactory<>("registeredAt"));
+        registeredCol.setCellValueFactory(cell -> cell.getValue().registeredAtProperty());
         userTable.getColumns().addAll(nameCol, emailCol, registeredCol);
         userTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
     }
@@ -169,12 +291,73 @@ public class UserManagementPlugin implements IPlugin {
         return grid;
     }
 
-    private void loadUserData() {
-        try {
-            masterData.setAll(userDAO.getAllUsers());
-        } catch (SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load users: " + ex.getMessage());
+    private void onRowsChanged(List<ChangeEvent> changes) {
+        if (masterData == null) {
+            return;
+        }
+        for (ChangeEvent change : changes) {
+            pendingChanges.add(change.getRowId());
+        }
+        if (!tabHidden && !loading) {
+            applyPendingChanges();
+        }
+    }
+
+    private void catchUp() {
+        if (ChangeFeed.getInstance().isHealthy()) {
+            if (!loading) {
+                applyPendingChanges();
+            }
+        } else {
+            pendingChanges.clear();
+            loadUserData();
+        }
+    }
+
+    /**
+     * Fetches the changed rows on the plugin's executor and merges them on the FX thread. Changes
+     * that arrive meanwhile wait, like during a full load, and are applied right after.
+     */
+    private void applyPendingChanges() {
+        if (pendingChanges.isEmpty()) {
+            return;
         }
+        Set<Integer> changedIds = new HashSet<>(pendingChanges);
+        pendingChanges.clear();
+        ObservableList<User> target = masterData;
+        loading = true;
+        executor.submitForUI(() -> userDAO.getUsersByIds(changedIds), (users, error) -> {
+            if (masterData != target) {
+                return;
+            }
+            loading = false;
+            if (error != null) {
+                loadUserData();
+            } else {
+                RowDelta.merge(masterData, changedIds, users, User::getUserId, user -> true, User::copyFrom);
+                applyPendingChanges();
+            }
+        });
+    }
+
+    /**
+     * Runs on the plugin's executor; changes from the feed are held back until the load is in.
+     */
+    private void loadUserData() {
+        ObservableList<User> target = masterData;
+        loading = true;
+        executor.submitForUI(userDAO::getAllUsers, (users, error) -> {
+            if (masterData != target) {
+                return; // the tab was closed while loading
+            }
+            loading = false;
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load users: " + error.getMessage());
+            } else {
+                masterData.setAll(users);
+                applyPendingChanges();
+            }
+        });
     }
 
     private void handleSave() {
@@ -186,46 +369,79 @@ public class UserManagementPlugin implements IPlugin {
             return;
         }
 
-        try {
-            if (selectedUser == null) {
-                User newUser = new User();
-                newUser.setName(name);
-                newUser.setEmail(email);
-                userDAO.addUser(newUser);
-                showAlert(Alert.AlertType.INFORMATION, "Success", "User added successfully.");
+        User selected = selectedUser;
+        // Saved from a copy: if the update fails, the row keeps showing what is stored.
+        User edited = new User();
+        if (selected != null) {
+            edited.setUserId(selected.getUserId());
+            edited.setBranchId(selected.getBranchId());
+            edited.copyFrom(selected);
+        }
+        edited.setName(name);
+        edited.setEmail(email);
+        saveButton.setDisable(true);
+        executor.submitForUI(() -> {
+            if (selected == null) {
+                userDAO.addUser(edited);
             } else {
-                selectedUser.setName(name);
-                selectedUser.setEmail(email);
-                userDAO.updateUser(selectedUser);
-                showAlert(Alert.AlertType.INFORMATION, "Success", "User updated successfully.");
+                userDAO.updateUser(edited);
             }
-            loadUserData();
-            clearForm();
-        } catch (SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Database Error", "Operation failed: " + ex.getMessage());
-        }
+            return edited;
+        }, (saved, error) -> {
+            if (masterData == null) {
+                return; // the tab was closed while saving
+            }
+            saveButton.setDisable(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Database Error", "Operation failed: " + error.getMessage());
+                return;
+            }
+            if (selected != null) {
+                selected.copyFrom(saved);
+            }
+            showAlert(Alert.AlertType.INFORMATION, "Success", selected == null ? "User added successfully." : "User updated successfully.");
+            // The edited row already shows its new values and the change feed adds new rows, so
+            // only reload when the feed is down.
+            if (!ChangeFeed.getInstance().isHealthy()) {
+                loadUserData();
+            }
+            if (selectedUser == selected) {
+                clearForm();
+            }
+        });
     }
 
     private void handleDelete() {
         if (selectedUser == null) {
             return;
         }
+        User selected = selectedUser;
 
         Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION,
-                "Are you sure you want to delete " + selectedUser.getName() + "?", ButtonType.YES, ButtonType.NO);
+                "Are you sure you want to delete " + selected.getName() + "?", ButtonType.YES, ButtonType.NO);
         confirmation.getDialogPane().getStylesheets()
                 .add(getClass().getResource("/br/edu/ifba/inf008/plugins/css/loan-styles.css").toExternalForm());
 
         confirmation.showAndWait().ifPresent(response -> {
-            if (response == ButtonType.YES) {
-                try {
-                    userDAO.deleteUser(selectedUser.getUserId());
-                    showAlert(Alert.AlertType.INFORMATION, "Success", "User deleted successfully.");
+            if (response != ButtonType.YES) {
+                return;
+            }
+            executor.submitForUI(() -> {
+                userDAO.deleteUser(selected.getUserId());
+                return selected;
+            }, (deleted, error) -> {
+                if (masterData == null) {
+                    return;
+                }
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete user: " + error.getMessage());
+                    return;
+                }
+                showAlert(Alert.AlertType.INFORMATION, "Success", "User deleted successfully.");
+                if (!ChangeFeed.getInstance().isHealthy()) {
                     loadUserData();
-                } catch (SQLException ex) {
-                    showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete user: " + ex.getMessage());
                 }
-            }
+            });
         });
     }
 
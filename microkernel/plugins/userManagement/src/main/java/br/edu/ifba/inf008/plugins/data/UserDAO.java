@@ -2,6 +2,7 @@ package br.edu.ifba.inf008.plugins.data;
 
 import br.edu.ifba.inf008.shell.model.User;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 public interface UserDAO {
@@ -10,4 +11,6 @@ public interface UserDAO {
     void deleteUser(int userId) throws SQLException;
     List<User> getAllUsers() throws SQLException;
     User getUserById(int userId) throws SQLException;
+    User getUserByEmail(String email) throws SQLException;
+    List<User> getUsersByIds(Collection<Integer> userIds) throws SQLException;
 }
\ No newline at end of file
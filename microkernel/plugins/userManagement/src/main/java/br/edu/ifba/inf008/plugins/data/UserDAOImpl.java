@@ -1,17 +1,26 @@
 package br.edu.ifba.inf008.plugins.data;
 
 import br.edu.ifba.inf008.shell.data.DatabaseConnection;
+import br.edu.ifba.inf008.shell.data.LastKnownData;
+import br.edu.ifba.inf008.shell.data.LocalSnapshot;
+import br.edu.ifba.inf008.shell.data.ModelCodecs;
+import br.edu.ifba.inf008.shell.data.ModelMappers;
+import br.edu.ifba.inf008.shell.data.RowMapper;
 import br.edu.ifba.inf008.plugins.data.UserDAO;
 import br.edu.ifba.inf008.shell.model.User;
-import java.sql.Timestamp;
 import java.sql.SQLException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 
 public class UserDAOImpl implements UserDAO {
+    private static final LocalSnapshot<User> PATRONS = new LocalSnapshot<>("users", ModelCodecs.USER_VERSION,
+            ModelCodecs.USER, User::getUserId, null);
+
     @Override
     public void addUser(User user) throws SQLException {
         String sql = "INSERT INTO users (name, email) VALUES (?, ?)";
@@ -25,7 +34,7 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public void updateUser(User user) throws SQLException {
-        String sql = "UPDATE users SET name = ?, email = ? WHERE user_id = ?";
+        String sql = "UPDATE users SET name = ?, email = ? WHERE user_id = ? AND deleted_at IS NULL";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, user.getName());
@@ -35,9 +44,13 @@ public class UserDAOImpl implements UserDAO {
         }
     }
 
+    /**
+     * Only flags the user; their loans stay in the history until the purge job removes
+     * them in small chunks, so a patron with years of loans is deleted as fast as a new one.
+     */
     @Override
     public void deleteUser(int userId) throws SQLException {
-        String sql = "DELETE FROM users WHERE user_id = ?";
+        String sql = "UPDATE users SET deleted_at = CURRENT_TIMESTAMP WHERE user_id = ? AND deleted_at IS NULL";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
@@ -47,50 +60,58 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public List<User> getAllUsers() throws SQLException {
-        String sql = "SELECT user_id, name, email, registered_at FROM users";
-        List<User> users = new ArrayList<>();
+        return LastKnownData.read("users.all", () -> PATRONS.load(this::queryAllUsers, this::getUsersByIds));
+    }
+
+    private List<User> queryAllUsers() throws SQLException {
+        String sql = "SELECT user_id, name, email, registered_at FROM users WHERE deleted_at IS NULL";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
-            while (rs.next()) {
-                User user = new User();
-                user.setUserId(rs.getInt("user_id"));
-                user.setName(rs.getString("name"));
-                user.setEmail(rs.getString("email"));
-                Timestamp registeredAt = rs.getTimestamp("registered_at");
-                if (registeredAt != null) {
-                    user.setRegisteredAt(registeredAt.toLocalDateTime());
-                } else {
-                    user.setRegisteredAt(null);
-                }
-                users.add(user);
-            }
+            return RowMapper.list(rs, ModelMappers.USER);
         }
-        return users;
     }
 
     @Override
     public User getUserById(int userId) throws SQLException {
-        String sql = "SELECT user_id, name, email, registered_at FROM users WHERE user_id = ?";
+        String sql = "SELECT user_id, name, email, registered_at FROM users WHERE user_id = ? AND deleted_at IS NULL";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    User user = new User();
-                    user.setUserId(rs.getInt("user_id"));
-                    user.setName(rs.getString("name"));
-                    user.setEmail(rs.getString("email"));
-                    Timestamp registeredAt = rs.getTimestamp("registered_at");
-                    if (registeredAt != null) {
-                        user.setRegisteredAt(registeredAt.toLocalDateTime());
-                    } else {
-                        user.setRegisteredAt(null);
-                    }
-                    return user;
-                }
+                return RowMapper.first(rs, ModelMappers.USER);
+            }
+        }
+    }
+
+    @Override
+    public User getUserByEmail(String email) throws SQLException {
+        String sql = "SELECT user_id, name, email, registered_at FROM users WHERE email = ? AND deleted_at IS NULL";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, email);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.first(rs, ModelMappers.USER);
+            }
+        }
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) throws SQLException {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT user_id, name, email, registered_at FROM users WHERE deleted_at IS NULL AND user_id IN ("
+                + String.join(",", Collections.nCopies(userIds.size(), "?")) + ")";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int userId : userIds) {
+                pstmt.setInt(index++, userId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return RowMapper.list(rs, ModelMappers.USER);
             }
         }
-        return null;
     }
 }
@@ -0,0 +1,44 @@
+package br.edu.ifba.inf008.plugins.data;
+
+import br.edu.ifba.inf008.shell.model.User;
+import br.edu.ifba.inf008.shell.service.UserLookupService;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UserLookupServiceImpl implements UserLookupService {
+    private final UserDAO userDAO;
+
+    public UserLookupServiceImpl(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
+    @Override
+    public User getUser(int userId) throws SQLException {
+        return userDAO.getUserById(userId);
+    }
+
+    @Override
+    public User getUserByEmail(String email) throws SQLException {
+        return userDAO.getUserByEmail(email);
+    }
+
+    @Override
+    public Map<Integer, User> getUsers(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, User> users = new LinkedHashMap<>();
+        for (User user : userDAO.getUsersByIds(userIds)) {
+            users.put(user.getUserId(), user);
+        }
+        return users;
+    }
+
+    @Override
+    public List<User> getAllUsers() throws SQLException {
+        List<User> users = userDAO.getAllUsers();
+        users.sort(Comparator.comparing(User::getName, String.CASE_INSENSITIVE_ORDER));
+        return users;
+    }
+}